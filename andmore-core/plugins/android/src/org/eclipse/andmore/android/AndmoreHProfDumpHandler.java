@@ -18,12 +18,18 @@ package org.eclipse.andmore.android;
 
 import java.io.File;
 import java.io.IOException;
+import java.lang.reflect.InvocationTargetException;
 import java.text.DateFormat;
 import java.text.SimpleDateFormat;
+import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Date;
+import java.util.List;
 
 import org.eclipse.andmore.android.common.preferences.DialogWithToggleUtils;
 import org.eclipse.andmore.android.common.utilities.EclipseUtils;
+import org.eclipse.andmore.android.hprof.HprofPipeline;
+import org.eclipse.andmore.android.hprof.HprofSummary;
 import org.eclipse.andmore.android.i18n.AndroidNLS;
 import org.eclipse.andmore.ddms.DdmsPlugin;
 import org.eclipse.andmore.ddms.IHprofDumpHandler;
@@ -33,7 +39,10 @@ import org.eclipse.core.filesystem.IFileStore;
 import org.eclipse.core.runtime.IProgressMonitor;
 import org.eclipse.core.runtime.Path;
 import org.eclipse.jface.preference.IPreferenceStore;
+import org.eclipse.osgi.util.NLS;
+import org.eclipse.swt.SWT;
 import org.eclipse.swt.widgets.Display;
+import org.eclipse.swt.widgets.FileDialog;
 import org.eclipse.swt.widgets.Shell;
 import org.eclipse.ui.IEditorPart;
 import org.eclipse.ui.IWorkbench;
@@ -45,14 +54,24 @@ import org.eclipse.ui.ide.IDE;
 
 import com.android.ddmlib.Client;
 import com.android.ddmlib.IDevice;
+import com.android.ddmlib.SyncException;
 import com.android.ddmlib.SyncService;
+import com.android.ddmlib.SyncService.ISyncProgressMonitor;
+import com.android.ddmlib.TimeoutException;
+import com.android.ddmuilib.SyncProgressHelper;
+import com.android.ddmuilib.SyncProgressHelper.SyncRunnable;
 import com.android.ddmuilib.SyncProgressMonitor;
+import com.android.ddmuilib.console.DdmConsole;
 import com.android.ddmuilib.handler.BaseFileHandler;
 
 /**
  * 
  * Class to handle post HPROF dumping things. Based on the existing HprofHandler
  * from ADT.
+ * <p>
+ * Dumps are written once, directly to their final location, through a
+ * {@link HprofPipeline} which also computes a summary of the heap, printed to
+ * the DDMS console once the dump is stored.
  */
 public class AndmoreHProfDumpHandler extends BaseFileHandler implements IHprofDumpHandler {
 	public final static String SAVE_ACTION = "hprof.save"; //$NON-NLS-1$
@@ -67,6 +86,11 @@ public class AndmoreHProfDumpHandler extends BaseFileHandler implements IHprofDu
 
 	private final static String DATE_FORMAT = "yyyy-MM-dd HH-mm-ss"; //$NON-NLS-1$
 
+	/** Number of classes and objects listed in the summary */
+	private final static int SUMMARY_CLASSES = 10;
+
+	private final static int SUMMARY_OBJECTS = 5;
+
 	private String selectedApp;
 
 	private final IProgressMonitor progressMonitor;
@@ -134,26 +158,28 @@ public class AndmoreHProfDumpHandler extends BaseFileHandler implements IHprofDu
 				}
 
 				actionValue = preferenceStore.getString(PreferenceInitializer.ATTR_HPROF_ACTION);
+				HprofPipeline pipeline = new HprofPipeline(
+						preferenceStore.getBoolean(PreferenceInitializer.ATTR_HPROF_COMPRESS));
 
 				if (OPEN_ACTION.equals(actionValue)) {
 					progressMonitor.setTaskName(AndroidNLS.DumpHprofFile_CreatingTempFile);
-					File hprofTempFile = File.createTempFile(selectedApp, HPROF_FILE_EXTENSION);
+					File hprofFile = getHProfLocalFile(pipeline);
 					progressMonitor.worked(25);
 
-					String tempHprofFilePath = hprofTempFile.getAbsolutePath();
-
 					progressMonitor.setTaskName(AndroidNLS.DumpHprofFile_GettingFileFromRemoteDevice);
 					progressMonitor.worked(50);
 
-					syncService.pullFile(remoteFilePath, tempHprofFilePath,
+					HprofSummary summary = pipeline.pull(syncService, remoteFilePath, hprofFile,
 							new SyncProgressMonitor(progressMonitor, "")); //$NON-NLS-1$
 
-					openHprofFileInEditor(tempHprofFilePath);
+					File storedFile = pipeline.getStorageFile(hprofFile);
+					openHprofFileInEditor(storedFile.getAbsolutePath());
+					showSummary(storedFile, summary);
 
 				} else {
 					progressMonitor.setTaskName(AndroidNLS.DumpHprofFile_SavingFile);
 					try {
-						promptAndPull(syncService,
+						promptAndStream(syncService, pipeline,
 								client.getClientData().getClientDescription() + HPROF_FILE_EXTENSION, remoteFilePath,
 								AndroidNLS.AndmoreHProfDumpHandler_saveHProfFile);
 					} catch (Exception e) {
@@ -196,14 +222,18 @@ public class AndmoreHProfDumpHandler extends BaseFileHandler implements IHprofDu
 		}
 
 		value = preferenceStore.getString(PreferenceInitializer.ATTR_HPROF_ACTION);
+		HprofPipeline pipeline = new HprofPipeline(preferenceStore.getBoolean(PreferenceInitializer.ATTR_HPROF_COMPRESS));
 
 		if (OPEN_ACTION.equals(value)) {
 			try {
 				monitor.setTaskName(AndroidNLS.DumpHprofFile_SavingTempFile);
-				File tempHprofFile = saveTempFile(data, HPROF_FILE_EXTENSION);
+				File hprofFile = getHProfLocalFile(pipeline);
+				HprofSummary summary = pipeline.save(data, hprofFile);
 				monitor.worked(50);
 				monitor.setTaskName(AndroidNLS.DumpHprofFile_OpeningMemoryAnalysisFile);
-				openHprofFileInEditor(tempHprofFile.getAbsolutePath());
+				File storedFile = pipeline.getStorageFile(hprofFile);
+				openHprofFileInEditor(storedFile.getAbsolutePath());
+				showSummary(storedFile, summary);
 				monitor.worked(50);
 			} catch (Exception e) {
 				String errorMsg = e.getMessage();
@@ -213,13 +243,102 @@ public class AndmoreHProfDumpHandler extends BaseFileHandler implements IHprofDu
 			}
 		} else {
 			monitor.setTaskName(AndroidNLS.DumpHprofFile_SavingFile);
-			promptAndSave(client.getClientData().getClientDescription() + HPROF_FILE_EXTENSION, data,
+			promptAndSave(pipeline, client.getClientData().getClientDescription() + HPROF_FILE_EXTENSION, data,
 					AndroidNLS.UI_Hprof_Handler_Save_Prompt);
 			monitor.worked(100);
 		}
 		monitor.done();
 	}
 
+	/**
+	 * Prompts the user for a save location and pulls the remote HPROF file
+	 * directly into it through the pipeline. This must be called from the UI
+	 * Thread.
+	 */
+	private void promptAndStream(final SyncService sync, final HprofPipeline pipeline, String localFileName,
+			final String remoteFilePath, String title) throws InvocationTargetException, InterruptedException,
+			SyncException, TimeoutException, IOException {
+		FileDialog fileDialog = new FileDialog(mParentShell, SWT.SAVE);
+		fileDialog.setText(title);
+		fileDialog.setFileName(localFileName);
+
+		final String localFilePath = fileDialog.open();
+		if (localFilePath != null) {
+			final HprofSummary[] summary = new HprofSummary[1];
+			SyncProgressHelper.run(new SyncRunnable() {
+				@Override
+				public void run(ISyncProgressMonitor monitor) throws SyncException, IOException, TimeoutException {
+					summary[0] = pipeline.pull(sync, remoteFilePath, new File(localFilePath), monitor);
+				}
+
+				@Override
+				public void close() {
+					sync.close();
+				}
+			}, String.format("Pulling %1$s from the device", remoteFilePath), mParentShell); //$NON-NLS-1$
+			showSummary(pipeline.getStorageFile(new File(localFilePath)), summary[0]);
+		}
+	}
+
+	/**
+	 * Prompts the user for a save location and stores the HPROF data into it
+	 * through the pipeline. This must be called from the UI Thread.
+	 */
+	private void promptAndSave(HprofPipeline pipeline, String localFileName, byte[] data, String title) {
+		FileDialog fileDialog = new FileDialog(mParentShell, SWT.SAVE);
+		fileDialog.setText(title);
+		fileDialog.setFileName(localFileName);
+
+		String localFilePath = fileDialog.open();
+		if (localFilePath != null) {
+			try {
+				File hprofFile = new File(localFilePath);
+				HprofSummary summary = pipeline.save(data, hprofFile);
+				showSummary(pipeline.getStorageFile(hprofFile), summary);
+			} catch (IOException e) {
+				String errorMsg = e.getMessage();
+				displayErrorFromUiThread(AndroidNLS.UI_Hprof_Handler_Dialog_Unable_to_Save_Hprof_Data
+						+ FORMATTED_ERROR_STRING_2, errorMsg != null ? ":\n" + errorMsg //$NON-NLS-1$
+						: "."); //$NON-NLS-1$
+			}
+		}
+	}
+
+	/**
+	 * Prints the class histogram and the largest objects of a stored dump to
+	 * the DDMS console.
+	 * 
+	 * @param file
+	 *            the file the dump is stored into
+	 * @param summary
+	 *            the summary of the dump, null if it could not be computed
+	 */
+	private void showSummary(File file, HprofSummary summary) {
+		if (summary == null || !file.exists()) {
+			return;
+		}
+
+		List<String> lines = new ArrayList<String>();
+		lines.add(AndroidNLS.AndmoreHProfDumpHandler_summaryTitle);
+		lines.addAll(Arrays.asList(NLS.bind(AndroidNLS.AndmoreHProfDumpHandler_summaryHeader,
+				new Object[] { file.getAbsolutePath(), String.format("%,d", summary.getObjectCount()), //$NON-NLS-1$
+						String.format("%,d", summary.getTotalBytes()) }).split("\n"))); //$NON-NLS-1$ //$NON-NLS-2$
+
+		lines.add(AndroidNLS.AndmoreHProfDumpHandler_summaryClasses);
+		List<HprofSummary.ClassEntry> classes = summary.getHistogram();
+		for (HprofSummary.ClassEntry entry : classes.subList(0, Math.min(SUMMARY_CLASSES, classes.size()))) {
+			lines.add(String.format("%,14d  %,10d  %s", entry.getBytes(), entry.getInstances(), entry.getName())); //$NON-NLS-1$
+		}
+
+		lines.add(AndroidNLS.AndmoreHProfDumpHandler_summaryObjects);
+		List<HprofSummary.ObjectEntry> objects = summary.getLargestObjects();
+		for (HprofSummary.ObjectEntry entry : objects.subList(0, Math.min(SUMMARY_OBJECTS, objects.size()))) {
+			lines.add(String.format("%,14d  %s @0x%x", entry.getBytes(), entry.getClassName(), entry.getId())); //$NON-NLS-1$
+		}
+
+		DdmConsole.printToConsole(lines.toArray(new String[lines.size()]));
+	}
+
 	private void warnAboutSaveHprofPreference() {
 		Display.getCurrent().syncExec(new Runnable() {
 
@@ -272,6 +391,22 @@ public class AndmoreHProfDumpHandler extends BaseFileHandler implements IHprofDu
 		*/
 	}
 
+	/**
+	 * Creates the temporary file used to open a dump. The file the dump is
+	 * stored into is deleted when the VM exits.
+	 * 
+	 * @param pipeline
+	 *            the pipeline the dump is stored through
+	 * @return the uncompressed destination of the dump
+	 * @throws IOException
+	 */
+	private File getHProfLocalFile(HprofPipeline pipeline) throws IOException {
+		File hprofFile = File.createTempFile(selectedApp, HPROF_FILE_EXTENSION);
+		hprofFile.deleteOnExit();
+		pipeline.getStorageFile(hprofFile).deleteOnExit();
+		return hprofFile;
+	}
+
 	/**
 	 * Gets local (desktop) file name based on selected app and the current date
 	 * 
@@ -0,0 +1,337 @@
+/*
+ * Copyright (C) 2018 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.eclipse.andmore.android.hprof;
+
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayInputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InterruptedIOException;
+import java.io.OutputStream;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.FutureTask;
+import java.util.zip.GZIPOutputStream;
+
+import org.eclipse.andmore.android.common.log.AndmoreLogger;
+
+import com.android.ddmlib.SyncException;
+import com.android.ddmlib.SyncService;
+import com.android.ddmlib.SyncService.ISyncProgressMonitor;
+import com.android.ddmlib.TimeoutException;
+
+/**
+ * Stores HPROF dumps at their final location in a single write, optionally gzip compressed,
+ * and computes their {@link HprofSummary} while they are being stored.
+ * <p>
+ * Dumps received from the VM are written from memory. Dumps left on the device are pulled
+ * by the {@link SyncService} directly to the destination file, which is read back by a
+ * summary thread as it grows. When compression is requested, that thread also writes the
+ * compressed file and the plain one is deleted once the pull is complete.
+ */
+public class HprofPipeline {
+	public final static String COMPRESSED_EXTENSION = ".gz"; //$NON-NLS-1$
+
+	/** Number of objects reported by {@link HprofSummary#getLargestObjects()} */
+	private final static int LARGEST_OBJECTS = 20;
+
+	private final static int COPY_BUFFER_SIZE = 64 * 1024;
+
+	/** Delay between two reads of a file that is still being pulled, in ms */
+	private final static long FOLLOW_INTERVAL = 50;
+
+	private final boolean compress;
+
+	/**
+	 * @param compress
+	 *            whether dumps are stored gzip compressed
+	 */
+	public HprofPipeline(boolean compress) {
+		this.compress = compress;
+	}
+
+	/**
+	 * Returns the file a dump is stored into.
+	 *
+	 * @param destination
+	 *            the uncompressed destination chosen for the dump
+	 * @return the destination, with the {@link #COMPRESSED_EXTENSION} when
+	 *         compressing
+	 */
+	public File getStorageFile(File destination) {
+		return compress ? new File(destination.getPath() + COMPRESSED_EXTENSION) : destination;
+	}
+
+	/**
+	 * Stores a dump received from the VM.
+	 *
+	 * @param data
+	 *            the content of the dump
+	 * @param destination
+	 *            the uncompressed destination of the dump, see
+	 *            {@link #getStorageFile(File)}
+	 * @return the summary of the dump, or null if it could not be parsed
+	 * @throws IOException
+	 *             if the dump could not be stored
+	 */
+	public HprofSummary save(byte[] data, File destination) throws IOException {
+		return store(new ByteArrayInputStream(data), openStorage(getStorageFile(destination)));
+	}
+
+	/**
+	 * Pulls a dump from the device. This blocks until the dump is stored and summarized.
+	 *
+	 * @param sync
+	 *            the sync service of the device
+	 * @param remoteFilePath
+	 *            the path of the dump on the device
+	 * @param destination
+	 *            the uncompressed destination of the dump, see
+	 *            {@link #getStorageFile(File)}
+	 * @param monitor
+	 *            the progress monitor of the pull
+	 * @return the summary of the dump, or null if it could not be parsed
+	 */
+	public HprofSummary pull(final SyncService sync, final String remoteFilePath, File destination,
+			final ISyncProgressMonitor monitor) throws SyncException, TimeoutException, IOException {
+		return pull(new FilePuller() {
+			@Override
+			public void pullFile(String localFilePath) throws SyncException, TimeoutException, IOException {
+				sync.pullFile(remoteFilePath, localFilePath, monitor);
+			}
+		}, destination);
+	}
+
+	/**
+	 * Copies a remote file to a local path, which the pipeline reads as it grows.
+	 */
+	interface FilePuller {
+		void pullFile(String localFilePath) throws SyncException, TimeoutException, IOException;
+	}
+
+	HprofSummary pull(FilePuller puller, final File destination) throws SyncException, TimeoutException,
+			IOException {
+		// the follower must not see the content of a previous file
+		if (destination.exists() && !destination.delete()) {
+			throw new IOException("Unable to overwrite " + destination); //$NON-NLS-1$
+		}
+
+		final FileFollower follower = new FileFollower(destination);
+		final OutputStream copy = compress ? openStorage(getStorageFile(destination)) : null;
+		FutureTask<HprofSummary> summaryTask = new FutureTask<HprofSummary>(new Callable<HprofSummary>() {
+			@Override
+			public HprofSummary call() throws IOException {
+				return store(follower, copy);
+			}
+		});
+		Thread thread = new Thread(summaryTask, "HPROF summary"); //$NON-NLS-1$
+		thread.setDaemon(true);
+		thread.start();
+
+		boolean pulled = false;
+		try {
+			puller.pullFile(destination.getPath());
+			pulled = true;
+		} finally {
+			follower.finish(pulled);
+			if (!pulled) {
+				waitFor(summaryTask, true);
+				if (compress) {
+					getStorageFile(destination).delete();
+				}
+			}
+		}
+
+		// without compression the dump is already stored, a failure of the follower only
+		// loses its summary.
+		HprofSummary summary = waitFor(summaryTask, !compress);
+		if (compress) {
+			destination.delete();
+		}
+		return summary;
+	}
+
+	/**
+	 * Parses a dump while copying it to <var>copy</var>, which is closed once done.
+	 */
+	private HprofSummary store(InputStream source, OutputStream copy) throws IOException {
+		CopyingInputStream in = new CopyingInputStream(source, copy);
+		try {
+			HprofSummary summary = null;
+			try {
+				summary = new HprofSummaryParser(LARGEST_OBJECTS).parse(in);
+			} catch (IOException e) {
+				if (in.failure != null) {
+					throw in.failure;
+				}
+				// the dump itself is fine, but its content can't be summarized.
+				AndmoreLogger.warn(HprofPipeline.class, "Unable to summarize HPROF dump", e); //$NON-NLS-1$
+			}
+			in.drain();
+			return summary;
+		} finally {
+			if (copy != null) {
+				copy.close();
+			}
+			source.close();
+		}
+	}
+
+	private static HprofSummary waitFor(FutureTask<HprofSummary> task, boolean ignoreErrors) throws IOException {
+		boolean interrupted = false;
+		try {
+			while (true) {
+				try {
+					return task.get();
+				} catch (InterruptedException e) {
+					interrupted = true;
+				} catch (ExecutionException e) {
+					if (ignoreErrors) {
+						return null;
+					}
+					Throwable cause = e.getCause();
+					if (cause instanceof IOException) {
+						throw (IOException) cause;
+					}
+					throw new IOException(cause);
+				}
+			}
+		} finally {
+			if (interrupted) {
+				Thread.currentThread().interrupt();
+			}
+		}
+	}
+
+	private static OutputStream openStorage(File file) throws IOException {
+		OutputStream out = new FileOutputStream(file);
+		if (file.getName().endsWith(COMPRESSED_EXTENSION)) {
+			return new GZIPOutputStream(out, COPY_BUFFER_SIZE);
+		}
+		return new BufferedOutputStream(out, COPY_BUFFER_SIZE);
+	}
+
+	/**
+	 * Input stream writing everything read to an optional output stream. I/O errors of
+	 * either stream are recorded, to tell them apart from parse errors.
+	 */
+	private static class CopyingInputStream extends InputStream {
+		private final InputStream in;
+
+		private final OutputStream copy;
+
+		private IOException failure;
+
+		CopyingInputStream(InputStream in, OutputStream copy) {
+			this.in = in;
+			this.copy = copy;
+		}
+
+		@Override
+		public int read() throws IOException {
+			byte[] b = new byte[1];
+			return read(b, 0, 1) < 0 ? -1 : b[0] & 0xFF;
+		}
+
+		@Override
+		public int read(byte[] b, int off, int len) throws IOException {
+			try {
+				int count = in.read(b, off, len);
+				if (count > 0 && copy != null) {
+					copy.write(b, off, count);
+				}
+				return count;
+			} catch (IOException e) {
+				failure = e;
+				throw e;
+			}
+		}
+
+		/** Reads, and copies, the rest of the stream. */
+		void drain() throws IOException {
+			byte[] buffer = new byte[COPY_BUFFER_SIZE];
+			while (read(buffer, 0, buffer.length) >= 0) {
+				// keep going
+			}
+		}
+	}
+
+	/**
+	 * Input stream reading a file while it is being written by another thread, until that
+	 * thread calls {@link #finish(boolean)}.
+	 */
+	private static class FileFollower extends InputStream {
+		private final File file;
+
+		private FileInputStream in;
+
+		/** null while the file is being written, then whether it was written successfully */
+		private volatile Boolean complete;
+
+		FileFollower(File file) {
+			this.file = file;
+		}
+
+		void finish(boolean success) {
+			complete = Boolean.valueOf(success);
+		}
+
+		@Override
+		public int read() throws IOException {
+			byte[] b = new byte[1];
+			return read(b, 0, 1) < 0 ? -1 : b[0] & 0xFF;
+		}
+
+		@Override
+		public int read(byte[] b, int off, int len) throws IOException {
+			while (true) {
+				// read the flag first: once set, all the content is in the file.
+				Boolean done = complete;
+				if (done != null && !done.booleanValue()) {
+					throw new IOException("Pull of " + file + " failed"); //$NON-NLS-1$ //$NON-NLS-2$
+				}
+				if (in == null && file.exists()) {
+					in = new FileInputStream(file);
+				}
+				if (in != null) {
+					int count = in.read(b, off, len);
+					if (count > 0) {
+						return count;
+					}
+				}
+				if (done != null) {
+					return -1;
+				}
+				try {
+					Thread.sleep(FOLLOW_INTERVAL);
+				} catch (InterruptedException e) {
+					throw new InterruptedIOException();
+				}
+			}
+		}
+
+		@Override
+		public void close() throws IOException {
+			if (in != null) {
+				in.close();
+			}
+		}
+	}
+}
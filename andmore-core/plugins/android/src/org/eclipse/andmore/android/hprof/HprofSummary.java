@@ -0,0 +1,130 @@
+/*
+ * Copyright (C) 2018 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.eclipse.andmore.android.hprof;
+
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * Summary of an HPROF heap dump computed while the dump is being stored: a class histogram
+ * and the largest objects of the heap.
+ */
+public class HprofSummary {
+	/**
+	 * Number of instances and shallow size of all the instances of a class.
+	 */
+	public static class ClassEntry {
+		private final String name;
+
+		private final long instances;
+
+		private final long bytes;
+
+		ClassEntry(String name, long instances, long bytes) {
+			this.name = name;
+			this.instances = instances;
+			this.bytes = bytes;
+		}
+
+		public String getName() {
+			return name;
+		}
+
+		public long getInstances() {
+			return instances;
+		}
+
+		public long getBytes() {
+			return bytes;
+		}
+	}
+
+	/**
+	 * A single object of the heap and its shallow size.
+	 */
+	public static class ObjectEntry {
+		private final long id;
+
+		private final String className;
+
+		private final long bytes;
+
+		ObjectEntry(long id, String className, long bytes) {
+			this.id = id;
+			this.className = className;
+			this.bytes = bytes;
+		}
+
+		public long getId() {
+			return id;
+		}
+
+		public String getClassName() {
+			return className;
+		}
+
+		public long getBytes() {
+			return bytes;
+		}
+	}
+
+	private final long objectCount;
+
+	private final long totalBytes;
+
+	private final List<ClassEntry> histogram;
+
+	private final List<ObjectEntry> largestObjects;
+
+	HprofSummary(long objectCount, long totalBytes, List<ClassEntry> histogram, List<ObjectEntry> largestObjects) {
+		this.objectCount = objectCount;
+		this.totalBytes = totalBytes;
+		this.histogram = Collections.unmodifiableList(histogram);
+		this.largestObjects = Collections.unmodifiableList(largestObjects);
+	}
+
+	/**
+	 * @return the number of objects (instances and arrays) of the dump
+	 */
+	public long getObjectCount() {
+		return objectCount;
+	}
+
+	/**
+	 * @return the sum of the shallow sizes of all the objects of the dump
+	 */
+	public long getTotalBytes() {
+		return totalBytes;
+	}
+
+	/**
+	 * @return the classes of the dump, largest total shallow size first
+	 */
+	public List<ClassEntry> getHistogram() {
+		return histogram;
+	}
+
+	/**
+	 * Returns the largest objects of the dump by shallow size. This is a preview of the top
+	 * retainers, as retained sizes can only be computed once the whole object graph is known.
+	 *
+	 * @return the largest objects, largest first
+	 */
+	public List<ObjectEntry> getLargestObjects() {
+		return largestObjects;
+	}
+}
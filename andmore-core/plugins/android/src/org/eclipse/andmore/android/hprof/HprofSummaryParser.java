@@ -0,0 +1,477 @@
+/*
+ * Copyright (C) 2018 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.eclipse.andmore.android.hprof;
+
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.PriorityQueue;
+
+import org.eclipse.andmore.android.hprof.HprofSummary.ClassEntry;
+import org.eclipse.andmore.android.hprof.HprofSummary.ObjectEntry;
+
+/**
+ * Single pass, sequential parser of HPROF heap dumps (including the Android extensions)
+ * producing a {@link HprofSummary}.
+ * <p>
+ * The parser only keeps the string table, the class names and one counter per class, so
+ * its memory use does not depend on the number of objects of the dump. Object contents are
+ * skipped.
+ */
+public class HprofSummaryParser {
+	/** Thrown when the stream is not a valid HPROF dump. */
+	public static class HprofFormatException extends IOException {
+		private static final long serialVersionUID = 1L;
+
+		HprofFormatException(String message) {
+			super(message);
+		}
+	}
+
+	// top level records
+	private static final int TAG_STRING = 0x01;
+
+	private static final int TAG_LOAD_CLASS = 0x02;
+
+	private static final int TAG_HEAP_DUMP = 0x0C;
+
+	private static final int TAG_HEAP_DUMP_SEGMENT = 0x1C;
+
+	// heap dump sub-records
+	private static final int ROOT_UNKNOWN = 0xFF;
+
+	private static final int ROOT_JNI_GLOBAL = 0x01;
+
+	private static final int ROOT_JNI_LOCAL = 0x02;
+
+	private static final int ROOT_JAVA_FRAME = 0x03;
+
+	private static final int ROOT_NATIVE_STACK = 0x04;
+
+	private static final int ROOT_STICKY_CLASS = 0x05;
+
+	private static final int ROOT_THREAD_BLOCK = 0x06;
+
+	private static final int ROOT_MONITOR_USED = 0x07;
+
+	private static final int ROOT_THREAD_OBJECT = 0x08;
+
+	private static final int CLASS_DUMP = 0x20;
+
+	private static final int INSTANCE_DUMP = 0x21;
+
+	private static final int OBJECT_ARRAY_DUMP = 0x22;
+
+	private static final int PRIMITIVE_ARRAY_DUMP = 0x23;
+
+	// android extensions
+	private static final int HEAP_DUMP_INFO = 0xFE;
+
+	private static final int ROOT_INTERNED_STRING = 0x89;
+
+	private static final int ROOT_FINALIZING = 0x8A;
+
+	private static final int ROOT_DEBUGGER = 0x8B;
+
+	private static final int ROOT_REFERENCE_CLEANUP = 0x8C;
+
+	private static final int ROOT_VM_INTERNAL = 0x8D;
+
+	private static final int ROOT_JNI_MONITOR = 0x8E;
+
+	private static final int UNREACHABLE = 0x90;
+
+	private static final int PRIMITIVE_ARRAY_NODATA_DUMP = 0xC3;
+
+	// basic types
+	private static final int TYPE_OBJECT = 2;
+
+	private static final int TYPE_LONG = 11;
+
+	private static final String[] PRIMITIVE_ARRAY_NAMES = { null, null, null, null, "boolean[]", "char[]", //$NON-NLS-1$ //$NON-NLS-2$
+			"float[]", "double[]", "byte[]", "short[]", "int[]", "long[]" }; //$NON-NLS-1$ //$NON-NLS-2$ //$NON-NLS-3$ //$NON-NLS-4$ //$NON-NLS-5$ //$NON-NLS-6$
+
+	private static final int[] PRIMITIVE_SIZES = { 0, 0, 0, 0, 1, 2, 4, 8, 1, 2, 4, 8 };
+
+	private static final int BUFFER_SIZE = 64 * 1024;
+
+	private static final Comparator<long[]> BY_SIZE = new Comparator<long[]>() {
+		@Override
+		public int compare(long[] o1, long[] o2) {
+			return Long.compare(o1[2], o2[2]);
+		}
+	};
+
+	private final int maxLargestObjects;
+
+	private InputStream in;
+
+	private final byte[] buffer = new byte[BUFFER_SIZE];
+
+	private int bufferPosition;
+
+	private int bufferLimit;
+
+	/** number of bytes consumed so far */
+	private long position;
+
+	private int idSize;
+
+	private final Map<Long, String> strings = new HashMap<Long, String>();
+
+	/** class object id -> name string id */
+	private final Map<Long, Long> classNameIds = new HashMap<Long, Long>();
+
+	/** class object id -> { instance count, bytes } */
+	private final Map<Long, long[]> classStats = new HashMap<Long, long[]>();
+
+	/** primitive type -> { array count, bytes } */
+	private final long[][] primitiveArrayStats = new long[PRIMITIVE_SIZES.length][2];
+
+	/** the largest objects as {id, class id or -type, bytes}, smallest first */
+	private final PriorityQueue<long[]> largestObjects;
+
+	private long objectCount;
+
+	private long totalBytes;
+
+	/**
+	 * @param maxLargestObjects
+	 *            the number of objects to report in
+	 *            {@link HprofSummary#getLargestObjects()}
+	 */
+	public HprofSummaryParser(int maxLargestObjects) {
+		this.maxLargestObjects = maxLargestObjects;
+		largestObjects = new PriorityQueue<long[]>(Math.max(1, maxLargestObjects), BY_SIZE);
+	}
+
+	/**
+	 * Reads a dump until the end of the stream. The stream is not closed.
+	 *
+	 * @param stream
+	 *            the dump
+	 * @return the summary of the dump
+	 * @throws HprofFormatException
+	 *             if the stream is not a valid HPROF dump
+	 * @throws IOException
+	 *             if the stream cannot be read
+	 */
+	public HprofSummary parse(InputStream stream) throws IOException {
+		in = stream;
+
+		// header: "JAVA PROFILE 1.0.x\0", id size, timestamp
+		int c;
+		int headerLength = 0;
+		while ((c = readU1()) != 0) {
+			if (++headerLength > 64 || c < ' ') {
+				throw new HprofFormatException("Not an HPROF file"); //$NON-NLS-1$
+			}
+		}
+		idSize = readU4();
+		if (idSize != 4 && idSize != 8) {
+			throw new HprofFormatException("Unsupported identifier size " + idSize); //$NON-NLS-1$
+		}
+		skip(8);
+
+		while ((c = readU1OrEof()) >= 0) {
+			skip(4); // time
+			long length = readU4() & 0xFFFFFFFFL;
+			switch (c) {
+			case TAG_STRING:
+				long id = readId();
+				strings.put(id, readString((int) (length - idSize)));
+				break;
+			case TAG_LOAD_CLASS:
+				skip(4); // serial number
+				long classId = readId();
+				skip(4); // stack trace serial number
+				classNameIds.put(classId, readId());
+				break;
+			case TAG_HEAP_DUMP:
+			case TAG_HEAP_DUMP_SEGMENT:
+				readHeapDump(position + length);
+				break;
+			default:
+				skip(length);
+				break;
+			}
+		}
+
+		return createSummary();
+	}
+
+	private void readHeapDump(long end) throws IOException {
+		while (position < end) {
+			int tag = readU1();
+			switch (tag) {
+			case ROOT_UNKNOWN:
+			case ROOT_STICKY_CLASS:
+			case ROOT_MONITOR_USED:
+			case ROOT_INTERNED_STRING:
+			case ROOT_FINALIZING:
+			case ROOT_DEBUGGER:
+			case ROOT_REFERENCE_CLEANUP:
+			case ROOT_VM_INTERNAL:
+			case UNREACHABLE:
+				skip(idSize);
+				break;
+			case ROOT_JNI_GLOBAL:
+				skip(2 * idSize);
+				break;
+			case ROOT_NATIVE_STACK:
+			case ROOT_THREAD_BLOCK:
+				skip(idSize + 4);
+				break;
+			case ROOT_JNI_LOCAL:
+			case ROOT_JAVA_FRAME:
+			case ROOT_THREAD_OBJECT:
+			case ROOT_JNI_MONITOR:
+				skip(idSize + 8);
+				break;
+			case HEAP_DUMP_INFO:
+				skip(4 + idSize);
+				break;
+			case CLASS_DUMP:
+				readClassDump();
+				break;
+			case INSTANCE_DUMP: {
+				long id = readId();
+				skip(4);
+				long classId = readId();
+				long length = readU4() & 0xFFFFFFFFL;
+				skip(length);
+				addObject(id, classId, length);
+				break;
+			}
+			case OBJECT_ARRAY_DUMP: {
+				long id = readId();
+				skip(4);
+				long count = readU4() & 0xFFFFFFFFL;
+				long classId = readId();
+				skip(count * idSize);
+				addObject(id, classId, count * idSize);
+				break;
+			}
+			case PRIMITIVE_ARRAY_DUMP:
+			case PRIMITIVE_ARRAY_NODATA_DUMP: {
+				long id = readId();
+				skip(4);
+				long count = readU4() & 0xFFFFFFFFL;
+				int type = readU1();
+				long length = count * getTypeSize(type);
+				if (tag == PRIMITIVE_ARRAY_DUMP) {
+					skip(length);
+				}
+				addPrimitiveArray(id, type, length);
+				break;
+			}
+			default:
+				// unknown sub-record: its size is unknown too, skip the rest of the
+				// segment.
+				skip(end - position);
+				break;
+			}
+		}
+	}
+
+	private void readClassDump() throws IOException {
+		skip(idSize + 4 + 6 * idSize + 4); // ids, stack serial, instance size
+		int constants = readU2();
+		for (int i = 0; i < constants; i++) {
+			skip(2);
+			skip(getTypeSize(readU1()));
+		}
+		int statics = readU2();
+		for (int i = 0; i < statics; i++) {
+			skip(idSize);
+			skip(getTypeSize(readU1()));
+		}
+		int fields = readU2();
+		skip(fields * (long) (idSize + 1));
+	}
+
+	private void addObject(long id, long classId, long bytes) {
+		long[] stats = classStats.get(classId);
+		if (stats == null) {
+			stats = new long[2];
+			classStats.put(classId, stats);
+		}
+		stats[0]++;
+		stats[1] += bytes;
+		addToLargest(id, classId, bytes);
+	}
+
+	private void addPrimitiveArray(long id, int type, long bytes) {
+		primitiveArrayStats[type][0]++;
+		primitiveArrayStats[type][1] += bytes;
+		// primitive types are stored as negative class ids.
+		addToLargest(id, -type, bytes);
+	}
+
+	private void addToLargest(long id, long classId, long bytes) {
+		objectCount++;
+		totalBytes += bytes;
+
+		if (maxLargestObjects <= 0) {
+			return;
+		}
+		if (largestObjects.size() == maxLargestObjects) {
+			if (largestObjects.peek()[2] >= bytes) {
+				return;
+			}
+			largestObjects.poll();
+		}
+		largestObjects.add(new long[] { id, classId, bytes });
+	}
+
+	private HprofSummary createSummary() {
+		List<ClassEntry> histogram = new ArrayList<ClassEntry>(classStats.size() + PRIMITIVE_SIZES.length);
+		for (Map.Entry<Long, long[]> entry : classStats.entrySet()) {
+			long[] stats = entry.getValue();
+			histogram.add(new ClassEntry(getClassName(entry.getKey()), stats[0], stats[1]));
+		}
+		for (int type = 0; type < PRIMITIVE_SIZES.length; type++) {
+			long[] stats = primitiveArrayStats[type];
+			if (stats[0] > 0) {
+				histogram.add(new ClassEntry(PRIMITIVE_ARRAY_NAMES[type], stats[0], stats[1]));
+			}
+		}
+		Collections.sort(histogram, new Comparator<ClassEntry>() {
+			@Override
+			public int compare(ClassEntry o1, ClassEntry o2) {
+				return Long.compare(o2.getBytes(), o1.getBytes());
+			}
+		});
+
+		List<ObjectEntry> largest = new ArrayList<ObjectEntry>(largestObjects.size());
+		while (!largestObjects.isEmpty()) {
+			long[] object = largestObjects.poll();
+			long classId = object[1];
+			String className = classId < 0 ? PRIMITIVE_ARRAY_NAMES[(int) -classId] : getClassName(classId);
+			largest.add(new ObjectEntry(object[0], className, object[2]));
+		}
+		Collections.reverse(largest);
+
+		return new HprofSummary(objectCount, totalBytes, histogram, largest);
+	}
+
+	private String getClassName(long classId) {
+		Long nameId = classNameIds.get(classId);
+		String name = nameId != null ? strings.get(nameId) : null;
+		return name != null ? name : "0x" + Long.toHexString(classId); //$NON-NLS-1$
+	}
+
+	private int getTypeSize(int type) throws HprofFormatException {
+		if (type == TYPE_OBJECT) {
+			return idSize;
+		}
+		if (type < 0 || type > TYPE_LONG || PRIMITIVE_SIZES[type] == 0) {
+			throw new HprofFormatException("Unknown basic type " + type); //$NON-NLS-1$
+		}
+		return PRIMITIVE_SIZES[type];
+	}
+
+	private boolean fill() throws IOException {
+		bufferPosition = 0;
+		bufferLimit = 0;
+		int count;
+		while ((count = in.read(buffer)) == 0) {
+			// keep trying, the stream is blocking
+		}
+		if (count < 0) {
+			return false;
+		}
+		bufferLimit = count;
+		return true;
+	}
+
+	private int readU1OrEof() throws IOException {
+		if (bufferPosition == bufferLimit && !fill()) {
+			return -1;
+		}
+		position++;
+		return buffer[bufferPosition++] & 0xFF;
+	}
+
+	private int readU1() throws IOException {
+		int value = readU1OrEof();
+		if (value < 0) {
+			throw new EOFException();
+		}
+		return value;
+	}
+
+	private int readU2() throws IOException {
+		return (readU1() << 8) | readU1();
+	}
+
+	private int readU4() throws IOException {
+		return (readU1() << 24) | (readU1() << 16) | (readU1() << 8) | readU1();
+	}
+
+	private long readId() throws IOException {
+		if (idSize == 4) {
+			return readU4() & 0xFFFFFFFFL;
+		}
+		return ((long) readU4() << 32) | (readU4() & 0xFFFFFFFFL);
+	}
+
+	private String readString(int length) throws IOException {
+		if (length < 0) {
+			throw new HprofFormatException("Invalid string record"); //$NON-NLS-1$
+		}
+		byte[] bytes = new byte[length];
+		for (int i = 0; i < length;) {
+			if (bufferPosition == bufferLimit && !fill()) {
+				throw new EOFException();
+			}
+			int count = Math.min(length - i, bufferLimit - bufferPosition);
+			System.arraycopy(buffer, bufferPosition, bytes, i, count);
+			bufferPosition += count;
+			i += count;
+		}
+		position += length;
+		return new String(bytes, StandardCharsets.UTF_8);
+	}
+
+	/**
+	 * Skips bytes by reading them: when the dump is being copied as it is parsed, all of
+	 * it must go through the stream.
+	 */
+	private void skip(long count) throws IOException {
+		if (count < 0) {
+			throw new HprofFormatException("Invalid record length"); //$NON-NLS-1$
+		}
+		long remaining = count;
+		while (remaining > 0) {
+			if (bufferPosition == bufferLimit && !fill()) {
+				throw new EOFException();
+			}
+			int skipped = (int) Math.min(remaining, bufferLimit - bufferPosition);
+			bufferPosition += skipped;
+			remaining -= skipped;
+		}
+		position += count;
+	}
+}
@@ -56,6 +56,14 @@ public class AndroidNLS extends NLS {
 
 	public static String AndmoreHProfDumpHandler_warnAboutHprofSavePrefTitle;
 
+	public static String AndmoreHProfDumpHandler_summaryTitle;
+
+	public static String AndmoreHProfDumpHandler_summaryHeader;
+
+	public static String AndmoreHProfDumpHandler_summaryClasses;
+
+	public static String AndmoreHProfDumpHandler_summaryObjects;
+
 	public static String AndmorePropertyPage_ChangeProguardSettingsProblem;
 
 	public static String UninstallAppWizardPage_ColumnPackageKiind;
@@ -0,0 +1,151 @@
+/*
+ * Copyright (C) 2018 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.eclipse.andmore.android.hprof;
+
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+
+/**
+ * Writes synthetic HPROF dumps for the tests. Top level records are written with
+ * {@link #record(int, HprofBuilder)}, their bodies and the heap dump sub-records with
+ * another builder of the same identifier size.
+ */
+class HprofBuilder {
+	static final int TAG_STRING = 0x01;
+	static final int TAG_LOAD_CLASS = 0x02;
+	static final int TAG_STACK_TRACE = 0x05;
+	static final int TAG_HEAP_DUMP = 0x0C;
+	static final int TAG_HEAP_DUMP_SEGMENT = 0x1C;
+
+	static final int ROOT_STICKY_CLASS = 0x05;
+	static final int ROOT_JNI_MONITOR = 0x8E;
+	static final int CLASS_DUMP = 0x20;
+	static final int INSTANCE_DUMP = 0x21;
+	static final int OBJECT_ARRAY_DUMP = 0x22;
+	static final int PRIMITIVE_ARRAY_DUMP = 0x23;
+	static final int HEAP_DUMP_INFO = 0xFE;
+	static final int PRIMITIVE_ARRAY_NODATA_DUMP = 0xC3;
+
+	static final int TYPE_OBJECT = 2;
+	static final int TYPE_INT = 10;
+
+	private final int idSize;
+
+	private final ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+
+	private final DataOutputStream out = new DataOutputStream(bytes);
+
+	HprofBuilder(int idSize) {
+		this.idSize = idSize;
+	}
+
+	/** Starts a dump with its header. */
+	static HprofBuilder dump(int idSize) throws IOException {
+		HprofBuilder builder = new HprofBuilder(idSize);
+		builder.out.write("JAVA PROFILE 1.0.3".getBytes(StandardCharsets.US_ASCII));
+		builder.out.writeByte(0);
+		builder.out.writeInt(idSize);
+		builder.out.writeLong(1234L);
+		return builder;
+	}
+
+	HprofBuilder body() {
+		return new HprofBuilder(idSize);
+	}
+
+	HprofBuilder u1(int value) throws IOException {
+		out.writeByte(value);
+		return this;
+	}
+
+	HprofBuilder u2(int value) throws IOException {
+		out.writeShort(value);
+		return this;
+	}
+
+	HprofBuilder u4(int value) throws IOException {
+		out.writeInt(value);
+		return this;
+	}
+
+	HprofBuilder id(long value) throws IOException {
+		if (idSize == 4) {
+			out.writeInt((int) value);
+		} else {
+			out.writeLong(value);
+		}
+		return this;
+	}
+
+	HprofBuilder bytes(int count) throws IOException {
+		out.write(new byte[count]);
+		return this;
+	}
+
+	HprofBuilder record(int tag, HprofBuilder body) throws IOException {
+		byte[] content = body.toByteArray();
+		out.writeByte(tag);
+		out.writeInt(0);
+		out.writeInt(content.length);
+		out.write(content);
+		return this;
+	}
+
+	HprofBuilder string(long id, String value) throws IOException {
+		HprofBuilder body = body().id(id);
+		body.out.write(value.getBytes(StandardCharsets.UTF_8));
+		return record(TAG_STRING, body);
+	}
+
+	HprofBuilder loadClass(long classId, long nameId) throws IOException {
+		return record(TAG_LOAD_CLASS, body().u4(1).id(classId).u4(0).id(nameId));
+	}
+
+	/** Class dump with one int constant, one object static field and two instance fields. */
+	HprofBuilder classDump(long classId) throws IOException {
+		u1(CLASS_DUMP).id(classId).u4(0);
+		for (int i = 0; i < 6; i++) {
+			id(0);
+		}
+		u4(12);
+		u2(1).u2(0).u1(TYPE_INT).u4(42);
+		u2(1).id(7).u1(TYPE_OBJECT).id(0);
+		return u2(2).id(8).u1(TYPE_INT).id(9).u1(TYPE_OBJECT);
+	}
+
+	HprofBuilder instance(long id, long classId, int length) throws IOException {
+		return u1(INSTANCE_DUMP).id(id).u4(0).id(classId).u4(length).bytes(length);
+	}
+
+	HprofBuilder objectArray(long id, long classId, int count) throws IOException {
+		u1(OBJECT_ARRAY_DUMP).id(id).u4(0).u4(count).id(classId);
+		for (int i = 0; i < count; i++) {
+			id(0);
+		}
+		return this;
+	}
+
+	HprofBuilder intArray(long id, int count) throws IOException {
+		return u1(PRIMITIVE_ARRAY_DUMP).id(id).u4(0).u4(count).u1(TYPE_INT).bytes(4 * count);
+	}
+
+	byte[] toByteArray() {
+		return bytes.toByteArray();
+	}
+}
@@ -0,0 +1,156 @@
+/*
+ * Copyright (C) 2018 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.eclipse.andmore.android.hprof;
+
+import static org.junit.Assert.*;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.zip.GZIPInputStream;
+
+import org.eclipse.andmore.android.hprof.HprofPipeline.FilePuller;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+public class HprofPipelineTest {
+	@Rule
+	public TemporaryFolder folder = new TemporaryFolder();
+
+	/** Writes a dump in small chunks, as a pull from the device would. */
+	private static class ChunkedPuller implements FilePuller {
+		private final byte[] data;
+
+		private final int limit;
+
+		/**
+		 * @param limit
+		 *            number of bytes written before the pull fails, or the length of the
+		 *            data for a successful pull
+		 */
+		ChunkedPuller(byte[] data, int limit) {
+			this.data = data;
+			this.limit = limit;
+		}
+
+		@Override
+		public void pullFile(String localFilePath) throws IOException {
+			FileOutputStream out = new FileOutputStream(localFilePath);
+			try {
+				for (int offset = 0; offset < limit; offset += 16) {
+					out.write(data, offset, Math.min(16, limit - offset));
+					out.flush();
+					Thread.yield();
+				}
+			} finally {
+				out.close();
+			}
+			if (limit < data.length) {
+				throw new IOException("Connection lost");
+			}
+		}
+	}
+
+	private static byte[] read(InputStream in) throws IOException {
+		try {
+			ByteArrayOutputStream out = new ByteArrayOutputStream();
+			byte[] buffer = new byte[4096];
+			int count;
+			while ((count = in.read(buffer)) >= 0) {
+				out.write(buffer, 0, count);
+			}
+			return out.toByteArray();
+		} finally {
+			in.close();
+		}
+	}
+
+	private static void assertSummary(HprofSummary summary) {
+		assertNotNull(summary);
+		assertEquals(5, summary.getObjectCount());
+		assertEquals("int[]", summary.getHistogram().get(0).getName());
+	}
+
+	@Test
+	public void testSaveUncompressed() throws IOException {
+		byte[] data = HprofSummaryParserTest.createDump(4);
+		File destination = new File(folder.getRoot(), "app.hprof");
+		HprofPipeline pipeline = new HprofPipeline(false);
+
+		assertEquals(destination, pipeline.getStorageFile(destination));
+		assertSummary(pipeline.save(data, destination));
+		assertArrayEquals(data, read(new FileInputStream(destination)));
+	}
+
+	@Test
+	public void testSaveCompressed() throws IOException {
+		byte[] data = HprofSummaryParserTest.createDump(4);
+		File destination = new File(folder.getRoot(), "app.hprof");
+		HprofPipeline pipeline = new HprofPipeline(true);
+
+		File storage = pipeline.getStorageFile(destination);
+		assertEquals("app.hprof" + HprofPipeline.COMPRESSED_EXTENSION, storage.getName());
+		assertSummary(pipeline.save(data, destination));
+		assertFalse(destination.exists());
+		assertArrayEquals(data, read(new GZIPInputStream(new FileInputStream(storage))));
+	}
+
+	@Test
+	public void testPullUncompressed() throws Exception {
+		byte[] data = HprofSummaryParserTest.createDump(4);
+		File destination = new File(folder.getRoot(), "app.hprof");
+		// content of a previous dump must not be read
+		FileOutputStream previous = new FileOutputStream(destination);
+		previous.write(new byte[100]);
+		previous.close();
+
+		HprofPipeline pipeline = new HprofPipeline(false);
+		assertSummary(pipeline.pull(new ChunkedPuller(data, data.length), destination));
+		assertArrayEquals(data, read(new FileInputStream(destination)));
+	}
+
+	@Test
+	public void testPullCompressed() throws Exception {
+		byte[] data = HprofSummaryParserTest.createDump(4);
+		File destination = new File(folder.getRoot(), "app.hprof");
+		HprofPipeline pipeline = new HprofPipeline(true);
+
+		assertSummary(pipeline.pull(new ChunkedPuller(data, data.length), destination));
+		assertFalse(destination.exists());
+		File storage = pipeline.getStorageFile(destination);
+		assertArrayEquals(data, read(new GZIPInputStream(new FileInputStream(storage))));
+	}
+
+	@Test
+	public void testFailedPullCompressed() throws Exception {
+		byte[] data = HprofSummaryParserTest.createDump(4);
+		File destination = new File(folder.getRoot(), "app.hprof");
+		HprofPipeline pipeline = new HprofPipeline(true);
+
+		try {
+			pipeline.pull(new ChunkedPuller(data, data.length / 2), destination);
+			fail("Failed pull was not reported");
+		} catch (IOException e) {
+			assertEquals("Connection lost", e.getMessage());
+		}
+		assertFalse(pipeline.getStorageFile(destination).exists());
+	}
+}
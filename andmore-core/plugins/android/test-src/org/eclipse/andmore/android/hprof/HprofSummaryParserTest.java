@@ -0,0 +1,184 @@
+/*
+ * Copyright (C) 2018 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.eclipse.andmore.android.hprof;
+
+import static org.eclipse.andmore.android.hprof.HprofBuilder.*;
+import static org.junit.Assert.*;
+
+import java.io.ByteArrayInputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.List;
+
+import org.eclipse.andmore.android.hprof.HprofSummary.ClassEntry;
+import org.eclipse.andmore.android.hprof.HprofSummary.ObjectEntry;
+import org.eclipse.andmore.android.hprof.HprofSummaryParser.HprofFormatException;
+import org.junit.Test;
+
+public class HprofSummaryParserTest {
+	private static final long FOO = 100;
+	private static final long STRING = 101;
+
+	/**
+	 * Two classes, a class dump, instances of both, an object array and an int array in a
+	 * heap dump segment, between records the parser skips.
+	 */
+	static byte[] createDump(int idSize) throws IOException {
+		HprofBuilder dump = HprofBuilder.dump(idSize);
+		HprofBuilder heap = dump.body()
+				.u1(ROOT_STICKY_CLASS).id(FOO)
+				.classDump(FOO)
+				.instance(1000, FOO, 12)
+				.instance(1001, FOO, 8)
+				.instance(1002, STRING, 16)
+				.intArray(1003, 10)
+				.objectArray(1004, STRING, 3);
+		return dump.string(1, "com.example.Foo")
+				.string(2, "java.lang.String")
+				.loadClass(FOO, 1)
+				.loadClass(STRING, 2)
+				.record(TAG_STACK_TRACE, dump.body().u4(1).u4(1).u4(0))
+				.record(TAG_HEAP_DUMP_SEGMENT, heap)
+				.toByteArray();
+	}
+
+	private static HprofSummary parse(byte[] data, int largest) throws IOException {
+		return new HprofSummaryParser(largest).parse(new ByteArrayInputStream(data));
+	}
+
+	private static ClassEntry find(HprofSummary summary, String name) {
+		for (ClassEntry entry : summary.getHistogram()) {
+			if (entry.getName().equals(name)) {
+				return entry;
+			}
+		}
+		fail("No histogram entry for " + name);
+		return null;
+	}
+
+	private static void assertEntry(ClassEntry entry, String name, long instances, long bytes) {
+		assertEquals(name, entry.getName());
+		assertEquals(instances, entry.getInstances());
+		assertEquals(bytes, entry.getBytes());
+	}
+
+	@Test
+	public void testRecordsAndSubRecords() throws IOException {
+		HprofSummary summary = parse(createDump(4), 2);
+
+		assertEquals(5, summary.getObjectCount());
+		assertEquals(12 + 8 + 16 + 40 + 3 * 4, summary.getTotalBytes());
+
+		List<ClassEntry> histogram = summary.getHistogram();
+		assertEquals(3, histogram.size());
+		assertEntry(histogram.get(0), "int[]", 1, 40);
+		assertEntry(histogram.get(1), "java.lang.String", 2, 16 + 3 * 4);
+		assertEntry(histogram.get(2), "com.example.Foo", 2, 20);
+
+		List<ObjectEntry> largest = summary.getLargestObjects();
+		assertEquals(2, largest.size());
+		assertEquals(1003, largest.get(0).getId());
+		assertEquals("int[]", largest.get(0).getClassName());
+		assertEquals(40, largest.get(0).getBytes());
+		assertEquals(1002, largest.get(1).getId());
+		assertEquals("java.lang.String", largest.get(1).getClassName());
+	}
+
+	@Test
+	public void testEightByteIdentifiers() throws IOException {
+		HprofSummary summary = parse(createDump(8), 20);
+
+		assertEquals(5, summary.getObjectCount());
+		assertEquals(12 + 8 + 16 + 40 + 3 * 8, summary.getTotalBytes());
+		assertEntry(find(summary, "java.lang.String"), "java.lang.String", 2, 16 + 3 * 8);
+		assertEntry(find(summary, "com.example.Foo"), "com.example.Foo", 2, 20);
+		assertEquals(5, summary.getLargestObjects().size());
+	}
+
+	@Test
+	public void testAndroidSubRecords() throws IOException {
+		HprofBuilder dump = HprofBuilder.dump(4);
+		HprofBuilder heap = dump.body()
+				.u1(HEAP_DUMP_INFO).u4(1).id(3)
+				.u1(ROOT_JNI_MONITOR).id(5).u4(0).u4(0)
+				.u1(PRIMITIVE_ARRAY_NODATA_DUMP).id(2000).u4(0).u4(6).u1(TYPE_INT)
+				.instance(2001, FOO, 4);
+		byte[] data = dump.record(TAG_HEAP_DUMP, heap).toByteArray();
+
+		HprofSummary summary = parse(data, 20);
+		assertEquals(2, summary.getObjectCount());
+		assertEquals(24 + 4, summary.getTotalBytes());
+		assertEntry(summary.getHistogram().get(0), "int[]", 1, 24);
+		// the class was never loaded
+		assertEntry(summary.getHistogram().get(1), "0x64", 1, 4);
+	}
+
+	@Test
+	public void testUnknownSubRecordSkipsRestOfSegment() throws IOException {
+		HprofBuilder dump = HprofBuilder.dump(4);
+		HprofBuilder first = dump.body().instance(1, FOO, 4).u1(0x42).u4(-1).instance(2, FOO, 4);
+		HprofBuilder second = dump.body().instance(3, FOO, 8);
+		byte[] data = dump.record(TAG_HEAP_DUMP_SEGMENT, first).record(TAG_HEAP_DUMP_SEGMENT, second)
+				.toByteArray();
+
+		HprofSummary summary = parse(data, 20);
+		assertEquals(2, summary.getObjectCount());
+		assertEquals(12, summary.getTotalBytes());
+	}
+
+	@Test
+	public void testTruncatedInput() throws IOException {
+		byte[] data = createDump(4);
+		// inside the header, the first string record and the heap dump segment
+		int headerLength = "JAVA PROFILE 1.0.3".length() + 1 + 4 + 8;
+		for (int length : new int[] { 10, headerLength + 5, headerLength + 12, data.length - 3 }) {
+			try {
+				parse(Arrays.copyOf(data, length), 20);
+				fail("Parsed a dump truncated to " + length + " bytes");
+			} catch (EOFException e) {
+				// expected
+			}
+		}
+	}
+
+	@Test
+	public void testHeaderOnly() throws IOException {
+		HprofSummary summary = parse(HprofBuilder.dump(4).toByteArray(), 20);
+		assertEquals(0, summary.getObjectCount());
+		assertTrue(summary.getHistogram().isEmpty());
+		assertTrue(summary.getLargestObjects().isEmpty());
+	}
+
+	@Test(expected = HprofFormatException.class)
+	public void testNotHprof() throws IOException {
+		parse("<?xml version=\"1.0\"?>\n<resources/>".getBytes(StandardCharsets.US_ASCII), 20);
+	}
+
+	@Test(expected = HprofFormatException.class)
+	public void testUnsupportedIdentifierSize() throws IOException {
+		parse(HprofBuilder.dump(2).toByteArray(), 20);
+	}
+
+	@Test(expected = HprofFormatException.class)
+	public void testUnknownBasicType() throws IOException {
+		HprofBuilder dump = HprofBuilder.dump(4);
+		HprofBuilder heap = dump.body().u1(PRIMITIVE_ARRAY_DUMP).id(1).u4(0).u4(1).u1(3).u1(0);
+		parse(dump.record(TAG_HEAP_DUMP, heap).toByteArray(), 20);
+	}
+}
@@ -29,9 +29,9 @@ import java.io.IOException;
 import java.io.InputStreamReader;
 import java.util.ArrayList;
 import java.util.Arrays;
-import java.util.Collection;
-import java.util.HashMap;
 import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
 
 /**
  * Represents an addr2line process to get filename/method information from a
@@ -55,12 +55,11 @@ public class Addr2Line {
           + "in the UI, or set the environment variable " + ANDROID_SYMBOLS_ENVVAR + ".";
 
     /**
-     * Loaded processes list. This is also used as a locking object for any
-     * methods dealing with starting/stopping/creating processes/querying for
-     * method.
+     * Loaded processes list. Each process is only locked while it is started, stopped or
+     * queried, so that queries to different libraries do not wait for each other.
      */
-    private static final HashMap<String, Addr2Line> sProcessCache =
-            new HashMap<String, Addr2Line>();
+    private static final ConcurrentMap<String, Addr2Line> sProcessCache =
+            new ConcurrentHashMap<String, Addr2Line>();
 
     /**
      * byte array representing a carriage return. Used to push addresses in the
@@ -125,31 +124,27 @@ public class Addr2Line {
     public static Addr2Line getProcess(@NonNull final NativeLibraryMapInfo library, @Nullable String abi) {
         String libName = library.getLibraryName();
 
-        // synchronize around the hashmap object
         if (libName != null) {
-            synchronized (sProcessCache) {
-                // look for an existing process
-                Addr2Line process = sProcessCache.get(libName);
-
-                // if we don't find one, we create it
-                if (process == null) {
-                    process = new Addr2Line(library, abi);
-
-                    // then we start it
-                    boolean status = process.start();
-
-                    if (status) {
-                        // if starting the process worked, then we add it to the
-                        // list.
-                        sProcessCache.put(libName, process);
-                    } else {
-                        // otherwise we just drop the object, to return null
-                        process = null;
-                    }
-                }
-                // return the process
+            // look for an existing process
+            Addr2Line process = sProcessCache.get(libName);
+            if (process != null) {
                 return process;
             }
+
+            // if we don't find one, we create it and start it
+            process = new Addr2Line(library, abi);
+            if (!process.start()) {
+                // if starting the process failed we just drop the object, to return null
+                return null;
+            }
+
+            // then we add it to the list, unless another thread raced us to it
+            Addr2Line previous = sProcessCache.putIfAbsent(libName, process);
+            if (previous != null) {
+                process.destroyProcess();
+                return previous;
+            }
+            return process;
         }
         return null;
     }
@@ -217,8 +212,7 @@ public class Addr2Line {
      *         if there was any other errors.
      */
     private boolean start() {
-        // because this is only called from getProcess() we know we don't need
-        // to synchronize this code.
+        // this is only called from getProcess(), before the object is shared.
 
         // build the command line
         String[] command = new String[5];
@@ -285,10 +279,10 @@ public class Addr2Line {
      * Stops the command line process.
      */
     public void stop() {
-        synchronized (sProcessCache) {
+        synchronized (this) {
             if (mProcess != null) {
                 // remove the process from the list
-                sProcessCache.remove(mLibrary.getLibraryName());
+                sProcessCache.remove(mLibrary.getLibraryName(), this);
 
                 // then stops the process
                 mProcess.destroy();
@@ -301,20 +295,20 @@ public class Addr2Line {
         }
     }
 
+    private synchronized void destroyProcess() {
+        if (mProcess != null) {
+            mProcess.destroy();
+            mProcess = null;
+        }
+    }
+
     /**
      * Stops all current running processes.
      */
     public static void stopAll() {
-        // because of concurrent access (and our use of HashMap.values()), we
-        // can't rely on the synchronized inside stop(). We need to put one
-        // around the whole loop.
-        synchronized (sProcessCache) {
-            // just a basic loop on all the values in the hashmap and call to
-            // stop();
-            Collection<Addr2Line> col = sProcessCache.values();
-            for (Addr2Line a2l : col) {
-                a2l.stop();
-            }
+        // the iteration is safe against the concurrent removals done by stop().
+        for (Addr2Line a2l : sProcessCache.values()) {
+            a2l.stop();
         }
     }
 
@@ -330,10 +324,9 @@ public class Addr2Line {
     public NativeStackCallInfo getAddress(long addr) {
         long offset = addr - mLibrary.getStartAddress();
 
-        // even though we don't access the hashmap object, we need to
-        // synchronized on it to prevent
-        // another thread from stopping the process we're going to query.
-        synchronized (sProcessCache) {
+        // prevent another thread from stopping the process we're going to query, or
+        // interleaving its own query.
+        synchronized (this) {
             // check the process is still alive/allocated
             if (mProcess != null) {
                 // prepare to the write the address to the output buffer.
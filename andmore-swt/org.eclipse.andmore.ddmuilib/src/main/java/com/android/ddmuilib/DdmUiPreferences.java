@@ -18,6 +18,8 @@ package com.android.ddmuilib;
 
 import org.eclipse.jface.preference.IPreferenceStore;
 
+import java.io.File;
+
 /**
  * Preference entry point for ddmuilib. Allows the lib to access a preference
  * store (org.eclipse.jface.preference.IPreferenceStore) defined by the
@@ -35,6 +37,8 @@ public final class DdmUiPreferences {
     private static String sAddr2LineLocation =""; //$NON-NLS-1$
     private static String sAddr2LineLocation64 =""; //$NON-NLS-1$
     private static String sTraceviewLocation =""; //$NON-NLS-1$
+    private static String sSymbolCacheLocation = System.getProperty("user.home") //$NON-NLS-1$
+            + File.separator + ".android" + File.separator + "ddms-symbols"; //$NON-NLS-1$ //$NON-NLS-2$
 
     public static void setStore(IPreferenceStore store) {
         mStore = store;
@@ -60,6 +64,17 @@ public final class DdmUiPreferences {
         sSymbolLocation = location;
     }
 
+    /**
+     * Returns the folder where resolved native symbols are cached across sessions.
+     */
+    public static String getSymbolCacheDirectory() {
+        return sSymbolCacheLocation;
+    }
+
+    public static void setSymbolCacheLocation(String location) {
+        sSymbolCacheLocation = location;
+    }
+
     public static String getAddr2Line() {
         return sAddr2LineLocation;
     }
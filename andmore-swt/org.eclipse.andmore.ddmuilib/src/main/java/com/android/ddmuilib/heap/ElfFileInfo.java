@@ -0,0 +1,217 @@
+/*
+ * Copyright (C) 2018 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.android.ddmuilib.heap;
+
+import com.android.annotations.Nullable;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+
+/**
+ * The few properties of a local little-endian ELF file needed to symbolize addresses:
+ * the load base of its first loadable segment and its GNU build-id, if any.
+ */
+final class ElfFileInfo {
+    private static final int ELF_CLASS32 = 1;
+    private static final int ELF_CLASS64 = 2;
+    private static final int ELF_DATA2LSB = 1;
+    private static final int ELF_PT_LOAD = 1;
+    private static final int ELF_PT_NOTE = 4;
+    private static final int ELF_NT_GNU_BUILD_ID = 3;
+
+    /** Upper bound on the size of a note segment we are willing to read. */
+    private static final long MAX_NOTE_SIZE = 64 * 1024;
+
+    private final long mLoadBase;
+    private final String mBuildId;
+
+    private ElfFileInfo(long loadBase, String buildId) {
+        mLoadBase = loadBase;
+        mBuildId = buildId;
+    }
+
+    /** Returns the virtual address of the loadable segment at file offset 0, or 0. */
+    long getLoadBase() {
+        return mLoadBase;
+    }
+
+    /** Returns the GNU build-id as a hex string, or null if the file has none. */
+    @Nullable
+    String getBuildId() {
+        return mBuildId;
+    }
+
+    /**
+     * Reads a local file.
+     * @param path the path to the file.
+     * @return the ELF information, or null if the file is not a readable little-endian ELF
+     * file.
+     */
+    @Nullable
+    static ElfFileInfo read(String path) {
+        File f = new File(path);
+        if (!f.isFile()) {
+            return null;
+        }
+
+        try (RandomAccessFile file = new RandomAccessFile(f, "r")) {
+            byte[] buffer = new byte[6];
+            file.readFully(buffer, 0, 6);
+            if (buffer[0] != 0x7f || buffer[1] != 'E' || buffer[2] != 'L' ||
+                    buffer[3] != 'F' || buffer[5] != ELF_DATA2LSB) {
+                return null;
+            }
+
+            boolean elf32;
+            long elfPhdrSize;
+            long ePhnumOffset;
+            long ePhoffOffset;
+            long pOffsetOffset;
+            long pVaddrOffset;
+            long pFileszOffset;
+            if (buffer[4] == ELF_CLASS32) {
+                elf32 = true;
+                elfPhdrSize = 32;
+
+                ePhnumOffset = 44;
+                ePhoffOffset = 28;
+                pOffsetOffset = 4;
+                pVaddrOffset = 8;
+                pFileszOffset = 16;
+            } else if (buffer[4] == ELF_CLASS64) {
+                elf32 = false;
+                elfPhdrSize = 56;
+
+                ePhnumOffset = 56;
+                ePhoffOffset = 32;
+                pOffsetOffset = 8;
+                pVaddrOffset = 16;
+                pFileszOffset = 32;
+            } else {
+                // Unknown class type.
+                return null;
+            }
+
+            long loadBase = 0;
+            boolean loadBaseFound = false;
+            String buildId = null;
+
+            int ePhnum = getHalfWord(file, ePhnumOffset) & 0xFFFF;
+            long offset = elf32 ? getWord(file, ePhoffOffset) : getDoubleWord(file, ePhoffOffset);
+            for (int i = 0; i < ePhnum; i++) {
+                int pType = (int) getWord(file, offset);
+                long pOffset = elf32 ? getWord(file, offset + pOffsetOffset)
+                        : getDoubleWord(file, offset + pOffsetOffset);
+
+                // Assume all offsets are zero.
+                if (pType == ELF_PT_LOAD && pOffset == 0 && !loadBaseFound) {
+                    loadBase = elf32 ? getWord(file, offset + pVaddrOffset)
+                            : getDoubleWord(file, offset + pVaddrOffset);
+                    loadBaseFound = true;
+                } else if (pType == ELF_PT_NOTE && buildId == null) {
+                    long pFilesz = elf32 ? getWord(file, offset + pFileszOffset)
+                            : getDoubleWord(file, offset + pFileszOffset);
+                    buildId = findBuildId(file, pOffset, pFilesz);
+                }
+                offset += elfPhdrSize;
+            }
+
+            return new ElfFileInfo(loadBase, buildId);
+        } catch (IOException e) {
+            return null;
+        }
+    }
+
+    /**
+     * Walks the notes of a PT_NOTE segment looking for the GNU build-id.
+     */
+    private static String findBuildId(RandomAccessFile file, long offset, long size)
+            throws IOException {
+        if (size <= 0 || size > MAX_NOTE_SIZE || offset + size > file.length()) {
+            return null;
+        }
+        byte[] notes = new byte[(int) size];
+        file.seek(offset);
+        file.readFully(notes);
+
+        int index = 0;
+        while (index + 12 <= notes.length) {
+            int nameSize = (int) toWord(notes, index);
+            int descSize = (int) toWord(notes, index + 4);
+            int type = (int) toWord(notes, index + 8);
+            index += 12;
+
+            int nameStart = index;
+            index += align4(nameSize);
+            int descStart = index;
+            index += align4(descSize);
+            if (nameSize < 0 || descSize < 0 || index > notes.length) {
+                return null;
+            }
+
+            // name is "GNU\0"
+            if (type == ELF_NT_GNU_BUILD_ID && nameSize == 4
+                    && notes[nameStart] == 'G' && notes[nameStart + 1] == 'N'
+                    && notes[nameStart + 2] == 'U' && notes[nameStart + 3] == 0) {
+                StringBuilder sb = new StringBuilder(descSize * 2);
+                for (int i = descStart; i < descStart + descSize; i++) {
+                    sb.append(String.format("%02x", notes[i] & 0xFF)); //$NON-NLS-1$
+                }
+                return sb.toString();
+            }
+        }
+        return null;
+    }
+
+    private static int align4(int value) {
+        return (value + 3) & ~3;
+    }
+
+    private static long unsigned(byte value, long shift) {
+        return ((long) value & 0xFF) << shift;
+    }
+
+    private static long toWord(byte[] buf, int index) {
+        return unsigned(buf[index], 0) | unsigned(buf[index + 1], 8) |
+                unsigned(buf[index + 2], 16) | unsigned(buf[index + 3], 24);
+    }
+
+    private static short getHalfWord(RandomAccessFile file, long offset) throws IOException {
+        byte[] buf = new byte[2];
+        file.seek(offset);
+        file.readFully(buf, 0, 2);
+        return (short) (unsigned(buf[0], 0) | unsigned(buf[1], 8));
+    }
+
+    private static long getWord(RandomAccessFile file, long offset) throws IOException {
+        byte[] buf = new byte[4];
+        file.seek(offset);
+        file.readFully(buf, 0, 4);
+        return toWord(buf, 0);
+    }
+
+    private static long getDoubleWord(RandomAccessFile file, long offset) throws IOException {
+        byte[] buf = new byte[8];
+        file.seek(offset);
+        file.readFully(buf, 0, 8);
+        return unsigned(buf[0], 0) | unsigned(buf[1], 8) |
+                unsigned(buf[2], 16) | unsigned(buf[3], 24) |
+                unsigned(buf[4], 32) | unsigned(buf[5], 40) |
+                unsigned(buf[6], 48) | unsigned(buf[7], 56);
+    }
+}
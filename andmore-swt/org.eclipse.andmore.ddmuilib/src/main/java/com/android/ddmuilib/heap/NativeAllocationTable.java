@@ -0,0 +1,178 @@
+/*
+ * Copyright (C) 2018 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.android.ddmuilib.heap;
+
+import com.android.ddmlib.NativeAllocationInfo;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Struct-of-arrays view of the allocations of a {@link NativeHeapSnapshot}.
+ * <p/>
+ * Row <var>i</var> of the table describes the <var>i</var>th allocation of the list it was
+ * built from, with its size, allocation count and zygote flag held in primitive columns. Stack
+ * traces are interned: each distinct stack trace is stored once, as an array of addresses,
+ * and rows refer to it by its stack id. Comparing two allocations then only compares a few
+ * ints, which is what the diff between two snapshots relies on.
+ */
+final class NativeAllocationTable {
+    /** An interned stack trace, usable as a hash key. */
+    private static final class StackTrace {
+        private final long[] mAddresses;
+        private final int mHash;
+
+        StackTrace(long[] addresses) {
+            mAddresses = addresses;
+            mHash = Arrays.hashCode(addresses);
+        }
+
+        @Override
+        public int hashCode() {
+            return mHash;
+        }
+
+        @Override
+        public boolean equals(Object obj) {
+            if (obj == this) {
+                return true;
+            }
+            if (!(obj instanceof StackTrace)) {
+                return false;
+            }
+            StackTrace other = (StackTrace) obj;
+            return mHash == other.mHash && Arrays.equals(mAddresses, other.mAddresses);
+        }
+    }
+
+    private final List<NativeAllocationInfo> mAllocations;
+    private final int[] mSizes;
+    private final int[] mCounts;
+    private final int[] mStackIds;
+    private final BitSet mZygoteChildren;
+
+    private final List<StackTrace> mStacks = new ArrayList<StackTrace>();
+    private final Map<StackTrace, Integer> mStackIdsByTrace = new HashMap<StackTrace, Integer>();
+
+    private final long mTotalMemory;
+
+    NativeAllocationTable(List<NativeAllocationInfo> allocations) {
+        int count = allocations.size();
+        mAllocations = allocations;
+        mSizes = new int[count];
+        mCounts = new int[count];
+        mStackIds = new int[count];
+        mZygoteChildren = new BitSet(count);
+
+        long total = 0;
+        for (int i = 0; i < count; i++) {
+            NativeAllocationInfo info = allocations.get(i);
+            mSizes[i] = info.getSize();
+            mCounts[i] = info.getAllocationCount();
+            mStackIds[i] = intern(toArray(info.getStackCallAddresses()));
+            if (info.isZygoteChild()) {
+                mZygoteChildren.set(i);
+            }
+            total += (long) mSizes[i] * mCounts[i];
+        }
+        mTotalMemory = total;
+    }
+
+    /** Returns the number of allocations (rows) of the table. */
+    int size() {
+        return mSizes.length;
+    }
+
+    /** Returns the allocation object of a row. */
+    NativeAllocationInfo getAllocation(int row) {
+        return mAllocations.get(row);
+    }
+
+    int getSize(int row) {
+        return mSizes[row];
+    }
+
+    int getAllocationCount(int row) {
+        return mCounts[row];
+    }
+
+    boolean isZygoteChild(int row) {
+        return mZygoteChildren.get(row);
+    }
+
+    /** Returns the id of the stack trace of a row. */
+    int getStackId(int row) {
+        return mStackIds[row];
+    }
+
+    /** Returns the number of distinct stack traces. */
+    int getStackCount() {
+        return mStacks.size();
+    }
+
+    /** Returns the addresses of a stack trace. The array must not be modified. */
+    long[] getStack(int stackId) {
+        return mStacks.get(stackId).mAddresses;
+    }
+
+    /**
+     * Returns the id of a stack trace in this table.
+     * @param addresses the addresses of the stack trace.
+     * @return the stack id, or -1 if no allocation of the table has this stack trace.
+     */
+    int findStackId(long[] addresses) {
+        Integer id = mStackIdsByTrace.get(new StackTrace(addresses));
+        return id != null ? id.intValue() : -1;
+    }
+
+    /** Returns the memory of all the allocations, that is the sum of size * count. */
+    long getTotalMemory() {
+        return mTotalMemory;
+    }
+
+    /** Returns the memory of the allocations of the given rows. */
+    long getTotalMemory(BitSet rows) {
+        long total = 0;
+        for (int row = rows.nextSetBit(0); row >= 0; row = rows.nextSetBit(row + 1)) {
+            total += (long) mSizes[row] * mCounts[row];
+        }
+        return total;
+    }
+
+    private int intern(long[] addresses) {
+        StackTrace trace = new StackTrace(addresses);
+        Integer id = mStackIdsByTrace.get(trace);
+        if (id == null) {
+            id = Integer.valueOf(mStacks.size());
+            mStacks.add(trace);
+            mStackIdsByTrace.put(trace, id);
+        }
+        return id.intValue();
+    }
+
+    private static long[] toArray(List<Long> addresses) {
+        long[] result = new long[addresses.size()];
+        for (int i = 0; i < result.length; i++) {
+            result[i] = addresses.get(i).longValue();
+        }
+        return result;
+    }
+}
@@ -27,16 +27,34 @@ import java.io.LineNumberReader;
 import java.io.Reader;
 import java.lang.reflect.InvocationTargetException;
 import java.util.ArrayList;
+import java.util.HashMap;
 import java.util.InputMismatchException;
 import java.util.List;
-import java.util.Scanner;
+import java.util.Map;
 import java.util.regex.Pattern;
 
+/**
+ * Imports a native heap dump saved by {@link NativeHeapPanel}.
+ * <p/>
+ * The dump is parsed one line at a time. Stack frames and stack traces that appear in several
+ * allocations are shared, so the memory used by the imported snapshot grows with the number
+ * of distinct call sites rather than with the size of the file.
+ */
 public class NativeHeapDataImporter implements IRunnableWithProgress {
+    private static final Pattern WHITESPACE = Pattern.compile("\\s+"); //$NON-NLS-1$
+    private static final String SEPARATOR = "---"; //$NON-NLS-1$
+
     private final LineNumberReader mReader;
     private int mStartLineNumber;
     private int mEndLineNumber;
 
+    /** stack frames seen so far, by their line in the dump */
+    private final Map<String, NativeStackCallInfo> mStackFrames =
+            new HashMap<String, NativeStackCallInfo>();
+    /** stack traces seen so far */
+    private final Map<List<NativeStackCallInfo>, List<NativeStackCallInfo>> mStackTraces =
+            new HashMap<List<NativeStackCallInfo>, List<NativeStackCallInfo>>();
+
     private NativeHeapSnapshot mSnapshot;
 
     public NativeHeapDataImporter(Reader stream) {
@@ -51,32 +69,9 @@ public class NativeHeapDataImporter implements IRunnableWithProgress {
 
         List<NativeAllocationInfo> allocations = new ArrayList<NativeAllocationInfo>();
         try {
-            while (true) {
-                String line;
-                StringBuilder sb = new StringBuilder();
-
-                // read in a sequence of lines corresponding to a single NativeAllocationInfo
-                mStartLineNumber = mReader.getLineNumber();
-                while ((line = mReader.readLine()) != null) {
-                    if (line.trim().length() == 0) {
-                        // each block of allocations end with an empty line
-                        break;
-                    }
-
-                    sb.append(line);
-                    sb.append('\n');
-                }
-                mEndLineNumber = mReader.getLineNumber();
-
-                // parse those lines into a NativeAllocationInfo object
-                String allocationBlock = sb.toString();
-                if (allocationBlock.trim().length() > 0) {
-                    allocations.add(getNativeAllocation(allocationBlock));
-                }
-
-                if (line == null) { // EOF
-                    break;
-                }
+            NativeAllocationInfo info;
+            while ((info = readNativeAllocation()) != null) {
+                allocations.add(info);
             }
         } catch (Exception e) {
             if (e.getMessage() == null) {
@@ -89,6 +84,8 @@ public class NativeHeapDataImporter implements IRunnableWithProgress {
             } catch (IOException e) {
                 // we can ignore this exception
             }
+            mStackFrames.clear();
+            mStackTraces.clear();
             monitor.done();
         }
 
@@ -109,101 +106,146 @@ public class NativeHeapDataImporter implements IRunnableWithProgress {
      *    40069dd8    /lib/libc_malloc_leak.so --- 40069dd8 ---
      * EndStackTrace
      * Note that in the above stack trace, the last two lines are examples where the address
-     * was not resolved.
+     * was not resolved. Each allocation ends with an empty line.
      *
-     * @param block a string of lines corresponding to a single {@code NativeAllocationInfo}
-     * @return parse the input and return the corresponding {@link NativeAllocationInfo}
+     * @return the next {@link NativeAllocationInfo}, or null at the end of the input.
      * @throws InputMismatchException if there are any parse errors
      */
-    private NativeAllocationInfo getNativeAllocation(String block) {
-        Scanner sc = new Scanner(block);
-
-        try {
-            String kw = sc.next();
-            if (!NativeAllocationInfo.ALLOCATIONS_KW.equals(kw)) {
-                throw new InputMismatchException(
-                        expectedKeywordErrorMessage(NativeAllocationInfo.ALLOCATIONS_KW, kw));
-            }
-
-            int allocations = sc.nextInt();
-
-            kw = sc.next();
-            if (!NativeAllocationInfo.SIZE_KW.equals(kw)) {
-                throw new InputMismatchException(
-                        expectedKeywordErrorMessage(NativeAllocationInfo.SIZE_KW, kw));
+    private NativeAllocationInfo readNativeAllocation() throws IOException {
+        // skip the empty lines before the allocation
+        String line;
+        do {
+            mStartLineNumber = mReader.getLineNumber();
+            line = mReader.readLine();
+            if (line == null) {
+                return null;
             }
+        } while (line.trim().length() == 0);
+        mEndLineNumber = mReader.getLineNumber();
+
+        int allocations = parseKeywordValue(line, NativeAllocationInfo.ALLOCATIONS_KW);
+        int size = parseKeywordValue(nextLine(), NativeAllocationInfo.SIZE_KW);
+        int totalSize = parseKeywordValue(nextLine(), NativeAllocationInfo.TOTAL_SIZE_KW);
+        if (totalSize != size * allocations) {
+            throw new InputMismatchException(
+                    genericErrorMessage("Total Size does not match size * # of allocations"));
+        }
 
-            int size = sc.nextInt();
+        NativeAllocationInfo info = new NativeAllocationInfo(size, allocations);
 
-            kw = sc.next();
-            if (!NativeAllocationInfo.TOTAL_SIZE_KW.equals(kw)) {
-                throw new InputMismatchException(
-                        expectedKeywordErrorMessage(NativeAllocationInfo.TOTAL_SIZE_KW, kw));
-            }
+        String kw = getFirstToken(nextLine());
+        if (!NativeAllocationInfo.BEGIN_STACKTRACE_KW.equals(kw)) {
+            throw new InputMismatchException(
+                    expectedKeywordErrorMessage(NativeAllocationInfo.BEGIN_STACKTRACE_KW, kw));
+        }
 
-            int totalSize = sc.nextInt();
-            if (totalSize != size * allocations) {
-                throw new InputMismatchException(
-                        genericErrorMessage("Total Size does not match size * # of allocations"));
+        List<NativeStackCallInfo> stackInfo = new ArrayList<NativeStackCallInfo>();
+        while (true) {
+            line = nextLine();
+            if (stackInfo.size() > 0 &&
+                    NativeAllocationInfo.END_STACKTRACE_KW.equals(getFirstToken(line))) {
+                break;
             }
 
-            NativeAllocationInfo info = new NativeAllocationInfo(size, allocations);
+            NativeStackCallInfo frame = getStackFrame(line.trim());
+            info.addStackCallAddress(frame.getAddress());
+            stackInfo.add(frame);
+        }
 
-            kw = sc.next();
-            if (!NativeAllocationInfo.BEGIN_STACKTRACE_KW.equals(kw)) {
-                throw new InputMismatchException(
-                        expectedKeywordErrorMessage(NativeAllocationInfo.BEGIN_STACKTRACE_KW, kw));
-            }
+        List<NativeStackCallInfo> stackTrace = mStackTraces.get(stackInfo);
+        if (stackTrace == null) {
+            stackTrace = stackInfo;
+            mStackTraces.put(stackTrace, stackTrace);
+        }
+        info.setResolvedStackCall(stackTrace);
 
-            List<NativeStackCallInfo> stackInfo = new ArrayList<NativeStackCallInfo>();
-            Pattern endTracePattern = Pattern.compile(NativeAllocationInfo.END_STACKTRACE_KW);
+        // ignore anything else until the end of the allocation
+        while ((line = mReader.readLine()) != null && line.trim().length() > 0) {
+            mEndLineNumber = mReader.getLineNumber();
+        }
 
+        return info;
+    }
 
-            while (true) {
-                long address = sc.nextLong(16);
-                info.addStackCallAddress(address);
+    /** Reads the next line of the current allocation. */
+    private String nextLine() throws IOException {
+        String line = mReader.readLine();
+        mEndLineNumber = mReader.getLineNumber();
+        if (line == null || line.trim().length() == 0) {
+            throw new InputMismatchException(genericErrorMessage("Incomplete allocation"));
+        }
+        return line;
+    }
 
-                String library = sc.next();
-                sc.next();  // ignore "---"
-                String method = scanTillSeparator(sc, "---");
+    /** Parses a line of the form "keyword value". */
+    private int parseKeywordValue(String line, String keyword) {
+        String[] tokens = WHITESPACE.split(line.trim());
+        if (!keyword.equals(tokens[0])) {
+            throw new InputMismatchException(expectedKeywordErrorMessage(keyword, tokens[0]));
+        }
+        if (tokens.length < 2) {
+            throw new InputMismatchException(
+                    genericErrorMessage("Missing value for '" + keyword + "'"));
+        }
+        try {
+            return Integer.parseInt(tokens[1]);
+        } catch (NumberFormatException e) {
+            throw new InputMismatchException(
+                    genericErrorMessage("Invalid value for '" + keyword + "'"));
+        }
+    }
 
-                String filename = "";
-                if (!isUnresolved(method, address)) {
-                    filename = sc.next();
-                }
+    private String getFirstToken(String line) {
+        return WHITESPACE.split(line.trim(), 2)[0];
+    }
 
-                stackInfo.add(new NativeStackCallInfo(address, library, method, filename));
+    /**
+     * Returns the stack frame described by a line of the form
+     * "address library --- method --- file", sharing the frames of identical lines.
+     */
+    private NativeStackCallInfo getStackFrame(String line) {
+        NativeStackCallInfo frame = mStackFrames.get(line);
+        if (frame != null) {
+            return frame;
+        }
 
-                if (sc.hasNext(endTracePattern)) {
-                    break;
-                }
-            }
+        String[] tokens = WHITESPACE.split(line);
+        if (tokens.length < 4 || !SEPARATOR.equals(tokens[2])) {
+            throw new InputMismatchException(genericErrorMessage("Invalid stack frame"));
+        }
 
-            info.setResolvedStackCall(stackInfo);
-            return info;
-        } finally {
-            sc.close();
+        long address;
+        try {
+            address = Long.parseLong(tokens[0], 16);
+        } catch (NumberFormatException e) {
+            throw new InputMismatchException(genericErrorMessage("Invalid stack frame address"));
         }
-    }
+        String library = tokens[1];
 
-    private String scanTillSeparator(Scanner sc, String separator) {
         StringBuilder sb = new StringBuilder();
-
-        while (true) {
-            String token = sc.next();
-            if (token.equals(separator)) {
-                break;
-            }
-
-            sb.append(token);
-
+        int index = 3;
+        while (index < tokens.length && !SEPARATOR.equals(tokens[index])) {
             // We do not know the exact delimiter that was skipped over, but we know
             // that there was atleast 1 whitespace. Add a single whitespace character
             // to account for this.
-            sb.append(' ');
+            sb.append(tokens[index++]).append(' ');
+        }
+        if (index == tokens.length) {
+            throw new InputMismatchException(genericErrorMessage("Invalid stack frame"));
+        }
+        String method = sb.toString().trim();
+
+        String filename = "";
+        if (!isUnresolved(method, address)) {
+            if (index + 1 == tokens.length) {
+                throw new InputMismatchException(genericErrorMessage("Missing source file"));
+            }
+            filename = tokens[index + 1];
         }
 
-        return sb.toString().trim();
+        frame = new NativeStackCallInfo(address, library, method, filename);
+        mStackFrames.put(line, frame);
+        return frame;
     }
 
     private boolean isUnresolved(String method, long address) {
@@ -17,74 +17,144 @@
 package com.android.ddmuilib.heap;
 
 import com.android.ddmlib.NativeAllocationInfo;
-import com.google.common.collect.Sets;
 
 import java.util.ArrayList;
-import java.util.HashSet;
+import java.util.BitSet;
+import java.util.HashMap;
 import java.util.List;
-import java.util.Set;
+import java.util.Map;
 
 /**
  * Models a heap snapshot that is the difference between two snapshots.
+ * <p/>
+ * The difference is computed as a hash join of the {@link NativeAllocationTable}s of the
+ * two snapshots on (stack trace, size), so it is linear in the number of allocations.
  */
 public class NativeHeapDiffSnapshot extends NativeHeapSnapshot {
     private long mCommonAllocationsTotalMemory;
 
+    /** Result of the comparison of two snapshots. */
+    private static final class Diff {
+        final List<NativeAllocationInfo> mNewAllocations = new ArrayList<NativeAllocationInfo>();
+        long mCommonMemory;
+    }
+
     public NativeHeapDiffSnapshot(NativeHeapSnapshot newSnapshot, NativeHeapSnapshot oldSnapshot) {
+        this(computeDiff(newSnapshot.getAllocationTable(), oldSnapshot.getAllocationTable()));
+    }
+
+    private NativeHeapDiffSnapshot(Diff diff) {
         // The diff snapshots behaves like a snapshot that only contains the new allocations
         // not present in the old snapshot
-        super(getNewAllocations(newSnapshot, oldSnapshot));
-
-        Set<NativeAllocationInfo> commonAllocations =
-                new HashSet<NativeAllocationInfo>(oldSnapshot.getAllocations());
-        commonAllocations.retainAll(newSnapshot.getAllocations());
+        super(diff.mNewAllocations);
 
         // Memory common between the old and new snapshots
-        mCommonAllocationsTotalMemory = getTotalMemory(commonAllocations);
+        mCommonAllocationsTotalMemory = diff.mCommonMemory;
     }
 
-    private static List<NativeAllocationInfo> getNewAllocations(NativeHeapSnapshot newSnapshot,
-            NativeHeapSnapshot oldSnapshot) {
-        Set<NativeAllocationInfo> allocations =
-                new HashSet<NativeAllocationInfo>(newSnapshot.getAllocations());
+    private static Diff computeDiff(NativeAllocationTable cur, NativeAllocationTable prev) {
+        Diff diff = new Diff();
 
-        // compute new allocations
-        allocations.removeAll(oldSnapshot.getAllocations());
+        // map the stack ids of the old snapshot to those of the new one. Old stack traces
+        // that do not appear in the new snapshot cannot match any of its allocations.
+        int[] prevToCurStack = new int[prev.getStackCount()];
+        for (int id = 0; id < prevToCurStack.length; id++) {
+            prevToCurStack[id] = cur.findStackId(prev.getStack(id));
+        }
 
+        // build side of the join: the old allocations chained by (stack, size), in order.
+        Map<Long, Integer> prevHeads = new HashMap<Long, Integer>();
+        int[] prevNext = new int[prev.size()];
+        for (int row = prev.size() - 1; row >= 0; row--) {
+            int stackId = prevToCurStack[prev.getStackId(row)];
+            if (stackId >= 0) {
+                Integer head = prevHeads.put(getKey(stackId, prev.getSize(row)), row);
+                prevNext[row] = head != null ? head.intValue() : -1;
+            }
+        }
+
+        // first pass: find the old allocations that are still present unchanged in the new
+        // snapshot. Identical allocations are only counted once.
+        BitSet prevInCur = new BitSet(prev.size());
+        BitSet curInPrev = new BitSet(cur.size());
+        for (int row = 0; row < cur.size(); row++) {
+            int count = cur.getAllocationCount(row);
+            boolean first = true;
+            for (int p = getHead(prevHeads, cur.getStackId(row), cur.getSize(row)); p >= 0;
+                    p = prevNext[p]) {
+                if (prev.getAllocationCount(p) != count) {
+                    continue;
+                }
+                curInPrev.set(row);
+                if (!prevInCur.get(p)) {
+                    prevInCur.set(p);
+                    if (first) {
+                        diff.mCommonMemory += (long) prev.getSize(p) * count;
+                    }
+                }
+                first = false;
+            }
+        }
+
+        // second pass: the new allocations.
         // Account for allocations with the same stack trace that were
         // present in the older set of allocations.
         // e.g. A particular stack trace might have had 3 allocations in snapshot 1,
         // and 2 more in snapshot 2. We only want to show the new allocations (just the 2 from
         // snapshot 2). However, the way the allocations are stored, in snapshot 2, we'll see
         // 5 allocations at the stack trace. We need to subtract out the 3 from the first allocation
-        Set<NativeAllocationInfo> onlyInPrevious =
-                new HashSet<NativeAllocationInfo>(oldSnapshot.getAllocations());
-        Set<NativeAllocationInfo> newAllocations =
-                Sets.newHashSetWithExpectedSize(allocations.size());
-
-        onlyInPrevious.removeAll(newSnapshot.getAllocations());
-        for (NativeAllocationInfo current : allocations) {
-            NativeAllocationInfo old = getOldAllocationWithSameStack(current, onlyInPrevious);
-            if (old == null) {
-                newAllocations.add(current);
-            } else if (current.getAllocationCount() > old.getAllocationCount()) {
-                newAllocations.add(new NativeDiffAllocationInfo(current, old));
+        Map<Long, Integer> curHeads = new HashMap<Long, Integer>();
+        int[] curNext = new int[cur.size()];
+        for (int row = 0; row < cur.size(); row++) {
+            if (curInPrev.get(row)) {
+                continue;
             }
-        }
 
-        return new ArrayList<NativeAllocationInfo>(newAllocations);
-    }
+            int stackId = cur.getStackId(row);
+            int size = cur.getSize(row);
+            int count = cur.getAllocationCount(row);
+            Long key = getKey(stackId, size);
+
+            // skip duplicates of an allocation already reported
+            Integer curHead = curHeads.get(key);
+            boolean duplicate = false;
+            for (int c = curHead != null ? curHead.intValue() : -1; c >= 0; c = curNext[c]) {
+                if (cur.getAllocationCount(c) == count) {
+                    duplicate = true;
+                    break;
+                }
+            }
+            if (duplicate) {
+                continue;
+            }
+            curNext[row] = curHead != null ? curHead.intValue() : -1;
+            curHeads.put(key, row);
+
+            // the first old allocation with the same stack and size that is gone from the
+            // new snapshot.
+            int old = getHead(prevHeads, stackId, size);
+            while (old >= 0 && prevInCur.get(old)) {
+                old = prevNext[old];
+            }
 
-    private static NativeAllocationInfo getOldAllocationWithSameStack(
-            NativeAllocationInfo info,
-            Set<NativeAllocationInfo> allocations) {
-        for (NativeAllocationInfo a : allocations) {
-            if (info.getSize() == a.getSize() && info.stackEquals(a)) {
-                return a;
+            if (old < 0) {
+                diff.mNewAllocations.add(cur.getAllocation(row));
+            } else if (count > prev.getAllocationCount(old)) {
+                diff.mNewAllocations.add(new NativeDiffAllocationInfo(cur.getAllocation(row),
+                        prev.getAllocation(old)));
             }
         }
 
-        return null;
+        return diff;
+    }
+
+    private static Long getKey(int stackId, int size) {
+        return Long.valueOf(((long) stackId << 32) | (size & 0xFFFFFFFFL));
+    }
+
+    private static int getHead(Map<Long, Integer> heads, int stackId, int size) {
+        Integer head = heads.get(getKey(stackId, size));
+        return head != null ? head.intValue() : -1;
     }
 
     @Override
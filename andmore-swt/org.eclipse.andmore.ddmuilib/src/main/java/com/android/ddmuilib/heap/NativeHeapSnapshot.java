@@ -38,6 +38,8 @@ public class NativeHeapSnapshot {
     private List<NativeAllocationInfo> mNonZygoteHeapAllocations;
     private List<NativeLibraryAllocationInfo> mNonZygoteHeapAllocationsByLibrary;
 
+    private NativeAllocationTable mAllocationTable;
+
     private long mTotalSize;
 
     public NativeHeapSnapshot(List<NativeAllocationInfo> heapAllocations) {
@@ -51,7 +53,7 @@ public class NativeHeapSnapshot {
         long total = 0;
 
         for (NativeAllocationInfo info : heapSnapshot) {
-            total += info.getAllocationCount() * info.getSize();
+            total += (long) info.getAllocationCount() * info.getSize();
         }
 
         return total;
@@ -61,6 +63,17 @@ public class NativeHeapSnapshot {
         return mHeapAllocations;
     }
 
+    /**
+     * Returns the columnar representation of the allocations, used to compare snapshots.
+     */
+    NativeAllocationTable getAllocationTable() {
+        if (mAllocationTable == null) {
+            mAllocationTable = new NativeAllocationTable(mHeapAllocations);
+        }
+
+        return mAllocationTable;
+    }
+
     public List<NativeLibraryAllocationInfo> getAllocationsByLibrary() {
         if (mHeapAllocationsByLibrary != null) {
             return mHeapAllocationsByLibrary;
@@ -0,0 +1,257 @@
+/*
+ * Copyright (C) 2018 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.android.ddmuilib.heap;
+
+import com.android.annotations.NonNull;
+import com.android.annotations.Nullable;
+import com.android.ddmlib.Log;
+
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStreamWriter;
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Persistent cache of addr2line results.
+ * <p/>
+ * Results are keyed by library and by address relative to the library file (the value
+ * given to addr2line), so they remain valid across processes, snapshots and sessions. A
+ * library is identified by its GNU build-id when it has one, and otherwise by a SHA-1 of
+ * its path, size and modification time. Each library is stored in its own file in the
+ * cache folder, with one <code>offset\tmethod\tsource</code> line per resolved address.
+ * {@link #prune()} deletes the files of the libraries which were not used for a while, and
+ * the least recently used ones when the folder grows too large.
+ */
+final class NativeSymbolCache {
+    private static final String LOG_TAG = "ddm-nativeheap"; //$NON-NLS-1$
+    private static final String CACHE_FILE_EXT = ".sym"; //$NON-NLS-1$
+    private static final char SEPARATOR = '\t';
+
+    /** Cache files not used for that long are deleted by {@link #prune()}. */
+    static final long MAX_UNUSED_AGE_MS = TimeUnit.DAYS.toMillis(90);
+
+    /** Maximum total size of the cache files kept by {@link #prune()}. */
+    static final long MAX_CACHE_BYTES = 64 * 1024 * 1024;
+
+    /** An addr2line result: the method name and the source file:line. */
+    static final class Symbol {
+        final String method;
+        final String source;
+
+        Symbol(String method, String source) {
+            this.method = method;
+            this.source = source;
+        }
+    }
+
+    private final File mCacheFolder;
+
+    /** library key -> (offset -> symbol), for the libraries loaded so far. */
+    private final Map<String, Map<Long, Symbol>> mLibraries =
+            new ConcurrentHashMap<String, Map<Long, Symbol>>();
+
+    /**
+     * @param cacheFolder the folder holding the cache files, or null for an in-memory only
+     * cache.
+     */
+    NativeSymbolCache(@Nullable File cacheFolder) {
+        mCacheFolder = cacheFolder;
+    }
+
+    /**
+     * Returns the key identifying a library file on disk.
+     * @param libPath the path to the local library file.
+     * @param elf the ELF information read from the file.
+     */
+    @NonNull
+    static String getLibraryKey(@NonNull String libPath, @NonNull ElfFileInfo elf) {
+        String buildId = elf.getBuildId();
+        if (buildId != null) {
+            return buildId;
+        }
+        File f = new File(libPath);
+        String id = f.getAbsolutePath() + ':' + f.length() + ':' + f.lastModified();
+        return f.getName() + '-' + sha1(id);
+    }
+
+    private static String sha1(String s) {
+        try {
+            byte[] digest = MessageDigest.getInstance("SHA-1") //$NON-NLS-1$
+                    .digest(s.getBytes(StandardCharsets.UTF_8));
+            StringBuilder sb = new StringBuilder(digest.length * 2);
+            for (byte b : digest) {
+                sb.append(Character.forDigit((b >> 4) & 0xF, 16));
+                sb.append(Character.forDigit(b & 0xF, 16));
+            }
+            return sb.toString();
+        } catch (NoSuchAlgorithmException e) {
+            // every Java platform supports SHA-1.
+            throw new IllegalStateException(e);
+        }
+    }
+
+    /**
+     * Returns the cached symbols of a library, loading them from disk the first time. The
+     * returned map must only be read.
+     */
+    @NonNull
+    Map<Long, Symbol> getSymbols(@NonNull String libraryKey) {
+        Map<Long, Symbol> symbols = mLibraries.get(libraryKey);
+        if (symbols == null) {
+            symbols = load(libraryKey);
+            Map<Long, Symbol> previous = mLibraries.putIfAbsent(libraryKey, symbols);
+            if (previous != null) {
+                symbols = previous;
+            }
+        }
+        return symbols;
+    }
+
+    /**
+     * Adds newly resolved symbols of a library to the cache, and appends them to its file.
+     */
+    void addSymbols(@NonNull String libraryKey, @NonNull Map<Long, Symbol> newSymbols) {
+        if (newSymbols.isEmpty()) {
+            return;
+        }
+
+        // the maps handed out by getSymbols are never modified: replace the map of the
+        // library by a copy, atomically so that concurrent additions are not lost.
+        mLibraries.compute(libraryKey, (key, symbols) -> {
+            Map<Long, Symbol> copy = new HashMap<Long, Symbol>(
+                    symbols != null ? symbols : load(key));
+            copy.putAll(newSymbols);
+            return copy;
+        });
+
+        if (mCacheFolder == null) {
+            return;
+        }
+        if (!mCacheFolder.isDirectory() && !mCacheFolder.mkdirs()) {
+            return;
+        }
+
+        // several tasks can resolve the same library at once, e.g. for the segments of a
+        // library mapped more than once: serialize the appends so that they never
+        // interleave.
+        synchronized (this) {
+            try (BufferedWriter writer = new BufferedWriter(new OutputStreamWriter(
+                    new FileOutputStream(getCacheFile(libraryKey), true /*append*/),
+                    StandardCharsets.UTF_8))) {
+                for (Map.Entry<Long, Symbol> entry : newSymbols.entrySet()) {
+                    Symbol s = entry.getValue();
+                    writer.write(Long.toHexString(entry.getKey()));
+                    writer.write(SEPARATOR);
+                    writer.write(s.method);
+                    writer.write(SEPARATOR);
+                    writer.write(s.source);
+                    writer.newLine();
+                }
+            } catch (IOException e) {
+                Log.w(LOG_TAG, "Unable to write symbol cache: " + e.getMessage()); //$NON-NLS-1$
+            }
+        }
+    }
+
+    /**
+     * Deletes the cache files which were not used for {@link #MAX_UNUSED_AGE_MS}, then the
+     * least recently used ones until the cache holds at most {@link #MAX_CACHE_BYTES}.
+     */
+    void prune() {
+        prune(System.currentTimeMillis() - MAX_UNUSED_AGE_MS, MAX_CACHE_BYTES);
+    }
+
+    void prune(long oldestUse, long maxBytes) {
+        if (mCacheFolder == null) {
+            return;
+        }
+        File[] files = mCacheFolder.listFiles(
+                (dir, name) -> name.endsWith(CACHE_FILE_EXT));
+        if (files == null) {
+            return;
+        }
+
+        // most recently used first; a cache file is touched whenever it is loaded.
+        Map<File, Long> lastUse = new HashMap<File, Long>();
+        for (File f : files) {
+            lastUse.put(f, f.lastModified());
+        }
+        Arrays.sort(files, (f1, f2) -> Long.compare(lastUse.get(f2), lastUse.get(f1)));
+
+        long total = 0;
+        for (File f : files) {
+            total += f.length();
+            if (lastUse.get(f) < oldestUse || total > maxBytes) {
+                if (!f.delete()) {
+                    Log.w(LOG_TAG, "Unable to delete symbol cache " + f); //$NON-NLS-1$
+                }
+            }
+        }
+    }
+
+    private Map<Long, Symbol> load(String libraryKey) {
+        Map<Long, Symbol> symbols = new HashMap<Long, Symbol>();
+        if (mCacheFolder == null) {
+            return symbols;
+        }
+        File f = getCacheFile(libraryKey);
+        if (!f.isFile()) {
+            return symbols;
+        }
+        // record the use of the file for prune().
+        f.setLastModified(System.currentTimeMillis());
+
+        try (BufferedReader reader = new BufferedReader(new InputStreamReader(
+                new FileInputStream(f), StandardCharsets.UTF_8))) {
+            String line;
+            while ((line = reader.readLine()) != null) {
+                int first = line.indexOf(SEPARATOR);
+                int second = first < 0 ? -1 : line.indexOf(SEPARATOR, first + 1);
+                if (second < 0) {
+                    // truncated line, e.g. from an interrupted write.
+                    continue;
+                }
+                try {
+                    long offset = Long.parseUnsignedLong(line.substring(0, first), 16);
+                    symbols.put(offset, new Symbol(line.substring(first + 1, second),
+                            line.substring(second + 1)));
+                } catch (NumberFormatException e) {
+                    // ignore the corrupted line
+                }
+            }
+        } catch (IOException e) {
+            Log.w(LOG_TAG, "Unable to read symbol cache: " + e.getMessage()); //$NON-NLS-1$
+        }
+        return symbols;
+    }
+
+    private File getCacheFile(String libraryKey) {
+        return new File(mCacheFolder, libraryKey + CACHE_FILE_EXT);
+    }
+}
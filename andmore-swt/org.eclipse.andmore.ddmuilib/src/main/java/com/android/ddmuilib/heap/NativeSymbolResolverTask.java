@@ -29,14 +29,13 @@ import org.eclipse.jface.operation.IRunnableWithProgress;
 import java.io.BufferedReader;
 import java.io.BufferedWriter;
 import java.io.File;
-import java.io.FileNotFoundException;
 import java.io.IOException;
 import java.io.InputStreamReader;
-import java.io.RandomAccessFile;
 import java.io.OutputStreamWriter;
 import java.lang.reflect.InvocationTargetException;
 import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.Collections;
 import java.util.HashMap;
 import java.util.HashSet;
 import java.util.List;
@@ -44,23 +43,38 @@ import java.util.Map;
 import java.util.Set;
 import java.util.SortedSet;
 import java.util.TreeSet;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
 
 /**
  * A symbol resolver task that can resolve a set of addresses to their corresponding
  * source method name + file name:line number.
  *
  * It first identifies the library that contains the address, and then runs addr2line on
- * the library to get the symbol name + source location.
+ * the library to get the symbol name + source location. All the addresses of a library are
+ * sent to a single addr2line process in one batch, and libraries are resolved in parallel,
+ * with at most one addr2line process per available processor.
+ *
+ * Results are stored in a {@link NativeSymbolCache} shared by all tasks and persisted in
+ * {@link DdmUiPreferences#getSymbolCacheDirectory()}, so an address of a given library build
+ * is only ever given to addr2line once. Only local ELF files are passed to addr2line.
  */
 public class NativeSymbolResolverTask implements IRunnableWithProgress {
     private static final String ADDR2LINE;
     private static final String ADDR2LINE64;
     private static final String DEFAULT_SYMBOLS_FOLDER;
 
-    private static final int ELF_CLASS32 = 1;
-    private static final int ELF_CLASS64 = 2;
-    private static final int ELF_DATA2LSB = 1;
-    private static final int ELF_PT_LOAD = 1;
+    /** Maximum number of addr2line processes running at the same time. */
+    private static final int MAX_PROCESSES = Runtime.getRuntime().availableProcessors();
+
+    /** Symbols cache shared by all the tasks. */
+    private static NativeSymbolCache sSymbolCache;
 
     static {
         String addr2lineEnv = System.getenv("ANDROID_ADDR2LINE");
@@ -93,11 +107,18 @@ public class NativeSymbolResolverTask implements IRunnableWithProgress {
 
     /** List of libraries that were not located on disk. */
     private Set<String> mNotFoundLibraries;
-    private String mAddr2LineErrorMessage = null;
+    private volatile String mAddr2LineErrorMessage = null;
 
     /** The addr2line command to use to resolve addresses. */
     private String mAddr2LineCmd;
 
+    /** The addr2line processes currently running, destroyed if the task is cancelled. */
+    private final Set<Process> mProcesses =
+            Collections.newSetFromMap(new ConcurrentHashMap<Process, Boolean>());
+
+    /** Set when the resolution is cancelled, to stop the library tasks still running. */
+    private volatile boolean mCancelled;
+
     public NativeSymbolResolverTask(List<NativeAllocationInfo> callSites,
                 List<NativeLibraryMapInfo> mappedLibraries,
                 @NonNull String symbolSearchPath,
@@ -108,12 +129,13 @@ public class NativeSymbolResolverTask implements IRunnableWithProgress {
         mSymbolSearchFolders.add(DEFAULT_SYMBOLS_FOLDER);
         mSymbolSearchFolders.addAll(Arrays.asList(symbolSearchPath.split(":")));
 
+        // the following are filled by the library resolution tasks in parallel.
         mUnresolvedAddresses = new TreeSet<Long>();
-        mUnresolvableAddresses = new HashSet<Long>();
+        mUnresolvableAddresses = Collections.newSetFromMap(new ConcurrentHashMap<Long, Boolean>());
         mUnresolvedAddressesPerLibrary = new HashMap<NativeLibraryMapInfo, Set<Long>>();
         mUnmappedAddresses = new HashSet<Long>();
-        mAddressResolution = new HashMap<Long, NativeStackCallInfo>();
-        mNotFoundLibraries = new HashSet<String>();
+        mAddressResolution = new ConcurrentHashMap<Long, NativeStackCallInfo>();
+        mNotFoundLibraries = Collections.newSetFromMap(new ConcurrentHashMap<String, Boolean>());
 
         if (abi == null || abi.startsWith("32")) {
             mAddr2LineCmd = ADDR2LINE;
@@ -165,138 +187,133 @@ public class NativeSymbolResolverTask implements IRunnableWithProgress {
     }
 
     private void resolveLibraryAddresses(IProgressMonitor monitor) throws InterruptedException {
-        for (NativeLibraryMapInfo lib : mUnresolvedAddressesPerLibrary.keySet()) {
-            String libPath = getLibraryLocation(lib);
-            Set<Long> addressesToResolve = mUnresolvedAddressesPerLibrary.get(lib);
+        if (mUnresolvedAddressesPerLibrary.isEmpty()) {
+            return;
+        }
 
-            if (libPath == null) {
-                mNotFoundLibraries.add(lib.getLibraryName());
-                markAddressesNotResolvable(addressesToResolve, lib);
-            } else {
-                monitor.subTask(String.format("Resolving addresses mapped to %s.", libPath));
-                resolveAddresses(lib, libPath, addressesToResolve);
-            }
+        final NativeSymbolCache cache = getSymbolCache();
+        int processCount = Math.max(1,
+                Math.min(MAX_PROCESSES, mUnresolvedAddressesPerLibrary.size()));
+        ExecutorService executor = Executors.newFixedThreadPool(processCount,
+                new ThreadFactory() {
+                    @Override
+                    public Thread newThread(Runnable r) {
+                        Thread t = new Thread(r, "Native Symbol Resolver"); //$NON-NLS-1$
+                        t.setDaemon(true);
+                        return t;
+                    }
+                });
 
-            checkCancellation(monitor);
+        List<Future<?>> futures = new ArrayList<Future<?>>();
+        boolean completed = false;
+        try {
+            for (final Map.Entry<NativeLibraryMapInfo, Set<Long>> entry :
+                    mUnresolvedAddressesPerLibrary.entrySet()) {
+                futures.add(executor.submit(new Runnable() {
+                    @Override
+                    public void run() {
+                        resolveLibrary(entry.getKey(), entry.getValue(), cache);
+                    }
+                }));
+            }
+            executor.shutdown();
+
+            int done = 0;
+            for (Future<?> future : futures) {
+                while (true) {
+                    checkCancellation(monitor);
+                    try {
+                        future.get(100, TimeUnit.MILLISECONDS);
+                        break;
+                    } catch (TimeoutException e) {
+                        // check for cancellation again
+                    } catch (ExecutionException e) {
+                        // the library task failed: its addresses are left unresolved.
+                        break;
+                    }
+                }
+                done++;
+                monitor.subTask(String.format("Resolved addresses of %1$d of %2$d libraries.",
+                        done, futures.size()));
+            }
+            completed = true;
+        } finally {
+            if (!completed) {
+                // interrupting the library tasks doesn't stop a blocking read from addr2line:
+                // kill the processes still running, and keep the tasks from starting others.
+                mCancelled = true;
+                for (Process process : mProcesses) {
+                    process.destroy();
+                }
+            }
+            executor.shutdownNow();
         }
     }
 
-    private long unsigned(byte value, long shift) {
-        return ((long) value & 0xFF) << shift;
-    }
+    /**
+     * Resolves the addresses mapping to one library, using the cached symbols where
+     * possible and a single addr2line process for the others. Called in parallel for
+     * different libraries.
+     */
+    private void resolveLibrary(NativeLibraryMapInfo lib, Set<Long> addressesToResolve,
+            NativeSymbolCache cache) {
+        String libPath = getLibraryLocation(lib);
+        if (libPath == null) {
+            mNotFoundLibraries.add(lib.getLibraryName());
+            markAddressesNotResolvable(addressesToResolve, lib);
+            return;
+        }
 
-    private short elfGetHalfWord(RandomAccessFile file, long offset) throws IOException {
-        byte[] buf = new byte[2];
-        file.seek(offset);
-        file.readFully(buf, 0, 2);
-        return (short) (unsigned(buf[0], 0) | unsigned(buf[1], 8));
-    }
+        // never hand anything but a local ELF file to addr2line.
+        ElfFileInfo elf = ElfFileInfo.read(libPath);
+        if (elf == null) {
+            mNotFoundLibraries.add(lib.getLibraryName());
+            markAddressesNotResolvable(addressesToResolve, lib);
+            return;
+        }
 
-    private int elfGetWord(RandomAccessFile file, long offset) throws IOException {
-        byte[] buf = new byte[4];
-        file.seek(offset);
-        file.readFully(buf, 0, 4);
-        return (int) (unsigned(buf[0], 0) | unsigned(buf[1], 8) |
-                unsigned(buf[2], 16) | unsigned(buf[3], 24));
-    }
+        long libStartAddress = isExecutable(lib) ? 0 : lib.getStartAddress();
+        long libLoadBase = isExecutable(lib) ? 0 : elf.getLoadBase();
 
-    private long elfGetDoubleWord(RandomAccessFile file, long offset) throws IOException {
-        byte[] buf = new byte[8];
-        file.seek(offset);
-        file.readFully(buf, 0, 8);
-        return unsigned(buf[0], 0) | unsigned(buf[1], 8) |
-                unsigned(buf[2], 16) | unsigned(buf[3], 24) |
-                unsigned(buf[4], 32) | unsigned(buf[5], 40) |
-                unsigned(buf[6], 48) | unsigned(buf[7], 56);
-    }
+        String libraryKey = NativeSymbolCache.getLibraryKey(libPath, elf);
+        Map<Long, NativeSymbolCache.Symbol> cached = cache.getSymbols(libraryKey);
 
-    private long getLoadBase(String libPath) {
-        RandomAccessFile file;
-        try {
-            file = new RandomAccessFile(libPath, "r");
-        } catch (FileNotFoundException e) {
-            return 0;
-        }
-        byte[] buffer = new byte[8];
-        try {
-            file.readFully(buffer, 0, 6);
-        } catch (IOException e) {
-            return 0;
-        }
-        if (buffer[0] != 0x7f || buffer[1] != 'E' || buffer[2] != 'L' ||
-                buffer[3] != 'F' || buffer[5] != ELF_DATA2LSB) {
-            return 0;
+        // addresses, and their offsets in the library, that are not in the cache yet.
+        List<Long> addresses = new ArrayList<Long>(addressesToResolve.size());
+        List<Long> offsets = new ArrayList<Long>(addressesToResolve.size());
+        for (Long addr : addressesToResolve) {
+            long offset = addr - libStartAddress + libLoadBase;
+            NativeSymbolCache.Symbol symbol = cached.get(offset);
+            if (symbol != null) {
+                mAddressResolution.put(addr, new NativeStackCallInfo(addr,
+                        lib.getLibraryName(), symbol.method, symbol.source));
+            } else {
+                addresses.add(addr);
+                offsets.add(offset);
+            }
         }
 
-        boolean elf32;
-        long elfPhdrSize;
-        long ePhnumOffset;
-        long ePhoffOffset;
-        long pTypeOffset;
-        long pOffsetOffset;
-        long pVaddrOffset;
-        if (buffer[4] == ELF_CLASS32) {
-            // ELFCLASS32
-            elf32 = true;
-            elfPhdrSize = 32;
-
-            ePhnumOffset = 44;
-            ePhoffOffset = 28;
-            pTypeOffset = 0;
-            pOffsetOffset = 4;
-            pVaddrOffset = 8;
-        } else if (buffer[4] == ELF_CLASS64) {
-            // ELFCLASS64
-            elf32 = false;
-            elfPhdrSize = 56;
-
-            ePhnumOffset = 56;
-            ePhoffOffset = 32;
-            pTypeOffset = 0;
-            pOffsetOffset = 8;
-            pVaddrOffset = 16;
-        } else {
-            // Unknown class type.
-            return 0;
+        if (addresses.isEmpty()) {
+            return;
         }
 
-        try {
-            int ePhnum = elfGetHalfWord(file, ePhnumOffset);
-            long offset;
-            if (elf32) {
-                offset = elfGetWord(file, ePhoffOffset);
-            } else {
-                offset = elfGetDoubleWord(file, ePhoffOffset);
-            }
-            for (int i = 0; i < ePhnum; i++) {
-                int pType = elfGetWord(file, offset + pTypeOffset);
-
-                long pOffset;
-                if (elf32) {
-                    pOffset = elfGetWord(file, offset + pOffsetOffset);
-                } else {
-                    pOffset = elfGetDoubleWord(file, offset + pOffsetOffset);
-                }
-                // Assume all offsets are zero.
-                if (pType == ELF_PT_LOAD && pOffset == 0) {
-                    long pVaddr;
-                    if (elf32) {
-                        pVaddr = elfGetWord(file, offset + pVaddrOffset);
-                    } else {
-                        pVaddr = elfGetDoubleWord(file, offset + pVaddrOffset);
-                    }
-                    return pVaddr;
-                }
-                offset += elfPhdrSize;
-            }
-        } catch (IOException e) {
-            return 0;
+        Map<Long, NativeSymbolCache.Symbol> resolved = resolveAddresses(lib, libPath,
+                addresses, offsets);
+        if (!resolved.isEmpty()) {
+            cache.addSymbols(libraryKey, resolved);
         }
-        return 0;
     }
 
-    private void resolveAddresses(NativeLibraryMapInfo lib, String libPath,
-            Set<Long> addressesToResolve) {
+    /**
+     * Runs addr2line once over a batch of addresses.
+     * @return the symbols that were fully resolved, keyed by offset. Addresses for which
+     *         addr2line found no method or source are left out, so that they are given to
+     *         addr2line again once better symbols of the same build are available.
+     */
+    private Map<Long, NativeSymbolCache.Symbol> resolveAddresses(NativeLibraryMapInfo lib,
+            String libPath, List<Long> addresses, final List<Long> offsets) {
+        Map<Long, NativeSymbolCache.Symbol> resolved = new HashMap<Long, NativeSymbolCache.Symbol>();
+
         Process addr2line;
         try {
             addr2line = new ProcessBuilder(mAddr2LineCmd,
@@ -307,50 +324,102 @@ public class NativeSymbolResolverTask implements IRunnableWithProgress {
             // Since the library path is known to be valid, the only reason for an exception
             // is that addr2line was not found. We just save the message in this case.
             mAddr2LineErrorMessage = e.getMessage();
-            markAddressesNotResolvable(addressesToResolve, lib);
-            return;
+            markAddressesNotResolvable(addresses, lib);
+            return resolved;
+        }
+
+        mProcesses.add(addr2line);
+        if (mCancelled) {
+            // the task was cancelled before the process could be tracked.
+            addr2line.destroy();
         }
 
         BufferedReader resultReader = new BufferedReader(new InputStreamReader(
                                                                     addr2line.getInputStream()));
-        BufferedWriter addressWriter = new BufferedWriter(new OutputStreamWriter(
+        final BufferedWriter addressWriter = new BufferedWriter(new OutputStreamWriter(
                                                                     addr2line.getOutputStream()));
 
-        long libStartAddress = isExecutable(lib) ? 0 : lib.getStartAddress();
-        long libLoadBase = isExecutable(lib) ? 0 : getLoadBase(libPath);
+        // Write all the addresses from a separate thread while this one reads the results,
+        // so that neither side blocks on a full pipe.
+        Thread writer = new Thread(new Runnable() {
+            @Override
+            public void run() {
+                try {
+                    for (Long offset : offsets) {
+                        addressWriter.write(Long.toHexString(offset));
+                        addressWriter.newLine();
+                    }
+                } catch (IOException e) {
+                    // the reader will find out the output is short.
+                } finally {
+                    try {
+                        addressWriter.close();
+                    } catch (IOException e) {
+                        // we can ignore these exceptions
+                    }
+                }
+            }
+        }, "addr2line input for " + lib.getLibraryName()); //$NON-NLS-1$
+        writer.setDaemon(true);
+        writer.start();
+
+        int i = 0;
         try {
-            for (Long addr : addressesToResolve) {
-                long offset = addr - libStartAddress + libLoadBase;
-                addressWriter.write(Long.toHexString(offset));
-                addressWriter.newLine();
-                addressWriter.flush();
+            for (; i < addresses.size() && !mCancelled; i++) {
                 String method = resultReader.readLine();
                 String sourceFile = resultReader.readLine();
+                if (method == null || sourceFile == null) {
+                    break;
+                }
 
+                Long addr = addresses.get(i);
                 mAddressResolution.put(addr,
                         new NativeStackCallInfo(addr,
                                 lib.getLibraryName(),
                                 method,
                                 sourceFile));
-            }
-        } catch (IOException e) {
-            // if there is any error, then mark the addresses not already resolved
-            // as unresolvable.
-            for (Long addr : addressesToResolve) {
-                if (mAddressResolution.get(addr) == null) {
-                    markAddressNotResolvable(lib, addr);
+                if (isResolved(method, sourceFile)) {
+                    resolved.put(offsets.get(i),
+                            new NativeSymbolCache.Symbol(method, sourceFile));
                 }
             }
+        } catch (IOException e) {
+            // handled below
+        }
+
+        // if there is any error, then mark the addresses not already resolved
+        // as unresolvable.
+        for (; i < addresses.size(); i++) {
+            markAddressNotResolvable(lib, addresses.get(i));
         }
 
         try {
             resultReader.close();
-            addressWriter.close();
         } catch (IOException e) {
             // we can ignore these exceptions
         }
 
         addr2line.destroy();
+        mProcesses.remove(addr2line);
+        return resolved;
+    }
+
+    /**
+     * Returns whether addr2line found both the method and the source of an address: it
+     * prints "??" for an unknown method and "??:0" or "??:?" for an unknown source.
+     */
+    private static boolean isResolved(String method, String sourceFile) {
+        return !method.startsWith("??") && !sourceFile.startsWith("??"); //$NON-NLS-1$ //$NON-NLS-2$
+    }
+
+    private static synchronized NativeSymbolCache getSymbolCache() {
+        if (sSymbolCache == null) {
+            String folder = DdmUiPreferences.getSymbolCacheDirectory();
+            sSymbolCache = new NativeSymbolCache(
+                    folder != null && !folder.isEmpty() ? new File(folder) : null);
+            sSymbolCache.prune();
+        }
+        return sSymbolCache;
     }
 
     private boolean isExecutable(NativeLibraryMapInfo object) {
@@ -361,7 +430,7 @@ public class NativeSymbolResolverTask implements IRunnableWithProgress {
         return devicePath.contains("/bin/");
     }
 
-    private void markAddressesNotResolvable(Set<Long> addressesToResolve,
+    private void markAddressesNotResolvable(Iterable<Long> addressesToResolve,
                                 NativeLibraryMapInfo lib) {
         for (Long addr : addressesToResolve) {
             markAddressNotResolvable(lib, addr);
@@ -24,6 +24,7 @@ import org.eclipse.swt.widgets.Composite;
 import org.eclipse.swt.widgets.Control;
 import org.jfree.chart.axis.AxisLocation;
 import org.jfree.chart.axis.NumberAxis;
+import org.jfree.chart.axis.ValueAxis;
 import org.jfree.chart.plot.XYPlot;
 import org.jfree.chart.renderer.xy.AbstractXYItemRenderer;
 import org.jfree.chart.renderer.xy.XYAreaRenderer;
@@ -34,12 +35,36 @@ import org.jfree.data.time.TimeSeriesCollection;
 
 import java.util.ArrayList;
 import java.util.Collection;
+import java.util.Collections;
 import java.util.Date;
 import java.util.HashMap;
+import java.util.IdentityHashMap;
 import java.util.Map;
+import java.util.Set;
 
 public class DisplayGraph extends EventDisplay {
 
+    /** Minimum number of downsampling buckets, used before the chart has been laid out. */
+    private static final int MIN_CHART_BUCKETS = 500;
+
+    /**
+     * The data behind each {@link TimeSeries}. Points are only ever added to the column; the
+     * series receives the downsampled new points in {@link #endMultiEventDisplay()}.
+     */
+    private final Map<TimeSeries, EventValueDownsampler> mSeriesSamplers =
+            new IdentityHashMap<TimeSeries, EventValueDownsampler>();
+
+    /** Series whose column changed since they were last updated. */
+    private final Set<TimeSeries> mDirtySeries =
+            Collections.newSetFromMap(new IdentityHashMap<TimeSeries, Boolean>());
+
+    /** Time of the oldest and most recent events added to the chart, in ms. */
+    private long mEarliestEventTime = -1;
+    private long mLatestEventTime = -1;
+
+    /** Width of the downsampling buckets of the series, in ms. */
+    private long mBucketWidth;
+
     public DisplayGraph(String name) {
         super(name);
     }
@@ -58,6 +83,10 @@ public class DisplayGraph extends EventDisplay {
         }
         mValueDescriptorSeriesMap.clear();
         mOcurrenceDescriptorSeriesMap.clear();
+        mSeriesSamplers.clear();
+        mDirtySeries.clear();
+        mEarliestEventTime = -1;
+        mLatestEventTime = -1;
     }
 
     /**
@@ -70,6 +99,11 @@ public class DisplayGraph extends EventDisplay {
     public Control createComposite(final Composite parent, EventLogParser logParser,
             final ILogColumnListener listener) {
         String title = getChartTitle(logParser);
+        // the chart is new, and so are its series: the events are all going to be replayed.
+        mSeriesSamplers.clear();
+        mDirtySeries.clear();
+        mEarliestEventTime = -1;
+        mLatestEventTime = -1;
         return createCompositeChart(parent, logParser, title);
     }
 
@@ -104,7 +138,6 @@ public class DisplayGraph extends EventDisplay {
             ArrayList<DisplayDescriptor> occurrenceDescriptors) {
         Map<Integer, String> tagMap = logParser.getTagMap();
 
-        Millisecond millisecondTime = null;
         long msec = -1;
 
         // If the event container is a cpu container (tag == 2721), and there is no descriptor
@@ -163,9 +196,8 @@ public class DisplayGraph extends EventDisplay {
 
                     // create the series
                     timeSeries = new TimeSeries(seriesFullName);
-                    if (mMaximumChartItemAge != -1) {
-                        timeSeries.setMaximumItemAge(mMaximumChartItemAge * 1000);
-                    }
+                    mSeriesSamplers.put(timeSeries,
+                            new EventValueDownsampler(new EventValueColumn()));
 
                     dataset.addSeries(timeSeries);
 
@@ -185,13 +217,12 @@ public class DisplayGraph extends EventDisplay {
                 }
 
                 // get the time
-                if (millisecondTime == null) {
+                if (msec == -1) {
                     msec = (long)event.sec * 1000L + (event.nsec / 1000000L);
-                    millisecondTime = new Millisecond(new Date(msec));
                 }
 
-                // add the value to the time series
-                timeSeries.addOrUpdate(millisecondTime, value);
+                // add the value to the column, the series is updated at the end of the batch.
+                addPoint(timeSeries, msec, value);
             } catch (InvalidTypeException e) {
                 // just ignore this descriptor if there's a type mismatch
             }
@@ -219,9 +250,8 @@ public class DisplayGraph extends EventDisplay {
                             tagMap.get(descriptor.getEventTag()), seriesLabel);
 
                     timeSeries = new TimeSeries(seriesFullName);
-                    if (mMaximumChartItemAge != -1) {
-                        timeSeries.setMaximumItemAge(mMaximumChartItemAge);
-                    }
+                    mSeriesSamplers.put(timeSeries,
+                            new EventValueDownsampler(new EventValueColumn()));
 
                     getOccurrenceDataSet().addSeries(timeSeries);
 
@@ -231,38 +261,128 @@ public class DisplayGraph extends EventDisplay {
                 // update the series
 
                 // get the time
-                if (millisecondTime == null) {
+                if (msec == -1) {
                     msec = (long)event.sec * 1000L + (event.nsec / 1000000L);
-                    millisecondTime = new Millisecond(new Date(msec));
                 }
 
-                // add the value to the time series
-                timeSeries.addOrUpdate(millisecondTime, 0); // the value is unused
+                // add the value to the column
+                addPoint(timeSeries, msec, 0); // the value is unused
             } catch (InvalidTypeException e) {
                 // just ignore this descriptor if there's a type mismatch
             }
         }
 
-        // go through all the series and remove old values.
-        if (msec != -1 && mMaximumChartItemAge != -1) {
-            Collection<HashMap<Integer, TimeSeries>> pidMapValues =
-                mValueDescriptorSeriesMap.values();
+        if (msec > mLatestEventTime) {
+            mLatestEventTime = msec;
+        }
+        if (msec != -1 && (mEarliestEventTime == -1 || msec < mEarliestEventTime)) {
+            mEarliestEventTime = msec;
+        }
+    }
 
-            for (HashMap<Integer, TimeSeries> pidMapValue : pidMapValues) {
-                Collection<TimeSeries> seriesCollection = pidMapValue.values();
+    private void addPoint(TimeSeries timeSeries, long msec, double value) {
+        mSeriesSamplers.get(timeSeries).getColumn().append(msec, value);
+        mDirtySeries.add(timeSeries);
+    }
 
-                for (TimeSeries timeSeries : seriesCollection) {
-                    timeSeries.removeAgedItems(msec, true);
+    /**
+     * Updates the series whose data changed during the multi event display. Each series gets
+     * at most two points (min and max) per horizontal pixel of the visible part of the chart,
+     * so that the cost of drawing the chart does not depend on the number of events received.
+     * Only the points added since the previous update are downsampled, unless the width of the
+     * buckets changed.
+     */
+    @Override
+    void endMultiEventDisplay() {
+        super.endMultiEventDisplay();
+
+        // remove old values.
+        if (mLatestEventTime != -1 && mMaximumChartItemAge != -1) {
+            long oldest = mLatestEventTime - mMaximumChartItemAge * 1000L;
+            for (Map.Entry<TimeSeries, EventValueDownsampler> entry : mSeriesSamplers.entrySet()) {
+                if (entry.getValue().getColumn().removeOlderThan(oldest)) {
+                    mDirtySeries.add(entry.getKey());
                 }
             }
+            mEarliestEventTime = Math.max(mEarliestEventTime, oldest);
+        }
 
-            pidMapValues = mOcurrenceDescriptorSeriesMap.values();
-            for (HashMap<Integer, TimeSeries> pidMapValue : pidMapValues) {
-                Collection<TimeSeries> seriesCollection = pidMapValue.values();
+        long bucketWidth = EventValueDownsampler.getBucketWidth(getVisibleDomain(),
+                Math.max(getChartWidth(), MIN_CHART_BUCKETS));
+        if (bucketWidth != mBucketWidth) {
+            // all the series have to be downsampled again.
+            mBucketWidth = bucketWidth;
+            mDirtySeries.addAll(mSeriesSamplers.keySet());
+        }
 
-                for (TimeSeries timeSeries : seriesCollection) {
-                    timeSeries.removeAgedItems(msec, true);
-                }
+        for (TimeSeries timeSeries : mDirtySeries) {
+            EventValueDownsampler sampler = mSeriesSamplers.get(timeSeries);
+            if (sampler == null) {
+                continue;
+            }
+
+            // update the series without sending one change event per point.
+            timeSeries.setNotify(false);
+            sampler.update(bucketWidth, new SeriesTarget(timeSeries));
+            timeSeries.setNotify(true);
+        }
+        mDirtySeries.clear();
+    }
+
+    /**
+     * Returns the time range shown by the chart, in ms: the zoomed range if the user zoomed in,
+     * otherwise the maximum age of the events if there is one, or the range of the events.
+     */
+    private long getVisibleDomain() {
+        ValueAxis axis = mChart != null ? mChart.getXYPlot().getDomainAxis() : null;
+        if (axis != null && !axis.isAutoRange()) {
+            return (long) axis.getRange().getLength();
+        }
+        if (mMaximumChartItemAge != -1) {
+            return mMaximumChartItemAge * 1000L;
+        }
+        return mLatestEventTime - mEarliestEventTime;
+    }
+
+    /** Sends the downsampled points of a column to a {@link TimeSeries}. */
+    private static final class SeriesTarget implements EventValueDownsampler.Target {
+        private final TimeSeries mSeries;
+
+        SeriesTarget(TimeSeries series) {
+            mSeries = series;
+        }
+
+        @Override
+        public void clear() {
+            mSeries.clear();
+        }
+
+        @Override
+        public void add(long timeMs, double value) {
+            mSeries.addOrUpdate(new Millisecond(new Date(timeMs)), value);
+        }
+
+        @Override
+        public void removeFrom(long timeMs) {
+            int count = mSeries.getItemCount();
+            int start = count;
+            while (start > 0 && mSeries.getTimePeriod(start - 1).getFirstMillisecond() >= timeMs) {
+                start--;
+            }
+            if (start < count) {
+                mSeries.delete(start, count - 1);
+            }
+        }
+
+        @Override
+        public void removeBefore(long timeMs) {
+            int count = mSeries.getItemCount();
+            int end = 0;
+            while (end < count && mSeries.getTimePeriod(end).getFirstMillisecond() < timeMs) {
+                end++;
+            }
+            if (end > 0) {
+                mSeries.delete(0, end - 1);
             }
         }
     }
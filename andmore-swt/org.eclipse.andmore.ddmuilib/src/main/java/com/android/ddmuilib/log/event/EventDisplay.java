@@ -647,6 +647,17 @@ abstract class EventDisplay {
 
     }
 
+    /**
+     * Returns the width in pixels of the chart, or 0 if there is no chart or it has not been
+     * laid out yet.
+     */
+    int getChartWidth() {
+        if (mChartComposite == null || mChartComposite.isDisposed()) {
+            return 0;
+        }
+        return mChartComposite.getSize().x;
+    }
+
     private void processClick(XYPlot xyPlot) {
         double rangeValue = xyPlot.getRangeCrosshairValue();
         if (rangeValue != 0) {
@@ -58,6 +58,7 @@ import java.io.FileNotFoundException;
 import java.io.FileOutputStream;
 import java.io.IOException;
 import java.text.NumberFormat;
+import java.util.ArrayDeque;
 import java.util.ArrayList;
 import java.util.regex.Pattern;
 
@@ -78,6 +79,11 @@ public class EventLogPanel extends TablePanel implements ILogListener,
     private final static int DEFAULT_DISPLAY_WIDTH = 500;
     private final static int DEFAULT_DISPLAY_HEIGHT = 400;
 
+    /** Maximum number of events kept in {@link #mEvents}. */
+    private final static int MAX_EVENTS = 200000;
+    /** Number of events dropped at once when {@link #MAX_EVENTS} is exceeded. */
+    private final static int EVENT_TRIM_COUNT = MAX_EVENTS / 10;
+
     private IDevice mCurrentLoggedDevice;
     private String mCurrentLogFile;
     private LogReceiver mCurrentLogReceiver;
@@ -85,11 +91,11 @@ public class EventLogPanel extends TablePanel implements ILogListener,
 
     private Object mLock = new Object();
 
-    /** list of all the events. */
+    /** list of the most recent events, up to {@link #MAX_EVENTS}. */
     private final ArrayList<EventContainer> mEvents = new ArrayList<EventContainer>();
 
     /** list of all the new events, that have yet to be displayed by the ui */
-    private final ArrayList<EventContainer> mNewEvents = new ArrayList<EventContainer>();
+    private final ArrayDeque<EventContainer> mNewEvents = new ArrayDeque<EventContainer>();
     /** indicates a pending ui thread display */
     private boolean mPendingDisplay = false;
 
@@ -668,7 +674,10 @@ public class EventLogPanel extends TablePanel implements ILogListener,
 
             boolean start_event = false;
             synchronized (mNewEvents) {
-                mNewEvents.addAll(0, mEvents);
+                ArrayList<EventContainer> pending = new ArrayList<EventContainer>(mNewEvents);
+                mNewEvents.clear();
+                mNewEvents.addAll(mEvents);
+                mNewEvents.addAll(pending);
 
                 if (mPendingDisplay == false) {
                     mPendingDisplay = true;
@@ -707,7 +716,11 @@ public class EventLogPanel extends TablePanel implements ILogListener,
 
     @WorkerThread
     private void handleNewEvent(EventContainer event) {
-        // add the event to the generic list
+        // add the event to the generic list, dropping the oldest events in bulk once the
+        // list is full.
+        if (mEvents.size() >= MAX_EVENTS) {
+            mEvents.subList(0, EVENT_TRIM_COUNT).clear();
+        }
         mEvents.add(event);
 
         // add to the list of events that needs to be displayed, and trigger a
@@ -792,7 +805,7 @@ public class EventLogPanel extends TablePanel implements ILogListener,
                         need_to_reloop = true;
                         event = null;
                     } else {
-                        event = mNewEvents.remove(0);
+                        event = mNewEvents.poll();
                         count++;
                     }
                 } else {
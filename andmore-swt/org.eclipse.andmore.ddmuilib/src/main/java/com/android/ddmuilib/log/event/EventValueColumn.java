@@ -0,0 +1,138 @@
+/*
+ * Copyright (C) 2018 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.android.ddmuilib.log.event;
+
+/**
+ * Columnar storage for the values of one event value (an event tag and value index) of one
+ * process. Times and values are kept in parallel primitive arrays used as a circular buffer,
+ * so that once the capacity is reached the oldest points are dropped.
+ * <p/>
+ * The column does not feed charts directly: an {@link EventValueDownsampler} reduces it to
+ * at most two points (minimum and maximum) per bucket, where a bucket is typically one
+ * pixel of the chart.
+ */
+final class EventValueColumn {
+
+    /** Default maximum number of points retained by a column. */
+    static final int DEFAULT_CAPACITY = 100000;
+
+    private static final int INITIAL_SIZE = 64;
+
+    private final int mCapacity;
+    private long[] mTimes;
+    private double[] mValues;
+    /** index of the oldest point in the arrays */
+    private int mStart;
+    private int mSize;
+    /** number of points ever appended, including the ones dropped since */
+    private long mAppended;
+
+    EventValueColumn() {
+        this(DEFAULT_CAPACITY);
+    }
+
+    /**
+     * @param capacity maximum number of points to retain.
+     */
+    EventValueColumn(int capacity) {
+        mCapacity = capacity;
+        mTimes = new long[Math.min(INITIAL_SIZE, capacity)];
+        mValues = new double[mTimes.length];
+    }
+
+    int size() {
+        return mSize;
+    }
+
+    /**
+     * Returns the number of points appended to the column since it was created, including
+     * the points which were dropped or removed since.
+     */
+    long getAppendedCount() {
+        return mAppended;
+    }
+
+    long getTime(int index) {
+        return mTimes[physical(index)];
+    }
+
+    double getValue(int index) {
+        return mValues[physical(index)];
+    }
+
+    /**
+     * Appends a point, dropping the oldest one if the column is at capacity.
+     * @param timeMs the time of the point, in ms.
+     * @param value the value.
+     */
+    void append(long timeMs, double value) {
+        mAppended++;
+        if (mSize == mCapacity) {
+            // full: overwrite the oldest point
+            mTimes[mStart] = timeMs;
+            mValues[mStart] = value;
+            mStart = (mStart + 1) % mTimes.length;
+            return;
+        }
+        if (mSize == mTimes.length) {
+            grow();
+        }
+        int index = physical(mSize);
+        mTimes[index] = timeMs;
+        mValues[index] = value;
+        mSize++;
+    }
+
+    /**
+     * Removes the points older than a given time. Points are expected to have been appended
+     * in chronological order.
+     * @param timeMs the oldest time to keep.
+     * @return true if points were removed.
+     */
+    boolean removeOlderThan(long timeMs) {
+        int removed = 0;
+        while (mSize > 0 && mTimes[mStart] < timeMs) {
+            mStart = (mStart + 1) % mTimes.length;
+            mSize--;
+            removed++;
+        }
+        return removed > 0;
+    }
+
+    void clear() {
+        mStart = 0;
+        mSize = 0;
+    }
+
+    private int physical(int index) {
+        return (mStart + index) % mTimes.length;
+    }
+
+    private void grow() {
+        int newLength = Math.min(mCapacity, mTimes.length * 2);
+        long[] times = new long[newLength];
+        double[] values = new double[newLength];
+        for (int i = 0; i < mSize; i++) {
+            int index = physical(i);
+            times[i] = mTimes[index];
+            values[i] = mValues[index];
+        }
+        mTimes = times;
+        mValues = values;
+        mStart = 0;
+    }
+}
@@ -0,0 +1,156 @@
+/*
+ * Copyright (C) 2018 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.android.ddmuilib.log.event;
+
+/**
+ * Incrementally reduces an {@link EventValueColumn} to at most two points (minimum and
+ * maximum) per time bucket, and mirrors the result into a {@link Target}, typically a chart
+ * series.
+ * <p/>
+ * Buckets are aligned on multiples of their width, so the points appended to the column
+ * since the last {@link #update(long, Target)} only change the last bucket sent to the
+ * target and the ones after it. The target is only rebuilt from the whole column when the
+ * bucket width changes.
+ */
+final class EventValueDownsampler {
+
+    /**
+     * Receives the downsampled points, in chronological order except for points appended
+     * to the column out of order.
+     */
+    interface Target {
+        void clear();
+
+        void add(long timeMs, double value);
+
+        /** Removes the points at or after a given time. */
+        void removeFrom(long timeMs);
+
+        /** Removes the points before a given time. */
+        void removeBefore(long timeMs);
+    }
+
+    private final EventValueColumn mColumn;
+    /** width of the buckets sent to the target, in ms; 0 before the first update. */
+    private long mBucketWidth;
+    /** {@link EventValueColumn#getAppendedCount()} when the target was last updated. */
+    private long mSent;
+    /** the bucket receiving the most recent points, and its minimum and maximum points. */
+    private long mOpenBucket;
+    private boolean mHasOpenBucket;
+    private long mMinTime;
+    private double mMinValue;
+    private long mMaxTime;
+    private double mMaxValue;
+
+    EventValueDownsampler(EventValueColumn column) {
+        mColumn = column;
+    }
+
+    EventValueColumn getColumn() {
+        return mColumn;
+    }
+
+    /**
+     * Returns the bucket width to use for a chart: the power of two, in ms, closest above
+     * the visible time range divided by the number of buckets. Rounding keeps the width
+     * stable while the visible range changes a little.
+     * @param domainMs the visible time range of the chart, in ms.
+     * @param buckets the number of buckets, typically the width of the chart in pixels.
+     */
+    static long getBucketWidth(long domainMs, int buckets) {
+        long ideal = Math.max(1, domainMs / Math.max(1, buckets));
+        long width = Long.highestOneBit(ideal);
+        return width < ideal ? width << 1 : width;
+    }
+
+    /**
+     * Sends the points appended to the column since the last update to the target, and
+     * removes the points the column dropped since. If the bucket width changed, the target
+     * is rebuilt from the whole column.
+     * @param bucketWidth the width of the buckets, see {@link #getBucketWidth(long, int)}.
+     * @param target the receiver of the points.
+     */
+    void update(long bucketWidth, Target target) {
+        int size = mColumn.size();
+        long appended = mColumn.getAppendedCount();
+
+        int start;
+        if (bucketWidth != mBucketWidth) {
+            mBucketWidth = bucketWidth;
+            mHasOpenBucket = false;
+            target.clear();
+            start = 0;
+        } else {
+            if (size == 0) {
+                target.clear();
+            } else {
+                target.removeBefore(mColumn.getTime(0));
+            }
+            start = (int) Math.max(0, size - (appended - mSent));
+        }
+
+        for (int i = start; i < size; i++) {
+            add(mColumn.getTime(i), mColumn.getValue(i), target);
+        }
+        mSent = appended;
+    }
+
+    private void add(long timeMs, double value, Target target) {
+        long bucket = Math.floorDiv(timeMs, mBucketWidth);
+        if (mHasOpenBucket && bucket < mOpenBucket) {
+            // late point: not worth reopening an older bucket for.
+            target.add(timeMs, value);
+            return;
+        }
+        if (!mHasOpenBucket || bucket > mOpenBucket) {
+            mHasOpenBucket = true;
+            mOpenBucket = bucket;
+            mMinTime = mMaxTime = timeMs;
+            mMinValue = mMaxValue = value;
+            target.add(timeMs, value);
+            return;
+        }
+
+        boolean changed = false;
+        if (value < mMinValue) {
+            mMinTime = timeMs;
+            mMinValue = value;
+            changed = true;
+        }
+        if (value > mMaxValue) {
+            mMaxTime = timeMs;
+            mMaxValue = value;
+            changed = true;
+        }
+        if (!changed) {
+            return;
+        }
+
+        // replace the points of the open bucket by its new minimum and maximum.
+        target.removeFrom(bucket * mBucketWidth);
+        if (mMinTime == mMaxTime) {
+            target.add(mMinTime, mMinValue);
+        } else if (mMinTime < mMaxTime) {
+            target.add(mMinTime, mMinValue);
+            target.add(mMaxTime, mMaxValue);
+        } else {
+            target.add(mMaxTime, mMaxValue);
+            target.add(mMinTime, mMinValue);
+        }
+    }
+}
@@ -25,7 +25,8 @@ import java.util.List;
  */
 public interface ILogCatBufferChangeListener {
     /**
-     * Called when the logcat buffer changes.
+     * Called when the logcat buffer changes. Changes are coalesced and delivered on a
+     * dispatch thread; the same unmodifiable lists are passed to every listener.
      * @param addedMessages list of messages that were added to the logcat buffer
      * @param deletedMessages list of messages that were removed from the logcat buffer
      */
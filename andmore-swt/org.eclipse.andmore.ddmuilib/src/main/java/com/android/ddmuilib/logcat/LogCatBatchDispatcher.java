@@ -0,0 +1,297 @@
+/*
+ * Copyright (C) 2018 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.android.ddmuilib.logcat;
+
+import com.android.ddmlib.logcat.LogCatMessage;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.CopyOnWriteArraySet;
+
+/**
+ * Dispatches logcat buffer changes to {@link ILogCatBufferChangeListener}s.
+ * <p/>
+ * Batches handed over by the receiver thread are coalesced over a short time window and
+ * then delivered once, on a dedicated dispatch thread, as a single pair of unmodifiable
+ * lists shared by every listener. Listeners must therefore not modify the lists they
+ * are given.
+ * <p/>
+ * The number of messages waiting to be dispatched is bounded. When a listener is slow to
+ * consume its events, {@link #post(List, List, long)} blocks the producer until the
+ * dispatch thread has caught up, rather than letting pending messages accumulate without
+ * limit.
+ * <p/>
+ * Every change carries the sequence number the producer gave it. A listener which reloads
+ * the whole buffer can have the changes up to the last one of its reload replaced by a
+ * reset, see {@link #reset(ILogCatBufferChangeListener, Runnable, long)}, so that it
+ * doesn't get the messages of its reload a second time.
+ */
+final class LogCatBatchDispatcher {
+    /** Time in ms over which incoming batches are merged before being dispatched. */
+    static final long COALESCE_WINDOW_MS = 50;
+
+    /** Default maximum number of added messages that may wait for dispatch. */
+    static final int MAX_PENDING_MESSAGES_DEFAULT = LogCatMessageList.MAX_MESSAGES_DEFAULT;
+
+    private final Set<ILogCatBufferChangeListener> mListeners =
+            new CopyOnWriteArraySet<ILogCatBufferChangeListener>();
+
+    private final Object mLock = new Object();
+    private final long mWindowMs;
+    private final int mMaxPending;
+    private final Thread mThread;
+
+    /** Messages added since the last dispatch, guarded by {@link #mLock}. */
+    private List<LogCatMessage> mPendingAdded = new ArrayList<LogCatMessage>();
+    /** Messages removed since the last dispatch, guarded by {@link #mLock}. */
+    private List<LogCatMessage> mPendingDeleted = new ArrayList<LogCatMessage>();
+    /** Sequence number and end of each change in the pending lists, guarded by {@link #mLock}. */
+    private List<Batch> mPendingBatches = new ArrayList<Batch>();
+    /** Listener resets requested since the last dispatch, guarded by {@link #mLock}. */
+    private Map<ILogCatBufferChangeListener, Runnable> mPendingResets =
+            new HashMap<ILogCatBufferChangeListener, Runnable>();
+    /**
+     * Sequence number of the last change replaced by the reset of each listener, guarded by
+     * {@link #mLock}. Changes up to that number which come late are not delivered either.
+     */
+    private final Map<ILogCatBufferChangeListener, Long> mResetSequences =
+            new HashMap<ILogCatBufferChangeListener, Long>();
+    /** Set once {@link #stop()} is called, guarded by {@link #mLock}. */
+    private boolean mStopped;
+    /** Set once the dispatch thread has exited, guarded by {@link #mLock}. */
+    private boolean mFinished;
+
+    /** A change in the pending lists. */
+    private static final class Batch {
+        final long mSequence;
+        final int mAddedEnd;
+        final int mDeletedEnd;
+
+        Batch(long sequence, int addedEnd, int deletedEnd) {
+            mSequence = sequence;
+            mAddedEnd = addedEnd;
+            mDeletedEnd = deletedEnd;
+        }
+    }
+
+    /**
+     * Construct a dispatcher with the default coalescing window and pending limit.
+     * @param name name of the dispatch thread
+     */
+    LogCatBatchDispatcher(String name) {
+        this(name, COALESCE_WINDOW_MS, MAX_PENDING_MESSAGES_DEFAULT);
+    }
+
+    /**
+     * Construct a dispatcher.
+     * @param name name of the dispatch thread
+     * @param windowMs time in ms over which batches are coalesced
+     * @param maxPending maximum number of added messages waiting for dispatch
+     */
+    LogCatBatchDispatcher(String name, long windowMs, int maxPending) {
+        mWindowMs = windowMs;
+        mMaxPending = maxPending;
+
+        mThread = new Thread(new Runnable() {
+            @Override
+            public void run() {
+                dispatchLoop();
+            }
+        }, name);
+        mThread.setDaemon(true);
+        mThread.start();
+    }
+
+    void addListener(ILogCatBufferChangeListener l) {
+        mListeners.add(l);
+    }
+
+    void removeListener(ILogCatBufferChangeListener l) {
+        mListeners.remove(l);
+        synchronized (mLock) {
+            mPendingResets.remove(l);
+            mResetSequences.remove(l);
+        }
+    }
+
+    /**
+     * Queue a buffer change for dispatch. Blocks while the number of pending messages is
+     * at its limit. Changes posted after {@link #stop()} are ignored.
+     * @param addedMessages messages appended to the logcat buffer
+     * @param deletedMessages messages removed from the logcat buffer
+     * @param sequence sequence number of the change, given by the producer
+     */
+    void post(List<LogCatMessage> addedMessages, List<LogCatMessage> deletedMessages,
+            long sequence) {
+        synchronized (mLock) {
+            // Always accept a batch into an empty queue, so that a single batch larger
+            // than the limit cannot block forever.
+            while (!mStopped && !mPendingAdded.isEmpty()
+                    && mPendingAdded.size() + addedMessages.size() > mMaxPending) {
+                try {
+                    mLock.wait();
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    return;
+                }
+            }
+            if (mStopped) {
+                return;
+            }
+            mPendingAdded.addAll(addedMessages);
+            mPendingDeleted.addAll(deletedMessages);
+            mPendingBatches.add(new Batch(sequence, mPendingAdded.size(),
+                    mPendingDeleted.size()));
+            mLock.notifyAll();
+        }
+    }
+
+    /**
+     * Replace the changes up to a sequence number that a listener has not received yet by
+     * a reset of that listener. The task is run on the dispatch thread before the next
+     * changes are delivered, and the listener then only gets the changes which come after
+     * that number, whenever they are posted. A change which is being dispatched when this
+     * is called may still reach the listener before the task. Once the dispatch thread has
+     * exited, the task is run right away.
+     * @param l listener to reset; the reset is dropped if it is no longer registered
+     * @param task task resetting the listener
+     * @param sequence sequence number of the last change the reset replaces
+     */
+    void reset(ILogCatBufferChangeListener l, Runnable task, long sequence) {
+        synchronized (mLock) {
+            if (!mFinished) {
+                Long previous = mResetSequences.get(l);
+                mResetSequences.put(l, previous == null ? sequence
+                        : Math.max(previous.longValue(), sequence));
+                // a later reset of the same listener supersedes the earlier ones
+                mPendingResets.put(l, task);
+                mLock.notifyAll();
+                return;
+            }
+        }
+        task.run();
+    }
+
+    /**
+     * Stop the dispatch thread. Changes already posted are still delivered.
+     */
+    void stop() {
+        synchronized (mLock) {
+            mStopped = true;
+            mLock.notifyAll();
+        }
+    }
+
+    private void dispatchLoop() {
+        while (true) {
+            List<LogCatMessage> added;
+            List<LogCatMessage> deleted;
+            List<Batch> batches;
+            Map<ILogCatBufferChangeListener, Runnable> resets;
+            Map<ILogCatBufferChangeListener, Long> resetSequences;
+            synchronized (mLock) {
+                try {
+                    while (!mStopped && isPendingEmpty()) {
+                        mLock.wait();
+                    }
+
+                    // Give the receiver a chance to hand over more batches, so that
+                    // listeners see them as a single event.
+                    long deadline = System.currentTimeMillis() + mWindowMs;
+                    long remaining = mWindowMs;
+                    while (!mStopped && remaining > 0 && mPendingAdded.size() < mMaxPending) {
+                        mLock.wait(remaining);
+                        remaining = deadline - System.currentTimeMillis();
+                    }
+                } catch (InterruptedException e) {
+                    mFinished = true;
+                    return;
+                }
+
+                if (isPendingEmpty()) {
+                    // only reached once stopped
+                    mFinished = true;
+                    return;
+                }
+
+                added = Collections.unmodifiableList(mPendingAdded);
+                deleted = Collections.unmodifiableList(mPendingDeleted);
+                batches = mPendingBatches;
+                resets = mPendingResets;
+                resetSequences = new HashMap<ILogCatBufferChangeListener, Long>(mResetSequences);
+                mPendingAdded = new ArrayList<LogCatMessage>();
+                mPendingDeleted = new ArrayList<LogCatMessage>();
+                mPendingBatches = new ArrayList<Batch>();
+                mPendingResets = new HashMap<ILogCatBufferChangeListener, Runnable>();
+
+                // unblock producers waiting for space
+                mLock.notifyAll();
+            }
+
+            for (ILogCatBufferChangeListener l : mListeners) {
+                Runnable reset = resets.get(l);
+                if (reset != null) {
+                    reset.run();
+                }
+
+                List<LogCatMessage> listenerAdded = added;
+                List<LogCatMessage> listenerDeleted = deleted;
+                Long resetSequence = resetSequences.get(l);
+                if (resetSequence != null
+                        && containsReplaced(batches, resetSequence.longValue())) {
+                    // leave out the changes the reset of the listener replaced
+                    listenerAdded = new ArrayList<LogCatMessage>();
+                    listenerDeleted = new ArrayList<LogCatMessage>();
+                    int addedStart = 0;
+                    int deletedStart = 0;
+                    for (Batch batch : batches) {
+                        if (batch.mSequence > resetSequence.longValue()) {
+                            listenerAdded.addAll(added.subList(addedStart, batch.mAddedEnd));
+                            listenerDeleted.addAll(
+                                    deleted.subList(deletedStart, batch.mDeletedEnd));
+                        }
+                        addedStart = batch.mAddedEnd;
+                        deletedStart = batch.mDeletedEnd;
+                    }
+                    listenerAdded = Collections.unmodifiableList(listenerAdded);
+                    listenerDeleted = Collections.unmodifiableList(listenerDeleted);
+                }
+                if (!listenerAdded.isEmpty() || !listenerDeleted.isEmpty()) {
+                    l.bufferChanged(listenerAdded, listenerDeleted);
+                }
+            }
+        }
+    }
+
+    /** Returns whether some of the changes are replaced by a reset up to a sequence number. */
+    private static boolean containsReplaced(List<Batch> batches, long sequence) {
+        for (Batch batch : batches) {
+            if (batch.mSequence <= sequence) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private boolean isPendingEmpty() {
+        return mPendingAdded.isEmpty() && mPendingDeleted.isEmpty() && mPendingResets.isEmpty();
+    }
+}
@@ -89,6 +89,7 @@ import java.util.Collections;
 import java.util.List;
 import java.util.Map;
 import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicReference;
 import java.util.regex.Pattern;
 import java.util.regex.PatternSyntaxException;
 
@@ -208,6 +209,9 @@ public final class LogCatPanel extends SelectionDependentPanel
     // # of messages deleted since last refresh, synchronized on mLogBuffer
     private int mDeletedLogCount;
 
+    // the reload of the log buffer which has not been delivered yet, if any
+    private final AtomicReference<Object> mPendingReload = new AtomicReference<Object>();
+
 	private ImageFactory mImageFactory;
 
     /**
@@ -844,18 +848,6 @@ public final class LogCatPanel extends SelectionDependentPanel
         return selectedMessages;
     }
 
-    private List<LogCatMessage> applyCurrentFilters(List<LogCatMessage> msgList) {
-        List<LogCatMessage> filteredItems = new ArrayList<LogCatMessage>(msgList.size());
-
-        for (LogCatMessage msg: msgList) {
-            if (isMessageAccepted(msg, mCurrentFilters)) {
-                filteredItems.add(msg);
-            }
-        }
-
-        return filteredItems;
-    }
-
     private boolean isMessageAccepted(LogCatMessage msg, List<LogCatFilter> filters) {
         for (LogCatFilter f : filters) {
             if (!f.matches(msg)) {
@@ -1165,15 +1157,27 @@ public final class LogCatPanel extends SelectionDependentPanel
     @Override
     public void bufferChanged(List<LogCatMessage> addedMessages,
             List<LogCatMessage> deletedMessages) {
+        if (mPendingReload.get() != null) {
+            // these messages are part of the pending reload
+            return;
+        }
+
         updateUnreadCount(addedMessages);
         refreshFiltersTable();
 
+        // The lists are shared with the other listeners of the receiver, so filter
+        // straight into the local buffer instead of making filtered copies.
         synchronized (mLogBuffer) {
-            addedMessages = applyCurrentFilters(addedMessages);
-            deletedMessages = applyCurrentFilters(deletedMessages);
-
-            mLogBuffer.addAll(addedMessages);
-            mDeletedLogCount += deletedMessages.size();
+            for (LogCatMessage msg : addedMessages) {
+                if (isMessageAccepted(msg, mCurrentFilters)) {
+                    mLogBuffer.add(msg);
+                }
+            }
+            for (LogCatMessage msg : deletedMessages) {
+                if (isMessageAccepted(msg, mCurrentFilters)) {
+                    mDeletedLogCount++;
+                }
+            }
         }
 
         refreshLogCatTable();
@@ -1191,9 +1195,25 @@ public final class LogCatPanel extends SelectionDependentPanel
             return;
         }
 
-        List<LogCatMessage> addedMessages = mReceiver.getMessages().getAllMessages();
-        List<LogCatMessage> deletedMessages = Collections.emptyList();
-        bufferChanged(addedMessages, deletedMessages);
+        // The changes the receiver has not delivered yet are already in its buffer: it
+        // delivers the whole buffer in their place, and the changes which reach the panel
+        // until then are ignored.
+        final Object reload = new Object();
+        mPendingReload.set(reload);
+        mReceiver.reloadMessages(this, new Runnable() {
+            @Override
+            public void run() {
+                if (mPendingReload.get() != reload) {
+                    // superseded by a later reload
+                    return;
+                }
+                synchronized (mLogBuffer) {
+                    mLogBuffer.clear();
+                    mDeletedLogCount = 0;
+                }
+                mPendingReload.compareAndSet(reload, null);
+            }
+        });
     }
 
     /**
@@ -25,9 +25,7 @@ import com.android.ddmlib.logcat.LogCatReceiverTask;
 import org.eclipse.jface.preference.IPreferenceStore;
 
 import java.util.Collections;
-import java.util.HashSet;
 import java.util.List;
-import java.util.Set;
 
 /**
  * A class to monitor a device for logcat messages. It stores the received
@@ -40,7 +38,9 @@ public final class LogCatReceiver implements LogCatListener {
     private LogCatMessageList mLogMessages;
     private IDevice mCurrentDevice;
     private LogCatReceiverTask mLogCatReceiverTask;
-    private Set<ILogCatBufferChangeListener> mLogCatMessageListeners;
+    private LogCatBatchDispatcher mDispatcher;
+    /** Number of changes made to the buffer, guarded by {@link #mLogMessages}. */
+    private long mSequence;
     private IPreferenceStore mPrefStore;
 
     /**
@@ -55,8 +55,9 @@ public final class LogCatReceiver implements LogCatListener {
         mCurrentDevice = device;
         mPrefStore = prefStore;
 
-        mLogCatMessageListeners = new HashSet<ILogCatBufferChangeListener>();
         mLogMessages = new LogCatMessageList(getFifoSize());
+        mDispatcher = new LogCatBatchDispatcher("LogCat dispatcher for " //$NON-NLS-1$
+                + (device != null ? device.getSerialNumber() : "<none>")); //$NON-NLS-1$
 
         startReceiverThread();
     }
@@ -75,6 +76,9 @@ public final class LogCatReceiver implements LogCatListener {
             log(Collections.singletonList(DEVICE_DISCONNECTED_MESSAGE));
         }
 
+        // deliver whatever is still pending, then let the dispatch thread exit
+        mDispatcher.stop();
+
         mCurrentDevice = null;
     }
 
@@ -96,14 +100,21 @@ public final class LogCatReceiver implements LogCatListener {
         t.start();
     }
 
+    /**
+     * Append messages received from the device to the buffer. Listeners are not called
+     * from this thread; the change is handed to the dispatcher, which coalesces it with
+     * other recent changes. This call may block if listeners fall behind.
+     */
     @Override
     public void log(List<LogCatMessage> newMessages) {
         List<LogCatMessage> deletedMessages;
+        long sequence;
         synchronized (mLogMessages) {
             deletedMessages = mLogMessages.ensureSpace(newMessages.size());
             mLogMessages.appendMessages(newMessages);
+            sequence = ++mSequence;
         }
-        sendLogChangedEvent(newMessages, deletedMessages);
+        sendLogChangedEvent(newMessages, deletedMessages, sequence);
     }
 
     /**
@@ -126,18 +137,39 @@ public final class LogCatReceiver implements LogCatListener {
      * @param l listener to notified when messages are received from the device
      */
     public void addMessageReceivedEventListener(ILogCatBufferChangeListener l) {
-        mLogCatMessageListeners.add(l);
+        mDispatcher.addListener(l);
     }
 
     public void removeMessageReceivedEventListener(ILogCatBufferChangeListener l) {
-        mLogCatMessageListeners.remove(l);
+        mDispatcher.removeListener(l);
     }
 
-    private void sendLogChangedEvent(List<LogCatMessage> addedMessages,
-            List<LogCatMessage> deletedMessages) {
-        for (ILogCatBufferChangeListener l : mLogCatMessageListeners) {
-            l.bufferChanged(addedMessages, deletedMessages);
+    /**
+     * Deliver all the messages of the buffer to a listener, in place of the changes it has
+     * not received yet, which are part of the buffer already. The reset task and then the
+     * listener are called from the dispatch thread, with the messages as added messages.
+     * @param l listener to reload, which must be registered
+     * @param reset task clearing the messages the listener has, run before the reload
+     */
+    public void reloadMessages(final ILogCatBufferChangeListener l, final Runnable reset) {
+        final List<LogCatMessage> messages;
+        long sequence;
+        synchronized (mLogMessages) {
+            messages = mLogMessages.getAllMessages();
+            sequence = mSequence;
         }
+        mDispatcher.reset(l, new Runnable() {
+            @Override
+            public void run() {
+                reset.run();
+                l.bufferChanged(messages, Collections.<LogCatMessage>emptyList());
+            }
+        }, sequence);
+    }
+
+    private void sendLogChangedEvent(List<LogCatMessage> addedMessages,
+            List<LogCatMessage> deletedMessages, long sequence) {
+        mDispatcher.post(addedMessages, deletedMessages, sequence);
     }
 
     /**
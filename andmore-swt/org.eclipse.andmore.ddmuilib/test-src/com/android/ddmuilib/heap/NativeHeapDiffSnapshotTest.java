@@ -0,0 +1,86 @@
+/*
+ * Copyright (C) 2018 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.android.ddmuilib.heap;
+
+import com.android.ddmlib.NativeAllocationInfo;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import org.junit.Test;
+import static org.junit.Assert.*;
+
+public class NativeHeapDiffSnapshotTest {
+    private static NativeAllocationInfo createAllocation(int size, int count, long... stack) {
+        NativeAllocationInfo info = new NativeAllocationInfo(size, count);
+        for (long address : stack) {
+            info.addStackCallAddress(address);
+        }
+        return info;
+    }
+
+    private static NativeHeapSnapshot createSnapshot(NativeAllocationInfo... allocations) {
+        return new NativeHeapSnapshot(
+                new ArrayList<NativeAllocationInfo>(Arrays.asList(allocations)));
+    }
+
+    @Test
+    public void testStacksAreInterned() {
+        NativeAllocationTable table = createSnapshot(
+                createAllocation(16, 1, 0x10, 0x20),
+                createAllocation(32, 2, 0x10, 0x20),
+                createAllocation(16, 1, 0x10, 0x30)).getAllocationTable();
+
+        assertEquals(3, table.size());
+        assertEquals(2, table.getStackCount());
+        assertEquals(table.getStackId(0), table.getStackId(1));
+        assertEquals(16 + 64 + 16, table.getTotalMemory());
+        assertEquals(table.getStackId(2), table.findStackId(new long[] { 0x10, 0x30 }));
+        assertEquals(-1, table.findStackId(new long[] { 0x30 }));
+    }
+
+    @Test
+    public void testDiff() {
+        NativeHeapSnapshot oldSnapshot = createSnapshot(
+                createAllocation(16, 1, 0x10, 0x20),    // unchanged
+                createAllocation(32, 3, 0x10, 0x30),    // grows to 5
+                createAllocation(64, 4, 0x10, 0x40),    // shrinks to 2
+                createAllocation(128, 1, 0x50));        // freed
+        NativeHeapSnapshot newSnapshot = createSnapshot(
+                createAllocation(16, 1, 0x10, 0x20),
+                createAllocation(32, 5, 0x10, 0x30),
+                createAllocation(64, 2, 0x10, 0x40),
+                createAllocation(8, 7, 0x60),           // new
+                createAllocation(16, 1, 0x10, 0x30));   // new size for a known stack
+
+        NativeHeapDiffSnapshot diff = new NativeHeapDiffSnapshot(newSnapshot, oldSnapshot);
+        List<NativeAllocationInfo> allocations = diff.getAllocations();
+        assertEquals(3, allocations.size());
+
+        NativeAllocationInfo grown = allocations.get(0);
+        assertTrue(grown instanceof NativeDiffAllocationInfo);
+        assertEquals(32, grown.getSize());
+        assertEquals(2, grown.getAllocationCount());
+
+        assertSame(newSnapshot.getAllocations().get(3), allocations.get(1));
+        assertSame(newSnapshot.getAllocations().get(4), allocations.get(2));
+
+        assertEquals(32 * 2 + 8 * 7 + 16, diff.getTotalSize());
+        assertTrue(diff.getFormattedMemorySize().startsWith("136 bytes new + 16 bytes"));
+    }
+}
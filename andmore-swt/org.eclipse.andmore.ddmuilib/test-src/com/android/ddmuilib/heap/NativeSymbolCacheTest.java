@@ -0,0 +1,214 @@
+/*
+ * Copyright (C) 2018 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.android.ddmuilib.heap;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CountDownLatch;
+
+import org.junit.Test;
+import static org.junit.Assert.*;
+
+public class NativeSymbolCacheTest {
+
+    @Test
+    public void testSymbolsArePersisted() throws IOException {
+        File folder = Files.createTempDirectory("symcache").toFile();
+        try {
+            NativeSymbolCache cache = new NativeSymbolCache(folder);
+            assertTrue(cache.getSymbols("abcd").isEmpty());
+
+            Map<Long, NativeSymbolCache.Symbol> symbols = new HashMap<Long, NativeSymbolCache.Symbol>();
+            symbols.put(0x1234L, new NativeSymbolCache.Symbol("foo()", "foo.c:12"));
+            symbols.put(0xffffffff80001000L, new NativeSymbolCache.Symbol("bar(int)", "bar.c:3"));
+            cache.addSymbols("abcd", symbols);
+
+            // a new cache, as in a new session, reads them back from disk.
+            Map<Long, NativeSymbolCache.Symbol> loaded =
+                    new NativeSymbolCache(folder).getSymbols("abcd");
+            assertEquals(2, loaded.size());
+            assertEquals("foo()", loaded.get(0x1234L).method);
+            assertEquals("foo.c:12", loaded.get(0x1234L).source);
+            assertEquals("bar(int)", loaded.get(0xffffffff80001000L).method);
+        } finally {
+            for (File f : folder.listFiles()) {
+                f.delete();
+            }
+            folder.delete();
+        }
+    }
+
+    @Test
+    public void testConcurrentAdditionsAreKept() throws Exception {
+        final NativeSymbolCache cache = new NativeSymbolCache(null);
+        final CountDownLatch start = new CountDownLatch(1);
+        List<Thread> threads = new ArrayList<Thread>();
+        for (int t = 0; t < 8; t++) {
+            final long base = t * 1000L;
+            Thread thread = new Thread() {
+                @Override
+                public void run() {
+                    try {
+                        start.await();
+                    } catch (InterruptedException e) {
+                        return;
+                    }
+                    for (long i = 0; i < 200; i++) {
+                        Map<Long, NativeSymbolCache.Symbol> symbols =
+                                new HashMap<Long, NativeSymbolCache.Symbol>();
+                        symbols.put(base + i, new NativeSymbolCache.Symbol("m", "s"));
+                        cache.addSymbols("lib", symbols);
+                    }
+                }
+            };
+            thread.start();
+            threads.add(thread);
+        }
+        start.countDown();
+        for (Thread thread : threads) {
+            thread.join();
+        }
+        assertEquals(8 * 200, cache.getSymbols("lib").size());
+    }
+
+    @Test
+    public void testPrune() throws IOException {
+        File folder = Files.createTempDirectory("symcache").toFile();
+        try {
+            NativeSymbolCache cache = new NativeSymbolCache(folder);
+            Map<Long, NativeSymbolCache.Symbol> symbols = new HashMap<Long, NativeSymbolCache.Symbol>();
+            symbols.put(0x1234L, new NativeSymbolCache.Symbol("foo()", "foo.c:12"));
+            for (String key : new String[] { "old", "recent", "newest" }) {
+                cache.addSymbols(key, symbols);
+            }
+            long now = System.currentTimeMillis();
+            long length = new File(folder, "old.sym").length();
+            assertTrue(new File(folder, "old.sym").setLastModified(now - 100000000L));
+            assertTrue(new File(folder, "recent.sym").setLastModified(now - 20000L));
+            assertTrue(new File(folder, "newest.sym").setLastModified(now - 10000L));
+
+            // too old
+            cache.prune(now - 50000000L, Long.MAX_VALUE);
+            assertFalse(new File(folder, "old.sym").exists());
+            assertTrue(new File(folder, "recent.sym").exists());
+
+            // too large: the least recently used goes first
+            cache.prune(0, length);
+            assertFalse(new File(folder, "recent.sym").exists());
+            assertTrue(new File(folder, "newest.sym").exists());
+        } finally {
+            for (File f : folder.listFiles()) {
+                f.delete();
+            }
+            folder.delete();
+        }
+    }
+
+    @Test
+    public void testLibraryKeyWithoutBuildId() throws IOException {
+        // minimal 64-bit ELF with a single PT_LOAD and no build-id.
+        ByteBuffer b = ByteBuffer.allocate(128).order(ByteOrder.LITTLE_ENDIAN);
+        b.put(new byte[] { 0x7f, 'E', 'L', 'F', 2 /*64 bit*/, 1 /*LSB*/ });
+        b.putLong(32, 64);               // e_phoff
+        b.putShort(56, (short) 1);       // e_phnum
+        b.putInt(64, 1);                 // PT_LOAD
+
+        File f = File.createTempFile("libfoo", ".so");
+        try {
+            try (FileOutputStream fos = new FileOutputStream(f)) {
+                fos.write(b.array());
+            }
+            ElfFileInfo elf = ElfFileInfo.read(f.getPath());
+            assertNotNull(elf);
+            assertNull(elf.getBuildId());
+
+            String key = NativeSymbolCache.getLibraryKey(f.getPath(), elf);
+            assertTrue(key, key.matches("\\Q" + f.getName() + "\\E-[0-9a-f]{40}"));
+            assertEquals(key, NativeSymbolCache.getLibraryKey(f.getPath(), elf));
+
+            // a rebuilt library is a new library.
+            assertTrue(f.setLastModified(f.lastModified() - 10000));
+            assertFalse(key.equals(NativeSymbolCache.getLibraryKey(f.getPath(), elf)));
+        } finally {
+            f.delete();
+        }
+    }
+
+    @Test
+    public void testElfBuildId() throws IOException {
+        // minimal 64-bit ELF: header, one PT_LOAD and one PT_NOTE with a GNU build-id.
+        ByteBuffer b = ByteBuffer.allocate(256).order(ByteOrder.LITTLE_ENDIAN);
+        b.put(new byte[] { 0x7f, 'E', 'L', 'F', 2 /*64 bit*/, 1 /*LSB*/ });
+        b.putLong(32, 64);               // e_phoff
+        b.putShort(56, (short) 2);       // e_phnum
+
+        b.putInt(64, 1);                 // PT_LOAD
+        b.putLong(64 + 8, 0);            // p_offset
+        b.putLong(64 + 16, 0x10000);     // p_vaddr
+
+        b.putInt(120, 4);                // PT_NOTE
+        b.putLong(120 + 8, 176);         // p_offset
+        b.putLong(120 + 32, 20);         // p_filesz
+
+        b.putInt(176, 4);                // namesz
+        b.putInt(180, 4);                // descsz
+        b.putInt(184, 3);                // NT_GNU_BUILD_ID
+        b.put(188, (byte) 'G');
+        b.put(189, (byte) 'N');
+        b.put(190, (byte) 'U');
+        b.put(192, (byte) 0xde);
+        b.put(193, (byte) 0xad);
+        b.put(194, (byte) 0xbe);
+        b.put(195, (byte) 0xef);
+
+        File f = File.createTempFile("lib", ".so");
+        try {
+            try (FileOutputStream fos = new FileOutputStream(f)) {
+                fos.write(b.array());
+            }
+            ElfFileInfo elf = ElfFileInfo.read(f.getPath());
+            assertNotNull(elf);
+            assertEquals(0x10000, elf.getLoadBase());
+            assertEquals("deadbeef", elf.getBuildId());
+            assertEquals("deadbeef", NativeSymbolCache.getLibraryKey(f.getPath(), elf));
+        } finally {
+            f.delete();
+        }
+    }
+
+    @Test
+    public void testNotElf() throws IOException {
+        File f = File.createTempFile("lib", ".so");
+        try {
+            try (FileOutputStream fos = new FileOutputStream(f)) {
+                fos.write("#!/bin/sh\n".getBytes());
+            }
+            assertNull(ElfFileInfo.read(f.getPath()));
+            assertNull(ElfFileInfo.read(f.getParent()));
+        } finally {
+            f.delete();
+        }
+    }
+}
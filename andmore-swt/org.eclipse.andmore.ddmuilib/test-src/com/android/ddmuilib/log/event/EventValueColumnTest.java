@@ -0,0 +1,47 @@
+/*
+ * Copyright (C) 2018 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.android.ddmuilib.log.event;
+
+import org.junit.Test;
+import static org.junit.Assert.*;
+
+public class EventValueColumnTest {
+    @Test
+    public void testCapacityDropsOldest() {
+        EventValueColumn c = new EventValueColumn(100);
+        for (int i = 0; i < 250; i++) {
+            c.append(i, i);
+        }
+        assertEquals(100, c.size());
+        assertEquals(150, c.getTime(0));
+        assertEquals(249, c.getTime(99));
+        assertEquals(249.0, c.getValue(99), 0);
+        assertEquals(250, c.getAppendedCount());
+    }
+
+    @Test
+    public void testRemoveOlderThan() {
+        EventValueColumn c = new EventValueColumn(100);
+        for (int i = 0; i < 10; i++) {
+            c.append(i * 10, i);
+        }
+        assertTrue(c.removeOlderThan(45));
+        assertEquals(5, c.size());
+        assertEquals(50, c.getTime(0));
+        assertFalse(c.removeOlderThan(45));
+    }
+}
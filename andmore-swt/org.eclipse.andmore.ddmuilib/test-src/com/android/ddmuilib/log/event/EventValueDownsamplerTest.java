@@ -0,0 +1,158 @@
+/*
+ * Copyright (C) 2018 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.android.ddmuilib.log.event;
+
+import java.util.ArrayList;
+import java.util.Map;
+import java.util.TreeMap;
+
+import org.junit.Test;
+import static org.junit.Assert.*;
+
+public class EventValueDownsamplerTest {
+    /** Keeps the points sorted by time, like a chart series. */
+    private static class SeriesTarget implements EventValueDownsampler.Target {
+        final TreeMap<Long, Double> mPoints = new TreeMap<Long, Double>();
+        int mClears;
+
+        @Override
+        public void clear() {
+            mPoints.clear();
+            mClears++;
+        }
+
+        @Override
+        public void add(long timeMs, double value) {
+            mPoints.put(timeMs, value);
+        }
+
+        @Override
+        public void removeFrom(long timeMs) {
+            mPoints.tailMap(timeMs, true).clear();
+        }
+
+        @Override
+        public void removeBefore(long timeMs) {
+            mPoints.headMap(timeMs, false).clear();
+        }
+    }
+
+    private static double valueAt(int i) {
+        // deterministic noise with spikes
+        return ((i * 7919) % 101) - 50 + (i % 97 == 0 ? 1000 : 0);
+    }
+
+    private static Map<Long, Double> downsampleAll(EventValueColumn column, long bucketWidth) {
+        SeriesTarget target = new SeriesTarget();
+        new EventValueDownsampler(column).update(bucketWidth, target);
+        return target.mPoints;
+    }
+
+    @Test
+    public void testBucketWidth() {
+        assertEquals(128, EventValueDownsampler.getBucketWidth(1000, 10));
+        assertEquals(128, EventValueDownsampler.getBucketWidth(1024, 8));
+        assertEquals(1, EventValueDownsampler.getBucketWidth(0, 500));
+        assertEquals(128, EventValueDownsampler.getBucketWidth(100, 0));
+    }
+
+    @Test
+    public void testKeepsMinAndMaxPerBucket() {
+        EventValueColumn c = new EventValueColumn();
+        // 10 buckets of 128 points each; a spike up and down in every bucket.
+        for (int i = 0; i < 1280; i++) {
+            double v = 0;
+            if (i % 128 == 30) {
+                v = 10 + i;
+            } else if (i % 128 == 70) {
+                v = -10 - i;
+            }
+            c.append(i, v);
+        }
+        SeriesTarget target = new SeriesTarget();
+        new EventValueDownsampler(c).update(128, target);
+
+        ArrayList<Long> times = new ArrayList<Long>(target.mPoints.keySet());
+        assertEquals(20, times.size());
+        for (int b = 0; b < 10; b++) {
+            assertEquals(b * 128 + 30, times.get(b * 2).longValue());
+            assertEquals(10 + b * 128 + 30, target.mPoints.get(times.get(b * 2)), 0);
+            assertEquals(b * 128 + 70, times.get(b * 2 + 1).longValue());
+            assertEquals(-10 - b * 128 - 70, target.mPoints.get(times.get(b * 2 + 1)), 0);
+        }
+    }
+
+    @Test
+    public void testIncrementalUpdatesMatchFullDownsampling() {
+        EventValueColumn c = new EventValueColumn();
+        EventValueDownsampler sampler = new EventValueDownsampler(c);
+        SeriesTarget target = new SeriesTarget();
+        for (int i = 0; i < 5000; i++) {
+            c.append(i * 3, valueAt(i));
+            if (i % 37 == 0) {
+                sampler.update(64, target);
+            }
+        }
+        sampler.update(64, target);
+
+        // the series was only cleared once, before it received its first points.
+        assertEquals(1, target.mClears);
+        assertEquals(downsampleAll(c, 64), target.mPoints);
+        assertTrue(target.mPoints.size() <= 2 * (5000 * 3 / 64 + 1));
+    }
+
+    @Test
+    public void testBucketWidthChangeRebuilds() {
+        EventValueColumn c = new EventValueColumn();
+        EventValueDownsampler sampler = new EventValueDownsampler(c);
+        SeriesTarget target = new SeriesTarget();
+        for (int i = 0; i < 1000; i++) {
+            c.append(i, valueAt(i));
+        }
+        sampler.update(4, target);
+        sampler.update(4, target);
+        assertEquals(1, target.mClears);
+
+        sampler.update(16, target);
+        assertEquals(2, target.mClears);
+        assertEquals(downsampleAll(c, 16), target.mPoints);
+    }
+
+    @Test
+    public void testDroppedPointsAreRemoved() {
+        EventValueColumn c = new EventValueColumn(100);
+        EventValueDownsampler sampler = new EventValueDownsampler(c);
+        SeriesTarget target = new SeriesTarget();
+        for (int i = 0; i < 250; i++) {
+            c.append(i, valueAt(i));
+            if (i % 10 == 0) {
+                sampler.update(1, target);
+            }
+        }
+        sampler.update(1, target);
+        assertEquals(downsampleAll(c, 1), target.mPoints);
+
+        c.removeOlderThan(200);
+        sampler.update(1, target);
+        assertEquals(50, target.mPoints.size());
+        assertEquals(200, target.mPoints.firstKey().longValue());
+
+        c.removeOlderThan(1000);
+        sampler.update(1, target);
+        assertTrue(target.mPoints.isEmpty());
+    }
+}
@@ -0,0 +1,202 @@
+/*
+ * Copyright (C) 2018 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.android.ddmuilib.logcat;
+
+import com.android.ddmlib.Log.LogLevel;
+import com.android.ddmlib.logcat.LogCatMessage;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.Test;
+import static org.junit.Assert.*;
+
+public class LogCatBatchDispatcherTest {
+    private static class RecordingListener implements ILogCatBufferChangeListener {
+        final List<List<LogCatMessage>> mAdded = new ArrayList<List<LogCatMessage>>();
+        final CountDownLatch mLatch;
+        final int mExpected;
+        int mReceived;
+
+        RecordingListener(int expectedMessages) {
+            mExpected = expectedMessages;
+            mLatch = new CountDownLatch(1);
+        }
+
+        @Override
+        public synchronized void bufferChanged(List<LogCatMessage> addedMessages,
+                List<LogCatMessage> deletedMessages) {
+            mAdded.add(addedMessages);
+            mReceived += addedMessages.size();
+            if (mReceived >= mExpected) {
+                mLatch.countDown();
+            }
+        }
+    }
+
+    /** Holds the dispatch thread in its first event until released. */
+    private static class GateListener implements ILogCatBufferChangeListener {
+        final CountDownLatch mEntered = new CountDownLatch(1);
+        final CountDownLatch mRelease = new CountDownLatch(1);
+
+        @Override
+        public void bufferChanged(List<LogCatMessage> addedMessages,
+                List<LogCatMessage> deletedMessages) {
+            mEntered.countDown();
+            try {
+                mRelease.await();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        }
+    }
+
+    private static List<LogCatMessage> messages(int n) {
+        List<LogCatMessage> l = new ArrayList<LogCatMessage>(n);
+        for (int i = 0; i < n; i++) {
+            l.add(new LogCatMessage(LogLevel.INFO, "message " + i));
+        }
+        return l;
+    }
+
+    @Test
+    public void testBatchesAreCoalescedAndShared() throws InterruptedException {
+        // no coalescing window: the batches are only merged because they wait together
+        LogCatBatchDispatcher d = new LogCatBatchDispatcher("test", 0, 1000);
+        GateListener gate = new GateListener();
+        RecordingListener l1 = new RecordingListener(31);
+        RecordingListener l2 = new RecordingListener(31);
+        d.addListener(gate);
+        d.addListener(l1);
+        d.addListener(l2);
+
+        List<LogCatMessage> none = Collections.emptyList();
+        d.post(messages(1), none, 1);
+        assertTrue(gate.mEntered.await(5, TimeUnit.SECONDS));
+
+        // the dispatch thread is held by the gate while these are queued
+        d.post(messages(10), none, 2);
+        d.post(messages(10), none, 3);
+        d.post(messages(10), none, 4);
+        gate.mRelease.countDown();
+
+        assertTrue(l1.mLatch.await(5, TimeUnit.SECONDS));
+        assertTrue(l2.mLatch.await(5, TimeUnit.SECONDS));
+        d.stop();
+
+        // the three queued batches are delivered once
+        assertEquals(2, l1.mAdded.size());
+        assertEquals(30, l1.mAdded.get(1).size());
+        // every listener sees the same list
+        assertSame(l1.mAdded.get(1), l2.mAdded.get(1));
+    }
+
+    @Test
+    public void testResetReplacesUndeliveredChanges() throws InterruptedException {
+        LogCatBatchDispatcher d = new LogCatBatchDispatcher("test", 0, 1000);
+        GateListener gate = new GateListener();
+        final RecordingListener l1 = new RecordingListener(6);
+        RecordingListener l2 = new RecordingListener(23);
+        d.addListener(gate);
+        d.addListener(l1);
+        d.addListener(l2);
+
+        final List<Integer> deliveredBeforeReset = new ArrayList<Integer>();
+        List<LogCatMessage> none = Collections.emptyList();
+        d.post(messages(1), none, 1);
+        assertTrue(gate.mEntered.await(5, TimeUnit.SECONDS));
+
+        d.post(messages(10), none, 2);
+        d.post(messages(5), none, 4);
+        d.reset(l1, new Runnable() {
+            @Override
+            public void run() {
+                synchronized (l1) {
+                    deliveredBeforeReset.add(l1.mReceived);
+                }
+            }
+        }, 3);
+        // a change covered by the reset which is posted late
+        d.post(messages(7), none, 3);
+        gate.mRelease.countDown();
+
+        assertTrue(l1.mLatch.await(5, TimeUnit.SECONDS));
+        assertTrue(l2.mLatch.await(5, TimeUnit.SECONDS));
+        d.stop();
+
+        // the reset runs in place of the changes up to its sequence number, and the
+        // other listener gets everything
+        assertEquals(Collections.singletonList(1), deliveredBeforeReset);
+        assertEquals(6, l1.mReceived);
+        assertEquals(23, l2.mReceived);
+    }
+
+    @Test(expected = UnsupportedOperationException.class)
+    public void testBatchIsImmutable() throws InterruptedException {
+        LogCatBatchDispatcher d = new LogCatBatchDispatcher("test", 0, 1000);
+        RecordingListener l = new RecordingListener(1);
+        d.addListener(l);
+        d.post(messages(1), Collections.<LogCatMessage>emptyList(), 1);
+        assertTrue(l.mLatch.await(5, TimeUnit.SECONDS));
+        d.stop();
+
+        l.mAdded.get(0).clear();
+    }
+
+    @Test
+    public void testProducerBlocksWhenListenerIsSlow() throws InterruptedException {
+        final CountDownLatch release = new CountDownLatch(1);
+        final CountDownLatch entered = new CountDownLatch(1);
+        LogCatBatchDispatcher d = new LogCatBatchDispatcher("test", 0, 10);
+        d.addListener(new ILogCatBufferChangeListener() {
+            @Override
+            public void bufferChanged(List<LogCatMessage> addedMessages,
+                    List<LogCatMessage> deletedMessages) {
+                entered.countDown();
+                try {
+                    release.await();
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                }
+            }
+        });
+
+        final List<LogCatMessage> none = Collections.emptyList();
+        d.post(messages(10), none, 1);
+        assertTrue(entered.await(5, TimeUnit.SECONDS));
+
+        // the listener is stuck: the next batch fills the queue, the one after must wait
+        d.post(messages(10), none, 2);
+        final CountDownLatch posted = new CountDownLatch(1);
+        Thread producer = new Thread(new Runnable() {
+            @Override
+            public void run() {
+                d.post(messages(10), none, 3);
+                posted.countDown();
+            }
+        });
+        producer.start();
+        assertFalse(posted.await(200, TimeUnit.MILLISECONDS));
+
+        release.countDown();
+        assertTrue(posted.await(5, TimeUnit.SECONDS));
+        d.stop();
+    }
+}
@@ -101,6 +101,7 @@ public class Messages extends NLS {
 	public static String PreferencePage_Error;
 	public static String PreferencePage_Heap_Updates_Enabled_Default;
 	public static String PreferencePage_HPROF_Action;
+	public static String PreferencePage_HPROF_Compress;
 	public static String PreferencePage_Info;
 	public static String PreferencePage_Logging_Level;
 	public static String PreferencePage_Open_Eclipse;
@@ -55,6 +55,8 @@ public class PreferenceInitializer extends AbstractPreferenceInitializer {
 
 	public final static String ATTR_HPROF_ACTION = DdmsPlugin.PLUGIN_ID + ".hprofAction"; //$NON-NLS-1$
 
+	public final static String ATTR_HPROF_COMPRESS = DdmsPlugin.PLUGIN_ID + ".hprofCompress"; //$NON-NLS-1$
+
 	public final static String ATTR_TIME_OUT = DdmsPlugin.PLUGIN_ID + ".timeOut"; //$NON-NLS-1$
 
 	public final static String ATTR_USE_ADBHOST = DdmsPlugin.PLUGIN_ID + ".useAdbHost"; //$NON-NLS-1$
@@ -95,6 +97,8 @@ public class PreferenceInitializer extends AbstractPreferenceInitializer {
 
 		store.setDefault(ATTR_LOGCAT_FONT, new FontData("Courier", 10, SWT.NORMAL).toString()); //$NON-NLS-1$
 
+		store.setDefault(ATTR_HPROF_COMPRESS, false);
+
 		store.setDefault(ATTR_TIME_OUT, DdmPreferences.DEFAULT_TIMEOUT);
 
 		store.setDefault(ATTR_USE_ADBHOST, DdmPreferences.DEFAULT_USE_ADBHOST);
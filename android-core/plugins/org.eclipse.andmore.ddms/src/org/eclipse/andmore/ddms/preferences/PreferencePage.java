@@ -70,6 +70,10 @@ public class PreferencePage extends FieldEditorPreferencePage implements IWorkbe
 				Messages.PreferencePage_Heap_Updates_Enabled_Default, getFieldEditorParent());
 		addField(bfe);
 
+		bfe = new BooleanFieldEditor(PreferenceInitializer.ATTR_HPROF_COMPRESS,
+				Messages.PreferencePage_HPROF_Compress, getFieldEditorParent());
+		addField(bfe);
+
 		ife = new IntegerFieldEditor(PreferenceInitializer.ATTR_THREAD_INTERVAL,
 				Messages.PreferencePage_Thread_Status_Refresh_Interval, getFieldEditorParent());
 		ife.setValidRange(1, 60);
@@ -104,11 +104,17 @@ import java.util.Collections;
 import java.util.Iterator;
 import java.util.List;
 import java.util.Locale;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
 
 
 /** Utility methods for ADT */
 @SuppressWarnings("restriction") // WST API
 public class AdtUtils {
+    /** Maximum time in minutes to wait for the data of a target to be loaded */
+    private static final long TARGET_LOAD_TIMEOUT_MINUTES = 5;
+
     /**
      * Creates a Java class name out of the given string, if possible. For
      * example, "My Project" becomes "MyProject", "hello" becomes "Hello",
@@ -1459,7 +1465,19 @@ public class AdtUtils {
 	public static void waitForTarget(IProject project) throws InterruptedException {
         IAndroidTarget target = AndworxFactory.instance().getTarget(project);
         Sdk sdk = Sdk.getCurrent();
-        if ((sdk == null) || (sdk.checkAndLoadTargetData(target, null) == LoadStatus.LOADING)) {
+        if ((sdk != null) && (sdk.checkAndLoadTargetData(target, null) == LoadStatus.LOADING)) {
+        	// Wait for the data of this target only. The future is completed with null when
+        	// the load fails or is abandoned.
+        	try {
+        		sdk.getTargetDataFuture(target).get(TARGET_LOAD_TIMEOUT_MINUTES, TimeUnit.MINUTES);
+        	} catch (ExecutionException e) {
+        		AndmoreAndroidPlugin.log(e.getCause(), "Loading data for %1$s failed", //$NON-NLS-1$
+        				target.getFullName());
+        	} catch (TimeoutException e) {
+        		AndmoreAndroidPlugin.log(e, "Timed out waiting for the data of %1$s", //$NON-NLS-1$
+        				target.getFullName());
+        	}
+        } else if (sdk == null) {
         	AndroidEnvironment androidEnv = AndworxFactory.instance().getAndroidEnvironment();
         	String hashString =  AndroidTargetHash.getTargetHashString(target);
         	while (true) {
@@ -47,6 +47,7 @@ import org.eclipse.andmore.internal.editors.AndroidXmlEditor;
 import org.eclipse.andmore.internal.editors.IconFactory;
 import org.eclipse.andmore.internal.editors.common.CommonXmlEditor;
 import org.eclipse.andmore.internal.editors.layout.gle2.IncludeFinder;
+import org.eclipse.andmore.internal.editors.manifest.ManifestInfo;
 import org.eclipse.andmore.internal.launch.AndroidLaunchController;
 import org.eclipse.andmore.internal.lint.LintDeltaProcessor;
 import org.eclipse.andmore.internal.preferences.AdtPrefs;
@@ -1491,6 +1492,7 @@ public class AndmoreAndroidPlugin extends AbstractUIPlugin implements ILogger {
             try {
                 setupEditors(mResourceMonitor);
                 ResourceManager.setup(mResourceMonitor);
+                ManifestInfo.setupMonitor(mResourceMonitor);
                 LintDeltaProcessor.startListening(mResourceMonitor);
             } catch (Throwable t) {
                 log(t, "ResourceManager.setup failed"); //$NON-NLS-1$
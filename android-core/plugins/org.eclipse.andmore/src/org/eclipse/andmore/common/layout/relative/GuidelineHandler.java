@@ -63,10 +63,13 @@ import com.android.ide.common.api.Segment;
 import com.android.ide.common.api.SegmentType;
 
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Collection;
 import java.util.Collections;
 import java.util.Comparator;
+import java.util.IdentityHashMap;
 import java.util.List;
+import java.util.Map;
 import java.util.Set;
 
 import org.eclipse.andmore.common.layout.BaseLayoutRule;
@@ -223,6 +226,13 @@ public class GuidelineHandler {
      */
     protected IClientRulesEngine mRulesEngine;
 
+    /** Lists of edges with more edges than this are searched through an index */
+    private static final int MIN_INDEXED_EDGES = 16;
+
+    /** The index of each list of edges, created the first time the list is searched */
+    private final Map<List<Segment>, EdgeIndex> mEdgeIndexes =
+            new IdentityHashMap<List<Segment>, EdgeIndex>();
+
     /**
      * Construct a new {@link GuidelineHandler} for the given relative layout.
      *
@@ -449,6 +459,10 @@ public class GuidelineHandler {
         int at = draggedEdge.at;
         int closestDelta = closest.size() > 0 ? closest.get(0).delta : Integer.MAX_VALUE;
         int closestDistance = abs(closestDelta);
+        if (edges.size() > MIN_INDEXED_EDGES) {
+            // Only the compatible edges which are the closest can end up in the matches
+            edges = findNearest(draggedEdge, edges, closestDistance);
+        }
         for (Segment edge : edges) {
             assert draggedEdge.edgeType.isHorizontal() == edge.edgeType.isHorizontal();
 
@@ -458,28 +472,11 @@ public class GuidelineHandler {
                 continue;
             }
 
-            if (!isEdgeTypeCompatible(edge.edgeType, draggedEdge.edgeType, delta)) {
-                continue;
-            }
-
-            boolean withParent = edge.node == layout;
-            ConstraintType type = ConstraintType.forMatch(withParent,
-                    draggedEdge.edgeType, edge.edgeType);
-            if (type == null) {
-                continue;
-            }
-
-            // Ensure that the edge match is compatible; for example, a "below"
-            // constraint can only apply to the margin bounds and a "bottom"
-            // constraint can only apply to the non-margin bounds.
-            if (type.relativeToMargin && edge.marginType == WITHOUT_MARGIN) {
-                continue;
-            } else if (!type.relativeToMargin && edge.marginType == WITH_MARGIN) {
+            Match match = createMatch(draggedEdge, edge, delta);
+            if (match == null) {
                 continue;
             }
 
-            Match match = new Match(this, edge, draggedEdge, type, delta);
-
             if (distance < closestDistance) {
                 closest.clear();
                 closestDistance = distance;
@@ -493,6 +490,125 @@ public class GuidelineHandler {
         }
     }
 
+    /**
+     * Creates a match between a dragged edge and the given edge, if they are compatible
+     *
+     * @return the match, or null
+     */
+    private Match createMatch(Segment draggedEdge, Segment edge, int delta) {
+        if (!isEdgeTypeCompatible(edge.edgeType, draggedEdge.edgeType, delta)) {
+            return null;
+        }
+
+        boolean withParent = edge.node == layout;
+        ConstraintType type = ConstraintType.forMatch(withParent,
+                draggedEdge.edgeType, edge.edgeType);
+        if (type == null) {
+            return null;
+        }
+
+        // Ensure that the edge match is compatible; for example, a "below"
+        // constraint can only apply to the margin bounds and a "bottom"
+        // constraint can only apply to the non-margin bounds.
+        if (type.relativeToMargin && edge.marginType == WITHOUT_MARGIN) {
+            return null;
+        } else if (!type.relativeToMargin && edge.marginType == WITH_MARGIN) {
+            return null;
+        }
+
+        return new Match(this, edge, draggedEdge, type, delta);
+    }
+
+    /**
+     * Returns the edges which are compatible with the dragged edge and closest to it, in
+     * their order in the given list. The edges are looked up in an index of the list
+     * sorted by position, rather than compared one by one, since the list can hold
+     * thousands of edges when the layout has many children.
+     *
+     * @param draggedEdge the dragged edge
+     * @param edges the edges to match the dragged edge with
+     * @param maxDistance the maximum distance of the edges
+     * @return the closest compatible edges, never null
+     */
+    private List<Segment> findNearest(Segment draggedEdge, List<Segment> edges,
+            int maxDistance) {
+        EdgeIndex index = mEdgeIndexes.get(edges);
+        if (index == null || index.size != edges.size()) {
+            index = new EdgeIndex(edges);
+            mEdgeIndexes.put(edges, index);
+        }
+
+        int at = draggedEdge.at;
+        int[] positions = index.positions;
+        int[] order = index.order;
+
+        // Walk outwards from the dragged edge, one distance at a time
+        int high = Arrays.binarySearch(positions, at);
+        if (high < 0) {
+            high = -high - 1;
+        } else {
+            while (high > 0 && positions[high - 1] == at) {
+                high--;
+            }
+        }
+        int low = high - 1;
+        List<Integer> nearest = new ArrayList<Integer>();
+        while (low >= 0 || high < positions.length) {
+            long distance = Math.min(
+                    low >= 0 ? (long) at - positions[low] : Long.MAX_VALUE,
+                    high < positions.length ? (long) positions[high] - at : Long.MAX_VALUE);
+            if (distance > maxDistance) {
+                break;
+            }
+
+            for (; low >= 0 && at - positions[low] == distance; low--) {
+                Segment edge = edges.get(order[low]);
+                if (createMatch(draggedEdge, edge, edge.at - at) != null) {
+                    nearest.add(order[low]);
+                }
+            }
+            for (; high < positions.length && positions[high] - at == distance; high++) {
+                Segment edge = edges.get(order[high]);
+                if (createMatch(draggedEdge, edge, edge.at - at) != null) {
+                    nearest.add(order[high]);
+                }
+            }
+
+            if (!nearest.isEmpty()) {
+                Collections.sort(nearest);
+                List<Segment> result = new ArrayList<Segment>(nearest.size());
+                for (int i : nearest) {
+                    result.add(edges.get(i));
+                }
+                return result;
+            }
+        }
+
+        return Collections.emptyList();
+    }
+
+    /** The positions of a list of edges in ascending order, with their index in the list */
+    private static final class EdgeIndex {
+        private final int size;
+        private final int[] positions;
+        private final int[] order;
+
+        private EdgeIndex(List<Segment> edges) {
+            size = edges.size();
+            long[] sorted = new long[size];
+            for (int i = 0; i < size; i++) {
+                sorted[i] = ((long) edges.get(i).at << 32) | i;
+            }
+            Arrays.sort(sorted);
+            positions = new int[size];
+            order = new int[size];
+            for (int i = 0; i < size; i++) {
+                positions[i] = (int) (sorted[i] >> 32);
+                order[i] = (int) sorted[i];
+            }
+        }
+    }
+
     protected void clearSuggestions() {
         mHorizontalSuggestions = mVerticalSuggestions = null;
         mCurrentLeftMatch = mCurrentRightMatch = null;
@@ -93,7 +93,7 @@ public class AttributeInfo implements IAttributeInfo {
         mFormats = info.mFormats;
         mEnumValues = info.mEnumValues;
         mFlagValues = info.mFlagValues;
-        mJavaDoc = info.mJavaDoc;
+        mJavaDoc = info.getJavaDoc();
         mDeprecatedDoc = info.mDeprecatedDoc;
     }
 
@@ -19,11 +19,16 @@ package org.eclipse.andmore.internal.build;
 import org.eclipse.andmore.AndmoreAndroidConstants;
 import org.eclipse.andmore.AndmoreAndroidPlugin;
 import org.eclipse.andmore.internal.project.BaseProjectHelper;
+import org.eclipse.andmore.internal.project.MarkerBatch;
 import org.eclipse.core.resources.IFile;
 import org.eclipse.core.resources.IMarker;
 import org.eclipse.core.resources.IProject;
 import org.eclipse.core.resources.IResource;
+import org.eclipse.core.resources.IWorkspace;
+import org.eclipse.core.resources.IWorkspaceRunnable;
+import org.eclipse.core.resources.ResourcesPlugin;
 import org.eclipse.core.runtime.CoreException;
+import org.eclipse.core.runtime.IProgressMonitor;
 import org.eclipse.jface.text.FindReplaceDocumentAdapter;
 import org.eclipse.jface.text.IDocument;
 import org.eclipse.jface.text.IRegion;
@@ -32,7 +37,10 @@ import org.eclipse.ui.editors.text.TextFileDocumentProvider;
 import org.eclipse.ui.texteditor.IDocumentProvider;
 
 import java.io.File;
+import java.util.Arrays;
+import java.util.HashMap;
 import java.util.List;
+import java.util.Map;
 import java.util.regex.Matcher;
 import java.util.regex.Pattern;
 
@@ -204,6 +212,25 @@ public final class AaptParser {
     private final static Pattern sXmlBlockPattern = Pattern.compile(
             "W/ResourceType\\(.*\\): Bad XML block: no root element node found"); //$NON-NLS-1$
 
+    /** The project containing the files to mark */
+    private final IProject mProject;
+    /** The root directory of the project, in OS specific format */
+    private final String mOsRoot;
+    /** Provider of the documents of the marked files, created on demand */
+    private IDocumentProvider mProvider;
+    /** The documents of the marked files, connected until the end of the parsing */
+    private final Map<IFile, IDocument> mDocuments = new HashMap<IFile, IDocument>();
+    /** Batch collecting the markers, or null to create them while parsing */
+    private final MarkerBatch mBatch;
+
+    private AaptParser(IProject project, MarkerBatch batch) {
+        mProject = project;
+        mBatch = batch;
+        // get the root of the project so that we can make IFile from full
+        // file path
+        mOsRoot = project.getLocation().toOSString();
+    }
+
     /**
      * Parse the output of aapt and mark the incorrect file with error markers
      *
@@ -211,45 +238,101 @@ public final class AaptParser {
      * @param project the project containing the file to mark
      * @return true if the parsing failed, false if success.
      */
-    public static boolean parseOutput(List<String> results, IProject project) {
-        int size = results.size();
-        if (size > 0) {
-            return parseOutput(results.toArray(new String[size]), project);
-        }
-
-        return false;
+    public static boolean parseOutput(String[] results, IProject project) {
+        return parseOutput(Arrays.asList(results), project);
     }
 
     /**
      * Parse the output of aapt and mark the incorrect file with error markers
+     * <p/>
+     * The markers are created in a single workspace operation, so that the workspace
+     * sends one notification for all of them, rather than one for each marker and
+     * marker attribute.
      *
      * @param results the output of aapt
      * @param project the project containing the file to mark
      * @return true if the parsing failed, false if success.
      */
-    public static boolean parseOutput(String[] results, IProject project) {
+    public static boolean parseOutput(final List<String> results, final IProject project) {
         // nothing to parse? just return false;
-        if (results.length == 0) {
+        if (results.isEmpty()) {
             return false;
         }
 
-        // get the root of the project so that we can make IFile from full
-        // file path
-        String osRoot = project.getLocation().toOSString();
+        final boolean[] failed = new boolean[1];
+        IWorkspaceRunnable runnable = new IWorkspaceRunnable() {
+            @Override
+            public void run(IProgressMonitor monitor) throws CoreException {
+                AaptParser parser = new AaptParser(project, null /*batch*/);
+                try {
+                    failed[0] = parser.parse(results);
+                } finally {
+                    parser.disconnect();
+                }
+            }
+        };
+        try {
+            ResourcesPlugin.getWorkspace().run(runnable, null /*rule*/,
+                    IWorkspace.AVOID_UPDATE, null /*monitor*/);
+        } catch (CoreException e) {
+            AndmoreAndroidPlugin.log(e, "Failed to mark aapt errors in %1$s", //$NON-NLS-1$
+                    project.getName());
+            return true;
+        }
+
+        return failed[0];
+    }
+
+    /**
+     * Parse the output of aapt and add error markers for the incorrect files to a batch.
+     * Unlike {@link #parseOutput(List, IProject)}, existing markers are not looked up:
+     * the batch keeps the ones which are reported again.
+     *
+     * @param results the output of aapt
+     * @param project the project containing the file to mark
+     * @param batch the batch collecting the markers, to be applied by the caller
+     * @return true if the parsing failed, false if success.
+     */
+    public static boolean parseOutput(List<String> results, IProject project,
+            MarkerBatch batch) {
+        if (results.isEmpty()) {
+            return false;
+        }
+
+        AaptParser parser = new AaptParser(project, batch);
+        try {
+            return parser.parse(results);
+        } finally {
+            parser.disconnect();
+        }
+    }
 
+    /**
+     * Parses the output of aapt in a single pass. A pattern is only matched against the
+     * lines which start with, or contain, its literal text.
+     *
+     * @param results the output of aapt
+     * @return true if the parsing failed, false if success.
+     */
+    private boolean parse(List<String> results) {
+        String osRoot = mOsRoot;
+        IProject project = mProject;
+        int size = results.size();
         Matcher m;
 
-        for (int i = 0; i < results.length ; i++) {
-            String p = results[i];
+        for (int i = 0; i < size; i++) {
+            String p = results.get(i);
+            boolean indented = !p.isEmpty() && Character.isWhitespace(p.charAt(0));
+            boolean hasColon = p.indexOf(':') > 0;
 
-            m = sPattern0Line1.matcher(p);
-            if (m.matches()) {
+            m = indented ? match(sPattern0Line1, p) : null;
+            if (m != null) {
                 // we ignore those (as this is an ignore message from aapt)
                 continue;
             }
 
-            m = sPattern1Line1.matcher(p);
-            if (m.matches()) {
+            m = p.startsWith("ERROR") ? match(sPattern1Line1, p) : null; //$NON-NLS-1$
+            if (m != null) {
                 String lineStr = m.group(1);
                 String msg = m.group(2);
 
@@ -270,15 +353,15 @@ public final class AaptParser {
             }
 
             // this needs to be tested before Pattern2 since they both start with 'ERROR:'
-            m = sPattern7Line1.matcher(p);
-            if (m.matches()) {
+            m = p.startsWith("ERROR:") ? match(sPattern7Line1, p) : null; //$NON-NLS-1$
+            if (m != null) {
                 String location = m.group(1);
                 String msg = p; // default msg is the line in case we don't find anything else
 
-                if (++i < results.length) {
-                    msg = results[i].trim();
-                    if (++i < results.length) {
-                        msg = msg + " - " + results[i].trim(); //$NON-NLS-1$
+                if (++i < size) {
+                    msg = results.get(i).trim();
+                    if (++i < size) {
+                        msg = msg + " - " + results.get(i).trim(); //$NON-NLS-1$
 
                         // skip the next line
                         i++;
@@ -295,8 +378,8 @@ public final class AaptParser {
                 continue;
             }
 
-            m =  sPattern2Line1.matcher(p);
-            if (m.matches()) {
+            m = p.startsWith("ERROR:") ? match(sPattern2Line1, p) : null; //$NON-NLS-1$
+            if (m != null) {
                 // get the msg
                 String msg = m.group(1);
 
@@ -317,8 +400,8 @@ public final class AaptParser {
                 continue;
             }
 
-            m = sPattern3Line1.matcher(p);
-            if (m.matches()) {
+            m = p.contains("line") ? match(sPattern3Line1, p) : null; //$NON-NLS-1$
+            if (m != null) {
                 String location = m.group(1);
                 String lineStr = m.group(2);
                 String msg = m.group(3);
@@ -333,8 +416,8 @@ public final class AaptParser {
                 continue;
             }
 
-            m = sPattern4Line1.matcher(p);
-            if (m.matches()) {
+            m = p.startsWith("Error") ? match(sPattern4Line1, p) : null; //$NON-NLS-1$
+            if (m != null) {
                 // get the filename.
                 String location = m.group(1);
 
@@ -357,8 +440,8 @@ public final class AaptParser {
                 continue;
             }
 
-            m = sPattern5Line1.matcher(p);
-            if (m.matches()) {
+            m = hasColon && p.contains("WARNING:") ? match(sPattern5Line1, p) : null; //$NON-NLS-1$
+            if (m != null) {
                 String location = m.group(1);
                 String lineStr = m.group(2);
                 String msg = m.group(3);
@@ -373,8 +456,8 @@ public final class AaptParser {
                 continue;
             }
 
-            m = sPattern6Line1.matcher(p);
-            if (m.matches()) {
+            m = hasColon ? match(sPattern6Line1, p) : null;
+            if (m != null) {
                 String location = m.group(1);
                 String lineStr = m.group(2);
                 String msg = m.group(3);
@@ -389,8 +472,9 @@ public final class AaptParser {
                 continue;
             }
 
-            m = sPattern8Line1.matcher(p);
-            if (m.matches()) {
+            m = p.startsWith("invalid resource directory name")
+                    ? match(sPattern8Line1, p) : null; //$NON-NLS-1$
+            if (m != null) {
                 String location = m.group(2);
                 String msg = m.group(1);
 
@@ -404,8 +488,9 @@ public final class AaptParser {
                 continue;
             }
 
-            m = sPattern9Line1.matcher(p);
-            if (m.matches()) {
+            m = p.startsWith("Invalid configuration:")
+                    ? match(sPattern9Line1, p) : null; //$NON-NLS-1$
+            if (m != null) {
                 String badConfig = m.group(1);
                 String msg = String.format("APK Configuration filter '%1$s' is invalid", badConfig);
 
@@ -422,8 +507,8 @@ public final class AaptParser {
                 continue;
             }
 
-            m = sNewSkippingPattern.matcher(p);
-            if (m.matches()) {
+            m = p.startsWith("    (skipping ") ? match(sNewSkippingPattern, p) : null; //$NON-NLS-1$
+            if (m != null) {
                 String location = m.group(1);
 
                 if (location.startsWith(".")         //$NON-NLS-1$
@@ -441,8 +526,8 @@ public final class AaptParser {
                 continue;
             }
 
-            m = sSkippingPattern.matcher(p);
-            if (m.matches()) {
+            m = p.startsWith("    (skipping ") ? match(sSkippingPattern, p) : null; //$NON-NLS-1$
+            if (m != null) {
                 String location = m.group(2);
 
                 // Certain files can safely be skipped without marking the project
@@ -464,12 +549,12 @@ public final class AaptParser {
                 continue;
             }
 
-            m = sXmlBlockPattern.matcher(p);
-            if (m.matches()) {
+            m = p.startsWith("W/ResourceType(") ? match(sXmlBlockPattern, p) : null; //$NON-NLS-1$
+            if (m != null) {
                 // W/ResourceType(12345): Bad XML block: no root element node found
                 // Sadly there's NO filename reference; this error typically describes the
                 // error *after* this line.
-                if (results.length == 1) {
+                if (size == 1) {
                     // This is the only error message: dump to console and quit
                     return true;
                 }
@@ -497,7 +582,7 @@ public final class AaptParser {
      *
      * @see IMarker
      */
-    private static final  boolean checkAndMark(String location, String lineStr,
+    private boolean checkAndMark(String location, String lineStr,
             String message, String root, IProject project, String markerId, int severity) {
         // check this is in fact a file
         if (location != null) {
@@ -542,6 +627,13 @@ public final class AaptParser {
             }
         }
 
+        // the batch drops the markers added twice, since aapt is launched twice, and
+        // reuses the identical existing markers
+        if (mBatch != null) {
+            mBatch.addMarker(f2, markerId, message, line, startOffset, endOffset, severity);
+            return true;
+        }
+
         // check if there's a similar marker already, since aapt is launched twice
         boolean markerAlreadyExists = false;
         try {
@@ -597,7 +689,7 @@ public final class AaptParser {
      * Given an aapt error message in a given file and a given (initial) line number,
      * return the corresponding offset range for the error, or null.
      */
-    private static IRegion findRange(IFile file, int line, String message) {
+    private IRegion findRange(IFile file, int line, String message) {
         Matcher matcher = sValueRangePattern.matcher(message);
         if (matcher.find()) {
             String property = matcher.group(1);
@@ -665,13 +757,11 @@ public final class AaptParser {
      * given line. If second is non null, also search for the second string starting at he
      * location of the first string.
      */
-    private static IRegion findRange(IFile file, int line, String first,
+    private IRegion findRange(IFile file, int line, String first,
             String second) {
         IRegion region = null;
-        IDocumentProvider provider = new TextFileDocumentProvider();
         try {
-            provider.connect(file);
-            IDocument document = provider.getDocument(file);
+            IDocument document = getDocument(file);
             if (document != null) {
                 IRegion lineInfo = document.getLineInformation(line - 1);
                 int lineStartOffset = lineInfo.getOffset();
@@ -694,18 +784,14 @@ public final class AaptParser {
             }
         } catch (Exception e) {
             AndmoreAndroidPlugin.log(e, "Can't find range information for %1$s", file.getName());
-        } finally {
-            provider.disconnect(file);
         }
         return region;
     }
 
     /** Returns the non-whitespace line range at the given line number. */
-    private static IRegion findLineTextRange(IFile file, int line) {
-        IDocumentProvider provider = new TextFileDocumentProvider();
+    private IRegion findLineTextRange(IFile file, int line) {
         try {
-            provider.connect(file);
-            IDocument document = provider.getDocument(file);
+            IDocument document = getDocument(file);
             if (document != null) {
                 IRegion lineInfo = document.getLineInformation(line - 1);
                 String lineContents = document.get(lineInfo.getOffset(), lineInfo.getLength());
@@ -731,8 +817,47 @@ public final class AaptParser {
             }
         } catch (Exception e) {
             AndmoreAndroidPlugin.log(e, "Can't find range information for %1$s", file.getName());
-        } finally {
-            provider.disconnect(file);
+        }
+
+        return null;
+    }
+
+    /**
+     * Returns the document of a file, connecting to it the first time it is needed, since
+     * many errors are usually reported in the same files
+     */
+    private IDocument getDocument(IFile file) throws CoreException {
+        if (mDocuments.containsKey(file)) {
+            return mDocuments.get(file);
+        }
+
+        if (mProvider == null) {
+            mProvider = new TextFileDocumentProvider();
+        }
+        mProvider.connect(file);
+        IDocument document = mProvider.getDocument(file);
+        mDocuments.put(file, document);
+        return document;
+    }
+
+    /** Disconnects from the documents of the marked files */
+    private void disconnect() {
+        for (IFile file : mDocuments.keySet()) {
+            mProvider.disconnect(file);
+        }
+        mDocuments.clear();
+    }
+
+    /**
+     * Returns the matcher of a pattern if it matches the whole line
+     * @param pattern The pattern to match
+     * @param line The line
+     * @return null if no match, the matcher otherwise.
+     */
+    private static Matcher match(Pattern pattern, String line) {
+        Matcher m = pattern.matcher(line);
+        if (m.matches()) {
+            return m;
         }
 
         return null;
@@ -740,26 +865,21 @@ public final class AaptParser {
 
     /**
      * Returns a matching matcher for the next line
-     * @param lines The array of lines
+     * @param lines The list of lines
      * @param nextIndex The index of the next line
      * @param pattern The pattern to match
      * @return null if error or no match, the matcher otherwise.
      */
-    private static final Matcher getNextLineMatcher(String[] lines,
+    private static final Matcher getNextLineMatcher(List<String> lines,
             int nextIndex, Pattern pattern) {
         // unless we can't, because we reached the last line
-        if (nextIndex == lines.length) {
+        if (nextIndex == lines.size()) {
             // we expected a 2nd line, so we flag as error
             // and we bail
             return null;
         }
 
-        Matcher m = pattern.matcher(lines[nextIndex]);
-        if (m.matches()) {
-           return m;
-        }
-
-        return null;
+        return match(pattern, lines.get(nextIndex));
     }
 
     private static IResource getResourceFromFullPath(String filename, String root,
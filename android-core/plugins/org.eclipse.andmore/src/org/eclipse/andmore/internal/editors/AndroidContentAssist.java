@@ -64,8 +64,6 @@ import org.eclipse.wst.sse.core.internal.provisional.IndexedRegion;
 import org.w3c.dom.Node;
 
 import java.util.ArrayList;
-import java.util.Arrays;
-import java.util.Comparator;
 import java.util.EnumSet;
 import java.util.HashMap;
 import java.util.List;
@@ -316,18 +314,8 @@ public abstract class AndroidContentAssist implements IContentAssistProcessor {
     /** Non-destructively sort a list of ElementDescriptors and return the result */
     protected static ElementDescriptor[] sort(ElementDescriptor[] elements) {
         if (elements != null && elements.length > 1) {
-            // Sort alphabetically. Must make copy to not destroy original.
-            ElementDescriptor[] copy = new ElementDescriptor[elements.length];
-            System.arraycopy(elements, 0, copy, 0, elements.length);
-
-            Arrays.sort(copy, new Comparator<ElementDescriptor>() {
-                @Override
-                public int compare(ElementDescriptor e1, ElementDescriptor e2) {
-                    return e1.getXmlLocalName().compareTo(e2.getXmlLocalName());
-                }
-            });
-
-            return copy;
+            // The order is computed once per list, see CompletionIndex
+            return CompletionIndex.get(elements).getSortedElements(elements);
         }
 
         return elements;
@@ -569,6 +557,10 @@ public abstract class AndroidContentAssist implements IContentAssistProcessor {
         Map<String, String> nsUriMap = new HashMap<String, String>();
         boolean haveLayoutParams = false;
 
+        if (CompletionIndex.isIndexable(choices)) {
+            choices = getIndexedMatches(choices, currentNode, wordPrefix, nsUriMap);
+        }
+
         for (Object choice : choices) {
             String keyword = null;
             String nsPrefix = null;
@@ -726,6 +718,38 @@ public abstract class AndroidContentAssist implements IContentAssistProcessor {
         }
     }
 
+    /**
+     * Looks up the descriptors which may match the given prefix in their completion index.
+     * The result is a superset of the descriptors accepted by {@link #nameStartsWith}, in
+     * their original order, so the proposals are the same as when checking all of them.
+     */
+    private static Object[] getIndexedMatches(Object[] choices, Node currentNode,
+            String wordPrefix, Map<String, String> nsUriMap) {
+        CompletionIndex index = CompletionIndex.get(choices);
+        String localPrefix = wordPrefix;
+        int colon = wordPrefix.indexOf(':');
+        if (colon != -1) {
+            if (!index.getNamespaceUris().isEmpty()) {
+                // Attribute names are indexed without their namespace prefix
+                localPrefix = wordPrefix.substring(colon + 1);
+            }
+        } else {
+            // A prefix of a namespace prefix, such as "andr", matches all its attributes
+            for (String nsUri : index.getNamespaceUris()) {
+                String nsPrefix = nsUriMap.get(nsUri);
+                if (nsPrefix == null) {
+                    nsPrefix = XmlUtils.lookupNamespacePrefix(currentNode, nsUri, false);
+                    nsUriMap.put(nsUri, nsPrefix);
+                }
+                if (nsPrefix != null && startsWith(nsPrefix + ':', wordPrefix)) {
+                    return index.getMatches(choices, ""); //$NON-NLS-1$
+                }
+            }
+        }
+
+        return index.getMatches(choices, localPrefix);
+    }
+
     /**
      * Returns true if the given word starts with the given prefix. The comparison is not
      * case sensitive.
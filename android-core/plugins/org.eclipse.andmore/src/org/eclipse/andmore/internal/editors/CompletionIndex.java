@@ -0,0 +1,237 @@
+/*
+ * Copyright (C) 2018 The Android Open Source Project
+ *
+ * Licensed under the Eclipse Public License, Version 1.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.eclipse.org/org/documents/epl-v10.php
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.eclipse.andmore.internal.editors;
+
+import static com.android.SdkConstants.ATTR_LAYOUT_RESOURCE_PREFIX;
+
+import com.android.annotations.NonNull;
+import com.android.annotations.Nullable;
+
+import org.eclipse.andmore.internal.editors.descriptors.AttributeDescriptor;
+import org.eclipse.andmore.internal.editors.descriptors.ElementDescriptor;
+import org.eclipse.andmore.internal.editors.descriptors.SeparatorAttributeDescriptor;
+import org.eclipse.andmore.internal.editors.descriptors.TextValueDescriptor;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Set;
+import java.util.WeakHashMap;
+
+/**
+ * Completion lookup tables derived from an array of element or attribute descriptors,
+ * shared by all the completions which offer the same array.
+ * <p/>
+ * The descriptor arrays come from the target data and stay the same until the target is
+ * reloaded, whereas completion runs on every keystroke. The index sorts the names once,
+ * in lower case, so that the choices matching a typed prefix are found with a binary search
+ * instead of comparing the prefix with every name. Names starting with "layout_" are also
+ * indexed without it, since {@link AndroidContentAssist#nameStartsWith} lets users omit it.
+ * <p/>
+ * Indexes are dropped when the descriptor array is no longer used. They are kept in a weak
+ * map keyed by that array, so they only hold names and positions in the array, never the
+ * array or its descriptors, and the callers pass the indexed array to each lookup.
+ */
+final class CompletionIndex {
+    private static final Map<Object[], CompletionIndex> sIndexes =
+            new WeakHashMap<Object[], CompletionIndex>();
+
+    /** The number of indexed choices */
+    private final int mSize;
+    /** The lower case names of the choices, sorted */
+    private final String[] mKeys;
+    /** For each of {@link #mKeys}, the position of its choice in the indexed array */
+    private final int[] mPositions;
+    /** The namespace URIs of the attribute choices */
+    private final Set<String> mNamespaceUris;
+    /** The positions of the element choices sorted by local name, computed on demand */
+    private int[] mSortedPositions;
+
+    private CompletionIndex(Object[] choices) {
+        mSize = choices.length;
+
+        final List<String> keys = new ArrayList<String>(choices.length);
+        final List<Integer> positions = new ArrayList<Integer>(choices.length);
+        Set<String> namespaceUris = new LinkedHashSet<String>();
+        for (int i = 0; i < choices.length; i++) {
+            String name = getName(choices[i]);
+            if (name == null) {
+                continue;
+            }
+            if (choices[i] instanceof AttributeDescriptor) {
+                String nsUri = ((AttributeDescriptor) choices[i]).getNamespaceUri();
+                if (nsUri != null) {
+                    namespaceUris.add(nsUri);
+                }
+            }
+            name = name.toLowerCase(Locale.US);
+            keys.add(name);
+            positions.add(i);
+            if (name.startsWith(ATTR_LAYOUT_RESOURCE_PREFIX)) {
+                keys.add(name.substring(ATTR_LAYOUT_RESOURCE_PREFIX.length()));
+                positions.add(i);
+            }
+        }
+
+        Integer[] order = new Integer[keys.size()];
+        for (int i = 0; i < order.length; i++) {
+            order[i] = i;
+        }
+        Arrays.sort(order, new Comparator<Integer>() {
+            @Override
+            public int compare(Integer i1, Integer i2) {
+                return keys.get(i1).compareTo(keys.get(i2));
+            }
+        });
+
+        mKeys = new String[order.length];
+        mPositions = new int[order.length];
+        for (int i = 0; i < order.length; i++) {
+            mKeys[i] = keys.get(order[i]);
+            mPositions[i] = positions.get(order[i]);
+        }
+        mNamespaceUris = Collections.unmodifiableSet(namespaceUris);
+    }
+
+    /**
+     * Returns the index of the given choices
+     *
+     * @param choices the element or attribute descriptors offered for completion
+     * @return the shared index, never null
+     */
+    @NonNull
+    static CompletionIndex get(@NonNull Object[] choices) {
+        synchronized (sIndexes) {
+            CompletionIndex index = sIndexes.get(choices);
+            if (index == null) {
+                index = new CompletionIndex(choices);
+                sIndexes.put(choices, index);
+            }
+            return index;
+        }
+    }
+
+    /**
+     * Returns true if the given choices can be indexed, which is the case for the
+     * descriptor arrays of the target data
+     *
+     * @param choices the choices offered for completion
+     * @return true if the choices are element or attribute descriptors
+     */
+    static boolean isIndexable(@Nullable Object[] choices) {
+        return choices instanceof ElementDescriptor[] || choices instanceof AttributeDescriptor[];
+    }
+
+    /**
+     * Returns a copy of the element choices sorted by local name. The order is computed
+     * once, so later calls only copy the array.
+     *
+     * @param elements the indexed element descriptors
+     * @return the sorted element descriptors
+     */
+    @NonNull
+    ElementDescriptor[] getSortedElements(@NonNull final ElementDescriptor[] elements) {
+        assert elements.length == mSize;
+        int[] sortedPositions;
+        synchronized (this) {
+            if (mSortedPositions == null) {
+                Integer[] order = new Integer[mSize];
+                for (int i = 0; i < order.length; i++) {
+                    order[i] = i;
+                }
+                Arrays.sort(order, new Comparator<Integer>() {
+                    @Override
+                    public int compare(Integer i1, Integer i2) {
+                        return elements[i1].getXmlLocalName().compareTo(
+                                elements[i2].getXmlLocalName());
+                    }
+                });
+                mSortedPositions = new int[mSize];
+                for (int i = 0; i < order.length; i++) {
+                    mSortedPositions[i] = order[i];
+                }
+            }
+            sortedPositions = mSortedPositions;
+        }
+
+        ElementDescriptor[] sorted = new ElementDescriptor[sortedPositions.length];
+        for (int i = 0; i < sorted.length; i++) {
+            sorted[i] = elements[sortedPositions[i]];
+        }
+        return sorted;
+    }
+
+    /**
+     * Returns the namespace URIs of the attribute choices
+     *
+     * @return a read-only set of namespace URIs, empty for elements
+     */
+    @NonNull
+    Set<String> getNamespaceUris() {
+        return mNamespaceUris;
+    }
+
+    /**
+     * Returns the choices whose name, or name without its "layout_" prefix, starts with
+     * the given prefix, ignoring case. The choices keep their original order.
+     *
+     * @param choices the indexed choices
+     * @param prefix the local name prefix, without any namespace prefix
+     * @return the matching choices, which is the indexed array itself for an empty prefix
+     */
+    @NonNull
+    Object[] getMatches(@NonNull Object[] choices, @NonNull String prefix) {
+        assert choices.length == mSize;
+        if (prefix.isEmpty()) {
+            return choices;
+        }
+
+        String key = prefix.toLowerCase(Locale.US);
+        int start = Arrays.binarySearch(mKeys, key);
+        if (start < 0) {
+            start = -start - 1;
+        }
+        BitSet matches = new BitSet(mSize);
+        for (int i = start; i < mKeys.length && mKeys[i].startsWith(key); i++) {
+            matches.set(mPositions[i]);
+        }
+
+        Object[] result = new Object[matches.cardinality()];
+        for (int i = matches.nextSetBit(0), j = 0; i >= 0; i = matches.nextSetBit(i + 1)) {
+            result[j++] = choices[i];
+        }
+        return result;
+    }
+
+    @Nullable
+    private static String getName(Object choice) {
+        if (choice instanceof ElementDescriptor) {
+            return ((ElementDescriptor) choice).getXmlName();
+        } else if (choice instanceof TextValueDescriptor
+                || choice instanceof SeparatorAttributeDescriptor) {
+            return null;
+        } else if (choice instanceof AttributeDescriptor) {
+            return ((AttributeDescriptor) choice).getXmlLocalName();
+        }
+        return null;
+    }
+}
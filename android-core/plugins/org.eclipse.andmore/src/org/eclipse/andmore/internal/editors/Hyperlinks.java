@@ -78,6 +78,7 @@ import org.eclipse.andmore.internal.editors.manifest.ManifestEditor;
 import org.eclipse.andmore.internal.editors.manifest.ManifestInfo;
 import org.eclipse.andmore.internal.project.BaseProjectHelper;
 import org.eclipse.andmore.internal.resources.ResourceHelper;
+import org.eclipse.andmore.internal.resources.manager.AndroidSymbolIndex;
 import org.eclipse.andmore.internal.resources.manager.ProjectResources;
 import org.eclipse.andmore.internal.resources.manager.ResourceManager;
 import org.eclipse.andmore.internal.sdk.AndroidTargetData;
@@ -100,10 +101,12 @@ import org.eclipse.core.runtime.NullProgressMonitor;
 import org.eclipse.core.runtime.Path;
 import org.eclipse.jdt.core.Flags;
 import org.eclipse.jdt.core.ICodeAssist;
+import org.eclipse.jdt.core.ICompilationUnit;
 import org.eclipse.jdt.core.IJavaElement;
 import org.eclipse.jdt.core.IJavaProject;
 import org.eclipse.jdt.core.IMethod;
 import org.eclipse.jdt.core.IType;
+import org.eclipse.jdt.core.JavaCore;
 import org.eclipse.jdt.core.JavaModelException;
 import org.eclipse.jdt.core.search.IJavaSearchConstants;
 import org.eclipse.jdt.core.search.IJavaSearchScope;
@@ -645,9 +648,50 @@ public class Hyperlinks {
      * @return true if the method was opened, false otherwise
      */
     public static boolean openOnClickMethod(IProject project, String method) {
+        IType activityType = null;
+        IJavaProject javaProject = BaseProjectHelper.getJavaProject(project);
+        if (javaProject != null) {
+            try {
+                activityType = javaProject.findType(CLASS_ACTIVITY);
+            } catch (JavaModelException e) {
+                AndmoreAndroidPlugin.log(e, null);
+            }
+        }
+
+        // The symbol index knows which source files of the project declare a method
+        // which could be the handler, so try these before searching the Java index.
+        // The handler is called on the activity, so a matching method of another class
+        // is only opened if no activity declares one.
+        IMethod otherHandler = null;
+        for (IFile file : AndroidSymbolIndex.getInstance().findClickHandlers(project, method)) {
+            IJavaElement unit = JavaCore.create(file);
+            if (!(unit instanceof ICompilationUnit)) {
+                continue;
+            }
+            try {
+                for (IType type : ((ICompilationUnit) unit).getAllTypes()) {
+                    for (IMethod methodElement : type.getMethods()) {
+                        if (methodElement.getElementName().equals(method)
+                                && isClickHandler(methodElement)) {
+                            if (activityType == null || type.newSupertypeHierarchy(
+                                    new NullProgressMonitor()).contains(activityType)) {
+                                JavaUI.openInEditor(methodElement);
+                                return true;
+                            } else if (otherHandler == null) {
+                                otherHandler = methodElement;
+                            }
+                        }
+                    }
+                }
+            } catch (CoreException e) {
+                AndmoreAndroidPlugin.log(e, null);
+            }
+        }
+
         // Search for the method in the Java index, filtering by the required click handler
         // method signature (public and has a single View parameter), and narrowing the scope
-        // first to Activity classes, then to the whole workspace.
+        // first to Activity classes, then to the handler found by the symbol index, if any,
+        // then to the whole workspace.
         final AtomicBoolean success = new AtomicBoolean(false);
         SearchRequestor requestor = new SearchRequestor() {
             @Override
@@ -655,29 +699,17 @@ public class Hyperlinks {
                 Object element = match.getElement();
                 if (element instanceof IMethod) {
                     IMethod methodElement = (IMethod) element;
-                    String[] parameterTypes = methodElement.getParameterTypes();
-                    if (parameterTypes != null
-                            && parameterTypes.length == 1
-                            && ("Qandroid.view.View;".equals(parameterTypes[0]) //$NON-NLS-1$
-                                    || "QView;".equals(parameterTypes[0]))) {   //$NON-NLS-1$
-                        // Check that it's public
-                        if (Flags.isPublic(methodElement.getFlags())) {
-                            JavaUI.openInEditor(methodElement);
-                            success.getAndSet(true);
-                        }
+                    if (isClickHandler(methodElement)) {
+                        JavaUI.openInEditor(methodElement);
+                        success.getAndSet(true);
                     }
                 }
             }
         };
         try {
             IJavaSearchScope scope = null;
-            IType activityType = null;
-            IJavaProject javaProject = BaseProjectHelper.getJavaProject(project);
-            if (javaProject != null) {
-                activityType = javaProject.findType(CLASS_ACTIVITY);
-                if (activityType != null) {
-                    scope = SearchEngine.createHierarchyScope(activityType);
-                }
+            if (activityType != null) {
+                scope = SearchEngine.createHierarchyScope(activityType);
             }
             if (scope == null) {
                 scope = SearchEngine.createWorkspaceScope();
@@ -693,6 +725,10 @@ public class Hyperlinks {
             engine.search(pattern, participants, scope, requestor, new NullProgressMonitor());
 
             boolean ok = success.get();
+            if (!ok && otherHandler != null) {
+                JavaUI.openInEditor(otherHandler);
+                return true;
+            }
             if (!ok && activityType != null) {
                 // TODO: Create a project+dependencies scope and search only that scope
 
@@ -712,6 +748,16 @@ public class Hyperlinks {
         return false;
     }
 
+    /** Returns true if the method is public and has a single View parameter */
+    private static boolean isClickHandler(IMethod method) throws JavaModelException {
+        String[] parameterTypes = method.getParameterTypes();
+        return parameterTypes != null
+                && parameterTypes.length == 1
+                && ("Qandroid.view.View;".equals(parameterTypes[0]) //$NON-NLS-1$
+                        || "QView;".equals(parameterTypes[0]))     //$NON-NLS-1$
+                && Flags.isPublic(method.getFlags());
+    }
+
     /**
      * Returns the current configuration, if the associated UI editor has been initialized
      * and has an associated configuration
@@ -462,9 +462,24 @@ public class UiElementPullParser extends BasePullParser {
                 this, null);
     }
 
+    /**
+     * Returns true when the top node passed to the constructor is parsed as an element of
+     * its own, with its start and end tags, rather than as the document holding the
+     * elements to parse. This is used to inflate a single subtree of a layout.
+     *
+     * @return true if the top node is an element of the parsed layout
+     */
+    protected boolean isTopElement() {
+        return false;
+    }
+
     @Override
     public void onNextFromStartDocument() {
-        onNextFromStartTag();
+        if (isTopElement()) {
+            mParsingState = START_TAG;
+        } else {
+            onNextFromStartTag();
+        }
     }
 
     @Override
@@ -492,6 +507,11 @@ public class UiElementPullParser extends BasePullParser {
     public void onNextFromEndTag() {
         // look for a sibling. if no sibling, go back to the parent
         UiElementNode node = getCurrentNode();
+        if (node == mRoot) {
+            // end tag of a top element: nothing else to parse.
+            mParsingState = END_DOCUMENT;
+            return;
+        }
         node = node.getUiNextSibling();
         if (node != null) {
             // to go to the sibling, we need to remove the current node,
@@ -504,7 +524,7 @@ public class UiElementPullParser extends BasePullParser {
             pop();
 
             // we have only one element left (mRoot), then we're done with the document.
-            if (mNodeStack.size() == 1) {
+            if (mNodeStack.size() == 1 && !isTopElement()) {
                 mParsingState = END_DOCUMENT;
             } else {
                 mParsingState = END_TAG;
@@ -174,6 +174,14 @@ public class ConfigurationChooser extends Composite
     /** Dropdown for activities */
     private ToolItem mActivityCombo;
 
+    /** Picks the activity again once the activities were looked up in the background */
+    private final Runnable mActivitiesSearched = new Runnable() {
+        @Override
+        public void run() {
+            onActivitiesSearched();
+        }
+    };
+
     /** Dropdown for rendering targets */
     private ToolItem mTargetCombo;
 
@@ -1882,6 +1890,32 @@ public class ConfigurationChooser extends Composite
         }
     }
 
+    /**
+     * Called when the activities which were unknown when the layout was opened have been
+     * looked up. If one of them is the activity of the layout, selects it along with its
+     * theme, as if it had been known from the start.
+     */
+    private void onActivitiesSearched() {
+        if (isDisposed() || mEditedFile == null || mConfiguration.getActivity() != null) {
+            return;
+        }
+
+        String activity = getPreferredActivity(mEditedFile);
+        if (activity == null) {
+            return;
+        }
+        selectActivity(activity);
+
+        // See if there is a default theme assigned to this activity, and if so, use it
+        ManifestInfo manifest = ManifestInfo.get(mEditedFile.getProject());
+        ActivityAttributes attributes = manifest.getActivityAttributes(activity);
+        String preferred = attributes != null ? attributes.getTheme() : null;
+        if (preferred != null && !Objects.equal(preferred, mConfiguration.getTheme())) {
+            selectTheme(preferred);
+            onThemeChange();
+        }
+    }
+
     /**
      * Updates the locale combo.
      * This must be called from the UI thread.
@@ -1985,10 +2019,14 @@ public class ConfigurationChooser extends Composite
 
         String activity = ManifestInfo.guessActivity(project, layoutName, pkg);
 
-        if (activity == null) {
-            List<String> activities = ManifestInfo.getProjectActivities(project);
+        // On the UI thread, the activities may still be looked up in the background. Don't
+        // guess, and persist the guess, until they are known.
+        if (activity == null && !manifest.runWhenSearched(mActivitiesSearched)) {
+            List<String> activities = manifest.getKnownProjectActivities();
             if (activities.size() == 1) {
                 activity = activities.get(0);
+            } else {
+                manifest.runWhenSearched(mActivitiesSearched);
             }
         }
 
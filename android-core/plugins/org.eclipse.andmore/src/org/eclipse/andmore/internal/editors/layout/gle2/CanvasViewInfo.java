@@ -73,10 +73,10 @@ public class CanvasViewInfo implements IPropertySource {
      */
     public static final int SELECTION_MIN_SIZE = 6;
 
-    private final Rectangle mAbsRect;
-    private final Rectangle mSelectionRect;
+    private Rectangle mAbsRect;
+    private Rectangle mSelectionRect;
     private final String mName;
-    private final Object mViewObject;
+    private Object mViewObject;
     private final UiViewElementNode mUiViewNode;
     private CanvasViewInfo mParent;
     private ViewInfo mViewInfo;
@@ -100,6 +100,12 @@ public class CanvasViewInfo implements IPropertySource {
      */
     private List<CanvasViewInfo> mNodeSiblings;
 
+    /**
+     * Hash of the XML attributes of the node when this view was last rendered, used by
+     * {@link ViewHierarchyDiff} to tell which reused views have changed.
+     */
+    private int mSignature;
+
     /**
      * Constructs a {@link CanvasViewInfo} initialized with the given initial values.
      */
@@ -501,6 +507,62 @@ public class CanvasViewInfo implements IPropertySource {
         mExploded = exploded;
     }
 
+    /**
+     * Updates this view, reused from a previous render, with the results of a new render
+     * of the same view. The children are not updated.
+     *
+     * @param view the view of the new render
+     * @return true if the bounds of the view changed
+     */
+    boolean update(@NonNull CanvasViewInfo view) {
+        boolean moved = !mAbsRect.equals(view.mAbsRect)
+                || !mSelectionRect.equals(view.mSelectionRect);
+        mAbsRect = view.mAbsRect;
+        mSelectionRect = view.mSelectionRect;
+        mViewObject = view.mViewObject;
+        mViewInfo = view.mViewInfo;
+        mExploded = view.mExploded;
+        return moved;
+    }
+
+    /**
+     * Sets the parent of this view
+     *
+     * @param parent the new parent, or null for the root
+     */
+    void setParent(@Nullable CanvasViewInfo parent) {
+        mParent = parent;
+    }
+
+    /**
+     * Replaces the children of this view. The children should already have this view
+     * as their parent.
+     *
+     * @param children the new children
+     */
+    void setChildren(@NonNull List<CanvasViewInfo> children) {
+        mChildren.clear();
+        mChildren.addAll(children);
+    }
+
+    /**
+     * Returns the hash of the XML attributes this view was rendered with
+     *
+     * @return the hash of the attributes
+     */
+    int getSignature() {
+        return mSignature;
+    }
+
+    /**
+     * Sets the hash of the XML attributes this view was rendered with
+     *
+     * @param signature the hash of the attributes
+     */
+    void setSignature(int signature) {
+        mSignature = signature;
+    }
+
     /**
      * Returns the info represented as a {@link SimpleElement}.
      *
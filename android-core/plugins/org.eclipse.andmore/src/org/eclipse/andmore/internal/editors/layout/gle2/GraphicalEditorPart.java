@@ -599,6 +599,18 @@ public class GraphicalEditorPart extends EditorPart
         }
     }
 
+    /**
+     * Invoked by {@link LayoutCanvas} when a render reused the view infos of the previous
+     * one, with the changes made to them.
+     *
+     * @param diff the changes made by the render
+     */
+    void updateModel(ViewHierarchyDiff diff) {
+        if (mOutlinePage != null) {
+            mOutlinePage.updateModel(diff);
+        }
+    }
+
     /**
      * Listens to workbench selections that does NOT come from {@link LayoutEditorDelegate}
      * (those are generated by ourselves).
@@ -647,6 +659,7 @@ public class GraphicalEditorPart extends EditorPart
             mCanvasViewer.dispose();
             mCanvasViewer = null;
         }
+        RenderSessionPool.get().discardAll(this);
         super.dispose();
     }
 
@@ -1272,6 +1285,10 @@ public class GraphicalEditorPart extends EditorPart
         //
         // TODO find a way to really query whether the pane is visible, not just active.
 
+        if (mRulesEngine != null) {
+            mRulesEngine.preloadRules(getModel());
+        }
+
         if (mEditorDelegate.isGraphicalEditorActive()) {
             recomputeLayout();
         } else {
@@ -1589,7 +1606,7 @@ public class GraphicalEditorPart extends EditorPart
             .setRenderingMode(renderingMode)
             .setIncludedWithin(mIncludedWithin)
             .setNodesToExpand(explodeNodes)
-            .createRenderSession();
+            .createPooledRenderSession(canvas.getViewHierarchy().getSession());
 
         boolean layoutlib5 = layoutLib.supports(Features.EMBEDDED_LAYOUT);
         canvas.setSession(session, explodeNodes, layoutlib5);
@@ -1738,6 +1755,9 @@ public class GraphicalEditorPart extends EditorPart
         // because it stores a reference to the layout library which could have changed.
         mProjectCallback = null;
 
+        // The pooled sessions use the old layout library
+        RenderSessionPool.get().discardAll(this);
+
         // FIXME: get rid of the current LayoutScene if any.
     }
 
@@ -52,8 +52,12 @@ import org.eclipse.core.resources.IMarker;
 import org.eclipse.core.resources.IProject;
 import org.eclipse.core.resources.IResource;
 import org.eclipse.core.runtime.CoreException;
+import org.eclipse.core.runtime.IPath;
+import org.eclipse.core.runtime.IProgressMonitor;
 import org.eclipse.core.runtime.IStatus;
 import org.eclipse.core.runtime.QualifiedName;
+import org.eclipse.core.runtime.Status;
+import org.eclipse.core.runtime.jobs.Job;
 import org.eclipse.swt.widgets.Display;
 import org.eclipse.wst.sse.core.StructuredModelManager;
 import org.eclipse.wst.sse.core.internal.provisional.IModelManager;
@@ -64,6 +68,14 @@ import org.w3c.dom.Element;
 import org.w3c.dom.Node;
 import org.w3c.dom.NodeList;
 
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
 import java.util.ArrayList;
 import java.util.Collection;
 import java.util.Collections;
@@ -77,13 +89,29 @@ import java.util.Set;
 /**
  * The include finder finds other XML files that are including a given XML file, and does
  * so efficiently (caching results across IDE sessions etc).
+ * <p/>
+ * The include graph is stored in a binary index in the working location of the project,
+ * along with the modification stamp of each layout it was computed from, such that only
+ * the layouts which changed since the index was saved are parsed again.
  */
 @SuppressWarnings("restriction") // XML model
 public class IncludeFinder {
-    /** Qualified name for the per-project persistent property include-map */
+    /**
+     * Qualified name for the per-project persistent property include-map, which was
+     * replaced by the {@link #INDEX_FILE}
+     */
     private final static QualifiedName CONFIG_INCLUDES = new QualifiedName(AndmoreAndroidConstants.ANDMORE_ID,
             "includes");//$NON-NLS-1$
 
+    /** Name of the include index file, in the working location of the project */
+    private final static String INDEX_FILE = "includes.bin"; //$NON-NLS-1$
+
+    /** Version of the format of the {@link #INDEX_FILE} */
+    private final static int INDEX_VERSION = 1;
+
+    /** Delay before the include index is saved after a change, in ms */
+    private final static long SAVE_DELAY = 2000;
+
     /**
      * Qualified name for the per-project non-persistent property storing the
      * {@link IncludeFinder} for this project
@@ -103,6 +131,15 @@ public class IncludeFinder {
      */
     private Map<String, List<String>> mIncludedBy = null;
 
+    /** Modification stamps of the layouts the includes were read from */
+    private Map<String, Long> mStamps = null;
+
+    /** Layouts for which an include cycle was reported */
+    private final Set<String> mCycles = new HashSet<String>();
+
+    /** Job saving the include index */
+    private Job mSaveJob;
+
     /** Flag set during a refresh; ignore updates when this is true */
     private static boolean sRefreshing;
 
@@ -152,7 +189,7 @@ public class IncludeFinder {
      * @param includer the resource name to return included layouts for
      * @return the layouts included by the given resource
      */
-    private List<String> getIncludesFrom(String includer) {
+    private synchronized List<String> getIncludesFrom(String includer) {
         ensureInitialized();
 
         return mIncludes.get(includer);
@@ -165,7 +202,7 @@ public class IncludeFinder {
      * @return the files that are including the given file, or null or empty
      */
     @Nullable
-    public List<Reference> getIncludedBy(IResource included) {
+    public synchronized List<Reference> getIncludedBy(IResource included) {
         ensureInitialized();
         String mapKey = getMapKey(included);
         List<String> result = mIncludedBy.get(mapKey);
@@ -194,7 +231,7 @@ public class IncludeFinder {
      * @param included the resource to check
      * @return true if the file is included by some other layout
      */
-    public boolean isIncluded(IResource included) {
+    public synchronized boolean isIncluded(IResource included) {
         ensureInitialized();
         String mapKey = getMapKey(included);
         List<String> result = mIncludedBy.get(mapKey);
@@ -208,26 +245,30 @@ public class IncludeFinder {
         return result != null && result.size() > 0;
     }
 
+    /**
+     * Returns a copy of the layouts including the given layout, such that it can be read
+     * while the include graph is updated
+     */
     @VisibleForTesting
-    /* package */ List<String> getIncludedBy(String included) {
+    /* package */ synchronized List<String> getIncludedBy(String included) {
         ensureInitialized();
-        return mIncludedBy.get(included);
+        List<String> result = mIncludedBy.get(included);
+        return result != null ? new ArrayList<String>(result) : null;
     }
 
     /** Initialize the inclusion data structures, if not already done */
-    private void ensureInitialized() {
+    private synchronized void ensureInitialized() {
         if (mIncludes == null) {
-            // Initialize
-            if (!readSettings()) {
-                // Couldn't read settings: probably the first time this code is running
-                // so there is no known data about includes.
-
-                // Yes, these should be multimaps! If we start using Guava replace
-                // these with multimaps.
-                mIncludes = new HashMap<String, List<String>>();
-                mIncludedBy = new HashMap<String, List<String>>();
-
-                scanProject();
+            // Yes, these should be multimaps! If we start using Guava replace
+            // these with multimaps.
+            mIncludes = new HashMap<String, List<String>>();
+            mIncludedBy = new HashMap<String, List<String>>();
+            mStamps = new HashMap<String, Long>();
+
+            // Start from the includes known at the end of the last session, if any, and
+            // parse the layouts which changed since then
+            readIndex();
+            if (scanProject()) {
                 saveSettings();
             }
         }
@@ -236,199 +277,214 @@ public class IncludeFinder {
     // ----- Persistence -----
 
     /**
-     * Create a String serialization of the includes map. The map attempts to be compact;
-     * it strips out the @layout/ prefix, and eliminates the values for empty string
-     * values. The map can be restored by calling {@link #decodeMap}. The encoded String
-     * will have sorted keys.
+     * Returns the file storing the include index of the project
      *
-     * @param map the map to be serialized
-     * @return a serialization (never null) of the given map
+     * @return the file, or null if the project has no working location
      */
-    @VisibleForTesting
-    public static String encodeMap(Map<String, List<String>> map) {
-        StringBuilder sb = new StringBuilder();
-
-        if (map != null) {
-            // Process the keys in sorted order rather than just
-            // iterating over the entry set to ensure stable output
-            List<String> keys = new ArrayList<String>(map.keySet());
-            Collections.sort(keys);
-            for (String key : keys) {
-                List<String> values = map.get(key);
-
-                if (sb.length() > 0) {
-                    sb.append(',');
-                }
-                sb.append(key);
-                if (values.size() > 0) {
-                    sb.append('=').append('>');
-                    sb.append('{');
-                    boolean first = true;
-                    for (String value : values) {
-                        if (first) {
-                            first = false;
-                        } else {
-                            sb.append(',');
-                        }
-                        sb.append(value);
-                    }
-                    sb.append('}');
-                }
-            }
+    @Nullable
+    private File getIndexFile() {
+        if (mProject == null || !mProject.isOpen()) {
+            return null;
         }
-
-        return sb.toString();
+        IPath location = mProject.getWorkingLocation(AndmoreAndroidConstants.ANDMORE_ID);
+        return location != null ? location.append(INDEX_FILE).toFile() : null;
     }
 
     /**
-     * Decodes the encoding (produced by {@link #encodeMap}) back into the original map,
-     * modulo any key sorting differences.
-     *
-     * @param encoded an encoding of a map created by {@link #encodeMap}
-     * @return a map corresponding to the encoded values, never null
+     * Schedules saving the include index in the working location of the project. Saves
+     * are delayed such that a burst of changes is written once.
      */
-    @VisibleForTesting
-    public static Map<String, List<String>> decodeMap(String encoded) {
-        HashMap<String, List<String>> map = new HashMap<String, List<String>>();
-
-        if (encoded.length() > 0) {
-            int i = 0;
-            int end = encoded.length();
-
-            while (i < end) {
-
-                // Find key range
-                int keyBegin = i;
-                int keyEnd = i;
-                while (i < end) {
-                    char c = encoded.charAt(i);
-                    if (c == ',') {
-                        break;
-                    } else if (c == '=') {
-                        i += 2; // Skip =>
-                        break;
-                    }
-                    i++;
-                    keyEnd = i;
+    private synchronized void saveSettings() {
+        if (mProject == null) {
+            return;
+        }
+        if (mSaveJob == null) {
+            mSaveJob = new Job("Save layout include index") {
+                @Override
+                protected IStatus run(IProgressMonitor monitor) {
+                    writeIndex();
+                    return Status.OK_STATUS;
                 }
+            };
+            mSaveJob.setSystem(true);
+        }
+        mSaveJob.schedule(SAVE_DELAY);
+    }
 
-                List<String> values = new ArrayList<String>();
-                // Find values
-                if (i < end && encoded.charAt(i) == '{') {
-                    i++;
-                    while (i < end) {
-                        int valueBegin = i;
-                        int valueEnd = i;
-                        char c = 0;
-                        while (i < end) {
-                            c = encoded.charAt(i);
-                            if (c == ',' || c == '}') {
-                                valueEnd = i;
-                                break;
-                            }
-                            i++;
-                        }
-                        if (valueEnd > valueBegin) {
-                            values.add(encoded.substring(valueBegin, valueEnd));
-                        }
-
-                        if (c == '}') {
-                            if (i < end-1 && encoded.charAt(i+1) == ',') {
-                                i++;
-                            }
-                            break;
-                        }
-                        assert c == ',';
-                        i++;
-                    }
-                }
+    /** Writes the include index, see {@link #writeIndex(File)} */
+    private void writeIndex() {
+        File file = getIndexFile();
+        if (file == null || !writeIndex(file)) {
+            return;
+        }
 
-                String key = encoded.substring(keyBegin, keyEnd);
-                map.put(key, values);
-                i++;
+        // The include map used to be stored in a persistent property
+        try {
+            if (mProject.getPersistentProperty(CONFIG_INCLUDES) != null) {
+                mProject.setPersistentProperty(CONFIG_INCLUDES, null);
             }
+        } catch (CoreException e) {
+            AndmoreAndroidPlugin.log(e, "Can't store include settings");
         }
-
-        return map;
     }
 
     /**
-     * Stores the settings in the persistent project storage.
+     * Writes the include index into the given file. The index is made of a table of the
+     * layout names, followed by the modification stamp and the included layouts of each
+     * layout, as indices in the table.
+     *
+     * @param file the index file
+     * @return true if the index was written
      */
-    private void saveSettings() {
-        // Serialize the mIncludes map into a compact String. The mIncludedBy map can be
-        // inferred from it.
-        String encoded = encodeMap(mIncludes);
+    private synchronized boolean writeIndex(File file) {
+        if (mIncludes == null) {
+            return false;
+        }
 
+        Map<String, Integer> indices = new HashMap<String, Integer>(2 * mIncludes.size());
+        List<String> names = new ArrayList<String>(mIncludes.size());
+        for (Map.Entry<String, List<String>> entry : mIncludes.entrySet()) {
+            addName(entry.getKey(), names, indices);
+            for (String included : entry.getValue()) {
+                addName(included, names, indices);
+            }
+        }
+
+        File temp = new File(file.getPath() + ".tmp"); //$NON-NLS-1$
         try {
-            if (encoded.length() >= 2048) {
-                // The maximum length of a setting key is 2KB, according to the javadoc
-                // for the project class. It's unlikely that we'll
-                // hit this -- even with an average layout root name of 20 characters
-                // we can still store over a hundred names. But JUST IN CASE we run
-                // into this, we'll clear out the key in this name which means that the
-                // information will need to be recomputed in the next IDE session.
-                mProject.setPersistentProperty(CONFIG_INCLUDES, null);
-            } else {
-                String existing = mProject.getPersistentProperty(CONFIG_INCLUDES);
-                if (!encoded.equals(existing)) {
-                    mProject.setPersistentProperty(CONFIG_INCLUDES, encoded);
+            DataOutputStream out = new DataOutputStream(new BufferedOutputStream(
+                    new FileOutputStream(temp)));
+            try {
+                out.writeInt(INDEX_VERSION);
+                out.writeInt(names.size());
+                for (String name : names) {
+                    out.writeUTF(name);
+                }
+                out.writeInt(mIncludes.size());
+                for (Map.Entry<String, List<String>> entry : mIncludes.entrySet()) {
+                    String includer = entry.getKey();
+                    Long stamp = mStamps.get(includer);
+                    out.writeInt(indices.get(includer));
+                    out.writeLong(stamp != null ? stamp.longValue() : IResource.NULL_STAMP);
+                    List<String> included = entry.getValue();
+                    out.writeInt(included.size());
+                    for (String name : included) {
+                        out.writeInt(indices.get(name));
+                    }
                 }
+            } finally {
+                out.close();
             }
-        } catch (CoreException e) {
+            if (file.exists() && !file.delete() || !temp.renameTo(file)) {
+                throw new IOException("Can't replace " + file); //$NON-NLS-1$
+            }
+            return true;
+        } catch (IOException e) {
             AndmoreAndroidPlugin.log(e, "Can't store include settings");
+            temp.delete();
+            return false;
+        }
+    }
+
+    private static void addName(String name, List<String> names, Map<String, Integer> indices) {
+        if (!indices.containsKey(name)) {
+            indices.put(name, names.size());
+            names.add(name);
         }
     }
 
     /**
-     * Reads previously stored settings from the persistent project storage
+     * Reads the include index saved by {@link #writeIndex}
      *
-     * @return true iff settings were restored from the project
+     * @return true iff the index was restored
      */
-    private boolean readSettings() {
-        try {
-            String encoded = mProject.getPersistentProperty(CONFIG_INCLUDES);
-            if (encoded != null) {
-                mIncludes = decodeMap(encoded);
+    private boolean readIndex() {
+        File file = getIndexFile();
+        if (file == null || !file.isFile()) {
+            return false;
+        }
 
-                // Set up a reverse map, pointing from included files to the files that
-                // included them
-                mIncludedBy = new HashMap<String, List<String>>(2 * mIncludes.size());
-                for (Map.Entry<String, List<String>> entry : mIncludes.entrySet()) {
-                    // File containing the <include>
-                    String includer = entry.getKey();
-                    // Files being <include>'ed by the above file
-                    List<String> included = entry.getValue();
+        try {
+            DataInputStream in = new DataInputStream(new BufferedInputStream(
+                    new FileInputStream(file)));
+            try {
+                if (in.readInt() != INDEX_VERSION) {
+                    return false;
+                }
+                String[] names = new String[in.readInt()];
+                for (int i = 0; i < names.length; i++) {
+                    names[i] = in.readUTF();
+                }
+                for (int i = 0, n = in.readInt(); i < n; i++) {
+                    String includer = readName(in, names);
+                    long stamp = in.readLong();
+                    int count = in.readInt();
+                    List<String> included = new ArrayList<String>(count);
+                    for (int j = 0; j < count; j++) {
+                        included.add(readName(in, names));
+                    }
+                    mIncludes.put(includer, included);
+                    mStamps.put(includer, stamp);
                     setIncludedBy(includer, included);
                 }
-
-                return true;
+            } finally {
+                in.close();
             }
-        } catch (CoreException e) {
+            return true;
+        } catch (IOException e) {
             AndmoreAndroidPlugin.log(e, "Can't read include settings");
+            mIncludes.clear();
+            mIncludedBy.clear();
+            mStamps.clear();
+            return false;
         }
+    }
 
-        return false;
+    private static String readName(DataInputStream in, String[] names) throws IOException {
+        int index = in.readInt();
+        if (index < 0 || index >= names.length) {
+            throw new IOException("Corrupt include index"); //$NON-NLS-1$
+        }
+        return names[index];
     }
 
     // ----- File scanning -----
 
     /**
-     * Scan the whole project for XML layout resources that are performing includes.
+     * Scan the project for XML layout resources that are performing includes. Only the
+     * layouts whose modification stamp differs from the one in the index are parsed.
+     *
+     * @return true if the includes of some layout changed
      */
-    private void scanProject() {
+    private boolean scanProject() {
+        boolean changed = false;
         ProjectResources resources = ResourceManager.getInstance().getProjectResources(mProject);
         if (resources != null) {
+            Set<String> keys = new HashSet<String>();
             Collection<ResourceItem> layouts = resources.getResourceItemsOfType(LAYOUT);
             for (ResourceItem layout : layouts) {
                 List<ResourceFile> sources = layout.getSourceFileList();
                 for (ResourceFile source : sources) {
-                    updateFileIncludes(source, false);
+                    String key = getMapKey(source);
+                    keys.add(key);
+                    Long stamp = mStamps.get(key);
+                    long current = source.getFile().getModificationStamp();
+                    if (stamp == null || stamp.longValue() != current
+                            || current == IResource.NULL_STAMP) {
+                        changed |= updateFileIncludes(source, false);
+                    }
                 }
             }
 
-            return;
+            // Forget the layouts which were deleted since the index was saved
+            for (String key : new ArrayList<String>(mIncludes.keySet())) {
+                if (!keys.contains(key)) {
+                    changed |= removeIncludes(key, false);
+                }
+            }
         }
+
+        return changed;
     }
 
     /**
@@ -439,17 +495,25 @@ public class IncludeFinder {
      *            have to be only layout XML files; this method will filter the type)
      * @param singleUpdate true if this is a single file being updated, false otherwise
      *            (e.g. during initial project scanning)
-     * @return true if we updated the includes for the resource file
+     * @return true if the set of layouts included by the resource file changed
      */
-    private boolean updateFileIncludes(ResourceFile resourceFile, boolean singleUpdate) {
+    private synchronized boolean updateFileIncludes(ResourceFile resourceFile,
+            boolean singleUpdate) {
         Collection<ResourceType> resourceTypes = resourceFile.getResourceTypes();
         for (ResourceType type : resourceTypes) {
             if (type == ResourceType.LAYOUT) {
                 ensureInitialized();
 
+                String key = getMapKey(resourceFile);
+                IAbstractFile abstractFile = resourceFile.getFile();
+                if (!abstractFile.exists()) {
+                    return removeIncludes(key, singleUpdate);
+                }
+                mStamps.put(key, abstractFile.getModificationStamp());
+
                 List<String> includes = Collections.emptyList();
-                if (resourceFile.getFile() instanceof IFileWrapper) {
-                    IFile file = ((IFileWrapper) resourceFile.getFile()).getIFile();
+                if (abstractFile instanceof IFileWrapper) {
+                    IFile file = ((IFileWrapper) abstractFile).getIFile();
 
                     // See if we have an existing XML model for this file; if so, we can
                     // just look directly at the parse tree
@@ -486,8 +550,13 @@ public class IncludeFinder {
                     }
                 }
 
-                String key = getMapKey(resourceFile);
-                if (includes.equals(getIncludesFrom(key))) {
+                List<String> oldIncludes = mIncludes.get(key);
+                if (oldIncludes == null && includes.isEmpty()) {
+                    // Remember the layout such that its stamp is kept in the index
+                    mIncludes.put(key, includes);
+                    return false;
+                }
+                if (oldIncludes != null && sameIncludes(oldIncludes, includes)) {
                     // Common case -- so avoid doing settings flush etc
                     return false;
                 }
@@ -506,6 +575,40 @@ public class IncludeFinder {
         return false;
     }
 
+    /**
+     * Removes a layout which no longer exists from the include graph
+     *
+     * @param key the map key of the layout
+     * @param singleUpdate true if this is a single file being updated, false otherwise
+     * @return true if the layout was including other layouts
+     */
+    private boolean removeIncludes(String key, boolean singleUpdate) {
+        mStamps.remove(key);
+        List<String> oldIncludes = mIncludes.get(key);
+        if (oldIncludes == null) {
+            return false;
+        }
+
+        List<String> none = Collections.emptyList();
+        setIncluded(key, none, singleUpdate);
+        mIncludes.remove(key);
+        if (oldIncludes.isEmpty()) {
+            return false;
+        }
+        if (singleUpdate) {
+            saveSettings();
+        }
+        return true;
+    }
+
+    /** Returns true if the two lists name the same layouts, in any order */
+    private static boolean sameIncludes(List<String> a, List<String> b) {
+        if (a.equals(b)) {
+            return true;
+        }
+        return new HashSet<String>(a).equals(new HashSet<String>(b));
+    }
+
     /**
      * Finds the list of includes in the given XML content. It attempts quickly return
      * empty if the file does not include any include tags; it does this by only parsing
@@ -626,7 +729,9 @@ public class IncludeFinder {
     /* package */ void setIncluded(String includer, List<String> included, boolean detectCycles) {
         // Remove previously linked inverse mappings
         List<String> oldIncludes = mIncludes.get(includer);
+        boolean removedIncludes = false;
         if (oldIncludes != null && oldIncludes.size() > 0) {
+            removedIncludes = !included.containsAll(oldIncludes);
             for (String includee : oldIncludes) {
                 List<String> includers = mIncludedBy.get(includee);
                 if (includers != null) {
@@ -641,6 +746,15 @@ public class IncludeFinder {
 
         if (detectCycles) {
             detectCycles(includer);
+
+            // Removing includes can break the cycles found from other layouts
+            if (removedIncludes && !mCycles.isEmpty()) {
+                for (String from : new ArrayList<String>(mCycles)) {
+                    if (!from.equals(includer)) {
+                        detectCycles(from);
+                    }
+                }
+            }
         }
     }
 
@@ -733,9 +847,7 @@ public class IncludeFinder {
 
             IncludeFinder finder = get(project);
             if (finder != null) {
-                if (finder.updateFileIncludes(file, true)) {
-                    finder.saveSettings();
-                }
+                finder.updateFileIncludes(file, true);
             }
         }
 
@@ -751,12 +863,15 @@ public class IncludeFinder {
         // Perform DFS on the include graph and look for a cycle; if we find one, produce
         // a chain of includes on the way back to show to the user
         if (mIncludes.size() > 0) {
-            Set<String> visiting = new HashSet<String>(mIncludes.size());
-            String chain = dfs(from, visiting);
+            Set<String> visiting = new HashSet<String>();
+            Set<String> visited = new HashSet<String>();
+            String chain = dfs(from, visiting, visited);
             if (chain != null) {
+                mCycles.add(from);
                 addError(from, chain);
             } else {
                 // Is there an existing error for us to clean up?
+                mCycles.remove(from);
                 removeErrors(from);
             }
         }
@@ -765,7 +880,11 @@ public class IncludeFinder {
     /** Format to chain include cycles in: a=>b=>c=>d etc */
     private final String CHAIN_FORMAT = "%1$s=>%2$s"; //$NON-NLS-1$
 
-    private String dfs(String from, Set<String> visiting) {
+    /**
+     * Looks for a cycle reachable from the given layout. Layouts in {@code visited} were
+     * fully explored without finding a cycle, so each layout is explored once.
+     */
+    private String dfs(String from, Set<String> visiting, Set<String> visited) {
         visiting.add(from);
 
         List<String> includes = mIncludes.get(from);
@@ -774,7 +893,10 @@ public class IncludeFinder {
                 if (visiting.contains(include)) {
                     return String.format(CHAIN_FORMAT, from, include);
                 }
-                String chain = dfs(include, visiting);
+                if (visited.contains(include)) {
+                    continue;
+                }
+                String chain = dfs(include, visiting, visited);
                 if (chain != null) {
                     return String.format(CHAIN_FORMAT, from, chain);
                 }
@@ -782,6 +904,7 @@ public class IncludeFinder {
         }
 
         visiting.remove(from);
+        visited.add(from);
 
         return null;
     }
@@ -916,6 +1039,7 @@ public class IncludeFinder {
         IncludeFinder finder = new IncludeFinder(null);
         finder.mIncludes = new HashMap<String, List<String>>();
         finder.mIncludedBy = new HashMap<String, List<String>>();
+        finder.mStamps = new HashMap<String, Long>();
         return finder;
     }
 
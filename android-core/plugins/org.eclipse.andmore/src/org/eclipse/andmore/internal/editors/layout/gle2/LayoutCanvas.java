@@ -753,16 +753,26 @@ public class LayoutCanvas extends Canvas {
      */
     void setSession(RenderSession session, Set<UiElementNode> explodedNodes,
             boolean layoutlib5) {
-        // disable any hover
-        clearHover();
-
         mViewHierarchy.setSession(session, explodedNodes, layoutlib5);
+
+        // disable any hover, unless the hovered view is still there, unchanged
+        ViewHierarchyDiff diff = mViewHierarchy.getLastDiff();
+        if (diff == null || !diff.isUnchanged(mHoverViewInfo)) {
+            clearHover();
+            mHoverViewInfo = null;
+        }
+
         if (mViewHierarchy.isValid() && session != null) {
             Image image = mImageOverlay.setImage(session.getImage(),
                     session.isAlphaChannelImage());
 
-            mOutlinePage.setModel(mViewHierarchy.getRoot());
-            getGraphicalEditor().setModel(mViewHierarchy.getRoot());
+            if (diff != null && !diff.isRootReplaced()) {
+                mOutlinePage.updateModel(diff);
+                getGraphicalEditor().updateModel(diff);
+            } else {
+                mOutlinePage.setModel(mViewHierarchy.getRoot());
+                getGraphicalEditor().setModel(mViewHierarchy.getRoot());
+            }
 
             if (image != null) {
                 updateScrollBars();
@@ -0,0 +1,136 @@
+/*
+ * Copyright (C) 2018 The Android Open Source Project
+ *
+ * Licensed under the Eclipse Public License, Version 1.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.eclipse.org/org/documents/epl-v10.php
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.eclipse.andmore.internal.editors.layout.gle2;
+
+import com.android.annotations.NonNull;
+import com.android.annotations.Nullable;
+
+import org.eclipse.andmore.internal.editors.uimodel.UiElementNode;
+import org.w3c.dom.NamedNodeMap;
+import org.w3c.dom.Node;
+
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Snapshot of a {@link UiElementNode} tree as it was rendered: the tag and attributes of
+ * each node, and the identity of its children. The UI model updates its nodes in place
+ * when the XML is edited, so comparing the current tree with the snapshot tells which
+ * part of the layout has to be inflated again.
+ */
+final class LayoutFingerprint {
+    /** The state of a single node */
+    private static final class NodeState {
+        private final String mSignature;
+        private final UiElementNode[] mChildren;
+
+        NodeState(String signature, UiElementNode[] children) {
+            mSignature = signature;
+            mChildren = children;
+        }
+
+        boolean matches(UiElementNode node) {
+            List<UiElementNode> children = node.getUiChildren();
+            if (children.size() != mChildren.length) {
+                return false;
+            }
+            for (int i = 0; i < mChildren.length; i++) {
+                if (children.get(i) != mChildren[i]) {
+                    return false;
+                }
+            }
+            return mSignature.equals(getSignature(node));
+        }
+    }
+
+    private final UiElementNode mRoot;
+    private final Map<UiElementNode, NodeState> mStates =
+            new IdentityHashMap<UiElementNode, NodeState>();
+
+    /**
+     * Takes a snapshot of the given tree
+     *
+     * @param root the root of the tree, usually the document node of a layout
+     */
+    LayoutFingerprint(@NonNull UiElementNode root) {
+        mRoot = root;
+        add(root);
+    }
+
+    private void add(UiElementNode node) {
+        List<UiElementNode> children = node.getUiChildren();
+        mStates.put(node, new NodeState(getSignature(node),
+                children.toArray(new UiElementNode[children.size()])));
+        for (UiElementNode child : children) {
+            add(child);
+        }
+    }
+
+    /**
+     * Returns the smallest subtree which contains all the changes made to the tree since
+     * the snapshot was taken. This is the root of the tree when the snapshot was taken from
+     * another tree.
+     *
+     * @param root the current root of the tree
+     * @return the root of the changed subtree, or null if the tree did not change
+     */
+    @Nullable
+    UiElementNode findChangedNode(@NonNull UiElementNode root) {
+        if (root != mRoot) {
+            return root;
+        }
+        return findChange(root);
+    }
+
+    private UiElementNode findChange(UiElementNode node) {
+        NodeState state = mStates.get(node);
+        if (state == null || !state.matches(node)) {
+            return node;
+        }
+
+        UiElementNode change = null;
+        for (UiElementNode child : node.getUiChildren()) {
+            UiElementNode childChange = findChange(child);
+            if (childChange != null) {
+                if (change != null) {
+                    // Several children changed: the node has to be inflated again
+                    return node;
+                }
+                change = childChange;
+            }
+        }
+
+        return change;
+    }
+
+    /** Returns the tag and attributes of a node, as seen by the layout parser */
+    static String getSignature(UiElementNode node) {
+        StringBuilder sb = new StringBuilder(64);
+        sb.append(node.getDescriptor().getXmlLocalName());
+        Node xmlNode = node.getXmlNode();
+        NamedNodeMap attributes = xmlNode != null ? xmlNode.getAttributes() : null;
+        if (attributes != null) {
+            for (int i = 0, n = attributes.getLength(); i < n; i++) {
+                Node attribute = attributes.item(i);
+                sb.append('\n').append(attribute.getNamespaceURI());
+                sb.append(':').append(attribute.getNodeName());
+                sb.append('=').append(attribute.getNodeValue());
+            }
+        }
+        return sb.toString();
+    }
+}
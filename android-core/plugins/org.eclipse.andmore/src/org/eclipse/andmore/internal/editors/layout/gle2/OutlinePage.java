@@ -120,6 +120,7 @@ import org.w3c.dom.Element;
 import org.w3c.dom.Node;
 
 import com.android.SdkConstants;
+import com.android.annotations.NonNull;
 import com.android.annotations.VisibleForTesting;
 import com.android.ide.common.api.INode;
 import com.android.ide.common.api.InsertType;
@@ -569,6 +570,38 @@ public class OutlinePage extends ContentOutlinePage
         }
     }
 
+    /**
+     * Invoked by {@link LayoutCanvas} when a render reused the view infos of the previous
+     * one: only the parts of the tree which changed are refreshed, such that the outline
+     * keeps its items, expansion state and scroll position.
+     *
+     * @param diff the changes made by the render
+     */
+    void updateModel(@NonNull ViewHierarchyDiff diff) {
+        if (!mActive) {
+            return;
+        }
+
+        // The outline may not be showing the previous hierarchy, for example if it
+        // was inactive when it was rendered
+        CanvasViewInfo root = diff.getRoot();
+        if (mRootWrapper.getRoot() != root) {
+            setModel(root);
+            return;
+        }
+
+        TreeViewer tv = getTreeViewer();
+        if (tv != null && !tv.getTree().isDisposed()) {
+            for (CanvasViewInfo parent : diff.getChangedParents()) {
+                tv.refresh(parent, false);
+            }
+            List<CanvasViewInfo> updated = diff.getUpdatedViews();
+            if (!updated.isEmpty()) {
+                tv.update(updated.toArray(), null);
+            }
+        }
+    }
+
     /**
      * Returns the current tree viewer selection. Shouldn't be null,
      * although it can be {@link TreeSelection#EMPTY}.
@@ -106,6 +106,9 @@ import java.util.ArrayList;
 import java.util.Collection;
 import java.util.Collections;
 import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
 import java.util.Set;
@@ -250,6 +253,9 @@ public class PaletteControl extends Composite {
     private String mCurrentDevice;
     private IAndroidTarget mCurrentTarget;
     private AndroidTargetData mCurrentTargetData;
+    /** Items shown in place of the previews which are still being rendered */
+    private final Map<Control, ViewElementDescriptor> mPendingPreviews =
+            new LinkedHashMap<Control, ViewElementDescriptor>();
 
     /**
      * Create the composite.
@@ -416,6 +422,7 @@ public class PaletteControl extends Composite {
         for (Control c : getChildren()) {
             c.dispose();
         }
+        mPendingPreviews.clear();
 
         if (mPaletteMode == null) {
             loadPaletteMode();
@@ -614,6 +621,52 @@ public class PaletteControl extends Composite {
         return mEditor;
     }
 
+    /**
+     * Called by the {@link PreviewIconFactory} when the previews of a group of views have
+     * been rendered: replaces the items shown for these views in the meantime
+     */
+    /* package */ void previewIconsRendered() {
+        if (mPaletteMode == null || !mPaletteMode.isPreview()) {
+            return;
+        }
+
+        // On older platforms the palette colors are only known once the first group
+        // has been rendered
+        RGB background = mPreviewIconFactory.getBackgroundColor();
+        if (background != null
+                && (mBackground == null || !background.equals(mBackground.getRGB()))) {
+            refreshPalette();
+            return;
+        }
+
+        Set<Composite> parents = new HashSet<Composite>();
+        Iterator<Map.Entry<Control, ViewElementDescriptor>> iterator =
+                mPendingPreviews.entrySet().iterator();
+        List<Map.Entry<Control, ViewElementDescriptor>> rendered =
+                new ArrayList<Map.Entry<Control, ViewElementDescriptor>>();
+        while (iterator.hasNext()) {
+            Map.Entry<Control, ViewElementDescriptor> entry = iterator.next();
+            if (entry.getKey().isDisposed()) {
+                iterator.remove();
+            } else if (mPreviewIconFactory.getImageDescriptor(entry.getValue()) != null) {
+                rendered.add(entry);
+                iterator.remove();
+            }
+        }
+
+        for (Map.Entry<Control, ViewElementDescriptor> entry : rendered) {
+            Control placeholder = entry.getKey();
+            Composite parent = placeholder.getParent();
+            Control item = createItem(parent, entry.getValue());
+            item.moveAbove(placeholder);
+            placeholder.dispose();
+            parents.add(parent);
+        }
+        for (Composite parent : parents) {
+            parent.layout(true);
+        }
+    }
+
     private Control createItem(Composite parent, ViewElementDescriptor desc) {
         Control item = null;
         switch (mPaletteMode) {
@@ -663,6 +716,9 @@ public class PaletteControl extends Composite {
                         item.setForeground(mForeground);
                         item.setBackground(mBackground);
                     }
+                    if (mPreviewIconFactory.isRendering()) {
+                        mPendingPreviews.put(item, desc);
+                    }
                 }
                 break;
             }
@@ -150,6 +150,8 @@ public class PlayAnimationMenu extends SubmenuAction {
             if (viewObject != null) {
                 ViewHierarchy viewHierarchy = mCanvas.getViewHierarchy();
                 RenderSession session = viewHierarchy.getSession();
+                // The animation changes the views: the session can no longer be reused
+                RenderSessionPool.get().remove(session);
                 Result r = session.animate(viewObject, mAnimationName, mIsFrameworkAnim,
                         new IAnimationListener() {
                             private boolean mPendingDrawing = false;
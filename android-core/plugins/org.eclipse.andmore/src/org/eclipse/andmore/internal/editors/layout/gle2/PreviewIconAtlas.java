@@ -0,0 +1,257 @@
+/*
+ * Copyright (C) 2018 The Android Open Source Project
+ *
+ * Licensed under the Eclipse Public License, Version 1.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.eclipse.org/org/documents/epl-v10.php
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.eclipse.andmore.internal.editors.layout.gle2;
+
+import com.android.annotations.NonNull;
+import com.android.annotations.Nullable;
+
+import org.eclipse.andmore.AndmoreAndroidPlugin;
+import org.eclipse.swt.graphics.RGB;
+
+import java.io.BufferedOutputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * The palette preview icons of a combination of SDK, theme and device, stored in a single
+ * file which is memory mapped when it is read.
+ * <p/>
+ * The file starts with a header holding the format version, the revision of the rendering
+ * target and the palette colors, followed by the index of the icons and by the PNG data
+ * of the icons. An atlas which was written by another version of the format, or for
+ * another revision of the target, is ignored so that the icons are rendered again.
+ */
+class PreviewIconAtlas {
+    private static final int MAGIC = 0x50414c54; // "PALT"
+
+    /** Version of the file format; bump it to have all the previews rendered again */
+    private static final int VERSION = 1;
+
+    /** Size of an index entry with an empty name: name length, offset and length */
+    private static final int MIN_ENTRY_SIZE = 2 + 4 + 4;
+
+    private final RGB mBackground;
+    private final RGB mForeground;
+    private final Map<String, int[]> mIndex;
+    private final ByteBuffer mData;
+
+    private PreviewIconAtlas(RGB background, RGB foreground, Map<String, int[]> index,
+            ByteBuffer data) {
+        mBackground = background;
+        mForeground = foreground;
+        mIndex = index;
+        mData = data;
+    }
+
+    /**
+     * Returns the background color of the palette
+     *
+     * @return the background color
+     */
+    @NonNull
+    RGB getBackground() {
+        return mBackground;
+    }
+
+    /**
+     * Returns the foreground color of the palette
+     *
+     * @return the foreground color, or null
+     */
+    @Nullable
+    RGB getForeground() {
+        return mForeground;
+    }
+
+    /**
+     * Returns the PNG data of an icon
+     *
+     * @param name the name of the icon
+     * @return the PNG data, or null if there is no icon with this name
+     */
+    @Nullable
+    byte[] getIcon(@NonNull String name) {
+        int[] region = mIndex.get(name);
+        if (region == null) {
+            return null;
+        }
+        byte[] bytes = new byte[region[1]];
+        ByteBuffer data = mData.duplicate();
+        data.position(region[0]);
+        data.get(bytes);
+        return bytes;
+    }
+
+    /**
+     * Reads an atlas
+     *
+     * @param file the atlas file
+     * @param revision the revision of the rendering target
+     * @return the atlas, or null if the file doesn't exist, is corrupt or was written by
+     *         another version of the format or for another revision of the target
+     */
+    @Nullable
+    static PreviewIconAtlas read(@NonNull File file, int revision) {
+        if (!file.isFile()) {
+            return null;
+        }
+
+        try {
+            MappedByteBuffer buffer;
+            RandomAccessFile raf = new RandomAccessFile(file, "r"); //$NON-NLS-1$
+            try {
+                FileChannel channel = raf.getChannel();
+                buffer = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+            } finally {
+                raf.close();
+            }
+
+            if (buffer.getInt() != MAGIC || buffer.getInt() != VERSION
+                    || buffer.getInt() != revision) {
+                return null;
+            }
+            RGB background = ImageUtils.intToRgb(buffer.getInt());
+            RGB foreground = buffer.get() != 0 ? ImageUtils.intToRgb(buffer.getInt()) : null;
+
+            int count = buffer.getInt();
+            if (count < 0 || count > buffer.remaining() / MIN_ENTRY_SIZE) {
+                return null;
+            }
+            Map<String, int[]> index = new HashMap<String, int[]>(count * 2);
+            for (int i = 0; i < count; i++) {
+                byte[] name = new byte[buffer.getShort() & 0xFFFF];
+                buffer.get(name);
+                int offset = buffer.getInt();
+                int length = buffer.getInt();
+                index.put(new String(name, StandardCharsets.UTF_8), new int[] { offset, length });
+            }
+
+            ByteBuffer data = buffer.slice();
+            for (int[] region : index.values()) {
+                if (region[0] < 0 || region[1] < 0
+                        || (long) region[0] + region[1] > data.limit()) {
+                    return null;
+                }
+            }
+
+            return new PreviewIconAtlas(background, foreground, index, data);
+        } catch (IOException e) {
+            AndmoreAndroidPlugin.log(e, "Can't read palette previews %1$s", file);
+        } catch (BufferUnderflowException e) {
+            // Truncated file: render the previews again
+        } catch (IllegalArgumentException e) {
+            // Corrupt header, or a file too large to be mapped: render the previews again
+        }
+
+        return null;
+    }
+
+    /**
+     * Invalidates an atlas so that its previews are rendered again. The header of the file
+     * is overwritten rather than the file deleted, since the file may still be mapped by
+     * an atlas which was read earlier, and mapped files can't be deleted on some platforms.
+     *
+     * @param file the atlas file
+     */
+    static void invalidate(@NonNull File file) {
+        if (!file.isFile()) {
+            return;
+        }
+
+        try {
+            RandomAccessFile raf = new RandomAccessFile(file, "rw"); //$NON-NLS-1$
+            try {
+                raf.writeInt(0);
+            } finally {
+                raf.close();
+            }
+        } catch (IOException e) {
+            AndmoreAndroidPlugin.log(e, "Can't invalidate palette previews %1$s", file);
+        }
+    }
+
+    /**
+     * Writes an atlas. The atlas is written to a temporary file which then replaces the
+     * existing atlas, if any.
+     *
+     * @param file the atlas file
+     * @param revision the revision of the rendering target
+     * @param background the background color of the palette
+     * @param foreground the foreground color of the palette, or null
+     * @param icons the PNG data of the icons, by name
+     * @return true if the atlas was written
+     */
+    static boolean write(@NonNull File file, int revision, @NonNull RGB background,
+            @Nullable RGB foreground, @NonNull Map<String, byte[]> icons) {
+        File temp = new File(file.getPath() + ".tmp"); //$NON-NLS-1$
+        try {
+            DataOutputStream out = new DataOutputStream(
+                    new BufferedOutputStream(new FileOutputStream(temp)));
+            try {
+                out.writeInt(MAGIC);
+                out.writeInt(VERSION);
+                out.writeInt(revision);
+                out.writeInt(ImageUtils.rgbToInt(background, 0xFF));
+                out.writeBoolean(foreground != null);
+                if (foreground != null) {
+                    out.writeInt(ImageUtils.rgbToInt(foreground, 0xFF));
+                }
+
+                List<byte[]> data = new ArrayList<byte[]>(icons.size());
+                out.writeInt(icons.size());
+                int offset = 0;
+                for (Map.Entry<String, byte[]> entry : icons.entrySet()) {
+                    byte[] name = entry.getKey().getBytes(StandardCharsets.UTF_8);
+                    out.writeShort(name.length);
+                    out.write(name);
+                    out.writeInt(offset);
+                    out.writeInt(entry.getValue().length);
+                    offset += entry.getValue().length;
+                    data.add(entry.getValue());
+                }
+                for (byte[] icon : data) {
+                    out.write(icon);
+                }
+            } finally {
+                out.close();
+            }
+
+            // The previous atlas may still be mapped, in which case it can't be deleted on
+            // some platforms; the previews will then be rendered again in the next session
+            file.delete();
+            if (temp.renameTo(file)) {
+                return true;
+            }
+        } catch (IOException e) {
+            AndmoreAndroidPlugin.log(e, "Failed writing palette previews %1$s", file);
+        }
+
+        temp.delete();
+        return false;
+    }
+}
@@ -16,7 +16,6 @@
 
 package org.eclipse.andmore.internal.editors.layout.gle2;
 
-import static com.android.SdkConstants.DOT_PNG;
 import static com.android.SdkConstants.FQCN_DATE_PICKER;
 import static com.android.SdkConstants.FQCN_EXPANDABLE_LIST_VIEW;
 import static com.android.SdkConstants.FQCN_LIST_VIEW;
@@ -47,39 +46,62 @@ import org.eclipse.andmore.internal.editors.uimodel.UiElementNode;
 import org.eclipse.andmore.internal.resources.ResourceHelper;
 import org.eclipse.andmore.internal.sdk.AndroidTargetData;
 import org.eclipse.core.runtime.IPath;
+import org.eclipse.core.runtime.IProgressMonitor;
 import org.eclipse.core.runtime.IStatus;
+import org.eclipse.core.runtime.Status;
+import org.eclipse.core.runtime.jobs.Job;
 import org.eclipse.jface.resource.ImageDescriptor;
+import org.eclipse.swt.SWTException;
+import org.eclipse.swt.graphics.ImageData;
 import org.eclipse.swt.graphics.RGB;
+import org.eclipse.swt.widgets.Display;
 import org.w3c.dom.Document;
 import org.w3c.dom.Element;
 import org.w3c.dom.Node;
 import org.w3c.dom.NodeList;
 
 import java.awt.image.BufferedImage;
-import java.io.BufferedInputStream;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
 import java.io.File;
-import java.io.FileInputStream;
 import java.io.IOException;
-import java.io.InputStream;
-import java.net.MalformedURLException;
 import java.util.ArrayList;
 import java.util.Collections;
+import java.util.HashMap;
+import java.util.Iterator;
 import java.util.List;
-import java.util.Properties;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
 
 import javax.imageio.ImageIO;
 
 /**
  * Factory which can provide preview icons for android views of a particular SDK and
  * editor's configuration chooser
+ * <p/>
+ * The icons are rendered in the background the first time they are needed for a
+ * combination of SDK, theme and device: the widgets are rendered one group at a time,
+ * each group in its own UI event since layoutlib only renders on the UI thread, and the
+ * icons of a group are cut out of its rendering and compressed by a job. The palette is
+ * notified as the icons of each group become available, and once all the groups have been
+ * rendered the icons are saved in a {@link PreviewIconAtlas} which is reused across IDE
+ * sessions.
  */
 public class PreviewIconFactory {
+    /** Maximum number of widgets rendered together in a group */
+    private static final int MAX_GROUP_SIZE = 8;
+
     private PaletteControl mPalette;
     private RGB mBackground;
     private RGB mForeground;
-    private File mImageDir;
-
-    private static final String PREVIEW_INFO_FILE = "preview.properties"; //$NON-NLS-1$
+    private File mAtlasFile;
+    private PreviewIconAtlas mAtlas;
+    private boolean mAtlasRead;
+    private boolean mRenderFailed;
+    private volatile RenderTask mTask;
+    private final Map<String, ImageDescriptor> mDescriptors =
+            new HashMap<String, ImageDescriptor>();
 
     public PreviewIconFactory(PaletteControl palette) {
         mPalette = palette;
@@ -87,50 +109,107 @@ public class PreviewIconFactory {
 
     /**
      * Resets the state in the preview icon factory such that it will re-fetch information
-     * like the theme and SDK (the icons themselves are cached in a directory across IDE
-     * session though)
+     * like the theme and SDK (the icons themselves are cached in a file across IDE
+     * session though). A render in progress for the previous settings is abandoned when
+     * the icons of other settings are requested.
      */
     public void reset() {
-        mImageDir = null;
+        mAtlasFile = null;
+        mAtlas = null;
+        mAtlasRead = false;
+        mRenderFailed = false;
         mBackground = null;
         mForeground = null;
+        mDescriptors.clear();
     }
 
     /**
      * Deletes all the persistent state for the current settings such that it will be regenerated
      */
     public void refresh() {
-        File imageDir = getImageDir(false);
-        if (imageDir != null && imageDir.exists()) {
-            File[] files = imageDir.listFiles();
-            for (File file : files) {
-                file.delete();
-            }
-            imageDir.delete();
-            reset();
+        File atlasFile = getAtlasFile();
+        mTask = null;
+        reset();
+        if (atlasFile != null) {
+            PreviewIconAtlas.invalidate(atlasFile);
         }
     }
 
+    /**
+     * Returns true if the previews of the current settings are being rendered, in which
+     * case {@link PaletteControl#previewIconsRendered()} is called as they become
+     * available.
+     *
+     * @return true if the previews are being rendered
+     */
+    public boolean isRendering() {
+        RenderTask task = mTask;
+        return task != null && task.mFile.equals(getAtlasFile());
+    }
+
     /**
      * Returns an image descriptor for the given element descriptor, or null if no image
-     * could be computed. The rendering parameters (SDK, theme etc) correspond to those
-     * stored in the associated palette.
+     * could be computed, or if it is still being rendered. The rendering parameters (SDK,
+     * theme etc) correspond to those stored in the associated palette.
      *
      * @param desc the element descriptor to get an image for
-     * @return an image descriptor, or null if no image could be rendered
+     * @return an image descriptor, or null if no image is available
      */
     public ImageDescriptor getImageDescriptor(ElementDescriptor desc) {
-        File imageDir = getImageDir(false);
-        if (!imageDir.exists()) {
-            render();
+        String key = getKey(desc);
+        ImageDescriptor descriptor = mDescriptors.get(key);
+        if (descriptor != null) {
+            return descriptor;
         }
-        File file = new File(imageDir, getFileName(desc));
-        if (file.exists()) {
-            try {
-                return ImageDescriptor.createFromURL(file.toURI().toURL());
-            } catch (MalformedURLException e) {
-                AndmoreAndroidPlugin.log(e, "Could not create image descriptor for %s", file);
+
+        byte[] icon = null;
+        RenderTask task = getTask();
+        if (task != null) {
+            icon = task.mIcons.get(key);
+        } else if (mAtlas != null) {
+            icon = mAtlas.getIcon(key);
+        }
+        if (icon == null) {
+            return null;
+        }
+
+        try {
+            descriptor = ImageDescriptor.createFromImageData(
+                    new ImageData(new ByteArrayInputStream(icon)));
+            mDescriptors.put(key, descriptor);
+        } catch (SWTException e) {
+            AndmoreAndroidPlugin.log(e, "Could not create image descriptor for %s", key);
+        }
+
+        return descriptor;
+    }
+
+    /**
+     * Returns the render of the current settings, reading their atlas or starting to
+     * render them if needed
+     */
+    @Nullable
+    private RenderTask getTask() {
+        File atlasFile = getAtlasFile();
+        RenderTask task = mTask;
+        if (task != null && task.mFile.equals(atlasFile)) {
+            return task;
+        }
+
+        // Abandon the render of other settings
+        mTask = null;
+
+        if (!mAtlasRead) {
+            mAtlasRead = true;
+            mAtlas = PreviewIconAtlas.read(atlasFile, getRevision());
+        }
+        if (mAtlas == null && !mRenderFailed) {
+            task = startRender(atlasFile);
+            if (task == null) {
+                mRenderFailed = true;
             }
+            mTask = task;
+            return task;
         }
 
         return null;
@@ -148,8 +227,8 @@ public class PreviewIconFactory {
         List<List<Element>> elements = new ArrayList<List<Element>>();
 
         List<Element> shared = new ArrayList<Element>();
+        List<List<Element>> alone = new ArrayList<List<Element>>();
         Element root = document.getDocumentElement();
-        elements.add(shared);
 
         ViewMetadataRepository repository = ViewMetadataRepository.get();
 
@@ -188,7 +267,7 @@ public class PreviewIconFactory {
                 }
 
                 if (renderMode == RenderMode.ALONE) {
-                    elements.add(Collections.singletonList(element));
+                    alone.add(Collections.singletonList(element));
                 } else if (renderMode == RenderMode.NORMAL) {
                     shared.add(element);
                 } else {
@@ -197,19 +276,35 @@ public class PreviewIconFactory {
             }
         }
 
+        // Bound the widgets rendered together, so that each UI event rendering a group
+        // stays short
+        for (int start = 0, n = shared.size(); start < n; start += MAX_GROUP_SIZE) {
+            elements.add(shared.subList(start, Math.min(start + MAX_GROUP_SIZE, n)));
+        }
+        elements.addAll(alone);
+
         return elements;
     }
 
     /**
-     * Renders ALL the widgets and then extracts image data for each view and saves it on
-     * disk
+     * Starts rendering ALL the widgets for the current settings
+     *
+     * @param atlasFile the file the icons are saved in
+     * @return the render, or null if the widgets can't be rendered
      */
-    private boolean render() {
-        File imageDir = getImageDir(true);
-
+    @Nullable
+    private RenderTask startRender(@NonNull File atlasFile) {
         GraphicalEditorPart editor = mPalette.getEditor();
         LayoutEditorDelegate layoutEditorDelegate = editor.getEditorDelegate();
         LayoutLibrary layoutLibrary = editor.getLayoutLibrary();
+
+        ViewMetadataRepository repository = ViewMetadataRepository.get();
+        Document document = repository.getRenderingConfigDoc();
+
+        if (document == null) {
+            return null;
+        }
+
         Integer overrideBgColor = null;
         if (layoutLibrary != null) {
             if (layoutLibrary.supports(Features.CUSTOM_BACKGROUND_COLOR)) {
@@ -217,19 +312,13 @@ public class PreviewIconFactory {
                 RGB bg = themeColors.getFirst();
                 RGB fg = themeColors.getSecond();
                 if (bg != null) {
-                    storeBackground(imageDir, bg, fg);
+                    mBackground = bg;
+                    mForeground = fg;
                     overrideBgColor = Integer.valueOf(ImageUtils.rgbToInt(bg, 0xFF));
                 }
             }
         }
 
-        ViewMetadataRepository repository = ViewMetadataRepository.get();
-        Document document = repository.getRenderingConfigDoc();
-
-        if (document == null) {
-            return false;
-        }
-
         // Construct UI model from XML
         AndroidTargetData data = layoutEditorDelegate.getEditor().getTargetData();
         DocumentDescriptor documentDescriptor;
@@ -242,10 +331,66 @@ public class PreviewIconFactory {
         model.setEditor(layoutEditorDelegate.getEditor());
         model.setUnknownDescriptorProvider(editor.getModel().getUnknownDescriptorProvider());
 
-        Element documentElement = document.getDocumentElement();
-        List<List<Element>> elements = partitionRenderElements(document);
-        for (List<Element> elementGroup : elements) {
+        RenderTask task = new RenderTask(atlasFile, getRevision(), document, model,
+                partitionRenderElements(document), overrideBgColor);
+        mPalette.getDisplay().asyncExec(task);
+        return task;
+    }
+
+    /**
+     * A render of the previews of all the widgets. Each call to {@link #run} renders one
+     * group of widgets on the UI thread and posts the rendering of the next group.
+     */
+    private final class RenderTask implements Runnable {
+        private final File mFile;
+        private final int mRevision;
+        private final Document mDocument;
+        private final UiDocumentNode mModel;
+        private final Iterator<List<Element>> mGroups;
+        private final Integer mOverrideBgColor;
+        private final Display mDisplay;
+        /** The PNG data of the icons rendered so far, by key */
+        private final Map<String, byte[]> mIcons = new ConcurrentHashMap<String, byte[]>();
+        /** The number of groups being processed, plus one until all have been rendered */
+        private final AtomicInteger mPending = new AtomicInteger(1);
+        private volatile RGB mTaskBackground;
+        private volatile RGB mTaskForeground;
+
+        RenderTask(File file, int revision, Document document, UiDocumentNode model,
+                List<List<Element>> groups, Integer overrideBgColor) {
+            mFile = file;
+            mRevision = revision;
+            mDocument = document;
+            mModel = model;
+            mGroups = groups.iterator();
+            mOverrideBgColor = overrideBgColor;
+            mDisplay = mPalette.getDisplay();
+            mTaskBackground = mBackground;
+            mTaskForeground = mForeground;
+        }
+
+        @Override
+        public void run() {
+            if (mTask != this || mPalette.isDisposed()) {
+                return;
+            }
+
+            if (mGroups.hasNext()) {
+                render(mGroups.next());
+                mDisplay.asyncExec(this);
+            } else {
+                mPalette.getEditor().recomputeLayout();
+                release();
+            }
+        }
+
+        /** Renders a group of widgets and schedules the extraction of their icons */
+        private void render(List<Element> elementGroup) {
+            GraphicalEditorPart editor = mPalette.getEditor();
+            ViewMetadataRepository repository = ViewMetadataRepository.get();
+
             // Replace the document elements with the current element group
+            Element documentElement = mDocument.getDocumentElement();
             while (documentElement.getFirstChild() != null) {
                 documentElement.removeChild(documentElement.getFirstChild());
             }
@@ -253,7 +398,7 @@ public class PreviewIconFactory {
                 documentElement.appendChild(element);
             }
 
-            model.loadFromXmlNode(document);
+            mModel.loadFromXmlNode(mDocument);
 
             RenderSession session = null;
             NodeList childNodes = documentElement.getChildNodes();
@@ -264,110 +409,180 @@ public class PreviewIconFactory {
                 int height = childNodes.getLength() == 1 ? 400 : 1600;
 
                 session = RenderService.create(editor)
-                    .setModel(model)
+                    .setModel(mModel)
                     .setOverrideRenderSize(width, height)
                     .setRenderingMode(RenderingMode.FULL_EXPAND)
                     .setLog(editor.createRenderLogger("palette"))
-                    .setOverrideBgColor(overrideBgColor)
+                    .setOverrideBgColor(mOverrideBgColor)
                     .setDecorations(false)
                     .createRenderSession();
             } catch (Throwable t) {
                 // If there are internal errors previewing the components just revert to plain
                 // icons and labels
-                continue;
+                return;
             }
 
-            if (session != null) {
-                if (session.getResult().isSuccess()) {
-                    BufferedImage image = session.getImage();
-                    if (image != null && image.getWidth() > 0 && image.getHeight() > 0) {
-
-                        // Fallback for older platforms where we couldn't do background rendering
-                        // at the beginning of this method
-                        if (mBackground == null) {
-                            Pair<RGB, RGB> themeColors = getColorsFromTheme();
-                            RGB bg = themeColors.getFirst();
-                            RGB fg = themeColors.getSecond();
-
-                            if (bg == null) {
-                                // Just use a pixel from the rendering instead.
-                                int p = image.getRGB(image.getWidth() - 1, image.getHeight() - 1);
-                                // However, in this case we don't trust the foreground color
-                                // even if one was found in the themes; pick one that is guaranteed
-                                // to contrast with the background
-                                bg = ImageUtils.intToRgb(p);
-                                if (ImageUtils.getBrightness(ImageUtils.rgbToInt(bg, 255)) < 128) {
-                                    fg = new RGB(255, 255, 255);
-                                } else {
-                                    fg = new RGB(0, 0, 0);
-                                }
-                            }
-                            storeBackground(imageDir, bg, fg);
-                            assert mBackground != null;
-                        }
+            if (session == null) {
+                return;
+            }
 
-                        List<ViewInfo> viewInfoList = session.getRootViews();
-                        if (viewInfoList != null && viewInfoList.size() > 0) {
-                            // We don't render previews under a <merge> so there should
-                            // only be one root.
-                            ViewInfo firstRoot = viewInfoList.get(0);
-                            int parentX = firstRoot.getLeft();
-                            int parentY = firstRoot.getTop();
-                            List<ViewInfo> infos = firstRoot.getChildren();
-                            for (ViewInfo info : infos) {
-                                Object cookie = info.getCookie();
-                                if (!(cookie instanceof UiElementNode)) {
-                                    continue;
-                                }
-                                UiElementNode node = (UiElementNode) cookie;
-                                String fileName = getFileName(node);
-                                File file = new File(imageDir, fileName);
-                                if (file.exists()) {
-                                    // On Windows, perhaps we need to rename instead?
-                                    file.delete();
-                                }
-                                int x1 = parentX + info.getLeft();
-                                int y1 = parentY + info.getTop();
-                                int x2 = parentX + info.getRight();
-                                int y2 = parentY + info.getBottom();
-                                if (x1 != x2 && y1 != y2) {
-                                    savePreview(file, image, x1, y1, x2, y2);
-                                }
+            if (session.getResult().isSuccess()) {
+                BufferedImage image = session.getImage();
+                if (image != null && image.getWidth() > 0 && image.getHeight() > 0) {
+
+                    // Fallback for older platforms where we couldn't do background rendering
+                    // when the render was started
+                    if (mTaskBackground == null) {
+                        Pair<RGB, RGB> themeColors = getColorsFromTheme();
+                        RGB bg = themeColors.getFirst();
+                        RGB fg = themeColors.getSecond();
+
+                        if (bg == null) {
+                            // Just use a pixel from the rendering instead.
+                            int p = image.getRGB(image.getWidth() - 1, image.getHeight() - 1);
+                            // However, in this case we don't trust the foreground color
+                            // even if one was found in the themes; pick one that is guaranteed
+                            // to contrast with the background
+                            bg = ImageUtils.intToRgb(p);
+                            if (ImageUtils.getBrightness(ImageUtils.rgbToInt(bg, 255)) < 128) {
+                                fg = new RGB(255, 255, 255);
+                            } else {
+                                fg = new RGB(0, 0, 0);
                             }
                         }
+                        mTaskForeground = fg;
+                        mTaskBackground = bg;
                     }
-                } else {
-                    StringBuilder sb = new StringBuilder();
-                    for (int i = 0, n = childNodes.getLength(); i < n; i++) {
-                        Node node = childNodes.item(i);
-                        if (node instanceof Element) {
-                            Element e = (Element) node;
-                            String fqn = repository.getFullClassName(e);
-                            fqn = fqn.substring(fqn.lastIndexOf('.') + 1);
-                            if (sb.length() > 0) {
-                                sb.append(", "); //$NON-NLS-1$
+
+                    List<ViewInfo> viewInfoList = session.getRootViews();
+                    if (viewInfoList != null && viewInfoList.size() > 0) {
+                        // We don't render previews under a <merge> so there should
+                        // only be one root.
+                        ViewInfo firstRoot = viewInfoList.get(0);
+                        int parentX = firstRoot.getLeft();
+                        int parentY = firstRoot.getTop();
+                        List<ViewInfo> infos = firstRoot.getChildren();
+                        List<String> keys = new ArrayList<String>(infos.size());
+                        List<int[]> bounds = new ArrayList<int[]>(infos.size());
+                        for (ViewInfo info : infos) {
+                            Object cookie = info.getCookie();
+                            if (!(cookie instanceof UiElementNode)) {
+                                continue;
                             }
-                            sb.append(fqn);
+                            keys.add(getKey((UiElementNode) cookie));
+                            bounds.add(new int[] {
+                                    parentX + info.getLeft(), parentY + info.getTop(),
+                                    parentX + info.getRight(), parentY + info.getBottom() });
                         }
+                        extractIcons(image, keys, bounds);
                     }
-                    AndmoreAndroidPlugin.log(IStatus.WARNING, "Failed to render set of icons for %1$s",
-                            sb.toString());
-
-                    if (session.getResult().getException() != null) {
-                        AndmoreAndroidPlugin.log(session.getResult().getException(),
-                                session.getResult().getErrorMessage());
-                    } else if (session.getResult().getErrorMessage() != null) {
-                        AndmoreAndroidPlugin.log(IStatus.WARNING, session.getResult().getErrorMessage());
+                }
+            } else {
+                StringBuilder sb = new StringBuilder();
+                for (int i = 0, n = childNodes.getLength(); i < n; i++) {
+                    Node node = childNodes.item(i);
+                    if (node instanceof Element) {
+                        Element e = (Element) node;
+                        String fqn = repository.getFullClassName(e);
+                        fqn = fqn.substring(fqn.lastIndexOf('.') + 1);
+                        if (sb.length() > 0) {
+                            sb.append(", "); //$NON-NLS-1$
+                        }
+                        sb.append(fqn);
                     }
                 }
-
-                session.dispose();
+                AndmoreAndroidPlugin.log(IStatus.WARNING, "Failed to render set of icons for %1$s",
+                        sb.toString());
+
+                if (session.getResult().getException() != null) {
+                    AndmoreAndroidPlugin.log(session.getResult().getException(),
+                            session.getResult().getErrorMessage());
+                } else if (session.getResult().getErrorMessage() != null) {
+                    AndmoreAndroidPlugin.log(IStatus.WARNING, session.getResult().getErrorMessage());
+                }
             }
+
+            session.dispose();
         }
 
-        mPalette.getEditor().recomputeLayout();
+        /**
+         * Cuts the icons of a group out of its rendering and compresses them in a job, then
+         * notifies the palette
+         */
+        private void extractIcons(final BufferedImage image, final List<String> keys,
+                final List<int[]> bounds) {
+            mPending.incrementAndGet();
+            Job job = new Job("Palette previews") {
+                @Override
+                protected IStatus run(IProgressMonitor monitor) {
+                    try {
+                        for (int i = 0, n = keys.size(); i < n && mTask == RenderTask.this;
+                                i++) {
+                            int[] b = bounds.get(i);
+                            if (b[0] == b[2] || b[1] == b[3]) {
+                                continue;
+                            }
+                            BufferedImage icon = ImageUtils.subImage(image, b[0], b[1],
+                                    b[2], b[3]);
+                            ByteArrayOutputStream out = new ByteArrayOutputStream();
+                            ImageIO.write(icon, "PNG", out); //$NON-NLS-1$
+                            mIcons.put(keys.get(i), out.toByteArray());
+                        }
+                    } catch (IOException e) {
+                        AndmoreAndroidPlugin.log(e, "Failed writing palette previews");
+                    } finally {
+                        mDisplay.asyncExec(new Runnable() {
+                            @Override
+                            public void run() {
+                                if (mTask == RenderTask.this && !mPalette.isDisposed()) {
+                                    mPalette.previewIconsRendered();
+                                }
+                            }
+                        });
+                        release();
+                    }
+                    return Status.OK_STATUS;
+                }
+            };
+            job.setSystem(true);
+            job.setPriority(Job.SHORT);
+            job.schedule();
+        }
 
-        return true;
+        /** Saves the atlas once all the groups have been rendered and extracted */
+        private void release() {
+            if (mPending.decrementAndGet() > 0 || mTask != this) {
+                return;
+            }
+
+            Job job = new Job("Save palette previews") {
+                @Override
+                protected IStatus run(IProgressMonitor monitor) {
+                    RGB background = mTaskBackground;
+                    if (background == null) {
+                        background = new RGB(0, 0, 0);
+                    }
+                    boolean saved = PreviewIconAtlas.write(mFile, mRevision, background,
+                            mTaskForeground, new HashMap<String, byte[]>(mIcons));
+                    final PreviewIconAtlas atlas = saved
+                            ? PreviewIconAtlas.read(mFile, mRevision) : null;
+                    mDisplay.asyncExec(new Runnable() {
+                        @Override
+                        public void run() {
+                            if (mTask == RenderTask.this && atlas != null) {
+                                mTask = null;
+                                mAtlas = atlas;
+                                mAtlasRead = true;
+                            }
+                        }
+                    });
+                    return Status.OK_STATUS;
+                }
+            };
+            job.setSystem(true);
+            job.setPriority(Job.DECORATE);
+            job.schedule();
+        }
     }
 
     /**
@@ -457,7 +672,7 @@ public class PreviewIconFactory {
         return ResourceHelper.resolveColor(resources, textColor);
     }
 
-    private String getFileName(ElementDescriptor descriptor) {
+    private String getKey(ElementDescriptor descriptor) {
         if (descriptor instanceof PaletteMetadataDescriptor) {
             PaletteMetadataDescriptor pmd = (PaletteMetadataDescriptor) descriptor;
             StringBuilder sb = new StringBuilder();
@@ -469,15 +684,15 @@ public class PreviewIconFactory {
                     sb.append(c);
                 }
             }
-            return sb.toString() + DOT_PNG;
+            return sb.toString();
         }
-        return descriptor.getUiName() + DOT_PNG;
+        return descriptor.getUiName();
     }
 
-    private String getFileName(UiElementNode node) {
+    private String getKey(UiElementNode node) {
         ViewMetadataRepository repository = ViewMetadataRepository.get();
         String fqn = repository.getFullClassName((Element) node.getXmlNode());
-        return fqn.substring(fqn.lastIndexOf('.') + 1) + DOT_PNG;
+        return fqn.substring(fqn.lastIndexOf('.') + 1);
     }
 
     /**
@@ -505,13 +720,18 @@ public class PreviewIconFactory {
         return sb.toString();
     }
 
-    /** Returns the location of a directory containing image previews (which may not exist) */
-    private File getImageDir(boolean create) {
-        if (mImageDir == null) {
+    /** Returns the revision of the rendering target, which the atlas is valid for */
+    private int getRevision() {
+        return mPalette.getCurrentTarget().getRevision();
+    }
+
+    /** Returns the location of the atlas of the current settings (which may not exist) */
+    private File getAtlasFile() {
+        if (mAtlasFile == null) {
             // Location for plugin-related state data
             IPath pluginState = AndmoreAndroidPlugin.getDefault().getStateLocation();
 
-            // We have multiple directories - one for each combination of SDK, theme and device
+            // We have multiple atlases - one for each combination of SDK, theme and device
             // (and later, possibly other qualifiers).
             // These are created -lazily-.
             String targetName = mPalette.getCurrentTarget().hashString();
@@ -530,39 +750,14 @@ public class PreviewIconFactory {
             targetName = cleanup(targetName);
             themeName = cleanup(themeName);
             String deviceName = cleanup(mPalette.getCurrentDevice());
-            String dirName = String.format("palette-preview-r16b-%s-%s-%s", targetName,
+            String fileName = String.format("palette-preview-%s-%s-%s.atlas", targetName,
                     themeName, deviceName);
-            IPath dirPath = pluginState.append(dirName);
-
-            mImageDir = new File(dirPath.toOSString());
-        }
-
-        if (create && !mImageDir.exists()) {
-            mImageDir.mkdirs();
-        }
+            IPath filePath = pluginState.append(fileName);
 
-        return mImageDir;
-    }
-
-    private void savePreview(File output, BufferedImage image,
-            int left, int top, int right, int bottom) {
-        try {
-            BufferedImage im = ImageUtils.subImage(image, left, top, right, bottom);
-            ImageIO.write(im, "PNG", output); //$NON-NLS-1$
-        } catch (IOException e) {
-            AndmoreAndroidPlugin.log(e, "Failed writing palette file");
+            mAtlasFile = new File(filePath.toOSString());
         }
-    }
 
-    private void storeBackground(File imageDir, RGB bg, RGB fg) {
-        mBackground = bg;
-        mForeground = fg;
-        File file = new File(imageDir, PREVIEW_INFO_FILE);
-        String colors = String.format(
-                "background=#%02x%02x%02x\nforeground=#%02x%02x%02x\n", //$NON-NLS-1$
-                bg.red, bg.green, bg.blue,
-                fg.red, fg.green, fg.blue);
-        AndmoreAndroidPlugin.writeFile(file, colors);
+        return mAtlasFile;
     }
 
     public RGB getBackgroundColor() {
@@ -590,45 +785,19 @@ public class PreviewIconFactory {
                 return;
             }
 
-            File imageDir = getImageDir(false);
-            if (!imageDir.exists()) {
-                render();
-
-                // Initialized as part of the render
-                if (mBackground != null) {
-                    return;
-                }
+            // Reads the atlas, or starts rendering it which may initialize the colors
+            RenderTask task = getTask();
+            if (task != null) {
+                // Until the first group is rendered, the colors may not be known on
+                // older platforms; the palette is refreshed when they are
+                mBackground = task.mTaskBackground;
+                mForeground = task.mTaskForeground;
+                return;
             }
 
-            File file = new File(imageDir, PREVIEW_INFO_FILE);
-            if (file.exists()) {
-                Properties properties = new Properties();
-                InputStream is = null;
-                try {
-                    is = new BufferedInputStream(new FileInputStream(file));
-                    properties.load(is);
-                } catch (IOException e) {
-                    AndmoreAndroidPlugin.log(e, "Can't read preview properties");
-                } finally {
-                    if (is != null) {
-                        try {
-                            is.close();
-                        } catch (IOException e) {
-                            // Nothing useful can be done.
-                        }
-                    }
-                }
-
-                String colorString = (String) properties.get("background"); //$NON-NLS-1$
-                if (colorString != null) {
-                    int rgb = ImageUtils.getColor(colorString.trim());
-                    mBackground = ImageUtils.intToRgb(rgb);
-                }
-                colorString = (String) properties.get("foreground"); //$NON-NLS-1$
-                if (colorString != null) {
-                    int rgb = ImageUtils.getColor(colorString.trim());
-                    mForeground = ImageUtils.intToRgb(rgb);
-                }
+            if (mAtlas != null) {
+                mBackground = mAtlas.getBackground();
+                mForeground = mAtlas.getForeground();
             }
 
             if (mBackground == null) {
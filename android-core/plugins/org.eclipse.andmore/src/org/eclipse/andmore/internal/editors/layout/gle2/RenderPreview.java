@@ -29,7 +29,6 @@ import java.awt.image.BufferedImage;
 import java.io.File;
 import java.lang.ref.SoftReference;
 import java.util.Comparator;
-import java.util.Map;
 
 import org.eclipse.andmore.AdtUtils;
 import org.eclipse.andmore.AndmoreAndroidPlugin;
@@ -44,18 +43,13 @@ import org.eclipse.andmore.internal.editors.layout.configuration.NestedConfigura
 import org.eclipse.andmore.internal.editors.layout.configuration.VaryingConfiguration;
 import org.eclipse.andmore.internal.editors.layout.gle2.IncludeFinder.Reference;
 import org.eclipse.andmore.internal.editors.uimodel.UiDocumentNode;
-import org.eclipse.andmore.internal.resources.ResourceHelper;
 import org.eclipse.andmore.internal.resources.manager.ProjectResources;
 import org.eclipse.andmore.internal.resources.manager.ResourceManager;
 import org.eclipse.andmore.internal.sdk.AndroidTargetData;
 import org.eclipse.andmore.internal.sdk.Sdk;
 import org.eclipse.andmore.io.IFileWrapper;
 import org.eclipse.core.resources.IFile;
-import org.eclipse.core.runtime.IProgressMonitor;
 import org.eclipse.core.runtime.IStatus;
-import org.eclipse.core.runtime.jobs.IJobChangeEvent;
-import org.eclipse.core.runtime.jobs.IJobChangeListener;
-import org.eclipse.core.runtime.jobs.Job;
 import org.eclipse.jface.dialogs.InputDialog;
 import org.eclipse.jface.window.Window;
 import org.eclipse.swt.SWT;
@@ -64,11 +58,10 @@ import org.eclipse.swt.graphics.GC;
 import org.eclipse.swt.graphics.Image;
 import org.eclipse.swt.graphics.ImageData;
 import org.eclipse.swt.graphics.Point;
+import org.eclipse.swt.graphics.Rectangle;
 import org.eclipse.swt.graphics.Region;
-import org.eclipse.swt.widgets.Display;
 import org.eclipse.ui.ISharedImages;
 import org.eclipse.ui.PlatformUI;
-import org.eclipse.ui.progress.UIJob;
 import org.w3c.dom.Document;
 
 import com.android.annotations.NonNull;
@@ -79,7 +72,6 @@ import com.android.ide.common.rendering.api.Result.Status;
 import com.android.ide.common.resources.ResourceFile;
 import com.android.ide.common.resources.ResourceRepository;
 import com.android.ide.common.resources.ResourceResolver;
-import com.android.ide.common.resources.ResourceValueMap;
 import com.android.ide.common.resources.configuration.FolderConfiguration;
 import com.android.ide.common.resources.configuration.ScreenOrientationQualifier;
 import com.android.io.IAbstractFile;
@@ -95,19 +87,10 @@ import com.android.utils.SdkUtils;
 /**
  * Represents a preview rendering of a given configuration
  */
-public class RenderPreview implements IJobChangeListener {
+public class RenderPreview {
     /** Whether previews should use large shadows */
     static final boolean LARGE_SHADOWS = false;
 
-    /**
-     * Still doesn't work; get exceptions from layoutlib:
-     * java.lang.IllegalStateException: After scene creation, #init() must be called
-     *   at com.android.layoutlib.bridge.impl.RenderAction.acquire(RenderAction.java:151)
-     * <p>
-     * TODO: Investigate.
-     */
-    private static final boolean RENDER_ASYNC = false;
-
     /**
      * Height of the toolbar shown over a preview during hover. Needs to be
      * large enough to accommodate icons below.
@@ -153,8 +136,9 @@ public class RenderPreview implements IJobChangeListener {
 
     private @NonNull SoftReference<ResourceResolver> mResourceResolver =
             new SoftReference<ResourceResolver>(null);
-    private @Nullable Job mJob;
     private @Nullable Image mThumbnail;
+    /** The preview width {@link #mThumbnail} was scaled for */
+    private int mThumbnailWidth;
     private @Nullable String mDisplayName;
     private int mWidth;
     private int mHeight;
@@ -422,11 +406,8 @@ public class RenderPreview implements IJobChangeListener {
      */
     public void dispose() {
         disposeThumbnail();
-
-        if (mJob != null) {
-            mJob.cancel();
-            mJob = null;
-        }
+        mManager.cancelRender(this);
+        ThumbnailCache.get().remove(this);
     }
 
     /** Disposes the thumbnail rendering. */
@@ -483,41 +464,39 @@ public class RenderPreview implements IJobChangeListener {
     }
 
     /**
-     * Request a new render after the given delay
+     * Returns the configuration the preview is rendered with
      *
-     * @param delay the delay to wait before starting the render job
+     * @return the configuration
      */
-    public void render(long delay) {
-        Job job = mJob;
-        if (job != null) {
-            job.cancel();
-        }
-        if (RENDER_ASYNC) {
-            job = new AsyncRenderJob();
-        } else {
-            job = new RenderJob();
-        }
-        job.schedule(delay);
-        job.addJobChangeListener(this);
-        mJob = job;
+    @NonNull
+    private Configuration getRenderConfiguration() {
+        return mAlternateInput != null && mAlternateConfiguration != null
+                ? mAlternateConfiguration : mConfiguration;
     }
 
-    /** Render immediately */
-    private void renderSync() {
+    /**
+     * Renders the preview, on the UI thread. This is called by the
+     * {@link RenderPreviewScheduler}, which also creates the thumbnail of the rendered
+     * image. When the preview can't be rendered an error thumbnail is created instead.
+     *
+     * @param resolver the resource resolver of the preview, see
+     *            {@link #getResourceResolver()}
+     * @return the rendered session, which must be released to the
+     *         {@link RenderSessionPool}, or null if there is no image to show
+     */
+    @Nullable
+    RenderSession renderSession(@Nullable ResourceResolver resolver) {
         GraphicalEditorPart editor = mCanvas.getEditorDelegate().getGraphicalEditor();
         if (editor.getReadyLayoutLib(false /*displayError*/) == null) {
             // Don't attempt to render when there is no ready layout library: most likely
             // the targets are loading/reloading.
-            return;
+            return null;
         }
 
-        disposeThumbnail();
-
-        Configuration configuration =
-                mAlternateInput != null && mAlternateConfiguration != null
-                ? mAlternateConfiguration : mConfiguration;
-        ResourceResolver resolver = getResourceResolver(configuration);
+        Configuration configuration = getRenderConfiguration();
         RenderService renderService = RenderService.create(editor, configuration, resolver);
+        // The image is scaled down in the background: don't render in the shared buffer
+        renderService.setImageFactory(null);
 
         if (mIncludedWithin != null) {
             renderService.setIncludedWithin(mIncludedWithin);
@@ -548,17 +527,22 @@ public class RenderPreview implements IJobChangeListener {
             if (document == null) {
                 mError = "No document";
                 createErrorThumbnail();
-                return;
+                return null;
             }
             model.loadFromXmlNode(document);
             renderService.setModel(model);
+            renderService.setLayoutFile(mAlternateInput);
         } else {
             renderService.setModel(editor.getModel());
         }
         RenderLogger log = editor.createRenderLogger(getDisplayName());
         renderService.setLog(log);
-        RenderSession session = renderService.createRenderSession();
-        Result render = session.render(1000);
+        RenderSession session = renderService.createPooledRenderSession(null);
+        if (session == null) {
+            return null;
+        }
+        // The session has just been rendered
+        Result render = session.getResult();
 
         if (DUMP_RENDER_DIAGNOSTICS) {
             if (log.hasProblems() || !render.isSuccess()) {
@@ -584,21 +568,30 @@ public class RenderPreview implements IJobChangeListener {
 
         if (render.getStatus() == Status.ERROR_TIMEOUT) {
             // TODO: Special handling? schedule update again later
-            return;
+            RenderSessionPool.get().release(session);
+            return null;
         }
-        if (render.isSuccess()) {
-            BufferedImage image = session.getImage();
-            if (image != null) {
-                createThumbnail(image);
-            }
+        if (render.isSuccess() && session.getImage() != null) {
+            return session;
         }
+        // Keep the session for the next render of this preview
+        RenderSessionPool.get().release(session);
 
         if (mError != null) {
             createErrorThumbnail();
         }
+        return null;
     }
 
-    private ResourceResolver getResourceResolver(Configuration configuration) {
+    /**
+     * Returns the resource resolver of the preview. The resolvers are shared by the
+     * previews with the same configuration and theme. This can be called from any thread.
+     *
+     * @return the resource resolver, or null
+     */
+    @Nullable
+    ResourceResolver getResourceResolver() {
+        Configuration configuration = getRenderConfiguration();
         ResourceResolver resourceResolver = mResourceResolver.get();
         if (resourceResolver != null) {
             return resourceResolver;
@@ -610,9 +603,6 @@ public class RenderPreview implements IJobChangeListener {
             return null;
         }
 
-        Map<ResourceType, ResourceValueMap> configuredFrameworkRes = null;
-        Map<ResourceType, ResourceValueMap> configuredProjectRes = null;
-
         FolderConfiguration config = configuration.getFullConfig();
         IAndroidTarget target = graphicalEditor.getRenderingTarget();
         ResourceRepository frameworkRes = null;
@@ -624,22 +614,17 @@ public class RenderPreview implements IJobChangeListener {
             AndroidTargetData data = sdk.getTargetData(target);
 
             if (data != null) {
-                // TODO: SHARE if possible
                 frameworkRes = data.getFrameworkResources();
-                configuredFrameworkRes = frameworkRes.getConfiguredResources(config);
             } else {
                 return null;
             }
         } else {
             return null;
         }
-        assert configuredFrameworkRes != null;
-
 
         // get the resources of the file's project.
         ProjectResources projectRes = ResourceManager.getInstance().getProjectResources(
                 graphicalEditor.getProject());
-        configuredProjectRes = projectRes.getConfiguredResources(config);
 
         if (!theme.startsWith(PREFIX_RESOURCE_REF)) {
             if (frameworkRes.hasResourceItem(ANDROID_STYLE_RESOURCE_PREFIX + theme)) {
@@ -649,25 +634,45 @@ public class RenderPreview implements IJobChangeListener {
             }
         }
 
-        resourceResolver = ResourceResolver.create(
-                configuredProjectRes, configuredFrameworkRes,
-                ResourceHelper.styleToTheme(theme),
-                ResourceHelper.isProjectStyle(theme));
+        resourceResolver = mManager.getScheduler().getResourceResolver(config, theme,
+                frameworkRes, projectRes);
         mResourceResolver = new SoftReference<ResourceResolver>(resourceResolver);
         return resourceResolver;
     }
 
     /**
-     * Sets the new image of the preview and generates a thumbnail
+     * Scales a new rendering of the preview down to a thumbnail, and caches its
+     * downscaled copies for the next zoom. This should not be called from the UI thread.
      *
      * @param image the full size image
+     * @return the thumbnail image, see {@link #setThumbnail}
      */
-    void createThumbnail(BufferedImage image) {
-        if (image == null) {
-            mThumbnail = null;
-            return;
+    @NonNull
+    BufferedImage createThumbnail(@NonNull BufferedImage image) {
+        ThumbnailCache.Mipmaps mipmaps = ThumbnailCache.get().put(this, image);
+        BufferedImage level = mipmaps.getLevel(getWidth() / (double) image.getWidth());
+        return scaleThumbnail(level != null ? level : image);
+    }
+
+    /**
+     * Scales the cached copies of the last rendering down to a thumbnail of the current
+     * size of the preview. This should not be called from the UI thread.
+     *
+     * @return the thumbnail image, see {@link #setThumbnail}, or null if the preview
+     *         must be rendered again
+     */
+    @Nullable
+    BufferedImage rescaleThumbnail() {
+        ThumbnailCache.Mipmaps mipmaps = ThumbnailCache.get().get(this);
+        if (mipmaps == null) {
+            return null;
         }
+        BufferedImage level = mipmaps.getLevel(getWidth() / (double) mipmaps.getWidth());
+        return level != null ? scaleThumbnail(level) : null;
+    }
 
+    @NonNull
+    private BufferedImage scaleThumbnail(@NonNull BufferedImage image) {
         ImageOverlay imageOverlay = mCanvas.getImageOverlay();
         boolean drawShadows = imageOverlay == null || imageOverlay.getShowDropShadow();
         double scale = getWidth() / (double) image.getWidth();
@@ -697,8 +702,19 @@ public class RenderPreview implements IJobChangeListener {
             }
         }
 
-        mThumbnail = SwtUtils.convertToSwt(mCanvas.getDisplay(), image,
+        return image;
+    }
+
+    /**
+     * Sets the thumbnail of the preview, on the UI thread
+     *
+     * @param thumbnail the thumbnail image, see {@link #scaleThumbnail}
+     */
+    void setThumbnail(@NonNull BufferedImage thumbnail) {
+        disposeThumbnail();
+        mThumbnail = SwtUtils.convertToSwt(mCanvas.getDisplay(), thumbnail,
                 true /* transferAlpha */, -1);
+        mThumbnailWidth = getWidth();
     }
 
     void createErrorThumbnail() {
@@ -728,8 +744,12 @@ public class RenderPreview implements IJobChangeListener {
             }
         }
 
+        disposeThumbnail();
         mThumbnail = SwtUtils.convertToSwt(mCanvas.getDisplay(), image,
                 true /* transferAlpha */, -1);
+        mThumbnailWidth = width;
+        // The cached rendering is not what the preview shows anymore
+        ThumbnailCache.get().remove(this);
     }
 
     private static double getScale(int width, int height) {
@@ -790,7 +810,7 @@ public class RenderPreview implements IJobChangeListener {
                     mScale = 1.0;
                 }
 
-                render(0);
+                mManager.scheduleRescale(this);
                 mManager.layout(true);
                 mCanvas.redraw();
                 return true;
@@ -802,7 +822,7 @@ public class RenderPreview implements IJobChangeListener {
                 if (Math.abs(mScale-1.0) < 0.0001) {
                     mScale = 1.0;
                 }
-                render(0);
+                mManager.scheduleRescale(this);
 
                 mManager.layout(true);
                 mCanvas.redraw();
@@ -837,6 +857,23 @@ public class RenderPreview implements IJobChangeListener {
         return true;
     }
 
+    /**
+     * Draws the thumbnail. When the preview was zoomed since the thumbnail was scaled,
+     * the thumbnail is stretched to the new size until it is scaled again in the
+     * background.
+     */
+    private void drawThumbnail(GC gc, int x, int y, int width) {
+        assert mThumbnail != null;
+        if (mThumbnailWidth == width || mThumbnailWidth <= 0) {
+            gc.drawImage(mThumbnail, x, y);
+            return;
+        }
+        Rectangle bounds = mThumbnail.getBounds();
+        double scale = width / (double) mThumbnailWidth;
+        gc.drawImage(mThumbnail, 0, 0, bounds.width, bounds.height, x, y,
+                (int) (bounds.width * scale), (int) (bounds.height * scale));
+    }
+
     /**
      * Paints the preview at the given x/y position
      *
@@ -852,7 +889,7 @@ public class RenderPreview implements IJobChangeListener {
         int width = getWidth();
         int height = getHeight();
         if (mThumbnail != null && mError == null) {
-            gc.drawImage(mThumbnail, x, y);
+            drawThumbnail(gc, x, y, width);
 
             if (mActive) {
                 int oldWidth = gc.getLineWidth();
@@ -863,7 +900,7 @@ public class RenderPreview implements IJobChangeListener {
             }
         } else if (mError != null) {
             if (mThumbnail != null) {
-                gc.drawImage(mThumbnail, x, y);
+                drawThumbnail(gc, x, y, width);
             } else {
                 gc.setBackground(gc.getDevice().getSystemColor(SWT.COLOR_WIDGET_BORDER));
                 gc.drawRectangle(x, y, width, height);
@@ -1171,6 +1208,7 @@ public class RenderPreview implements IJobChangeListener {
             if (thumbnail != null) {
                 thumbnail.dispose();
             }
+            ThumbnailCache.get().remove(this);
             if (mHeight != 0) {
                 mAspectRatio = mWidth / (double) mHeight;
             }
@@ -1187,92 +1225,6 @@ public class RenderPreview implements IJobChangeListener {
         return mConfiguration;
     }
 
-    // ---- Implements IJobChangeListener ----
-
-    @Override
-    public void aboutToRun(IJobChangeEvent event) {
-    }
-
-    @Override
-    public void awake(IJobChangeEvent event) {
-    }
-
-    @Override
-    public void done(IJobChangeEvent event) {
-        mJob = null;
-    }
-
-    @Override
-    public void running(IJobChangeEvent event) {
-    }
-
-    @Override
-    public void scheduled(IJobChangeEvent event) {
-    }
-
-    @Override
-    public void sleeping(IJobChangeEvent event) {
-    }
-
-    // ---- Delayed Rendering ----
-
-    private final class RenderJob extends UIJob {
-        public RenderJob() {
-            super("RenderPreview");
-            setSystem(true);
-            setUser(false);
-        }
-
-        @Override
-        public IStatus runInUIThread(IProgressMonitor monitor) {
-            mJob = null;
-            if (!mCanvas.isDisposed()) {
-                renderSync();
-                mCanvas.redraw();
-                return org.eclipse.core.runtime.Status.OK_STATUS;
-            }
-
-            return org.eclipse.core.runtime.Status.CANCEL_STATUS;
-        }
-
-        @Override
-        public Display getDisplay() {
-            if (mCanvas.isDisposed()) {
-                return null;
-            }
-            return mCanvas.getDisplay();
-        }
-    }
-
-    private final class AsyncRenderJob extends Job {
-        public AsyncRenderJob() {
-            super("RenderPreview");
-            setSystem(true);
-            setUser(false);
-        }
-
-        @Override
-        protected IStatus run(IProgressMonitor monitor) {
-            mJob = null;
-
-            if (mCanvas.isDisposed()) {
-                return org.eclipse.core.runtime.Status.CANCEL_STATUS;
-            }
-
-            renderSync();
-
-            // Update display
-            mCanvas.getDisplay().asyncExec(new Runnable() {
-                @Override
-                public void run() {
-                    mCanvas.redraw();
-                }
-            });
-
-            return org.eclipse.core.runtime.Status.OK_STATUS;
-        }
-    }
-
     /**
      * Sets the input file to use for rendering. If not set, this will just be
      * the same file as the configuration chooser. This is used to render other
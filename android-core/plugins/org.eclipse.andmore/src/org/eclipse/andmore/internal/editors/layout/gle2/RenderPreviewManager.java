@@ -19,6 +19,7 @@ package org.eclipse.andmore.internal.editors.layout.gle2;
 import static org.eclipse.andmore.internal.editors.layout.configuration.Configuration.CFG_DEVICE;
 import static org.eclipse.andmore.internal.editors.layout.configuration.Configuration.CFG_DEVICE_STATE;
 import static org.eclipse.andmore.internal.editors.layout.configuration.Configuration.MASK_ALL;
+import static org.eclipse.andmore.internal.editors.layout.configuration.Configuration.MASK_RENDERING;
 import static org.eclipse.andmore.internal.editors.layout.gle2.ImageUtils.SHADOW_SIZE;
 import static org.eclipse.andmore.internal.editors.layout.gle2.ImageUtils.SMALL_SHADOW_SIZE;
 import static org.eclipse.andmore.internal.editors.layout.gle2.RenderPreview.LARGE_SHADOWS;
@@ -86,7 +87,6 @@ import com.google.common.collect.Lists;
  */
 public class RenderPreviewManager {
     private static double sScale = 1.0;
-    private static final int RENDER_DELAY = 150;
     private static final int PREVIEW_VGAP = 18;
     private static final int PREVIEW_HGAP = 12;
     private static final int MAX_WIDTH = 200;
@@ -98,6 +98,7 @@ public class RenderPreviewManager {
     private final @NonNull LayoutCanvas mCanvas;
     private final @NonNull CanvasTransform mVScale;
     private final @NonNull CanvasTransform mHScale;
+    private final @NonNull RenderPreviewScheduler mScheduler;
     private int mPrevCanvasWidth;
     private int mPrevCanvasHeight;
     private int mPrevImageWidth;
@@ -110,7 +111,7 @@ public class RenderPreviewManager {
      * than {@link #sRevision}, the previews need to be updated on next exposure */
     private static int mRevision;
     /** Current global revision count */
-    private static int sRevision;
+    private static volatile int sRevision;
     private boolean mNeedLayout;
     private boolean mNeedRender;
     private boolean mNeedZoom;
@@ -125,6 +126,7 @@ public class RenderPreviewManager {
         mCanvas = canvas;
         mHScale = canvas.getHorizontalTransform();
         mVScale = canvas.getVerticalTransform();
+        mScheduler = new RenderPreviewScheduler(canvas);
     }
 
     /**
@@ -136,6 +138,15 @@ public class RenderPreviewManager {
         sRevision++;
     }
 
+    /**
+     * Returns the global state revision counter
+     *
+     * @return the current revision
+     */
+    static int getRevision() {
+        return sRevision;
+    }
+
     /**
      * Returns the associated chooser
      *
@@ -187,15 +198,15 @@ public class RenderPreviewManager {
     private void updatedZoom() {
         if (hasPreviews()) {
             for (RenderPreview preview : mPreviews) {
-                preview.disposeThumbnail();
+                scheduleRescale(preview);
             }
             RenderPreview preview = mCanvas.getPreview();
             if (preview != null) {
-                preview.disposeThumbnail();
+                scheduleRescale(preview);
             }
         }
 
-        mNeedLayout = mNeedRender = true;
+        mNeedLayout = true;
         mCanvas.redraw();
     }
 
@@ -331,8 +342,6 @@ public class RenderPreviewManager {
             mCanvas.getVerticalBar().addSelectionListener(mListener);
         }
 
-        beginRenderScheduling();
-
         mLayoutHeight = 0;
 
         if (previewsHaveIdenticalSize() || fixedOrder()) {
@@ -700,7 +709,6 @@ public class RenderPreviewManager {
             addPreview(preview);
 
             layout(true);
-            beginRenderScheduling();
             scheduleRender(preview);
             mCanvas.setFitScale(true /* onlyZoomOut */, false /*allowZoomIn*/);
 
@@ -1165,8 +1173,11 @@ public class RenderPreviewManager {
     public void configurationChanged(int flags) {
         // Similar to renderPreviews, but only acts on incomplete previews
         if (hasPreviews()) {
+            if ((flags & MASK_RENDERING) != 0) {
+                mScheduler.clearResources();
+            }
+
             // Do zoomed images first
-            beginRenderScheduling();
             for (RenderPreview preview : mPreviews) {
                 if (preview.getScale() > 1.2) {
                     preview.configurationChanged(flags);
@@ -1190,8 +1201,6 @@ public class RenderPreviewManager {
     /** Updates the configuration preview thumbnails */
     public void renderPreviews() {
         if (hasPreviews()) {
-            beginRenderScheduling();
-
             // Process in visual order
             ArrayList<RenderPreview> visualOrder = new ArrayList<RenderPreview>(mPreviews);
             Collections.sort(visualOrder, RenderPreview.VISUAL_ORDER);
@@ -1213,26 +1222,46 @@ public class RenderPreviewManager {
         mNeedRender = false;
     }
 
-    private int mPendingRenderCount;
+    /**
+     * Schedule rendering the given preview. Visible previews are rendered first, then
+     * zoomed previews, then the others in the order they were scheduled.
+     *
+     * @param preview the preview to render
+     */
+    public void scheduleRender(@NonNull RenderPreview preview) {
+        mScheduler.schedule(preview);
+    }
 
     /**
-     * Reset rendering scheduling. The next render request will be scheduled
-     * after a single delay unit.
+     * Schedule a new thumbnail of the given preview after its size changed. The
+     * thumbnail is scaled down from the cached copies of the last rendering of the
+     * preview, in the background; the preview is only rendered again when they are not
+     * large enough. Until then the previous thumbnail is stretched to the new size.
+     *
+     * @param preview the preview to scale
      */
-    public void beginRenderScheduling() {
-        mPendingRenderCount = 0;
+    public void scheduleRescale(@NonNull RenderPreview preview) {
+        mScheduler.rescale(preview);
     }
 
     /**
-     * Schedule rendering the given preview. Each successive call will add an additional
-     * delay unit to the schedule from the previous {@link #scheduleRender(RenderPreview)}
-     * call, until {@link #beginRenderScheduling()} is called again.
+     * Cancels the pending render of the given preview, if any
      *
-     * @param preview the preview to render
+     * @param preview the preview
      */
-    public void scheduleRender(@NonNull RenderPreview preview) {
-        mPendingRenderCount++;
-        preview.render(mPendingRenderCount * RENDER_DELAY);
+    void cancelRender(@NonNull RenderPreview preview) {
+        mScheduler.cancel(preview);
+    }
+
+    /**
+     * Returns the scheduler of the preview renders, which also holds the resources
+     * shared by the previews
+     *
+     * @return the scheduler
+     */
+    @NonNull
+    RenderPreviewScheduler getScheduler() {
+        return mScheduler;
     }
 
     /**
@@ -1590,7 +1619,6 @@ public class RenderPreviewManager {
             int selection = bar.getSelection();
             int thumb = bar.getThumb();
             int maxY = selection + thumb;
-            beginRenderScheduling();
             for (RenderPreview preview : mPreviews) {
                 if (!preview.isVisible() && preview.getY() <= maxY) {
                     preview.setVisible(true);
@@ -0,0 +1,422 @@
+/*
+ * Copyright (C) 2018 The Android Open Source Project
+ *
+ * Licensed under the Eclipse Public License, Version 1.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.eclipse.org/org/documents/epl-v10.php
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.eclipse.andmore.internal.editors.layout.gle2;
+
+import com.android.annotations.NonNull;
+import com.android.ide.common.rendering.api.RenderSession;
+import com.android.ide.common.resources.ResourceRepository;
+import com.android.ide.common.resources.ResourceResolver;
+import com.android.ide.common.resources.ResourceValueMap;
+import com.android.ide.common.resources.configuration.FolderConfiguration;
+import com.android.resources.ResourceType;
+import com.android.utils.Pair;
+
+import org.eclipse.andmore.AndmoreAndroidPlugin;
+import org.eclipse.andmore.internal.resources.ResourceHelper;
+import org.eclipse.swt.widgets.Display;
+
+import java.awt.image.BufferedImage;
+import java.util.HashMap;
+import java.util.IdentityHashMap;
+import java.util.Map;
+import java.util.PriorityQueue;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Schedules the renders of the previews of a {@link RenderPreviewManager}.
+ * <p/>
+ * A render goes through three steps:
+ * <ol>
+ * <li>the resource resolver of the preview is computed on a worker thread. Resolvers,
+ * and the configured resources they are made of, are shared by all the previews with
+ * the same configuration and theme until the preview revision changes;</li>
+ * <li>the layout is rendered on the UI thread. Layoutlib only renders one session at a
+ * time, and fails when sessions are rendered from other threads, so the previews are
+ * rendered one after the other, each in its own UI event such that the editor stays
+ * responsive. Visible previews go first, then zoomed previews, then the others in the
+ * order they were scheduled;</li>
+ * <li>the thumbnail is scaled down on a worker thread, and installed on the UI thread.</li>
+ * </ol>
+ * When a preview is zoomed, its thumbnail is scaled again on a worker thread from the
+ * copies of its last rendering kept by the {@link ThumbnailCache}; it is only rendered
+ * again when the cache can't provide a large enough image.
+ * <p/>
+ * The workers are shared by all the editors, with one thread per core. A request is
+ * dropped when its preview is scheduled again or disposed, or when the preview revision
+ * changes.
+ */
+class RenderPreviewScheduler {
+    /** Delay before the first render of a burst of requests, in ms */
+    private static final int RENDER_DELAY = 150;
+
+    private static final ExecutorService sWorkers;
+    static {
+        int cores = Runtime.getRuntime().availableProcessors();
+        ThreadPoolExecutor workers = new ThreadPoolExecutor(cores, cores,
+                30, TimeUnit.SECONDS, new LinkedBlockingQueue<Runnable>(),
+                new ThreadFactory() {
+                    @Override
+                    public Thread newThread(Runnable runnable) {
+                        Thread thread = new Thread(runnable, "Render Preview"); //$NON-NLS-1$
+                        thread.setDaemon(true);
+                        thread.setPriority(Thread.MIN_PRIORITY);
+                        return thread;
+                    }
+                });
+        workers.allowCoreThreadTimeOut(true);
+        sWorkers = workers;
+    }
+
+    /** A render request of a preview */
+    private static final class Request implements Comparable<Request> {
+        private final RenderPreview mPreview;
+        private final long mSequence;
+        private final int mRevision;
+        private ResourceResolver mResolver;
+
+        Request(RenderPreview preview, long sequence, int revision) {
+            mPreview = preview;
+            mSequence = sequence;
+            mRevision = revision;
+        }
+
+        private int getRank() {
+            if (!mPreview.isVisible()) {
+                return 2;
+            }
+            return mPreview.getScale() > 1.2 ? 0 : 1;
+        }
+
+        @Override
+        public int compareTo(Request other) {
+            int delta = getRank() - other.getRank();
+            if (delta != 0) {
+                return delta;
+            }
+            return Long.compare(mSequence, other.mSequence);
+        }
+    }
+
+    private final LayoutCanvas mCanvas;
+
+    /** The current request of each preview; any other request is stale */
+    private final Map<RenderPreview, Request> mLatest =
+            new IdentityHashMap<RenderPreview, Request>();
+    /** Requests waiting for their resource resolver */
+    private final PriorityQueue<Request> mPending = new PriorityQueue<Request>();
+    /** Requests waiting to be rendered */
+    private final PriorityQueue<Request> mReady = new PriorityQueue<Request>();
+    private long mSequence;
+    private boolean mRenderPosted;
+
+    /** Revision of the shared resources */
+    private int mResourceRevision = -1;
+    private final Map<FolderConfiguration, Pair<Map<ResourceType, ResourceValueMap>,
+            Map<ResourceType, ResourceValueMap>>> mConfiguredResources =
+            new HashMap<FolderConfiguration, Pair<Map<ResourceType, ResourceValueMap>,
+                    Map<ResourceType, ResourceValueMap>>>();
+    private final Map<Pair<FolderConfiguration, String>, ResourceResolver> mResolvers =
+            new HashMap<Pair<FolderConfiguration, String>, ResourceResolver>();
+
+    /**
+     * Creates a scheduler for the previews of the given canvas
+     *
+     * @param canvas the canvas showing the previews
+     */
+    RenderPreviewScheduler(@NonNull LayoutCanvas canvas) {
+        mCanvas = canvas;
+    }
+
+    /**
+     * Schedules a render of the given preview, replacing any pending one
+     *
+     * @param preview the preview to render
+     */
+    void schedule(@NonNull RenderPreview preview) {
+        synchronized (this) {
+            Request request = new Request(preview, mSequence++,
+                    RenderPreviewManager.getRevision());
+            mLatest.put(preview, request);
+            mPending.add(request);
+        }
+        sWorkers.execute(new Runnable() {
+            @Override
+            public void run() {
+                resolveNext();
+            }
+        });
+    }
+
+    /**
+     * Schedules a new thumbnail of the given preview, at its current size. The thumbnail
+     * is created from the {@link ThumbnailCache} when possible, otherwise the preview is
+     * rendered again.
+     *
+     * @param preview the preview to scale
+     */
+    void rescale(@NonNull final RenderPreview preview) {
+        final Request request;
+        synchronized (this) {
+            if (mLatest.containsKey(preview)) {
+                // The pending request will create the thumbnail at the new size
+                return;
+            }
+            request = new Request(preview, mSequence++, RenderPreviewManager.getRevision());
+            mLatest.put(preview, request);
+        }
+        sWorkers.execute(new Runnable() {
+            @Override
+            public void run() {
+                if (isStale(request)) {
+                    return;
+                }
+                BufferedImage thumbnail = null;
+                try {
+                    thumbnail = preview.rescaleThumbnail();
+                } catch (Throwable t) {
+                    AndmoreAndroidPlugin.log(t, "Failed to scale preview thumbnail");
+                }
+                if (thumbnail == null) {
+                    finish(request);
+                    schedule(preview);
+                    return;
+                }
+                final BufferedImage scaled = thumbnail;
+                if (mCanvas.isDisposed()) {
+                    return;
+                }
+                mCanvas.getDisplay().asyncExec(new Runnable() {
+                    @Override
+                    public void run() {
+                        if (!isStale(request) && !mCanvas.isDisposed()) {
+                            preview.setThumbnail(scaled);
+                            mCanvas.redraw();
+                        }
+                        finish(request);
+                    }
+                });
+            }
+        });
+    }
+
+    /**
+     * Cancels the pending render of the given preview, if any
+     *
+     * @param preview the preview
+     */
+    synchronized void cancel(@NonNull RenderPreview preview) {
+        mLatest.remove(preview);
+    }
+
+    /** Clears the shared resources, for instance when the resources have changed */
+    synchronized void clearResources() {
+        mConfiguredResources.clear();
+        mResolvers.clear();
+    }
+
+    /**
+     * Returns a resource resolver for the given configuration and theme, shared by the
+     * previews of the current revision. This can be called from any thread.
+     *
+     * @param config the configuration to resolve resources for
+     * @param theme the theme, a style resource url
+     * @param frameworkRes the framework resources
+     * @param projectRes the project resources
+     * @return the resource resolver
+     */
+    @NonNull
+    ResourceResolver getResourceResolver(@NonNull FolderConfiguration config,
+            @NonNull String theme, @NonNull ResourceRepository frameworkRes,
+            @NonNull ResourceRepository projectRes) {
+        FolderConfiguration key = new FolderConfiguration();
+        key.set(config);
+        Pair<FolderConfiguration, String> resolverKey = Pair.of(key, theme);
+        Pair<Map<ResourceType, ResourceValueMap>, Map<ResourceType, ResourceValueMap>> configured;
+        synchronized (this) {
+            int revision = RenderPreviewManager.getRevision();
+            if (mResourceRevision != revision) {
+                clearResources();
+                mResourceRevision = revision;
+            }
+            ResourceResolver resolver = mResolvers.get(resolverKey);
+            if (resolver != null) {
+                return resolver;
+            }
+            configured = mConfiguredResources.get(key);
+        }
+
+        // Compute outside of the lock: other workers may do the same, the first one wins
+        if (configured == null) {
+            configured = Pair.of(frameworkRes.getConfiguredResources(key),
+                    projectRes.getConfiguredResources(key));
+        }
+        ResourceResolver resolver = ResourceResolver.create(
+                configured.getSecond(), configured.getFirst(),
+                ResourceHelper.styleToTheme(theme),
+                ResourceHelper.isProjectStyle(theme));
+
+        synchronized (this) {
+            if (!mConfiguredResources.containsKey(key)) {
+                mConfiguredResources.put(key, configured);
+            }
+            ResourceResolver existing = mResolvers.get(resolverKey);
+            if (existing != null) {
+                return existing;
+            }
+            mResolvers.put(resolverKey, resolver);
+        }
+        return resolver;
+    }
+
+    private synchronized boolean isStale(Request request) {
+        return mLatest.get(request.mPreview) != request
+                || request.mRevision != RenderPreviewManager.getRevision();
+    }
+
+    private synchronized void finish(Request request) {
+        if (mLatest.get(request.mPreview) == request) {
+            mLatest.remove(request.mPreview);
+        }
+    }
+
+    /** Computes the resource resolver of the most urgent pending request. Worker thread. */
+    private void resolveNext() {
+        Request request;
+        synchronized (this) {
+            request = mPending.poll();
+        }
+        if (request == null || isStale(request)) {
+            return;
+        }
+
+        try {
+            request.mResolver = request.mPreview.getResourceResolver();
+        } catch (Throwable t) {
+            AndmoreAndroidPlugin.log(t, "Failed to resolve resources of preview");
+        }
+
+        synchronized (this) {
+            mReady.add(request);
+        }
+        postRender(false);
+    }
+
+    private void postRender(boolean immediately) {
+        synchronized (this) {
+            if (mRenderPosted) {
+                return;
+            }
+            mRenderPosted = true;
+        }
+
+        final Runnable render = new Runnable() {
+            @Override
+            public void run() {
+                renderNext();
+            }
+        };
+        if (mCanvas.isDisposed()) {
+            return;
+        }
+        Display display = mCanvas.getDisplay();
+        if (immediately) {
+            display.asyncExec(render);
+        } else {
+            display.asyncExec(new Runnable() {
+                @Override
+                public void run() {
+                    if (!mCanvas.isDisposed()) {
+                        mCanvas.getDisplay().timerExec(RENDER_DELAY, render);
+                    }
+                }
+            });
+        }
+    }
+
+    /** Renders the most urgent prepared request. UI thread. */
+    private void renderNext() {
+        Request request;
+        boolean more;
+        synchronized (this) {
+            mRenderPosted = false;
+            request = mReady.poll();
+            while (request != null && isStale(request)) {
+                request = mReady.poll();
+            }
+            more = !mReady.isEmpty();
+        }
+        if (mCanvas.isDisposed()) {
+            synchronized (this) {
+                mLatest.clear();
+                mPending.clear();
+                mReady.clear();
+            }
+            return;
+        }
+        if (more) {
+            postRender(true);
+        }
+        if (request == null) {
+            return;
+        }
+
+        final RenderPreview preview = request.mPreview;
+        final RenderSession session = preview.renderSession(request.mResolver);
+        if (session == null) {
+            finish(request);
+            mCanvas.redraw();
+            return;
+        }
+
+        // The session is kept until its image has been scaled down
+        final Request rendered = request;
+        final BufferedImage image = session.getImage();
+        sWorkers.execute(new Runnable() {
+            @Override
+            public void run() {
+                BufferedImage thumbnail = null;
+                try {
+                    if (!isStale(rendered)) {
+                        thumbnail = preview.createThumbnail(image);
+                    }
+                } catch (Throwable t) {
+                    AndmoreAndroidPlugin.log(t, "Failed to create preview thumbnail");
+                }
+                final BufferedImage scaled = thumbnail;
+                if (mCanvas.isDisposed()) {
+                    RenderSessionPool.get().release(session);
+                    return;
+                }
+                mCanvas.getDisplay().asyncExec(new Runnable() {
+                    @Override
+                    public void run() {
+                        // The thumbnail can be the image of the session itself
+                        if (scaled != null && !isStale(rendered) && !mCanvas.isDisposed()) {
+                            preview.setThumbnail(scaled);
+                            mCanvas.redraw();
+                        }
+                        RenderSessionPool.get().release(session);
+                        finish(rendered);
+                    }
+                });
+            }
+        });
+    }
+}
@@ -18,6 +18,7 @@ package org.eclipse.andmore.internal.editors.layout.gle2;
 import static com.android.SdkConstants.LAYOUT_RESOURCE_PREFIX;
 
 import com.android.annotations.NonNull;
+import com.android.annotations.Nullable;
 import com.android.ide.common.api.IClientRulesEngine;
 import com.android.ide.common.api.INode;
 import com.android.ide.common.api.Rect;
@@ -25,6 +26,7 @@ import com.android.ide.common.rendering.HardwareConfigHelper;
 import com.android.ide.common.rendering.LayoutLibrary;
 import org.eclipse.andmore.internal.editors.layout.RenderSecurityManager;
 import com.android.ide.common.rendering.api.DrawableParams;
+import com.android.ide.common.rendering.api.Features;
 import com.android.ide.common.rendering.api.HardwareConfig;
 import com.android.ide.common.rendering.api.IImageFactory;
 import com.android.ide.common.rendering.api.ILayoutPullParser;
@@ -51,6 +53,9 @@ import org.eclipse.andmore.internal.editors.layout.configuration.Configuration;
 import org.eclipse.andmore.internal.editors.layout.configuration.ConfigurationChooser;
 import org.eclipse.andmore.internal.editors.layout.configuration.Locale;
 import org.eclipse.andmore.internal.editors.layout.gle2.IncludeFinder.Reference;
+import org.eclipse.andmore.internal.editors.layout.gle2.RenderSessionPool.Key;
+import org.eclipse.andmore.internal.editors.layout.gle2.RenderSessionPool.PooledSession;
+import org.eclipse.andmore.internal.editors.layout.gle2.RenderSessionPool.SessionLog;
 import org.eclipse.andmore.internal.editors.layout.gre.NodeFactory;
 import org.eclipse.andmore.internal.editors.layout.gre.NodeProxy;
 import org.eclipse.andmore.internal.editors.layout.uimodel.UiViewElementNode;
@@ -62,6 +67,7 @@ import org.eclipse.andmore.internal.sdk.AndroidTargetData;
 import org.eclipse.andmore.internal.sdk.Sdk;
 import org.eclipse.andworx.build.AndworxFactory;
 import org.eclipse.andworx.context.AndroidEnvironment;
+import org.eclipse.core.resources.IFile;
 import org.eclipse.core.resources.IProject;
 import org.xmlpull.v1.XmlPullParser;
 import org.xmlpull.v1.XmlPullParserException;
@@ -73,6 +79,7 @@ import java.io.IOException;
 import java.io.StringReader;
 import java.util.Collections;
 import java.util.HashMap;
+import java.util.HashSet;
 import java.util.List;
 import java.util.Map;
 import java.util.Set;
@@ -84,6 +91,9 @@ import java.util.Set;
 public class RenderService {
     private static final Object RENDERING_LOCK = new Object();
 
+    /** Timeout of the render of a session reused from the {@link RenderSessionPool} */
+    private static final long POOLED_RENDER_TIMEOUT_MS = 1000;
+
     /** Reference to the file being edited. Can also be used to access the {@link IProject}. */
     private final GraphicalEditorPart mEditor;
 
@@ -96,7 +106,7 @@ public class RenderService {
     private final int mMinSdkVersion;
     private final int mTargetSdkVersion;
     private final LayoutLibrary mLayoutLib;
-    private final IImageFactory mImageFactory;
+    private IImageFactory mImageFactory;
     private final HardwareConfigHelper mHardwareConfigHelper;
     private final Locale mLocale;
 
@@ -104,6 +114,7 @@ public class RenderService {
     // setters:
 
     private UiDocumentNode mModel;
+    private IFile mLayoutFile;
     private Reference mIncludedWithin;
     private RenderingMode mRenderingMode = RenderingMode.NORMAL;
     private LayoutLog mLogger;
@@ -299,6 +310,19 @@ public class RenderService {
         return this;
     }
 
+    /**
+     * Sets the layout file the model was read from, when it is not the file being edited.
+     * This is only used to find sessions of the {@link RenderSessionPool} which rendered
+     * the same layout.
+     *
+     * @param layoutFile the file of the model to be rendered
+     * @return this (such that chains of setters can be stringed together)
+     */
+    public RenderService setLayoutFile(IFile layoutFile) {
+        mLayoutFile = layoutFile;
+        return this;
+    }
+
     /**
      * Overrides the width and height to be used during rendering (which might be adjusted if
      * the {@link #setRenderingMode(RenderingMode)} is {@link RenderingMode#FULL_EXPAND}.
@@ -368,6 +392,19 @@ public class RenderService {
         return this;
     }
 
+    /**
+     * Sets the factory of the image the layout is rendered into. The default is the image
+     * overlay of the canvas, whose image is reused by the next render of the same size.
+     *
+     * @param imageFactory the image factory, or null to let each session allocate its
+     *            own image
+     * @return this (such that chains of setters can be stringed together)
+     */
+    public RenderService setImageFactory(@Nullable IImageFactory imageFactory) {
+        mImageFactory = imageFactory;
+        return this;
+    }
+
     /**
      * Sets the nodes to expand during rendering. These will be padded with approximately
      * 20 pixels and also highlighted by the {@link EmptyViewsOverlay}. The default is an
@@ -528,6 +565,237 @@ public class RenderService {
         }
     }
 
+    /**
+     * Renders the model like {@link #createRenderSession()}, reusing a session of the
+     * {@link RenderSessionPool} which rendered the same layout with the same configuration
+     * when there is one. When the model changed since that session was rendered, only
+     * the subtree containing the changes is inflated again, provided the layout library
+     * can manipulate views; otherwise a new session is created and added to the pool.
+     * <p/>
+     * Sessions returned by this method must be given back with
+     * {@link RenderSessionPool#release} rather than disposed.
+     *
+     * @param current the session currently displayed for this layout, or null
+     * @return the {@link RenderSession} resulting from rendering the current model
+     */
+    public RenderSession createPooledRenderSession(@Nullable RenderSession current) {
+        assert mModel != null : "Incomplete service config";
+        finishConfiguration();
+
+        if (mResourceResolver == null) {
+            // Abort the rendering if the resources are not found.
+            return null;
+        }
+
+        if (mIncludedWithin != null) {
+            // The views of the outer layout can't be matched with the model
+            return createRenderSession();
+        }
+
+        RenderSessionPool pool = RenderSessionPool.get();
+        Key key = createPoolKey();
+        PooledSession pooled = pool.find(current, key);
+        if (pooled == null) {
+            pooled = pool.checkout(key);
+        }
+        if (pooled != null) {
+            if (updatePooledSession(pooled)) {
+                return pooled.getSession();
+            }
+
+            // The session no longer matches the model: it is disposed once replaced
+            RenderSession stale = pooled.getSession();
+            if (stale == current) {
+                pool.remove(stale);
+            } else {
+                pool.discard(stale);
+            }
+        }
+
+        LayoutLog logger = mLogger;
+        SessionLog log = new SessionLog(logger);
+        mLogger = log;
+        RenderSession session;
+        try {
+            session = createRenderSession();
+        } finally {
+            mLogger = logger;
+        }
+        if (session != null && session.getResult().isSuccess() && isCleanRender(log)) {
+            pool.update(pool.register(session, key, mEditor, log),
+                    new LayoutFingerprint(mModel));
+        }
+
+        return session;
+    }
+
+    /** Returns the key of the sessions rendering the model with the current settings */
+    private Key createPoolKey() {
+        HardwareConfig config = mHardwareConfigHelper.getConfig();
+        IFile layoutFile = mLayoutFile != null ? mLayoutFile : mEditor.getEditedFile();
+        String activity = mEditor.getConfigurationChooser().getConfiguration().getActivity();
+        Object[] values = new Object[] {
+                layoutFile,
+                config.getScreenWidth(),
+                config.getScreenHeight(),
+                config.getXdpi(),
+                config.getYdpi(),
+                config.getScreenSize(),
+                config.getDensity(),
+                config.getOrientation(),
+                config.hasSoftwareButtons(),
+                mLocale.toLocaleId(),
+                mRenderingMode,
+                mShowDecorations,
+                mOverrideBgColor,
+                new HashSet<UiElementNode>(mExpandNodes),
+                activity,
+                mMinSdkVersion,
+                mTargetSdkVersion
+        };
+        Object[] instances = new Object[] {
+                mLayoutLib,
+                mResourceResolver,
+                mProjectCallback,
+                mImageFactory
+        };
+        return new Key(values, instances);
+    }
+
+    /**
+     * Brings a pooled session up to date with the model, rendering it again
+     *
+     * @param pooled the session
+     * @return true if the session was rendered, false if it must be replaced
+     */
+    private boolean updatePooledSession(PooledSession pooled) {
+        LayoutFingerprint fingerprint = pooled.getFingerprint();
+        if (fingerprint == null) {
+            return false;
+        }
+        UiElementNode changed = fingerprint.findChangedNode(mModel);
+        if (changed != null && !canReinflate(changed)) {
+            return false;
+        }
+
+        RenderSession session = pooled.getSession();
+        SessionLog log = pooled.getLog();
+        log.setDelegate(mLogger);
+        Result result;
+        mProjectCallback.setLogger(mLogger);
+        mProjectCallback.setResourceResolver(mResourceResolver);
+        RenderSecurityManager securityManager = createSecurityManager();
+        try {
+            securityManager.setActive(true, mCredential);
+            synchronized (RENDERING_LOCK) {
+                if (changed == null) {
+                    // The image buffer is shared with other sessions: draw again
+                    result = session.render(POOLED_RENDER_TIMEOUT_MS);
+                } else {
+                    result = reinflate(session, changed);
+                }
+            }
+        } catch (RuntimeException t) {
+            // Exceptions from the bridge
+            mLogger.error(null, t.getLocalizedMessage(), t, null, null);
+            RenderSessionPool.get().remove(session);
+            throw t;
+        } finally {
+            securityManager.dispose(mCredential);
+            mProjectCallback.setLogger(null);
+            mProjectCallback.setResourceResolver(null);
+        }
+
+        // Problems are only reported for what was inflated again: when there are any,
+        // render the whole layout such that they are all reported.
+        if (result == null || !result.isSuccess() || !isCleanRender(log)) {
+            return false;
+        }
+
+        RenderSessionPool.get().update(pooled, new LayoutFingerprint(mModel));
+        return true;
+    }
+
+    /**
+     * Returns true if the given node can be inflated again on its own: it must not be
+     * the root view, and the layout library must be able to add and remove views.
+     */
+    private boolean canReinflate(UiElementNode node) {
+        UiElementNode parent = node.getUiParent();
+        return parent != null && parent != mModel
+                && mLayoutLib.supports(Features.VIEW_MANIPULATION);
+    }
+
+    /**
+     * Replaces the views of a changed node, and renders the session
+     *
+     * @return the result of the render, or null if the views of the node can't be found
+     */
+    private Result reinflate(RenderSession session, final UiElementNode node) {
+        UiElementNode parent = node.getUiParent();
+        ViewInfo parentInfo = findViewInfo(session.getRootViews(), parent);
+        if (parentInfo == null || parentInfo.getViewObject() == null) {
+            return null;
+        }
+
+        // The views must map one to one to the children of the node, which isn't the
+        // case for adapter views for example
+        List<ViewInfo> views = parentInfo.getChildren();
+        List<UiElementNode> children = parent.getUiChildren();
+        if (views == null || views.size() != children.size()) {
+            return null;
+        }
+        for (int i = 0, n = views.size(); i < n; i++) {
+            if (views.get(i).getCookie() != children.get(i)) {
+                return null;
+            }
+        }
+
+        int index = children.indexOf(node);
+        Object view = views.get(index).getViewObject();
+        if (view == null) {
+            return null;
+        }
+        Result result = session.removeChild(view, null /*listener*/);
+        if (!result.isSuccess()) {
+            return result;
+        }
+
+        HardwareConfig hardwareConfig = mHardwareConfigHelper.getConfig();
+        UiElementPullParser parser = new UiElementPullParser(node, false, mExpandNodes,
+                hardwareConfig.getDensity(), mProject) {
+            @Override
+            protected boolean isTopElement() {
+                return true;
+            }
+        };
+        return session.insertChild(parentInfo.getViewObject(), parser, index,
+                null /*listener*/);
+    }
+
+    private static ViewInfo findViewInfo(List<ViewInfo> infos, UiElementNode node) {
+        if (infos == null) {
+            return null;
+        }
+        for (ViewInfo info : infos) {
+            if (info.getCookie() == node) {
+                return info;
+            }
+            ViewInfo result = findViewInfo(info.getChildren(), node);
+            if (result != null) {
+                return result;
+            }
+        }
+        return null;
+    }
+
+    /** Returns true if nothing went wrong during the last render of the session */
+    private boolean isCleanRender(SessionLog log) {
+        return !log.hasProblems()
+                && mProjectCallback.getMissingClasses().isEmpty()
+                && mProjectCallback.getUninstantiatableClasses().isEmpty();
+    }
+
     /**
      * Renders the given resource value (which should refer to a drawable) and returns it
      * as an image
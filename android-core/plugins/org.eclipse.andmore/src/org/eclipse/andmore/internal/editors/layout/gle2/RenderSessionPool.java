@@ -0,0 +1,405 @@
+/*
+ * Copyright (C) 2018 The Android Open Source Project
+ *
+ * Licensed under the Eclipse Public License, Version 1.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.eclipse.org/org/documents/epl-v10.php
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.eclipse.andmore.internal.editors.layout.gle2;
+
+import com.android.annotations.NonNull;
+import com.android.annotations.Nullable;
+import com.android.ide.common.rendering.api.LayoutLog;
+import com.android.ide.common.rendering.api.RenderSession;
+
+import java.awt.image.BufferedImage;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Keeps layoutlib {@link RenderSession}s alive between renders, such that a layout which
+ * is rendered again with the same configuration can be updated in its existing session
+ * rather than inflated from scratch.
+ * <p/>
+ * Sessions are created and updated by the {@link RenderService}, which registers them
+ * under a {@link Key}. A registered session is either in use, by the view hierarchy of a
+ * layout editor or by a preview which is rendering, or idle in the pool. Idle sessions
+ * are disposed when they have not been used for {@link #IDLE_TIMEOUT_MS}, and the least
+ * recently used ones are disposed first when the pool holds more than
+ * {@link #MAX_IDLE_SESSIONS} idle sessions or when the sessions it knows about are
+ * estimated to use more than {@link #MAX_IMAGE_BYTES}.
+ */
+class RenderSessionPool {
+    /** Ceiling of the memory used by the sessions, estimated from their image sizes */
+    private static final long MAX_IMAGE_BYTES = 128 * 1024 * 1024;
+
+    /** Maximum number of idle sessions */
+    private static final int MAX_IDLE_SESSIONS = 16;
+
+    /** Delay after which an idle session is disposed */
+    private static final long IDLE_TIMEOUT_MS = 5 * 60 * 1000;
+
+    private static final RenderSessionPool sInstance = new RenderSessionPool();
+
+    private final Map<RenderSession, PooledSession> mSessions =
+            new IdentityHashMap<RenderSession, PooledSession>();
+
+    /**
+     * Identifies what a session renders: the layout file, the configuration, theme and
+     * target, and the rendering options. Objects which layoutlib holds on to, such as the
+     * resource resolver or the project callback, are compared by identity since a session
+     * can't be updated to use new ones.
+     */
+    static final class Key {
+        private final Object[] mValues;
+        private final Object[] mInstances;
+        private final int mHash;
+
+        /**
+         * Creates a new key
+         *
+         * @param values the values of the key, compared with {@link Object#equals}
+         * @param instances the objects of the key, compared by identity
+         */
+        Key(@NonNull Object[] values, @NonNull Object[] instances) {
+            mValues = values;
+            mInstances = instances;
+            int hash = Arrays.hashCode(values);
+            for (Object instance : instances) {
+                hash = 31 * hash + System.identityHashCode(instance);
+            }
+            mHash = hash;
+        }
+
+        @Override
+        public int hashCode() {
+            return mHash;
+        }
+
+        @Override
+        public boolean equals(Object obj) {
+            if (this == obj) {
+                return true;
+            }
+            if (!(obj instanceof Key)) {
+                return false;
+            }
+            Key other = (Key) obj;
+            if (mHash != other.mHash || mInstances.length != other.mInstances.length) {
+                return false;
+            }
+            for (int i = 0; i < mInstances.length; i++) {
+                if (mInstances[i] != other.mInstances[i]) {
+                    return false;
+                }
+            }
+            return Arrays.equals(mValues, other.mValues);
+        }
+    }
+
+    /**
+     * {@link LayoutLog} of a pooled session. Layoutlib keeps the log a session was created
+     * with, so the messages of a later update are forwarded to the log of that update.
+     */
+    static final class SessionLog extends LayoutLog {
+        private LayoutLog mDelegate;
+        private boolean mHasProblems;
+
+        SessionLog(@NonNull LayoutLog delegate) {
+            mDelegate = delegate;
+        }
+
+        /**
+         * Forwards the next messages to the given log
+         *
+         * @param delegate the log of the next render
+         */
+        synchronized void setDelegate(@NonNull LayoutLog delegate) {
+            mDelegate = delegate;
+            mHasProblems = false;
+        }
+
+        /**
+         * Returns true if an error or a warning was logged since the last
+         * {@link #setDelegate}
+         *
+         * @return true if there were problems
+         */
+        synchronized boolean hasProblems() {
+            return mHasProblems;
+        }
+
+        private synchronized LayoutLog problem() {
+            mHasProblems = true;
+            return mDelegate;
+        }
+
+        @Override
+        public void warning(String tag, String message, Object data) {
+            problem().warning(tag, message, data);
+        }
+
+        @Override
+        public void fidelityWarning(String tag, String message, Throwable throwable,
+                Object data) {
+            problem().fidelityWarning(tag, message, throwable, data);
+        }
+
+        @Override
+        public void error(String tag, String message, Object data) {
+            problem().error(tag, message, data);
+        }
+
+        @Override
+        public void error(String tag, String message, Throwable throwable, Object data) {
+            problem().error(tag, message, throwable, data);
+        }
+    }
+
+    /** A session of the pool, with the state of the model it was last rendered from */
+    static final class PooledSession {
+        private final RenderSession mSession;
+        private final Key mKey;
+        private final Object mOwner;
+        private final SessionLog mLog;
+        private LayoutFingerprint mFingerprint;
+        private long mImageBytes;
+        private long mLastUsed;
+        private boolean mIdle;
+
+        private PooledSession(RenderSession session, Key key, Object owner, SessionLog log) {
+            mSession = session;
+            mKey = key;
+            mOwner = owner;
+            mLog = log;
+        }
+
+        @NonNull
+        RenderSession getSession() {
+            return mSession;
+        }
+
+        @NonNull
+        SessionLog getLog() {
+            return mLog;
+        }
+
+        @Nullable
+        LayoutFingerprint getFingerprint() {
+            return mFingerprint;
+        }
+    }
+
+    /**
+     * Returns the pool shared by all the layout editors
+     *
+     * @return the pool
+     */
+    @NonNull
+    static RenderSessionPool get() {
+        return sInstance;
+    }
+
+    /**
+     * Returns a session in use if it was registered with the given key
+     *
+     * @param session the session, or null
+     * @param key the key the session is looked up for
+     * @return the pooled session, or null if the session was not registered with this key
+     */
+    @Nullable
+    synchronized PooledSession find(@Nullable RenderSession session, @NonNull Key key) {
+        PooledSession pooled = session != null ? mSessions.get(session) : null;
+        if (pooled != null && !pooled.mIdle && pooled.mKey.equals(key)) {
+            return pooled;
+        }
+        return null;
+    }
+
+    /**
+     * Takes an idle session registered with the given key out of the pool. The session is
+     * in use until it is {@link #release}d.
+     *
+     * @param key the key of the session
+     * @return the pooled session, or null if there is no idle session for this key
+     */
+    @Nullable
+    PooledSession checkout(@NonNull Key key) {
+        PooledSession result = null;
+        List<RenderSession> evicted;
+        synchronized (this) {
+            evicted = trim(System.currentTimeMillis());
+            for (PooledSession pooled : mSessions.values()) {
+                if (pooled.mIdle && pooled.mKey.equals(key)) {
+                    pooled.mIdle = false;
+                    result = pooled;
+                    break;
+                }
+            }
+        }
+        dispose(evicted);
+        return result;
+    }
+
+    /**
+     * Registers a new session, which is in use.
+     *
+     * @param session the session
+     * @param key the key of the session
+     * @param owner the object (such as an editor) the session is rendered for
+     * @param log the log the session was created with
+     * @return the pooled session
+     */
+    @NonNull
+    synchronized PooledSession register(@NonNull RenderSession session, @NonNull Key key,
+            @NonNull Object owner, @NonNull SessionLog log) {
+        PooledSession pooled = new PooledSession(session, key, owner, log);
+        mSessions.put(session, pooled);
+        return pooled;
+    }
+
+    /**
+     * Records the state of the model a session has just rendered
+     *
+     * @param pooled the session
+     * @param fingerprint the rendered model
+     */
+    synchronized void update(@NonNull PooledSession pooled,
+            @NonNull LayoutFingerprint fingerprint) {
+        pooled.mFingerprint = fingerprint;
+        BufferedImage image = pooled.mSession.getImage();
+        pooled.mImageBytes = image != null ? 4L * image.getWidth() * image.getHeight() : 0;
+    }
+
+    /**
+     * Returns a session which is no longer used to the pool. Sessions which were not
+     * registered are disposed.
+     *
+     * @param session the session, or null
+     */
+    void release(@Nullable RenderSession session) {
+        if (session == null) {
+            return;
+        }
+
+        List<RenderSession> evicted;
+        synchronized (this) {
+            long now = System.currentTimeMillis();
+            PooledSession pooled = mSessions.get(session);
+            if (pooled == null) {
+                evicted = trim(now);
+                evicted.add(session);
+            } else {
+                // Keep a single idle session per key: it is the one a new render picks
+                for (PooledSession other : mSessions.values()) {
+                    if (other != pooled && other.mIdle && other.mKey.equals(pooled.mKey)) {
+                        other.mLastUsed = 0;
+                    }
+                }
+                pooled.mIdle = true;
+                pooled.mLastUsed = now;
+                evicted = trim(now);
+            }
+        }
+        dispose(evicted);
+    }
+
+    /**
+     * Removes a session in use from the pool, typically because its views no longer
+     * match the model it was rendered from. The session is disposed when it is released.
+     *
+     * @param session the session, or null
+     */
+    synchronized void remove(@Nullable RenderSession session) {
+        if (session != null) {
+            mSessions.remove(session);
+        }
+    }
+
+    /**
+     * Removes a session from the pool and disposes it
+     *
+     * @param session the session, or null
+     */
+    void discard(@Nullable RenderSession session) {
+        if (session == null) {
+            return;
+        }
+        remove(session);
+        session.dispose();
+    }
+
+    /**
+     * Disposes the idle sessions rendered for the given owner, typically when an editor
+     * is closed or switches to another rendering target.
+     *
+     * @param owner the owner of the sessions
+     */
+    void discardAll(@NonNull Object owner) {
+        List<RenderSession> evicted = new ArrayList<RenderSession>();
+        synchronized (this) {
+            for (PooledSession pooled : new ArrayList<PooledSession>(mSessions.values())) {
+                if (pooled.mIdle && pooled.mOwner == owner) {
+                    mSessions.remove(pooled.mSession);
+                    evicted.add(pooled.mSession);
+                }
+            }
+        }
+        dispose(evicted);
+    }
+
+    /**
+     * Removes the expired idle sessions, then the least recently used ones while the
+     * pool is over its limits.
+     *
+     * @return the sessions to dispose, once outside of the pool lock
+     */
+    private List<RenderSession> trim(long now) {
+        List<RenderSession> evicted = new ArrayList<RenderSession>();
+        long bytes = 0;
+        int idle = 0;
+        for (PooledSession pooled : new ArrayList<PooledSession>(mSessions.values())) {
+            if (pooled.mIdle && now - pooled.mLastUsed > IDLE_TIMEOUT_MS) {
+                mSessions.remove(pooled.mSession);
+                evicted.add(pooled.mSession);
+            } else {
+                bytes += pooled.mImageBytes;
+                if (pooled.mIdle) {
+                    idle++;
+                }
+            }
+        }
+
+        while (idle > 0 && (idle > MAX_IDLE_SESSIONS || bytes > MAX_IMAGE_BYTES)) {
+            PooledSession oldest = null;
+            for (PooledSession pooled : mSessions.values()) {
+                if (pooled.mIdle && (oldest == null || pooled.mLastUsed < oldest.mLastUsed)) {
+                    oldest = pooled;
+                }
+            }
+            mSessions.remove(oldest.mSession);
+            evicted.add(oldest.mSession);
+            bytes -= oldest.mImageBytes;
+            idle--;
+        }
+
+        return evicted;
+    }
+
+    private static void dispose(List<RenderSession> sessions) {
+        for (RenderSession session : sessions) {
+            session.dispose();
+        }
+    }
+}
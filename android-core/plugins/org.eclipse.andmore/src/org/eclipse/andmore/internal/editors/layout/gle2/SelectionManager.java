@@ -737,11 +737,19 @@ public class SelectionManager implements ISelectionProvider {
     void sync() {
         // Check if the selection is still the same (based on the object keys)
         // and eventually recompute their bounds.
+        ViewHierarchy viewHierarchy = mCanvas.getViewHierarchy();
+        ViewHierarchyDiff diff = viewHierarchy.getLastDiff();
+        boolean changed = false;
         for (ListIterator<SelectionItem> it = mSelections.listIterator(); it.hasNext(); ) {
             SelectionItem s = it.next();
 
+            // Keep the selection of views which were reused, unchanged, by the render
+            if (diff != null && diff.isUnchanged(s.getViewInfo())) {
+                continue;
+            }
+            changed = true;
+
             // Check if the selected object still exists
-            ViewHierarchy viewHierarchy = mCanvas.getViewHierarchy();
             UiViewElementNode key = s.getViewInfo().getUiViewNode();
             CanvasViewInfo vi = viewHierarchy.findViewInfoFor(key);
 
@@ -756,7 +764,9 @@ public class SelectionManager implements ISelectionProvider {
                 it.add(createSelection(vi));
             }
         }
-        fireSelectionChanged();
+        if (changed || diff == null) {
+            fireSelectionChanged();
+        }
 
         // remove the current alternate selection views
         mAltSelection = null;
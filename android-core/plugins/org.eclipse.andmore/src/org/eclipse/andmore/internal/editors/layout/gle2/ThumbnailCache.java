@@ -0,0 +1,174 @@
+/*
+ * Copyright (C) 2018 The Android Open Source Project
+ *
+ * Licensed under the Eclipse Public License, Version 1.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.eclipse.org/org/documents/epl-v10.php
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.eclipse.andmore.internal.editors.layout.gle2;
+
+import com.android.annotations.NonNull;
+import com.android.annotations.Nullable;
+
+import java.awt.image.BufferedImage;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * Cache of the downscaled copies of the preview renderings, such that a preview can be
+ * zoomed without being rendered again. Each rendering is kept at 1/2, 1/4 and 1/8 of
+ * its size; a thumbnail is scaled down from the smallest of these levels which is
+ * larger than the thumbnail.
+ * <p/>
+ * The cache is shared by all the layout editors. It holds at most {@link #MAX_PIXELS}
+ * pixels, and evicts the least recently used renderings first.
+ */
+class ThumbnailCache {
+    /** Ceiling of the number of pixels held by the cache */
+    private static final long MAX_PIXELS = 16 * 1024 * 1024;
+
+    /** Number of levels kept per rendering */
+    private static final int LEVELS = 3;
+
+    private static final ThumbnailCache sInstance = new ThumbnailCache();
+
+    private final LinkedHashMap<Object, Mipmaps> mEntries =
+            new LinkedHashMap<Object, Mipmaps>(16, 0.75f, true /* accessOrder */);
+    private long mPixels;
+
+    /** The downscaled copies of a rendering */
+    static final class Mipmaps {
+        private final int mWidth;
+        private final int mHeight;
+        private final BufferedImage[] mLevels;
+        private final long mPixels;
+
+        private Mipmaps(int width, int height, BufferedImage[] levels) {
+            mWidth = width;
+            mHeight = height;
+            mLevels = levels;
+            long pixels = 0;
+            for (BufferedImage level : levels) {
+                pixels += (long) level.getWidth() * level.getHeight();
+            }
+            mPixels = pixels;
+        }
+
+        /**
+         * Returns the width of the rendering
+         *
+         * @return the width, in pixels
+         */
+        int getWidth() {
+            return mWidth;
+        }
+
+        /**
+         * Returns the height of the rendering
+         *
+         * @return the height, in pixels
+         */
+        int getHeight() {
+            return mHeight;
+        }
+
+        /**
+         * Returns the smallest level which is at least as large as the rendering scaled
+         * by the given factor
+         *
+         * @param scale the scale of the image to create, relative to the rendering
+         * @return the level image, or null if the full size rendering is needed
+         */
+        @Nullable
+        BufferedImage getLevel(double scale) {
+            double levelScale = 1.0 / (1 << mLevels.length);
+            for (int i = mLevels.length - 1; i >= 0; i--, levelScale *= 2) {
+                if (levelScale >= scale) {
+                    return mLevels[i];
+                }
+            }
+            return null;
+        }
+    }
+
+    /**
+     * Returns the cache shared by all the layout editors
+     *
+     * @return the cache
+     */
+    @NonNull
+    static ThumbnailCache get() {
+        return sInstance;
+    }
+
+    /**
+     * Computes the levels of a new rendering and stores them. This should not be called
+     * from the UI thread.
+     *
+     * @param owner the object (such as a preview) the image was rendered for
+     * @param image the full size rendering
+     * @return the levels of the rendering
+     */
+    @NonNull
+    Mipmaps put(@NonNull Object owner, @NonNull BufferedImage image) {
+        BufferedImage[] levels = new BufferedImage[LEVELS];
+        BufferedImage level = image;
+        for (int i = 0; i < LEVELS; i++) {
+            level = ImageUtils.scale(level, 0.5, 0.5);
+            levels[i] = level;
+        }
+        Mipmaps mipmaps = new Mipmaps(image.getWidth(), image.getHeight(), levels);
+
+        synchronized (this) {
+            Mipmaps previous = mEntries.put(owner, mipmaps);
+            if (previous != null) {
+                mPixels -= previous.mPixels;
+            }
+            mPixels += mipmaps.mPixels;
+
+            Iterator<Map.Entry<Object, Mipmaps>> iterator = mEntries.entrySet().iterator();
+            while (mPixels > MAX_PIXELS && iterator.hasNext()) {
+                Map.Entry<Object, Mipmaps> eldest = iterator.next();
+                if (eldest.getValue() != mipmaps) {
+                    mPixels -= eldest.getValue().mPixels;
+                    iterator.remove();
+                }
+            }
+        }
+
+        return mipmaps;
+    }
+
+    /**
+     * Returns the levels of the last rendering of the given owner
+     *
+     * @param owner the object the image was rendered for
+     * @return the levels, or null if they are not cached
+     */
+    @Nullable
+    synchronized Mipmaps get(@NonNull Object owner) {
+        return mEntries.get(owner);
+    }
+
+    /**
+     * Removes the levels of the given owner, typically when it is disposed or when its
+     * size changes
+     *
+     * @param owner the object the image was rendered for
+     */
+    synchronized void remove(@NonNull Object owner) {
+        Mipmaps mipmaps = mEntries.remove(owner);
+        if (mipmaps != null) {
+            mPixels -= mipmaps.mPixels;
+        }
+    }
+}
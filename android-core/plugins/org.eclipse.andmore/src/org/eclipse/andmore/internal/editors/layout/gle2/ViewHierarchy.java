@@ -44,7 +44,6 @@ import java.util.HashMap;
 import java.util.HashSet;
 import java.util.List;
 import java.util.Map;
-import java.util.RandomAccess;
 import java.util.Set;
 
 /**
@@ -124,12 +123,18 @@ public class ViewHierarchy {
     /** Map from DOM nodes to canvas view infos */
     private Map<Node, CanvasViewInfo> mDomNodeToView = Collections.emptyMap();
 
+    /** Changes made to the view infos by the last valid render */
+    private ViewHierarchyDiff mLastDiff;
+
+    /** Index of the view bounds for hit testing, created lazily after each render */
+    private ViewSpatialIndex mSpatialIndex;
+
     /**
      * Disposes the view hierarchy content.
      */
     public void dispose() {
         if (mSession != null) {
-            mSession.dispose();
+            RenderSessionPool.get().release(mSession);
             mSession = null;
         }
     }
@@ -152,15 +157,17 @@ public class ViewHierarchy {
      */
     /* package */ void setSession(RenderSession session, Set<UiElementNode> explodedNodes,
             boolean layoutlib5) {
-        // replace the previous scene, so the previous scene must be disposed.
-        if (mSession != null) {
-            mSession.dispose();
+        // replace the previous scene, so the previous scene must be released. Sessions
+        // from the render pool can be updated in place and be set again.
+        if (mSession != null && mSession != session) {
+            RenderSessionPool.get().release(mSession);
         }
 
         mSession = session;
         mIsResultValid = (session != null && session.getResult().isSuccess());
         mExplodedParents = false;
         mNodeToView = new HashMap<UiViewElementNode, CanvasViewInfo>(50);
+        mLastDiff = null;
         if (mIsResultValid && session != null) {
             List<ViewInfo> rootList = session.getRootViews();
 
@@ -196,7 +203,13 @@ public class ViewHierarchy {
                 }
             }
             if (infos != null) {
-                mLastValidViewInfoRoot = infos.getFirst();
+                // Reuse the view infos which did not change since the previous render
+                mLastDiff = ViewHierarchyDiff.compute(mLastValidViewInfoRoot, infos.getFirst());
+                mLastValidViewInfoRoot = mLastDiff.getRoot();
+                if (mLastDiff.isRootReplaced() || !mLastDiff.getChangedParents().isEmpty()
+                        || !mLastDiff.getUpdatedViews().isEmpty()) {
+                    mSpatialIndex = null;
+                }
                 mIncludedBounds = infos.getSecond();
 
                 if (mLastValidViewInfoRoot.getUiViewNode() == null &&
@@ -215,6 +228,7 @@ public class ViewHierarchy {
             } else {
                 mLastValidViewInfoRoot = null;
                 mIncludedBounds = null;
+                mSpatialIndex = null;
             }
 
             updateNodeProxies(mLastValidViewInfoRoot);
@@ -334,6 +348,18 @@ public class ViewHierarchy {
         }
     }
 
+    /**
+     * Returns the changes made to the view infos by the last render, such that views
+     * which were reused from the previous render don't have to be refreshed.
+     *
+     * @return the diff, or null if the last render was not valid or had no views, in
+     *         which case everything should be refreshed
+     */
+    @Nullable
+    /* package */ ViewHierarchyDiff getLastDiff() {
+        return mLastDiff;
+    }
+
     /**
      * Returns the current {@link RenderSession}.
      * @return the session or null if none have been set.
@@ -473,45 +499,11 @@ public class ViewHierarchy {
             return null;
         }
 
-        return findViewInfoAt_Recursive(p, mLastValidViewInfoRoot);
-    }
-
-    /**
-     * Recursive internal version of {@link #findViewInfoAt(int, int)}. Please don't use directly.
-     * <p/>
-     * Tries to find the inner most child matching the given x,y coordinates in the view
-     * info sub-tree. This uses the potentially-expanded selection bounds.
-     *
-     * Returns null if not found.
-     */
-    private CanvasViewInfo findViewInfoAt_Recursive(LayoutPoint p, CanvasViewInfo canvasViewInfo) {
-        if (canvasViewInfo == null) {
-            return null;
-        }
-        Rectangle r = canvasViewInfo.getSelectionRect();
-        if (r.contains(p.x, p.y)) {
-
-            // try to find a matching child first
-            // Iterate in REVERSE z order such that siblings on top
-            // are checked before earlier siblings (this matters in layouts like
-            // FrameLayout and in <merge> contexts where the views are sitting on top
-            // of each other and we want to select the same view as the one drawn
-            // on top of the others
-            List<CanvasViewInfo> children = canvasViewInfo.getChildren();
-            assert children instanceof RandomAccess;
-            for (int i = children.size() - 1; i >= 0; i--) {
-                CanvasViewInfo child = children.get(i);
-                CanvasViewInfo v = findViewInfoAt_Recursive(p, child);
-                if (v != null) {
-                    return v;
-                }
-            }
-
-            // if no children matched, this is the view that we're looking for
-            return canvasViewInfo;
+        if (mSpatialIndex == null) {
+            mSpatialIndex = new ViewSpatialIndex(mLastValidViewInfoRoot);
         }
 
-        return null;
+        return mSpatialIndex.findViewAt(p.x, p.y);
     }
 
     /**
@@ -0,0 +1,217 @@
+/*
+ * Copyright (C) 2018 The Android Open Source Project
+ *
+ * Licensed under the Eclipse Public License, Version 1.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.eclipse.org/org/documents/epl-v10.php
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.eclipse.andmore.internal.editors.layout.gle2;
+
+import com.android.annotations.NonNull;
+import com.android.annotations.Nullable;
+
+import org.eclipse.andmore.internal.editors.layout.uimodel.UiViewElementNode;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Structural diff between the {@link CanvasViewInfo} hierarchy of the previous render and
+ * the one built from a new render.
+ * <p/>
+ * The views of the new hierarchy which correspond to the same node and view class as a
+ * view of the previous hierarchy, under a parent which was itself matched, are not kept:
+ * the previous {@link CanvasViewInfo} is updated with the bounds and view object of the
+ * new render and takes its place. The outline, selection and hover can then keep their
+ * state for these views, and only need to look at the changes recorded by the diff:
+ * <ul>
+ * <li>the views whose children changed, because views were added, removed or moved;</li>
+ * <li>the reused views whose bounds or XML attributes changed.</li>
+ * </ul>
+ */
+class ViewHierarchyDiff {
+    private final CanvasViewInfo mRoot;
+    private final boolean mRootReplaced;
+    private final List<CanvasViewInfo> mChangedParents = new ArrayList<CanvasViewInfo>();
+    private final List<CanvasViewInfo> mUpdatedViews = new ArrayList<CanvasViewInfo>();
+    private final Set<CanvasViewInfo> mUpdatedSet = newIdentitySet();
+    private final Set<CanvasViewInfo> mReused = newIdentitySet();
+
+    private ViewHierarchyDiff(@Nullable CanvasViewInfo oldRoot, @Nullable CanvasViewInfo newRoot) {
+        if (newRoot == null) {
+            mRoot = null;
+        } else {
+            mRoot = reconcile(null, oldRoot, newRoot);
+        }
+        mRootReplaced = mRoot == null || mRoot != oldRoot;
+    }
+
+    /**
+     * Reconciles a new hierarchy with the previous one
+     *
+     * @param oldRoot the root of the previous hierarchy, or null
+     * @param newRoot the root of the new hierarchy, or null. Its views are reparented
+     *            to the reused views of the previous hierarchy.
+     * @return the diff, whose {@link #getRoot()} is the hierarchy to use from now on
+     */
+    @NonNull
+    static ViewHierarchyDiff compute(@Nullable CanvasViewInfo oldRoot,
+            @Nullable CanvasViewInfo newRoot) {
+        return new ViewHierarchyDiff(oldRoot, newRoot);
+    }
+
+    /**
+     * Returns the root of the reconciled hierarchy
+     *
+     * @return the root, or null if the new hierarchy is empty
+     */
+    @Nullable
+    CanvasViewInfo getRoot() {
+        return mRoot;
+    }
+
+    /**
+     * Returns true if the root of the previous hierarchy could not be reused, in which
+     * case everything should be considered changed
+     *
+     * @return true if the whole hierarchy changed
+     */
+    boolean isRootReplaced() {
+        return mRootReplaced;
+    }
+
+    /**
+     * Returns the reused views whose list of children changed
+     *
+     * @return the changed parents, never null
+     */
+    @NonNull
+    List<CanvasViewInfo> getChangedParents() {
+        return mChangedParents;
+    }
+
+    /**
+     * Returns the reused views whose bounds or XML attributes changed
+     *
+     * @return the updated views, never null
+     */
+    @NonNull
+    List<CanvasViewInfo> getUpdatedViews() {
+        return mUpdatedViews;
+    }
+
+    /**
+     * Returns true if the given view was reused from the previous hierarchy, with the
+     * same bounds and attributes
+     *
+     * @param view the view to check, or null
+     * @return true if the view didn't change
+     */
+    boolean isUnchanged(@Nullable CanvasViewInfo view) {
+        return view != null && mReused.contains(view) && !mUpdatedSet.contains(view);
+    }
+
+    private CanvasViewInfo reconcile(@Nullable CanvasViewInfo parent,
+            @Nullable CanvasViewInfo old, @NonNull CanvasViewInfo view) {
+        if (!matches(old, view)) {
+            view.setParent(parent);
+            initSignatures(view);
+            return view;
+        }
+
+        mReused.add(old);
+        boolean moved = old.update(view);
+        old.setParent(parent);
+        int signature = getSignature(old);
+        if (moved || signature != old.getSignature()) {
+            old.setSignature(signature);
+            mUpdatedViews.add(old);
+            mUpdatedSet.add(old);
+        }
+
+        List<CanvasViewInfo> oldChildren = old.getChildren();
+        List<CanvasViewInfo> newChildren = view.getChildren();
+        Map<UiViewElementNode, CanvasViewInfo> byNode =
+                new IdentityHashMap<UiViewElementNode, CanvasViewInfo>(oldChildren.size());
+        for (CanvasViewInfo child : oldChildren) {
+            if (child.getUiViewNode() != null) {
+                byNode.put(child.getUiViewNode(), child);
+            }
+        }
+
+        List<CanvasViewInfo> children = new ArrayList<CanvasViewInfo>(newChildren.size());
+        for (int i = 0, n = newChildren.size(); i < n; i++) {
+            CanvasViewInfo child = newChildren.get(i);
+            CanvasViewInfo oldChild;
+            if (child.getUiViewNode() != null) {
+                oldChild = byNode.remove(child.getUiViewNode());
+            } else {
+                // Views without a node, such as the views of an included layout, are
+                // matched by position
+                oldChild = i < oldChildren.size() ? oldChildren.get(i) : null;
+            }
+            children.add(reconcile(old, oldChild, child));
+        }
+
+        if (!isSame(children, oldChildren)) {
+            mChangedParents.add(old);
+        }
+        old.setChildren(children);
+
+        return old;
+    }
+
+    /**
+     * Returns true if a view of the new hierarchy can be replaced by the given view of the
+     * previous hierarchy. Views which share their node with other views, such as the
+     * children of an included {@code <merge>}, are never reused since their siblings are
+     * linked to each other.
+     */
+    private static boolean matches(@Nullable CanvasViewInfo old, @NonNull CanvasViewInfo view) {
+        return old != null
+                && old.getUiViewNode() == view.getUiViewNode()
+                && old.getName().equals(view.getName())
+                && old.getNodeSiblings() == null
+                && view.getNodeSiblings() == null;
+    }
+
+    private static Set<CanvasViewInfo> newIdentitySet() {
+        return Collections.newSetFromMap(new IdentityHashMap<CanvasViewInfo, Boolean>());
+    }
+
+    private static boolean isSame(List<CanvasViewInfo> a, List<CanvasViewInfo> b) {
+        if (a.size() != b.size()) {
+            return false;
+        }
+        for (int i = 0, n = a.size(); i < n; i++) {
+            if (a.get(i) != b.get(i)) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private static void initSignatures(CanvasViewInfo view) {
+        view.setSignature(getSignature(view));
+        for (CanvasViewInfo child : view.getChildren()) {
+            initSignatures(child);
+        }
+    }
+
+    private static int getSignature(CanvasViewInfo view) {
+        UiViewElementNode node = view.getUiViewNode();
+        return node != null ? LayoutFingerprint.getSignature(node).hashCode() : 0;
+    }
+}
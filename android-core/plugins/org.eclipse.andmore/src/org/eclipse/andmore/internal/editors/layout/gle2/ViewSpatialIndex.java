@@ -0,0 +1,185 @@
+/*
+ * Copyright (C) 2018 The Android Open Source Project
+ *
+ * Licensed under the Eclipse Public License, Version 1.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.eclipse.org/org/documents/epl-v10.php
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.eclipse.andmore.internal.editors.layout.gle2;
+
+import com.android.annotations.NonNull;
+import com.android.annotations.Nullable;
+
+import org.eclipse.swt.graphics.Rectangle;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Uniform grid over the selection bounds of the views of a {@link CanvasViewInfo}
+ * hierarchy, used to find the view under the mouse without walking the hierarchy.
+ * <p/>
+ * A view can only be hit where its selection bounds and the selection bounds of all its
+ * ancestors overlap, so each view is indexed with the intersection of these bounds. The
+ * views are numbered in pre-order, and the view found at a point is the last view in
+ * pre-order whose intersected bounds contain the point: this is the deepest view, and
+ * the topmost one in z-order among overlapping siblings, just like a recursive search
+ * that visits the children of a view in reverse order.
+ */
+class ViewSpatialIndex {
+    /** Minimum size of the grid cells, in layout pixels */
+    private static final int MIN_CELL_SIZE = 64;
+
+    /** Ceiling of the number of grid cells */
+    private static final int MAX_CELLS = 64 * 64;
+
+    private final CanvasViewInfo[] mViews;
+    /** The intersected bounds of each view, as left, top, right, bottom */
+    private final int[] mBounds;
+    private final int mLeft;
+    private final int mTop;
+    private final int mCellSize;
+    private final int mColumns;
+    private final int mRows;
+    /** The views overlapping each cell, in pre-order */
+    private final int[][] mCells;
+
+    /**
+     * Creates an index of the given hierarchy
+     *
+     * @param root the root of the hierarchy
+     */
+    ViewSpatialIndex(@NonNull CanvasViewInfo root) {
+        List<CanvasViewInfo> views = new ArrayList<CanvasViewInfo>();
+        List<int[]> bounds = new ArrayList<int[]>();
+        add(root, Integer.MIN_VALUE, Integer.MIN_VALUE, Integer.MAX_VALUE, Integer.MAX_VALUE,
+                views, bounds);
+
+        int n = views.size();
+        mViews = views.toArray(new CanvasViewInfo[n]);
+        mBounds = new int[4 * n];
+        int left = Integer.MAX_VALUE;
+        int top = Integer.MAX_VALUE;
+        int right = Integer.MIN_VALUE;
+        int bottom = Integer.MIN_VALUE;
+        for (int i = 0; i < n; i++) {
+            int[] b = bounds.get(i);
+            System.arraycopy(b, 0, mBounds, 4 * i, 4);
+            left = Math.min(left, b[0]);
+            top = Math.min(top, b[1]);
+            right = Math.max(right, b[2]);
+            bottom = Math.max(bottom, b[3]);
+        }
+
+        if (n == 0) {
+            mLeft = mTop = 0;
+            mCellSize = MIN_CELL_SIZE;
+            mColumns = mRows = 0;
+            mCells = new int[0][];
+            return;
+        }
+
+        int cellSize = MIN_CELL_SIZE;
+        while ((long) cells(right - left, cellSize) * cells(bottom - top, cellSize)
+                > MAX_CELLS) {
+            cellSize *= 2;
+        }
+        mLeft = left;
+        mTop = top;
+        mCellSize = cellSize;
+        mColumns = cells(right - left, cellSize);
+        mRows = cells(bottom - top, cellSize);
+
+        // Count the views of each cell, then fill the cells in pre-order
+        int[] counts = new int[mColumns * mRows];
+        for (int i = 0; i < n; i++) {
+            forEachCell(i, counts, null);
+        }
+        mCells = new int[counts.length][];
+        for (int c = 0; c < counts.length; c++) {
+            mCells[c] = new int[counts[c]];
+            counts[c] = 0;
+        }
+        for (int i = 0; i < n; i++) {
+            forEachCell(i, counts, mCells);
+        }
+    }
+
+    private static int cells(int size, int cellSize) {
+        return Math.max(1, (size + cellSize - 1) / cellSize);
+    }
+
+    private void forEachCell(int view, int[] counts, int[][] cells) {
+        int firstColumn = (mBounds[4 * view] - mLeft) / mCellSize;
+        int firstRow = (mBounds[4 * view + 1] - mTop) / mCellSize;
+        int lastColumn = Math.min(mColumns - 1, (mBounds[4 * view + 2] - 1 - mLeft) / mCellSize);
+        int lastRow = Math.min(mRows - 1, (mBounds[4 * view + 3] - 1 - mTop) / mCellSize);
+        for (int row = firstRow; row <= lastRow; row++) {
+            for (int column = firstColumn; column <= lastColumn; column++) {
+                int cell = row * mColumns + column;
+                if (cells != null) {
+                    cells[cell][counts[cell]] = view;
+                }
+                counts[cell]++;
+            }
+        }
+    }
+
+    private static void add(CanvasViewInfo view, int left, int top, int right, int bottom,
+            List<CanvasViewInfo> views, List<int[]> bounds) {
+        Rectangle r = view.getSelectionRect();
+        left = Math.max(left, r.x);
+        top = Math.max(top, r.y);
+        right = Math.min(right, r.x + r.width);
+        bottom = Math.min(bottom, r.y + r.height);
+        if (right <= left || bottom <= top) {
+            // Neither the view nor its children can be hit
+            return;
+        }
+
+        views.add(view);
+        bounds.add(new int[] { left, top, right, bottom });
+        for (CanvasViewInfo child : view.getChildren()) {
+            add(child, left, top, right, bottom, views, bounds);
+        }
+    }
+
+    /**
+     * Returns the deepest view at the given point
+     *
+     * @param x the x coordinate, in layout pixels
+     * @param y the y coordinate, in layout pixels
+     * @return the view, or null if there is no view at this point
+     */
+    @Nullable
+    CanvasViewInfo findViewAt(int x, int y) {
+        if (x < mLeft || y < mTop) {
+            return null;
+        }
+        int column = (x - mLeft) / mCellSize;
+        int row = (y - mTop) / mCellSize;
+        if (column >= mColumns || row >= mRows) {
+            return null;
+        }
+
+        int[] cell = mCells[row * mColumns + column];
+        for (int i = cell.length - 1; i >= 0; i--) {
+            int view = cell[i];
+            int b = 4 * view;
+            if (x >= mBounds[b] && y >= mBounds[b + 1]
+                    && x < mBounds[b + 2] && y < mBounds[b + 3]) {
+                return mViews[view];
+            }
+        }
+
+        return null;
+    }
+}
@@ -16,10 +16,6 @@
 
 package org.eclipse.andmore.internal.editors.layout.gre;
 
-import static com.android.SdkConstants.ANDROID_WIDGET_PREFIX;
-import static com.android.SdkConstants.VIEW_MERGE;
-import static com.android.SdkConstants.VIEW_TAG;
-
 import com.android.annotations.NonNull;
 import com.android.annotations.Nullable;
 import com.android.ide.common.api.DropFeedback;
@@ -35,7 +31,7 @@ import com.android.ide.common.api.SegmentType;
 import com.android.sdklib.IAndroidTarget;
 
 import org.eclipse.andmore.AndmoreAndroidPlugin;
-import org.eclipse.andmore.common.layout.ViewRule;
+import org.eclipse.andmore.common.layout.BaseViewRule;
 import org.eclipse.andmore.internal.editors.AndroidXmlEditor;
 import org.eclipse.andmore.internal.editors.descriptors.ElementDescriptor;
 import org.eclipse.andmore.internal.editors.layout.descriptors.ViewElementDescriptor;
@@ -43,6 +39,7 @@ import org.eclipse.andmore.internal.editors.layout.gle2.GCWrapper;
 import org.eclipse.andmore.internal.editors.layout.gle2.GraphicalEditorPart;
 import org.eclipse.andmore.internal.editors.layout.gle2.SimpleElement;
 import org.eclipse.andmore.internal.editors.layout.uimodel.UiViewElementNode;
+import org.eclipse.andmore.internal.editors.uimodel.UiElementNode;
 import org.eclipse.andmore.internal.sdk.AndroidTargetData;
 import org.eclipse.andmore.internal.sdk.Sdk;
 import org.eclipse.andworx.registry.ProjectRegistry;
@@ -50,10 +47,11 @@ import org.eclipse.core.resources.IProject;
 
 import java.util.ArrayList;
 import java.util.Collections;
-import java.util.HashMap;
 import java.util.HashSet;
 import java.util.List;
 import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
 
 /**
  * The rule engine manages the layout rules and interacts with them.
@@ -62,8 +60,19 @@ import java.util.Map;
  * and the project specific rules (local to the current instance / layout editor).
  */
 public class RulesEngine {
+    /** Marks the keys of {@link #mRulesCache} for which there is no rule */
+    private static final IViewRule NO_RULE = new BaseViewRule();
+
     private final IProject mProject;
-    private final Map<Object, IViewRule> mRulesCache = new HashMap<Object, IViewRule>();
+
+    /**
+     * The rules by descriptor, real FQCN and target FQCN, or {@link #NO_RULE}. Rules are
+     * looked up from the UI thread and from the render threads.
+     */
+    private final Map<Object, IViewRule> mRulesCache = new ConcurrentHashMap<Object, IViewRule>();
+
+    /** Descriptors whose rules were resolved by {@link #preloadRules} */
+    private final Set<ViewElementDescriptor> mPreloaded = new HashSet<ViewElementDescriptor>();
 
     /**
      * The type of any upcoming node manipulations performed by the {@link IViewRule}s.
@@ -99,6 +108,8 @@ public class RulesEngine {
         mEditor = editor;
 
         mRuleLoader = RuleLoader.get(project);
+
+        ViewRuleTable.get().resolveFrameworkLater(project);
     }
 
      /**
@@ -118,6 +129,34 @@ public class RulesEngine {
         return mEditor;
     }
 
+    /**
+     * Resolves, in the background, the rules of the views of the given layout which
+     * were not looked up yet, such that the first lookups don't load rule classes
+     *
+     * @param root the root of the layout
+     */
+    public void preloadRules(@Nullable UiElementNode root) {
+        if (root == null) {
+            return;
+        }
+        Set<ViewElementDescriptor> descriptors = new HashSet<ViewElementDescriptor>();
+        collectDescriptors(root, descriptors);
+        if (!descriptors.isEmpty()) {
+            ViewRuleTable.get().resolveLater(descriptors, updateClassLoader());
+        }
+    }
+
+    private void collectDescriptors(UiElementNode node, Set<ViewElementDescriptor> descriptors) {
+        ElementDescriptor d = node.getDescriptor();
+        if (d instanceof ViewElementDescriptor && !mRulesCache.containsKey(d)
+                && mPreloaded.add((ViewElementDescriptor) d)) {
+            descriptors.add((ViewElementDescriptor) d);
+        }
+        for (UiElementNode child : node.getUiChildren()) {
+            collectDescriptors(child, descriptors);
+        }
+    }
+
     /**
      * Called by the owner of the {@link RulesEngine} when it is going to be disposed.
      * This frees some resources, such as the project's folder monitor.
@@ -625,7 +664,7 @@ public class RulesEngine {
         mRulesCache.clear();
 
         for (IViewRule rule : rules) {
-            if (rule != null) {
+            if (rule != NO_RULE) {
                 try {
                     rule.onDispose();
                 } catch (Exception e) {
@@ -645,11 +684,12 @@ public class RulesEngine {
     private ClassLoader updateClassLoader() {
         ClassLoader classLoader = mRuleLoader.getClassLoader();
         if (mUserClassLoader != null && classLoader != mUserClassLoader) {
-            // We have to unload all the IViewRules from the old class
+            // We have to unload all the IViewRules from the old class, and look again
+            // for the rules which were not found with it
             List<Object> dispose = new ArrayList<Object>();
             for (Map.Entry<Object, IViewRule> entry : mRulesCache.entrySet()) {
                 IViewRule rule = entry.getValue();
-                if (rule.getClass().getClassLoader() == mUserClassLoader) {
+                if (rule == NO_RULE || rule.getClass().getClassLoader() == mUserClassLoader) {
                     dispose.add(entry.getKey());
                 }
             }
@@ -690,11 +730,11 @@ public class RulesEngine {
         // unregister previously cached view rules to force a new view rule to be loaded.
         updateClassLoader();
 
-        // Return the rule if we find it in the cache, even if it was stored as null
+        // Return the rule if we find it in the cache, even if it was stored as NO_RULE
         // (which means we didn't find it earlier, so don't look for it again)
-        IViewRule rule = mRulesCache.get(targetDesc);
-        if (rule != null || mRulesCache.containsKey(targetDesc)) {
-            return rule;
+        IViewRule rule = targetDesc != null ? mRulesCache.get(targetDesc) : null;
+        if (rule != null) {
+            return rule != NO_RULE ? rule : null;
         }
 
         // Get the descriptor and loop through the super class hierarchy
@@ -703,7 +743,7 @@ public class RulesEngine {
                 desc = desc.getSuperClassDesc()) {
 
             // Get the FQCN of this View
-            String fqcn = desc.getFullClassName();
+            String fqcn = ViewRuleTable.getRealFqcn(desc);
             if (fqcn == null) {
                 // Shouldn't be happening.
                 return null;
@@ -713,14 +753,7 @@ public class RulesEngine {
             // initially trying to load. After, as we move through the hierarchy, the
             // target FQCN remains constant.
             if (targetFqcn == null) {
-                targetFqcn = fqcn;
-            }
-
-            if (fqcn.indexOf('.') == -1) {
-                // Deal with unknown descriptors; these lack the full qualified path and
-                // elements in the layout without a package are taken to be in the
-                // android.widget package.
-                fqcn = ANDROID_WIDGET_PREFIX + fqcn;
+                targetFqcn = desc.getFullClassName();
             }
 
             // Try to find a rule matching the "real" FQCN. If we find it, we're done.
@@ -734,7 +767,9 @@ public class RulesEngine {
         }
 
         // Memorize in the cache that we couldn't find a rule for this descriptor
-        mRulesCache.put(targetDesc, null);
+        if (targetDesc != null) {
+            mRulesCache.put(targetDesc, NO_RULE);
+        }
         return null;
     }
 
@@ -758,72 +793,25 @@ public class RulesEngine {
             return null;
         }
 
-        // Return the rule if we find it in the cache, even if it was stored as null
+        // Return the rule if we find it in the cache, even if it was stored as NO_RULE
         // (which means we didn't find it earlier, so don't look for it again)
         IViewRule rule = mRulesCache.get(realFqcn);
-        if (rule != null || mRulesCache.containsKey(realFqcn)) {
-            return rule;
+        if (rule != null) {
+            return rule != NO_RULE ? rule : null;
         }
 
-        // Look for class via reflection
+        // The rule classes are looked up once for all the engines
         try {
-            // For now, we package view rules for the builtin Android views and
-            // widgets with the tool in a special package, so look there rather
-            // than in the same package as the widgets.
-            String ruleClassName;
-            ClassLoader classLoader;
-            if (realFqcn.startsWith("android.") || //$NON-NLS-1$
-                    realFqcn.equals(VIEW_MERGE) ||
-                    realFqcn.endsWith(".GridLayout") || //$NON-NLS-1$ // Temporary special case
-                    // FIXME: Remove this special case as soon as we pull
-                    // the MapViewRule out of this code base and bundle it
-                    // with the add ons
-                    realFqcn.startsWith("com.google.android.maps.")) { //$NON-NLS-1$
-                // This doesn't handle a case where there are name conflicts
-                // (e.g. where there are multiple different views with the same
-                // class name and only differing in package names, but that's a
-                // really bad practice in the first place, and if that situation
-                // should come up in the API we can enhance this algorithm.
-                String packageName = ViewRule.class.getName();
-                packageName = packageName.substring(0, packageName.lastIndexOf('.'));
-                classLoader = RulesEngine.class.getClassLoader();
-                int dotIndex = realFqcn.lastIndexOf('.');
-                String baseName = realFqcn.substring(dotIndex+1);
-                // Capitalize rule class name to match naming conventions, if necessary (<merge>)
-                if (Character.isLowerCase(baseName.charAt(0))) {
-                    if (baseName.equals(VIEW_TAG)) {
-                        // Hack: ViewRule is generic for the "View" class, so we can't use it
-                        // for the special XML "view" tag (lowercase); instead, the rule is
-                        // named "ViewTagRule" instead.
-                        baseName = "ViewTag"; //$NON-NLS-1$
-                    }
-                    baseName = Character.toUpperCase(baseName.charAt(0)) + baseName.substring(1);
-                }
-                ruleClassName = packageName + "." + //$NON-NLS-1$
-                    baseName + "Rule"; //$NON-NLS-1$
-            } else {
+            ClassLoader classLoader = null;
+            if (!ViewRuleTable.isBuiltin(realFqcn)) {
                 // Initialize the user-classpath for 3rd party IViewRules, if necessary
                 classLoader = updateClassLoader();
-                if (classLoader == null) {
-                    // The mUserClassLoader can be null; this is the typical scenario,
-                    // when the user is only using builtin layout rules.
-                    // This means however we can't resolve this fqcn since it's not
-                    // in the name space of the builtin rules.
-                    mRulesCache.put(realFqcn, null);
-                    return null;
-                }
-
-                // For other (3rd party) widgets, look in the same package (though most
-                // likely not in the same jar!)
-                ruleClassName = realFqcn + "Rule"; //$NON-NLS-1$
             }
-
-            Class<?> clz = Class.forName(ruleClassName, true, classLoader);
-            rule = (IViewRule) clz.newInstance();
-            return initializeRule(rule, targetFqcn);
-        } catch (ClassNotFoundException ex) {
-            // Not an unexpected error - this means that there isn't a helper for this
-            // class.
+            Class<?> clz = ViewRuleTable.get().findRuleClass(realFqcn, classLoader);
+            if (clz != null) {
+                rule = (IViewRule) clz.newInstance();
+                return initializeRule(rule, targetFqcn);
+            }
         } catch (InstantiationException e) {
             // This is NOT an expected error: fail.
             AndmoreAndroidPlugin.log(e, "load rule error (%s): %s", realFqcn, e.toString());
@@ -833,7 +821,7 @@ public class RulesEngine {
         }
 
         // Memorize in the cache that we couldn't find a rule for this real FQCN
-        mRulesCache.put(realFqcn, null);
+        mRulesCache.put(realFqcn, NO_RULE);
         return null;
     }
 
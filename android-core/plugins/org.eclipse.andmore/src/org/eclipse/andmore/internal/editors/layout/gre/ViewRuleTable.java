@@ -0,0 +1,378 @@
+/*
+ * Copyright (C) 2018 The Android Open Source Project
+ *
+ * Licensed under the Eclipse Public License, Version 1.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.eclipse.org/org/documents/epl-v10.php
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.eclipse.andmore.internal.editors.layout.gre;
+
+import static com.android.SdkConstants.ANDROID_WIDGET_PREFIX;
+import static com.android.SdkConstants.VIEW_MERGE;
+import static com.android.SdkConstants.VIEW_TAG;
+
+import com.android.annotations.NonNull;
+import com.android.annotations.Nullable;
+
+import org.eclipse.andmore.AndmoreAndroidPlugin;
+import org.eclipse.andmore.common.layout.ViewRule;
+import org.eclipse.andmore.internal.editors.layout.descriptors.LayoutDescriptors;
+import org.eclipse.andmore.internal.editors.layout.descriptors.ViewElementDescriptor;
+import org.eclipse.andmore.internal.sdk.AndroidTargetData;
+import org.eclipse.andmore.internal.sdk.Sdk;
+import org.eclipse.core.resources.IProject;
+import org.eclipse.core.runtime.IProgressMonitor;
+import org.eclipse.core.runtime.IStatus;
+import org.eclipse.core.runtime.Status;
+import org.eclipse.core.runtime.jobs.Job;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.lang.ref.WeakReference;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Map;
+import java.util.Properties;
+import java.util.Set;
+import java.util.WeakHashMap;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Resolves the classes of the view rules, for all the {@link RulesEngine}s.
+ * <p/>
+ * The builtin rule of a view class is looked up once: the table of the builtin rule
+ * class names is computed in the background for all the framework views when a
+ * {@link RulesEngine} is created, and stored across sessions. The rules of custom views
+ * are looked up with the class loader of their project's rule jars, and cached until
+ * that class loader changes.
+ */
+final class ViewRuleTable {
+    /** Name of the table file, in the state location of the plugin */
+    private static final String TABLE_FILE = "viewrules.properties"; //$NON-NLS-1$
+
+    /** Key of the plugin version the table was computed with */
+    private static final String KEY_VERSION = "@version"; //$NON-NLS-1$
+
+    /** Marks the view classes which have no rule */
+    private static final String NO_RULE = ""; //$NON-NLS-1$
+    private static final Object NO_CLASS = new Object();
+
+    private static final ViewRuleTable sInstance = new ViewRuleTable();
+
+    /** Builtin rule class names by view class name, or {@link #NO_RULE} */
+    private final Map<String, String> mBuiltinNames = new ConcurrentHashMap<String, String>();
+
+    /**
+     * Custom rule classes by view class name, or {@link #NO_CLASS}, by class loader. The
+     * classes are weakly referenced: they would otherwise keep their class loader, the key,
+     * from ever being collected. A class loader keeps its classes alive, so the references
+     * are only cleared once the class loader is gone.
+     */
+    private final Map<ClassLoader, Map<String, Object>> mCustomClasses =
+            new WeakHashMap<ClassLoader, Map<String, Object>>();
+
+    /** The targets whose views were resolved */
+    private final Set<AndroidTargetData> mResolvedTargets =
+            Collections.newSetFromMap(new WeakHashMap<AndroidTargetData, Boolean>());
+
+    private boolean mLoaded;
+    private volatile boolean mModified;
+
+    /**
+     * Returns the table shared by all the rules engines
+     *
+     * @return the table
+     */
+    @NonNull
+    static ViewRuleTable get() {
+        sInstance.ensureLoaded();
+        return sInstance;
+    }
+
+    /**
+     * Returns true if the rule of the given view class is bundled with the plugin
+     *
+     * @param realFqcn the view class name
+     * @return true for builtin rules, false for custom view rules
+     */
+    static boolean isBuiltin(@NonNull String realFqcn) {
+        return realFqcn.startsWith("android.") || //$NON-NLS-1$
+                realFqcn.equals(VIEW_MERGE) ||
+                realFqcn.endsWith(".GridLayout") || //$NON-NLS-1$ // Temporary special case
+                // FIXME: Remove this special case as soon as we pull
+                // the MapViewRule out of this code base and bundle it
+                // with the add ons
+                realFqcn.startsWith("com.google.android.maps."); //$NON-NLS-1$
+    }
+
+    /**
+     * Returns the class of the rule of a view class. This only looks for an exact match
+     * and does not look at the parent hierarchy.
+     *
+     * @param realFqcn the view class name
+     * @param userClassLoader the class loader of the custom view rules, or null
+     * @return the rule class, or null if there is no rule for this class
+     */
+    @Nullable
+    Class<?> findRuleClass(@NonNull String realFqcn, @Nullable ClassLoader userClassLoader) {
+        if (isBuiltin(realFqcn)) {
+            String ruleClassName = mBuiltinNames.get(realFqcn);
+            if (ruleClassName == null) {
+                ruleClassName = getBuiltinRuleClassName(realFqcn);
+                if (loadClass(ruleClassName, RulesEngine.class.getClassLoader()) == null) {
+                    ruleClassName = NO_RULE;
+                }
+                mBuiltinNames.put(realFqcn, ruleClassName);
+                mModified = true;
+            }
+            if (ruleClassName.equals(NO_RULE)) {
+                return null;
+            }
+            return loadClass(ruleClassName, RulesEngine.class.getClassLoader());
+        }
+
+        if (userClassLoader == null) {
+            // The user class loader can be null; this is the typical scenario,
+            // when the user is only using builtin layout rules.
+            return null;
+        }
+
+        Map<String, Object> classes;
+        synchronized (mCustomClasses) {
+            classes = mCustomClasses.get(userClassLoader);
+            if (classes == null) {
+                classes = new ConcurrentHashMap<String, Object>();
+                mCustomClasses.put(userClassLoader, classes);
+            }
+        }
+        Object cached = classes.get(realFqcn);
+        if (cached == NO_CLASS) {
+            return null;
+        }
+        Class<?> ruleClass = cached != null ? (Class<?>) ((WeakReference<?>) cached).get() : null;
+        if (ruleClass == null) {
+            // For other (3rd party) widgets, look in the same package (though most
+            // likely not in the same jar!)
+            ruleClass = loadClass(realFqcn + "Rule", userClassLoader); //$NON-NLS-1$
+            classes.put(realFqcn, ruleClass != null
+                    ? new WeakReference<Class<?>>(ruleClass) : NO_CLASS);
+        }
+        return ruleClass;
+    }
+
+    /**
+     * Resolves, in the background, the rules of the given views and of their super
+     * classes
+     *
+     * @param descriptors the descriptors of the views
+     * @param userClassLoader the class loader of the custom view rules, or null
+     */
+    void resolveLater(@NonNull final Collection<ViewElementDescriptor> descriptors,
+            @Nullable final ClassLoader userClassLoader) {
+        Job job = new Job("Resolve layout rules") {
+            @Override
+            protected IStatus run(IProgressMonitor monitor) {
+                resolve(descriptors, userClassLoader);
+                save();
+                return Status.OK_STATUS;
+            }
+        };
+        job.setSystem(true);
+        job.setPriority(Job.DECORATE);
+        job.schedule();
+    }
+
+    /**
+     * Resolves, in the background, the rules of all the framework views of the target
+     * of the given project, unless this was already done.
+     *
+     * @param project the project
+     */
+    void resolveFrameworkLater(@NonNull final IProject project) {
+        Job job = new Job("Resolve layout rules") {
+            @Override
+            protected IStatus run(IProgressMonitor monitor) {
+                Sdk sdk = Sdk.getCurrent();
+                AndroidTargetData data = sdk != null ? sdk.getTargetData(project) : null;
+                if (data == null) {
+                    return Status.OK_STATUS;
+                }
+                synchronized (mResolvedTargets) {
+                    if (!mResolvedTargets.add(data)) {
+                        return Status.OK_STATUS;
+                    }
+                }
+
+                LayoutDescriptors descriptors = data.getLayoutDescriptors();
+                resolve(descriptors.getViewDescriptors(), null);
+                resolve(descriptors.getLayoutDescriptors(), null);
+                save();
+                return Status.OK_STATUS;
+            }
+        };
+        job.setSystem(true);
+        job.setPriority(Job.DECORATE);
+        job.schedule();
+    }
+
+    private void resolve(Collection<ViewElementDescriptor> descriptors,
+            ClassLoader userClassLoader) {
+        for (ViewElementDescriptor descriptor : descriptors) {
+            for (ViewElementDescriptor desc = descriptor;
+                    desc != null;
+                    desc = desc.getSuperClassDesc()) {
+                String fqcn = getRealFqcn(desc);
+                if (fqcn == null) {
+                    break;
+                }
+                try {
+                    findRuleClass(fqcn, userClassLoader);
+                } catch (LinkageError e) {
+                    // The rule will fail the same way when it is used
+                    break;
+                }
+            }
+        }
+    }
+
+    /**
+     * Returns the class name a rule is looked up for, given a view descriptor
+     *
+     * @param desc the view descriptor
+     * @return the class name, or null if the descriptor has none
+     */
+    @Nullable
+    static String getRealFqcn(@NonNull ViewElementDescriptor desc) {
+        String fqcn = desc.getFullClassName();
+        if (fqcn != null && fqcn.indexOf('.') == -1) {
+            // Deal with unknown descriptors; these lack the full qualified path and
+            // elements in the layout without a package are taken to be in the
+            // android.widget package.
+            fqcn = ANDROID_WIDGET_PREFIX + fqcn;
+        }
+        return fqcn;
+    }
+
+    private static String getBuiltinRuleClassName(String realFqcn) {
+        // For now, we package view rules for the builtin Android views and
+        // widgets with the tool in a special package, so look there rather
+        // than in the same package as the widgets.
+        // This doesn't handle a case where there are name conflicts
+        // (e.g. where there are multiple different views with the same
+        // class name and only differing in package names, but that's a
+        // really bad practice in the first place, and if that situation
+        // should come up in the API we can enhance this algorithm.
+        String packageName = ViewRule.class.getName();
+        packageName = packageName.substring(0, packageName.lastIndexOf('.'));
+        int dotIndex = realFqcn.lastIndexOf('.');
+        String baseName = realFqcn.substring(dotIndex+1);
+        // Capitalize rule class name to match naming conventions, if necessary (<merge>)
+        if (Character.isLowerCase(baseName.charAt(0))) {
+            if (baseName.equals(VIEW_TAG)) {
+                // Hack: ViewRule is generic for the "View" class, so we can't use it
+                // for the special XML "view" tag (lowercase); instead, the rule is
+                // named "ViewTagRule" instead.
+                baseName = "ViewTag"; //$NON-NLS-1$
+            }
+            baseName = Character.toUpperCase(baseName.charAt(0)) + baseName.substring(1);
+        }
+        return packageName + "." + //$NON-NLS-1$
+            baseName + "Rule"; //$NON-NLS-1$
+    }
+
+    private static Class<?> loadClass(String className, ClassLoader classLoader) {
+        try {
+            return Class.forName(className, true, classLoader);
+        } catch (ClassNotFoundException e) {
+            // Not an unexpected error - this means that there isn't a helper for this
+            // class.
+            return null;
+        }
+    }
+
+    // ---- Persistence ----
+
+    @Nullable
+    private static File getTableFile() {
+        AndmoreAndroidPlugin plugin = AndmoreAndroidPlugin.getDefault();
+        if (plugin == null) {
+            return null;
+        }
+        return plugin.getStateLocation().append(TABLE_FILE).toFile();
+    }
+
+    @Nullable
+    private static String getVersion() {
+        AndmoreAndroidPlugin plugin = AndmoreAndroidPlugin.getDefault();
+        return plugin != null ? plugin.getBundle().getVersion().toString() : null;
+    }
+
+    private synchronized void ensureLoaded() {
+        if (mLoaded) {
+            return;
+        }
+        mLoaded = true;
+
+        File file = getTableFile();
+        String version = getVersion();
+        if (file == null || version == null || !file.isFile()) {
+            return;
+        }
+        Properties properties = new Properties();
+        try {
+            InputStream in = new FileInputStream(file);
+            try {
+                properties.load(in);
+            } finally {
+                in.close();
+            }
+        } catch (IOException e) {
+            AndmoreAndroidPlugin.log(e, "Can't read the layout rules table");
+            return;
+        }
+        // The rules bundled with another version of the plugin may differ
+        if (!version.equals(properties.getProperty(KEY_VERSION))) {
+            return;
+        }
+        for (String key : properties.stringPropertyNames()) {
+            if (!key.equals(KEY_VERSION)) {
+                mBuiltinNames.put(key, properties.getProperty(key));
+            }
+        }
+    }
+
+    private synchronized void save() {
+        File file = getTableFile();
+        String version = getVersion();
+        if (!mModified || file == null || version == null) {
+            return;
+        }
+        mModified = false;
+
+        Properties properties = new Properties();
+        properties.putAll(mBuiltinNames);
+        properties.setProperty(KEY_VERSION, version);
+        try {
+            OutputStream out = new FileOutputStream(file);
+            try {
+                properties.store(out, null);
+            } finally {
+                out.close();
+            }
+        } catch (IOException e) {
+            AndmoreAndroidPlugin.log(e, "Can't store the layout rules table");
+        }
+    }
+}
@@ -44,11 +44,24 @@ import org.eclipse.swt.graphics.Image;
 import org.w3c.dom.Element;
 import org.w3c.dom.Node;
 
+import java.util.Map;
+import java.util.WeakHashMap;
+
 /**
  * Specialized version of {@link UiElementNode} for the {@link ViewElementDescriptor}s.
  */
 public class UiViewElementNode extends UiElementNode {
 
+    /**
+     * The merged direct and layout attribute arrays, shared by all the views of the same
+     * class within the same layout class. Keyed by the direct attribute array, then by the
+     * layout attribute array.
+     */
+    private static final Map<AttributeDescriptor[], Map<AttributeDescriptor[],
+            AttributeDescriptor[]>> sMergedAttributeDescriptors =
+                new WeakHashMap<AttributeDescriptor[], Map<AttributeDescriptor[],
+                        AttributeDescriptor[]>>();
+
     /** An AttributeDescriptor array that depends on the current UiParent. */
     private AttributeDescriptor[] mCachedAttributeDescriptors;
 
@@ -109,6 +122,12 @@ public class UiViewElementNode extends UiElementNode {
             return mCachedAttributeDescriptors;
         }
 
+        if (!need_xmlns) {
+            mCachedAttributeDescriptors = getMergedAttributeDescriptors(direct_attrs,
+                    layout_attrs);
+            return mCachedAttributeDescriptors;
+        }
+
         mCachedAttributeDescriptors =
             new AttributeDescriptor[direct_attrs.length +
                                     layout_attrs.length +
@@ -127,6 +146,31 @@ public class UiViewElementNode extends UiElementNode {
         return mCachedAttributeDescriptors;
     }
 
+    /**
+     * Returns the shared array of the given direct attributes followed by the given
+     * layout attributes
+     */
+    private static AttributeDescriptor[] getMergedAttributeDescriptors(
+            AttributeDescriptor[] direct_attrs, AttributeDescriptor[] layout_attrs) {
+        synchronized (sMergedAttributeDescriptors) {
+            Map<AttributeDescriptor[], AttributeDescriptor[]> byLayout =
+                sMergedAttributeDescriptors.get(direct_attrs);
+            if (byLayout == null) {
+                byLayout = new WeakHashMap<AttributeDescriptor[], AttributeDescriptor[]>();
+                sMergedAttributeDescriptors.put(direct_attrs, byLayout);
+            }
+            AttributeDescriptor[] merged = byLayout.get(layout_attrs);
+            if (merged == null) {
+                merged = new AttributeDescriptor[direct_attrs.length + layout_attrs.length];
+                System.arraycopy(direct_attrs, 0, merged, 0, direct_attrs.length);
+                System.arraycopy(layout_attrs, 0, merged, direct_attrs.length,
+                        layout_attrs.length);
+                byLayout.put(layout_attrs, merged);
+            }
+            return merged;
+        }
+    }
+
     public Image getIcon() {
         ElementDescriptor desc = getDescriptor();
         if (desc != null) {
@@ -40,9 +40,13 @@ import java.io.IOException;
 import java.util.ArrayList;
 import java.util.Collections;
 import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
 import java.util.LinkedList;
 import java.util.List;
 import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
 import java.util.regex.Matcher;
 import java.util.regex.Pattern;
 
@@ -52,28 +56,41 @@ import javax.xml.parsers.DocumentBuilderFactory;
 import org.eclipse.andmore.AndmoreAndroidConstants;
 import org.eclipse.andmore.AndmoreAndroidPlugin;
 import org.eclipse.andmore.internal.project.BaseProjectHelper;
+import org.eclipse.andmore.internal.resources.manager.AndroidSymbolIndex;
+import org.eclipse.andmore.internal.resources.manager.GlobalProjectMonitor;
+import org.eclipse.andmore.internal.resources.manager.GlobalProjectMonitor.IFileListener;
 import org.eclipse.andmore.io.IFolderWrapper;
 import org.eclipse.andworx.build.AndworxContext;
 import org.eclipse.andworx.build.AndworxFactory;
 import org.eclipse.andworx.context.AndroidEnvironment;
 import org.eclipse.core.resources.IFile;
+import org.eclipse.core.resources.IMarkerDelta;
 import org.eclipse.core.resources.IProject;
 import org.eclipse.core.resources.IResource;
+import org.eclipse.core.resources.IResourceDelta;
 import org.eclipse.core.resources.IWorkspace;
 import org.eclipse.core.resources.ResourcesPlugin;
 import org.eclipse.core.runtime.CoreException;
 import org.eclipse.core.runtime.IPath;
+import org.eclipse.core.runtime.IProgressMonitor;
+import org.eclipse.core.runtime.IStatus;
 import org.eclipse.core.runtime.NullProgressMonitor;
 import org.eclipse.core.runtime.OperationCanceledException;
 import org.eclipse.core.runtime.QualifiedName;
+import org.eclipse.core.runtime.Status;
+import org.eclipse.core.runtime.jobs.Job;
+import org.eclipse.jdt.core.ElementChangedEvent;
+import org.eclipse.jdt.core.IElementChangedListener;
 import org.eclipse.jdt.core.IField;
 import org.eclipse.jdt.core.IJavaElement;
+import org.eclipse.jdt.core.IJavaElementDelta;
 import org.eclipse.jdt.core.IJavaProject;
 import org.eclipse.jdt.core.IMethod;
 import org.eclipse.jdt.core.IPackageFragment;
 import org.eclipse.jdt.core.IPackageFragmentRoot;
 import org.eclipse.jdt.core.IType;
 import org.eclipse.jdt.core.ITypeHierarchy;
+import org.eclipse.jdt.core.JavaCore;
 import org.eclipse.jdt.core.search.IJavaSearchScope;
 import org.eclipse.jdt.core.search.SearchEngine;
 import org.eclipse.jdt.core.search.SearchMatch;
@@ -82,6 +99,7 @@ import org.eclipse.jdt.core.search.SearchPattern;
 import org.eclipse.jdt.core.search.SearchRequestor;
 import org.eclipse.jdt.internal.core.BinaryType;
 import org.eclipse.jface.text.IDocument;
+import org.eclipse.swt.widgets.Display;
 import org.eclipse.ui.editors.text.TextFileDocumentProvider;
 import org.eclipse.ui.texteditor.IDocumentProvider;
 import org.w3c.dom.Document;
@@ -104,6 +122,11 @@ import com.android.xml.AndroidManifest;
 /**
  * Retrieves and caches manifest information such as the themes to be used for
  * a given activity.
+ * <p/>
+ * The manifest is parsed on first use, and parsed again on the next use after it
+ * changes, so listeners of that change already see the new data. The activities
+ * using each layout are looked up in the {@link AndroidSymbolIndex}, or by a Java
+ * search which runs in the background when asked for from the UI thread.
  *
  * @see AndroidManifest
  */
@@ -232,19 +255,42 @@ public class ManifestInfo {
      */
     private static final int SEARCH_TIMEOUT_MS = 3000;
 
+    /** The data read from a version of the manifest file */
+    private static final class Manifest {
+        private String mPackage = ""; //$NON-NLS-1$
+        private String mManifestTheme;
+        private Map<String, ActivityAttributes> mActivityAttributes = Collections.emptyMap();
+        private String mMinSdkName = "1"; // Default when not specified
+        private int mMinSdk = 1; // Default when not specified
+        private int mTargetSdk = 1; // Default when not specified
+        private String mApplicationIcon;
+        private String mApplicationLabel;
+        private boolean mApplicationSupportsRtl;
+    }
+
     private final IProject mProject;
-    private String mPackage;
-    private String mManifestTheme;
-    private Map<String, ActivityAttributes> mActivityAttributes;
-    private IAbstractFile mManifestFile;
-    private long mLastModified;
-    private long mLastChecked;
-    private String mMinSdkName;
-    private int mMinSdk;
-    private int mTargetSdk;
-    private String mApplicationIcon;
-    private String mApplicationLabel;
-    private boolean mApplicationSupportsRtl;
+    /** The manifest data, or null until the manifest is parsed */
+    private volatile Manifest mManifest;
+    /** The activities found referencing each layout by a Java search */
+    private final Map<String, List<String>> mLayoutActivities =
+            new ConcurrentHashMap<String, List<String>>();
+    /** The activities of the project, or null until they are looked up */
+    private volatile List<String> mProjectActivities;
+    /** Layouts waiting for a Java search, with the package of their R class */
+    private final Map<String, String> mPendingSearches = new LinkedHashMap<String, String>();
+    /** Whether the activities of the project are waiting to be looked up */
+    private boolean mProjectActivitiesPending;
+    /**
+     * Number of times the Java sources changed; searches started before the last change
+     * don't cache their results. Changed while holding the {@link #mPendingSearches} lock.
+     */
+    private volatile int mGeneration;
+    /** Whether searches were requested and are not done yet */
+    private boolean mSearching;
+    /** Runnables to run on the UI thread once the requested searches are done */
+    private final Set<Runnable> mSearchListeners = new LinkedHashSet<Runnable>();
+    /** Job running the Java searches requested from the UI thread */
+    private final Job mSearchJob;
 
     /**
      * Qualified name for the per-project non-persistent property storing the
@@ -261,6 +307,56 @@ public class ManifestInfo {
      */
     private ManifestInfo(IProject project) {
         mProject = project;
+
+        mSearchJob = new Job("Looking up activities of layouts") {
+            @Override
+            protected IStatus run(IProgressMonitor monitor) {
+                List<Runnable> listeners;
+                while (true) {
+                    String layoutName = null;
+                    String pkg = null;
+                    int generation;
+                    synchronized (mPendingSearches) {
+                        if (monitor.isCanceled()
+                                || mPendingSearches.isEmpty() && !mProjectActivitiesPending) {
+                            mSearching = false;
+                            listeners = new ArrayList<Runnable>(mSearchListeners);
+                            mSearchListeners.clear();
+                            break;
+                        }
+                        if (mProjectActivitiesPending) {
+                            mProjectActivitiesPending = false;
+                        } else {
+                            Map.Entry<String, String> next =
+                                    mPendingSearches.entrySet().iterator().next();
+                            layoutName = next.getKey();
+                            pkg = next.getValue();
+                            mPendingSearches.remove(layoutName);
+                        }
+                        generation = mGeneration;
+                    }
+                    if (layoutName == null) {
+                        setProjectActivities(findProjectActivities(mProject), generation);
+                    } else {
+                        setLayoutActivities(layoutName,
+                                searchActivities(mProject, layoutName, pkg), generation);
+                    }
+                }
+
+                if (monitor.isCanceled()) {
+                    return Status.CANCEL_STATUS;
+                }
+                Display display = AndmoreAndroidPlugin.getDisplay();
+                if (display != null) {
+                    for (Runnable listener : listeners) {
+                        display.asyncExec(listener);
+                    }
+                }
+                return Status.OK_STATUS;
+            }
+        };
+        mSearchJob.setSystem(true);
+        mSearchJob.setPriority(Job.DECORATE);
     }
 
     /**
@@ -268,7 +364,98 @@ public class ManifestInfo {
      * properties will cause the information to be refreshed.
      */
     public void clear() {
-        mLastChecked = 0;
+        mManifest = null;
+    }
+
+    /**
+     * Sets up the listeners keeping the manifest information of the projects up to date
+     *
+     * @param monitor the global project monitor
+     */
+    public static void setupMonitor(GlobalProjectMonitor monitor) {
+        monitor.addFileListener(new IFileListener() {
+            @Override
+            public void fileChanged(@NonNull IFile file, @NonNull IMarkerDelta[] markerDeltas,
+                    int kind, @Nullable String extension, int flags, boolean isAndroidProject) {
+                if (!isAndroidProject || flags == IResourceDelta.MARKERS
+                        || file.getParent().getType() != IResource.PROJECT
+                        || !file.getName().equals(SdkConstants.FN_ANDROID_MANIFEST_XML)) {
+                    return;
+                }
+                ManifestInfo info = peek(file.getProject());
+                if (info != null) {
+                    info.clear();
+                }
+            }
+        }, IResourceDelta.ADDED | IResourceDelta.REMOVED | IResourceDelta.CHANGED);
+
+        // Edits of the Java sources, saved or not, may change which classes use a layout
+        JavaCore.addElementChangedListener(new IElementChangedListener() {
+            @Override
+            public void elementChanged(ElementChangedEvent event) {
+                javaElementChanged(event.getDelta());
+            }
+        }, ElementChangedEvent.POST_CHANGE | ElementChangedEvent.POST_RECONCILE);
+    }
+
+    private static void javaElementChanged(IJavaElementDelta delta) {
+        IJavaElement element = delta.getElement();
+        if (element.getElementType() == IJavaElement.JAVA_MODEL) {
+            for (IJavaElementDelta child : delta.getAffectedChildren()) {
+                javaElementChanged(child);
+            }
+            return;
+        }
+
+        IJavaProject javaProject = element.getJavaProject();
+        if (javaProject != null) {
+            ManifestInfo info = peek(javaProject.getProject());
+            if (info != null) {
+                synchronized (info.mPendingSearches) {
+                    info.mGeneration++;
+                    info.mLayoutActivities.clear();
+                    info.mProjectActivities = null;
+                }
+            }
+        }
+    }
+
+    /**
+     * Caches the activities found for a layout by a search started in the given
+     * generation, unless the Java sources changed since
+     */
+    private void setLayoutActivities(String layoutName, List<String> activities,
+            int generation) {
+        synchronized (mPendingSearches) {
+            if (generation == mGeneration) {
+                mLayoutActivities.put(layoutName, activities);
+            }
+        }
+    }
+
+    /**
+     * Caches the activities of the project found by a search started in the given
+     * generation, unless the Java sources changed since
+     */
+    private void setProjectActivities(List<String> activities, int generation) {
+        synchronized (mPendingSearches) {
+            if (generation == mGeneration) {
+                mProjectActivities = activities;
+            }
+        }
+    }
+
+    /** Returns the {@link ManifestInfo} of the given project, if one was created */
+    @Nullable
+    private static ManifestInfo peek(IProject project) {
+        if (!project.isOpen()) {
+            return null;
+        }
+        try {
+            return (ManifestInfo) project.getSessionProperty(MANIFEST_FINDER);
+        } catch (CoreException e) {
+            return null;
+        }
     }
 
     /**
@@ -299,48 +486,38 @@ public class ManifestInfo {
     }
 
     /**
-     * Ensure that the package, theme and activity maps are initialized and up to date
-     * with respect to the manifest file
+     * Returns the manifest data, parsing the manifest file if it has not been read yet
      */
-    private void sync() {
-        // Since each of the accessors call sync(), allow a bunch of immediate
-        // accessors to all bypass the file stat() below
-        long now = System.currentTimeMillis();
-        if (now - mLastChecked < 50 && mManifestFile != null) {
-            return;
-        }
-        mLastChecked = now;
-
-        if (mManifestFile == null) {
-            IFolderWrapper projectFolder = new IFolderWrapper(mProject);
-            mManifestFile = projectFolder.getFile(SdkConstants.FN_ANDROID_MANIFEST_XML);
-            if (mManifestFile == null) {
-                return;
+    private Manifest sync() {
+        Manifest manifest = mManifest;
+        if (manifest == null) {
+            synchronized (this) {
+                manifest = mManifest;
+                if (manifest == null) {
+                    manifest = parse();
+                    mManifest = manifest;
+                }
             }
         }
 
-        // Check to see if our data is up to date
-        long fileModified = mManifestFile.getModificationStamp();
-        if (fileModified == mLastModified) {
-            // Already have up to date data
-            return;
-        }
-        mLastModified = fileModified;
+        return manifest;
+    }
 
-        mActivityAttributes = new HashMap<String, ActivityAttributes>();
-        mManifestTheme = null;
-        mTargetSdk = 1; // Default when not specified
-        mMinSdk = 1; // Default when not specified
-        mMinSdkName = "1"; // Default when not specified
-        mPackage = ""; //$NON-NLS-1$
-        mApplicationIcon = null;
-        mApplicationLabel = null;
-        mApplicationSupportsRtl = false;
+    /**
+     * Reads the package, theme and activity maps from the manifest file
+     */
+    private Manifest parse() {
+        Manifest manifest = new Manifest();
+        IFolderWrapper projectFolder = new IFolderWrapper(mProject);
+        IAbstractFile manifestFile = projectFolder.getFile(SdkConstants.FN_ANDROID_MANIFEST_XML);
+        if (manifestFile == null) {
+            return manifest;
+        }
 
         Document document = null;
         try {
             DocumentBuilderFactory factory = DocumentBuilderFactory.newInstance();
-            InputSource is = new InputSource(mManifestFile.getContents());
+            InputSource is = new InputSource(manifestFile.getContents());
 
             factory.setNamespaceAware(true);
             factory.setValidating(false);
@@ -348,34 +525,40 @@ public class ManifestInfo {
             document = builder.parse(is);
 
             Element root = document.getDocumentElement();
-            mPackage = root.getAttribute(ATTRIBUTE_PACKAGE);
+            manifest.mPackage = root.getAttribute(ATTRIBUTE_PACKAGE);
             NodeList activities = document.getElementsByTagName(NODE_ACTIVITY);
+            Map<String, ActivityAttributes> activityAttributes =
+                    new HashMap<String, ActivityAttributes>();
             for (int i = 0, n = activities.getLength(); i < n; i++) {
                 Element activity = (Element) activities.item(i);
-                ActivityAttributes info = new ActivityAttributes(activity, mPackage);
-                mActivityAttributes.put(info.getName(), info);
+                ActivityAttributes info = new ActivityAttributes(activity, manifest.mPackage);
+                activityAttributes.put(info.getName(), info);
             }
+            // The map is shared by all the callers of getActivityAttributesMap()
+            manifest.mActivityAttributes = Collections.unmodifiableMap(activityAttributes);
 
             NodeList applications = root.getElementsByTagName(AndroidManifest.NODE_APPLICATION);
             if (applications.getLength() > 0) {
                 assert applications.getLength() == 1;
                 Element application = (Element) applications.item(0);
                 if (application.hasAttributeNS(NS_RESOURCES, ATTRIBUTE_ICON)) {
-                    mApplicationIcon = application.getAttributeNS(NS_RESOURCES, ATTRIBUTE_ICON);
+                    manifest.mApplicationIcon =
+                            application.getAttributeNS(NS_RESOURCES, ATTRIBUTE_ICON);
                 }
                 if (application.hasAttributeNS(NS_RESOURCES, ATTRIBUTE_LABEL)) {
-                    mApplicationLabel = application.getAttributeNS(NS_RESOURCES, ATTRIBUTE_LABEL);
+                    manifest.mApplicationLabel =
+                            application.getAttributeNS(NS_RESOURCES, ATTRIBUTE_LABEL);
                 }
                 if (SdkConstants.VALUE_TRUE.equals(application.getAttributeNS(NS_RESOURCES,
                         ATTRIBUTE_SUPPORTS_RTL))) {
-                    mApplicationSupportsRtl = true;
+                    manifest.mApplicationSupportsRtl = true;
                 }
 
                 String defaultTheme = application.getAttributeNS(NS_RESOURCES, ATTRIBUTE_THEME);
                 if (defaultTheme != null && !defaultTheme.isEmpty()) {
                     // From manifest theme documentation:
                     // "If that attribute is also not set, the default system theme is used."
-                    mManifestTheme = defaultTheme;
+                    manifest.mManifestTheme = defaultTheme;
                 }
             }
 
@@ -383,8 +566,10 @@ public class ManifestInfo {
             NodeList usesSdks = root.getElementsByTagName(NODE_USES_SDK);
             if (usesSdks.getLength() > 0) {
                 Element usesSdk = (Element) usesSdks.item(0);
-                mMinSdk = getApiVersion(usesSdk, ATTRIBUTE_MIN_SDK_VERSION, 1);
-                mTargetSdk = getApiVersion(usesSdk, ATTRIBUTE_TARGET_SDK_VERSION, mMinSdk);
+                manifest.mMinSdk = getApiVersion(manifest, usesSdk,
+                        ATTRIBUTE_MIN_SDK_VERSION, 1);
+                manifest.mTargetSdk = getApiVersion(manifest, usesSdk,
+                        ATTRIBUTE_TARGET_SDK_VERSION, manifest.mMinSdk);
             }
 
         } catch (SAXException e) {
@@ -392,14 +577,20 @@ public class ManifestInfo {
         } catch (Exception e) {
             AndmoreAndroidPlugin.log(e, "Could not read Manifest data");
         }
+
+        if (manifest.mMinSdkName == null || manifest.mMinSdkName.isEmpty()) {
+            manifest.mMinSdkName = "1"; //$NON-NLS-1$
+        }
+        return manifest;
     }
 
-    private int getApiVersion(Element usesSdk, String attribute, int defaultApiLevel) {
+    private static int getApiVersion(Manifest manifest, Element usesSdk, String attribute,
+            int defaultApiLevel) {
         String valueString = null;
         if (usesSdk.hasAttributeNS(NS_RESOURCES, attribute)) {
             valueString = usesSdk.getAttributeNS(NS_RESOURCES, attribute);
             if (attribute.equals(ATTRIBUTE_MIN_SDK_VERSION)) {
-                mMinSdkName = valueString;
+                manifest.mMinSdkName = valueString;
             }
         }
 
@@ -432,8 +623,7 @@ public class ManifestInfo {
      */
     @NonNull
     public String getPackage() {
-        sync();
-        return mPackage;
+        return sync().mPackage;
     }
 
     /**
@@ -443,8 +633,7 @@ public class ManifestInfo {
      */
     @NonNull
     public Map<String, ActivityAttributes> getActivityAttributesMap() {
-        sync();
-        return mActivityAttributes;
+        return sync().mActivityAttributes;
     }
 
     /**
@@ -462,8 +651,7 @@ public class ManifestInfo {
      */
     @Nullable
     public String getManifestTheme() {
-        sync();
-        return mManifestTheme;
+        return sync().mManifestTheme;
     }
 
     /**
@@ -476,18 +664,18 @@ public class ManifestInfo {
      */
     @NonNull
     public String getDefaultTheme(IAndroidTarget renderingTarget, ScreenSize screenSize) {
-        sync();
+        Manifest manifest = sync();
 
-        if (mManifestTheme != null) {
-            return mManifestTheme;
+        if (manifest.mManifestTheme != null) {
+            return manifest.mManifestTheme;
         }
 
-        int renderingTargetSdk = mTargetSdk;
+        int renderingTargetSdk = manifest.mTargetSdk;
         if (renderingTarget != null) {
             renderingTargetSdk = renderingTarget.getVersion().getApiLevel();
         }
 
-        int apiLevel = Math.min(mTargetSdk, renderingTargetSdk);
+        int apiLevel = Math.min(manifest.mTargetSdk, renderingTargetSdk);
         // For now this theme works only on XLARGE screens. When it works for all sizes,
         // add that new apiLevel to this check.
         if (apiLevel >= 11 && screenSize == ScreenSize.XLARGE || apiLevel >= 14) {
@@ -504,8 +692,7 @@ public class ManifestInfo {
      */
     @Nullable
     public String getApplicationIcon() {
-        sync();
-        return mApplicationIcon;
+        return sync().mApplicationIcon;
     }
 
     /**
@@ -515,8 +702,7 @@ public class ManifestInfo {
      */
     @Nullable
     public String getApplicationLabel() {
-        sync();
-        return mApplicationLabel;
+        return sync().mApplicationLabel;
     }
 
     /**
@@ -525,8 +711,7 @@ public class ManifestInfo {
      * @return true if the application has RTL support.
      */
     public boolean isRtlSupported() {
-        sync();
-        return mApplicationSupportsRtl;
+        return sync().mApplicationSupportsRtl;
     }
 
     /**
@@ -535,8 +720,7 @@ public class ManifestInfo {
      * @return the target SDK version
      */
     public int getTargetSdkVersion() {
-        sync();
-        return mTargetSdk;
+        return sync().mTargetSdk;
     }
 
     /**
@@ -545,8 +729,7 @@ public class ManifestInfo {
      * @return the minimum SDK version
      */
     public int getMinSdkVersion() {
-        sync();
-        return mMinSdk;
+        return sync().mMinSdk;
     }
 
     /**
@@ -559,12 +742,7 @@ public class ManifestInfo {
      */
     @NonNull
     public String getMinSdkName() {
-        sync();
-        if (mMinSdkName == null || mMinSdkName.isEmpty()) {
-            mMinSdkName = "1"; //$NON-NLS-1$
-        }
-
-        return mMinSdkName;
+        return sync().mMinSdkName;
     }
 
     /**
@@ -589,13 +767,13 @@ public class ManifestInfo {
      */
     @Nullable
     public IPackageFragment getPackageFragment() {
-        sync();
+        String pkg = sync().mPackage;
         try {
             IJavaProject javaProject = BaseProjectHelper.getJavaProject(mProject);
             if (javaProject != null) {
                 IPackageFragmentRoot root = ManifestInfo.getSourcePackageRoot(javaProject);
                 if (root != null) {
-                    return root.getPackageFragment(mPackage);
+                    return root.getPackageFragment(pkg);
                 }
             }
         } catch (CoreException e) {
@@ -637,6 +815,71 @@ public class ManifestInfo {
      */
     @NonNull
     public static List<String> guessActivities(IProject project, String layoutName, String pkg) {
+        // The symbol index records the R.layout references of the project sources, along
+        // with whether they come from an activity, so most layouts need no Java search
+        List<String> indexed = AndroidSymbolIndex.getInstance().findLayoutReferences(project,
+                layoutName);
+        if (!indexed.isEmpty()) {
+            return indexed;
+        }
+
+        return get(project).getSearchedActivities(layoutName, pkg);
+    }
+
+    /**
+     * Returns the activities found by a Java search for the references of the given
+     * layout. The search is too slow for the UI thread, so there it runs in the background
+     * and the layout has no known activities until it is done.
+     */
+    @NonNull
+    private List<String> getSearchedActivities(String layoutName, String pkg) {
+        List<String> activities = mLayoutActivities.get(layoutName);
+        if (activities != null) {
+            return activities;
+        }
+
+        if (Display.getCurrent() == null) {
+            int generation = mGeneration;
+            activities = searchActivities(mProject, layoutName, pkg);
+            setLayoutActivities(layoutName, activities, generation);
+            return activities;
+        }
+
+        synchronized (mPendingSearches) {
+            mPendingSearches.put(layoutName, pkg);
+            mSearching = true;
+        }
+        mSearchJob.schedule();
+        return Collections.emptyList();
+    }
+
+    /**
+     * Runs the given runnable on the UI thread once the activities being looked up in
+     * the background are known, so that callers which got incomplete answers from
+     * {@link #guessActivities} or {@link #getKnownProjectActivities} can ask again.
+     * The runnable is run at most once, and only if there are searches in progress.
+     *
+     * @param runnable the runnable to run when the searches are done
+     * @return true if searches are in progress and the runnable will be run, false if
+     *         the answers given so far are complete
+     */
+    public boolean runWhenSearched(@NonNull Runnable runnable) {
+        synchronized (mPendingSearches) {
+            if (!mSearching) {
+                return false;
+            }
+            mSearchListeners.add(runnable);
+            return true;
+        }
+    }
+
+    /**
+     * Searches the Java sources for the classes referencing the given layout, activities
+     * first
+     */
+    @NonNull
+    private static List<String> searchActivities(IProject project, String layoutName,
+            String pkg) {
         final LinkedList<String> activities = new LinkedList<String>();
         SearchRequestor requestor = new SearchRequestor() {
             @Override
@@ -697,9 +940,48 @@ public class ManifestInfo {
      * @param project the project
      * @return a list of activity classes as fully qualified class names
      */
-    @SuppressWarnings("restriction") // BinaryType
     @NonNull
     public static List<String> getProjectActivities(IProject project) {
+        ManifestInfo info = get(project);
+        List<String> activities = info.mProjectActivities;
+        if (activities == null) {
+            int generation = info.mGeneration;
+            activities = findProjectActivities(project);
+            info.setProjectActivities(activities, generation);
+        }
+        return activities;
+    }
+
+    /**
+     * Returns the activities of the project like {@link #getProjectActivities}, without
+     * building the type hierarchy on the UI thread: there, unknown activities are looked
+     * up in the background, and the list is empty until they are found. See
+     * {@link #runWhenSearched}.
+     *
+     * @return a list of activity classes as fully qualified class names
+     */
+    @NonNull
+    public List<String> getKnownProjectActivities() {
+        List<String> activities = mProjectActivities;
+        if (activities != null) {
+            return activities;
+        }
+
+        if (Display.getCurrent() == null) {
+            return getProjectActivities(mProject);
+        }
+
+        synchronized (mPendingSearches) {
+            mProjectActivitiesPending = true;
+            mSearching = true;
+        }
+        mSearchJob.schedule();
+        return Collections.emptyList();
+    }
+
+    @SuppressWarnings("restriction") // BinaryType
+    @NonNull
+    private static List<String> findProjectActivities(IProject project) {
         final List<String> activities = new ArrayList<String>();
         try {
             final IJavaProject javaProject = BaseProjectHelper.getJavaProject(project);
@@ -723,7 +1005,8 @@ public class ManifestInfo {
             AndmoreAndroidPlugin.log(e, null);
         }
 
-        return activities;
+        // The list is cached and shared
+        return Collections.unmodifiableList(activities);
     }
 
 
@@ -766,7 +1049,7 @@ public class ManifestInfo {
                 Pattern.compile("R\\.layout\\.([a-z0-9_]+)"); //$NON-NLS-1$
             Map<String, String> mUsages = null;
 
-            sync();
+            Manifest manifest = sync();
             if (mUsages == null) {
                 final Map<String, String> usages = new HashMap<String, String>();
                 mUsages = usages;
@@ -808,8 +1091,8 @@ public class ManifestInfo {
 
                     // Search for which java classes call setContentView(R.layout.layoutname);
                     String typeFqcn = "R.layout"; //$NON-NLS-1$
-                    if (mPackage != null) {
-                        typeFqcn = mPackage + '.' + typeFqcn;
+                    if (manifest.mPackage != null) {
+                        typeFqcn = manifest.mPackage + '.' + typeFqcn;
                     }
 
                     IType activityType = javaProject.findType(CLASS_ACTIVITY);
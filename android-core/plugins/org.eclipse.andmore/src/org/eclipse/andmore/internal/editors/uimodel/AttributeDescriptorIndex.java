@@ -0,0 +1,116 @@
+/*
+ * Copyright (C) 2018 The Android Open Source Project
+ *
+ * Licensed under the Eclipse Public License, Version 1.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.eclipse.org/org/documents/epl-v10.php
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.eclipse.andmore.internal.editors.uimodel;
+
+import com.android.annotations.NonNull;
+import com.android.annotations.Nullable;
+
+import org.eclipse.andmore.internal.editors.descriptors.AttributeDescriptor;
+import org.eclipse.andmore.internal.editors.descriptors.SeparatorAttributeDescriptor;
+import org.eclipse.andmore.internal.editors.descriptors.XmlnsAttributeDescriptor;
+import org.w3c.dom.Node;
+
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.WeakHashMap;
+
+/**
+ * Lookup tables derived from an {@link AttributeDescriptor} array, shared by all the
+ * {@link UiElementNode}s which use the same array.
+ * <p/>
+ * The tables let a node find out which of its XML attributes are described, and which
+ * are hidden, without creating a {@link UiAttributeNode} for each of its descriptors.
+ * They are immutable, and are dropped when the descriptor array is no longer used.
+ */
+final class AttributeDescriptorIndex {
+    private static final Map<AttributeDescriptor[], AttributeDescriptorIndex> sIndexes =
+            new WeakHashMap<AttributeDescriptor[], AttributeDescriptorIndex>();
+
+    /** The descriptors which have a UI attribute node, by namespace and local name */
+    private final Map<String, AttributeDescriptor> mDescribed;
+    /** The hidden descriptors, by XML name */
+    private final Map<String, AttributeDescriptor> mHidden;
+
+    private AttributeDescriptorIndex(AttributeDescriptor[] descriptors) {
+        Map<String, AttributeDescriptor> described =
+                new HashMap<String, AttributeDescriptor>(descriptors.length * 2);
+        Map<String, AttributeDescriptor> hidden = new HashMap<String, AttributeDescriptor>();
+        for (AttributeDescriptor desc : descriptors) {
+            if (desc instanceof XmlnsAttributeDescriptor) {
+                // Namespace declarations have no UI attribute node
+                hidden.put(((XmlnsAttributeDescriptor) desc).getXmlNsName(), desc);
+            } else if (!(desc instanceof SeparatorAttributeDescriptor)) {
+                String key = getKey(desc.getNamespaceUri(), desc.getXmlLocalName());
+                if (!described.containsKey(key)) {
+                    described.put(key, desc);
+                }
+            }
+        }
+        mDescribed = described;
+        mHidden = Collections.unmodifiableMap(hidden);
+    }
+
+    /**
+     * Returns the index of the given descriptors
+     *
+     * @param descriptors the attribute descriptors of a node
+     * @return the shared index, never null
+     */
+    @NonNull
+    static AttributeDescriptorIndex get(@NonNull AttributeDescriptor[] descriptors) {
+        synchronized (sIndexes) {
+            AttributeDescriptorIndex index = sIndexes.get(descriptors);
+            if (index == null) {
+                index = new AttributeDescriptorIndex(descriptors);
+                sIndexes.put(descriptors, index);
+            }
+            return index;
+        }
+    }
+
+    /**
+     * Returns the descriptor of an XML attribute, if it has a UI attribute node
+     *
+     * @param xmlAttr the XML attribute
+     * @return the descriptor, or null if the attribute is unknown or hidden
+     */
+    @Nullable
+    AttributeDescriptor findDescriptor(@NonNull Node xmlAttr) {
+        String localName = xmlAttr.getLocalName();
+        if (localName == null) {
+            return null;
+        }
+        return mDescribed.get(getKey(xmlAttr.getNamespaceURI(), localName));
+    }
+
+    /**
+     * Returns the hidden descriptors
+     *
+     * @return a read-only map of the hidden descriptors, by XML name
+     */
+    @NonNull
+    Map<String, AttributeDescriptor> getHiddenDescriptors() {
+        return mHidden;
+    }
+
+    private static String getKey(@Nullable String namespaceUri, @NonNull String localName) {
+        if (namespaceUri == null || namespaceUri.isEmpty()) {
+            return localName;
+        }
+        return namespaceUri + ':' + localName;
+    }
+}
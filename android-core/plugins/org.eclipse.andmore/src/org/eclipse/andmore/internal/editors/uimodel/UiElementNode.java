@@ -112,19 +112,19 @@ public class UiElementNode implements IPropertySource {
      *  node per existing XML children node. */
     private ArrayList<UiElementNode> mUiChildren;
     /** The list of <em>all</em> UI attributes, as declared in the {@link ElementDescriptor}.
-     *  The list is always defined and never null. Unlike the UiElementNode children list, this
-     *  is always defined, even for attributes that do not exist in the XML model - that's because
-     *  "missing" attributes in the XML model simply mean a default value is used. Also note that
-     *  the underlying collection is a map, so order is not respected. To get the desired attribute
-     *  order, iterate through the {@link ElementDescriptor}'s attribute list. */
+     *  Unlike the UiElementNode children list, this holds every attribute, even the ones that
+     *  do not exist in the XML model - that's because "missing" attributes in the XML model
+     *  simply mean a default value is used. The list is only created, and loaded from the XML
+     *  node, the first time the attributes are accessed; until then it is null and XML changes
+     *  only update the unknown attributes. Also note that the underlying collection is a map,
+     *  so order is not respected. To get the desired attribute order, iterate through the
+     *  {@link ElementDescriptor}'s attribute list. */
     private HashMap<AttributeDescriptor, UiAttributeNode> mUiAttributes;
     private HashSet<UiAttributeNode> mUnknownUiAttributes;
     /** A read-only view of the UI children node collection. */
     private List<UiElementNode> mReadOnlyUiChildren;
     /** A read-only view of the UI attributes collection. */
     private Collection<UiAttributeNode> mCachedAllUiAttributes;
-    /** A map of hidden attribute descriptors. Key is the XML name. */
-    private Map<String, AttributeDescriptor> mCachedHiddenAttributes;
     /** An optional list of {@link IUiUpdateListener}. Most element nodes will not have any
      *  listeners attached, so the list is only created on demand and can be null. */
     private List<IUiUpdateListener> mUiUpdateListeners;
@@ -179,13 +179,11 @@ public class UiElementNode implements IPropertySource {
     }
 
     /**
-     * Clears the internal list of attributes, the read-only cached version of it
-     * and the read-only cached hidden attribute list.
+     * Clears the internal list of attributes and the read-only cached version of it.
      */
     private void clearAttributes() {
         mUiAttributes = null;
         mCachedAllUiAttributes = null;
-        mCachedHiddenAttributes = null;
         mUnknownUiAttributes = new HashSet<UiAttributeNode>();
     }
 
@@ -194,6 +192,8 @@ public class UiElementNode implements IPropertySource {
      * <p/>
      * When the descriptor derives from ViewElementDescriptor, this list depends on the
      * current UiParent node.
+     * <p/>
+     * The list is created on first access, with the values of the current XML node.
      *
      * @return A new set of {@link UiAttributeNode} that matches the expected
      *         attributes for this node.
@@ -208,10 +208,33 @@ public class UiElementNode implements IPropertySource {
                     mUiAttributes.put(desc, uiNode);
                 }
             }
+            if (mXmlNode != null) {
+                updateKnownAttributes(mXmlNode.getAttributes(), null);
+            }
         }
         return mUiAttributes;
     }
 
+    /**
+     * Updates the known UI attributes from the XML attributes of the same (uri, local name)
+     *
+     * @param xmlAttrMap the XML attributes, or null
+     * @param visited if not null, collects the XML attributes which were found
+     */
+    private void updateKnownAttributes(NamedNodeMap xmlAttrMap, Set<Node> visited) {
+        for (UiAttributeNode uiAttr : mUiAttributes.values()) {
+            AttributeDescriptor desc = uiAttr.getDescriptor();
+            if (!(desc instanceof SeparatorAttributeDescriptor)) {
+                Node xmlAttr = xmlAttrMap == null ? null :
+                    xmlAttrMap.getNamedItemNS(desc.getNamespaceUri(), desc.getXmlLocalName());
+                uiAttr.updateValue(xmlAttr);
+                if (visited != null) {
+                    visited.add(xmlAttr);
+                }
+            }
+        }
+    }
+
     /**
      * Computes a short string describing the UI node suitable for tree views.
      * Uses the element's attribute "android:name" if present, or the "android:label" one
@@ -451,17 +474,7 @@ public class UiElementNode implements IPropertySource {
      * UI node. There's no need for it right now so keep it private.
      */
     private Map<String, AttributeDescriptor> getHiddenAttributeDescriptors() {
-        if (mCachedHiddenAttributes == null) {
-            mCachedHiddenAttributes = new HashMap<String, AttributeDescriptor>();
-            for (AttributeDescriptor attrDesc : getAttributeDescriptors()) {
-                if (attrDesc instanceof XmlnsAttributeDescriptor) {
-                    mCachedHiddenAttributes.put(
-                            ((XmlnsAttributeDescriptor) attrDesc).getXmlNsName(),
-                            attrDesc);
-                }
-            }
-        }
-        return mCachedHiddenAttributes;
+        return AttributeDescriptorIndex.get(getAttributeDescriptors()).getHiddenDescriptors();
     }
 
     /**
@@ -1410,23 +1423,24 @@ public class UiElementNode implements IPropertySource {
      * the corresponding XML attribute. It may not exist, in which case the
      * value will be null. We don't really know if a value has changed, so
      * the updateValue() is called on the UI attribute in all cases.
+     * <p/>
+     * If the attribute list was not created yet, only the unknown attributes
+     * are updated: the other ones are loaded when the list is created.
      *
      * @param xmlNode The XML node to mirror
      */
     protected void updateAttributeList(Node xmlNode) {
         NamedNodeMap xmlAttrMap = xmlNode.getAttributes();
-        HashSet<Node> visited = new HashSet<Node>();
+        HashSet<Node> visited = null;
+        AttributeDescriptorIndex index = null;
 
         // For all known (i.e. expected) UI attributes, find an existing XML attribute of
         // same (uri, local name) and update the internal Ui attribute value.
-        for (UiAttributeNode uiAttr : getInternalUiAttributes().values()) {
-            AttributeDescriptor desc = uiAttr.getDescriptor();
-            if (!(desc instanceof SeparatorAttributeDescriptor)) {
-                Node xmlAttr = xmlAttrMap == null ? null :
-                    xmlAttrMap.getNamedItemNS(desc.getNamespaceUri(), desc.getXmlLocalName());
-                uiAttr.updateValue(xmlAttr);
-                visited.add(xmlAttr);
-            }
+        if (mUiAttributes != null) {
+            visited = new HashSet<Node>();
+            updateKnownAttributes(xmlAttrMap, visited);
+        } else {
+            index = AttributeDescriptorIndex.get(getAttributeDescriptors());
         }
 
         // Clone the current list of unknown attributes. We'll then remove from this list when
@@ -1443,7 +1457,8 @@ public class UiElementNode implements IPropertySource {
             for (int i = 0; i < xmlAttrMap.getLength(); i++) {
                 Node xmlAttr = xmlAttrMap.item(i);
                 // Ignore attributes which have actual descriptors
-                if (visited.contains(xmlAttr)) {
+                if (visited != null ? visited.contains(xmlAttr)
+                        : index.findDescriptor(xmlAttr) != null) {
                     continue;
                 }
 
@@ -37,6 +37,7 @@ import org.eclipse.andmore.internal.editors.layout.gle2.GraphicalEditorPart;
 import org.eclipse.andmore.internal.editors.layout.gle2.LayoutActionBar;
 import org.eclipse.andmore.internal.editors.layout.uimodel.UiViewElementNode;
 import org.eclipse.andmore.internal.project.BaseProjectHelper;
+import org.eclipse.andmore.internal.project.MarkerBatch;
 import org.eclipse.andworx.build.AndworxContext;
 import org.eclipse.andworx.build.AndworxFactory;
 import org.eclipse.andworx.context.AndroidEnvironment;
@@ -116,6 +117,8 @@ public class EclipseLintClient extends LintCliClient {
     private boolean mCollectNodes;
     /** Maps nodes to issues (one-to-one only) */
     private Map<Node, IMarker> mNodeMap;
+    /** Batch collecting the reported markers, or null to create them right away */
+    private MarkerBatch mMarkerBatch;
     /** Last eclpse project */
     private IProject mLastEclipseProject;
     /** Last Lint project */
@@ -162,6 +165,26 @@ public class EclipseLintClient extends LintCliClient {
         mCollectNodes = collectNodes;
     }
 
+    /**
+     * Returns whether the lint client stores associated XML nodes for each reported issue
+     *
+     * @return true if node positions for errors in XML files are collected
+     */
+    public boolean isCollectingNodes() {
+        return mCollectNodes;
+    }
+
+    /**
+     * Sets the batch in which the reported issues are collected. Issues are then marked
+     * when the batch is applied, so this can not be combined with collecting nodes.
+     *
+     * @param markerBatch the batch, or null to create the markers as issues are reported
+     */
+    public void setMarkerBatch(@Nullable MarkerBatch markerBatch) {
+        assert markerBatch == null || !mCollectNodes;
+        mMarkerBatch = markerBatch;
+    }
+
     /**
      * Returns one of the issues for the given node (there could be more than one)
      *
@@ -298,7 +321,9 @@ public class EclipseLintClient extends LintCliClient {
 	public void report(Context context, Issue issue, Severity level, Location location, String message, TextFormat textForma, LintFix linFix) {
         int severity = getMarkerSeverity(level);
         IMarker marker = null;
-        if (location != null) {
+        if (mMarkerBatch != null) {
+            addMarker(issue, location, message, severity);
+        } else if (location != null) {
             Position startPosition = location.getStart();
             if (startPosition == null) {
                 if (location.getFile() != null) {
@@ -322,7 +347,7 @@ public class EclipseLintClient extends LintCliClient {
                 }
             }
         }
-        if (marker == null) {
+        if (marker == null && mMarkerBatch == null) {
             marker = BaseProjectHelper.markResource(mResources.get(0), MARKER_LINT,
                         message, 0, severity);
         }
@@ -648,6 +673,11 @@ public class EclipseLintClient extends LintCliClient {
                 AndmoreAndroidPlugin.log(e, null);
             }
         }
+        updateErrorIndicator();
+    }
+
+    /** Updates the lint error indicator of the active layout editor, if any */
+    static void updateErrorIndicator() {
         IEditorPart activeEditor = AdtUtils.getActiveEditor();
         LayoutEditorDelegate delegate = LayoutEditorDelegate.fromEditor(activeEditor);
         if (delegate != null) {
@@ -760,6 +790,40 @@ public class EclipseLintClient extends LintCliClient {
         }
     }
 
+    /** Adds the marker of a reported issue to the marker batch */
+    private void addMarker(Issue issue, @Nullable Location location, String message,
+            int severity) {
+        IResource resource = mResources.get(0);
+        int line = 0;
+        int startOffset = -1;
+        int endOffset = -1;
+        if (location != null) {
+            Position startPosition = location.getStart();
+            if (startPosition == null) {
+                if (location.getFile() != null) {
+                    IResource file = AdtUtils.fileToResource(location.getFile());
+                    if (file != null && file.isAccessible()) {
+                        resource = file;
+                    }
+                }
+            } else {
+                IFile file = AdtUtils.fileToIFile(location.getFile());
+                if (file != null && file.isAccessible()) {
+                    Pair<Integer, Integer> r = getRange(file, mDocument,
+                            startPosition, location.getEnd());
+                    resource = file;
+                    line = startPosition.getLine() + 1; // Marker API is 1-based
+                    startOffset = r.getFirst();
+                    endOffset = r.getSecond();
+                }
+            }
+        }
+
+        // Store marker id such that we can recognize it from the suppress quickfix
+        mMarkerBatch.addMarker(resource, MARKER_LINT, message, line, startOffset, endOffset,
+                severity).setAttribute(MARKER_CHECKID_PROPERTY, issue.getId());
+    }
+
     /**
      * Shows the given marker in the editor
      *
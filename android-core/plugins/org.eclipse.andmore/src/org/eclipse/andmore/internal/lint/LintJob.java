@@ -26,6 +26,7 @@ import java.util.List;
 
 import org.eclipse.andmore.AdtUtils;
 import org.eclipse.andmore.AndmoreAndroidConstants;
+import org.eclipse.andmore.internal.project.MarkerBatch;
 import org.eclipse.core.resources.IFile;
 import org.eclipse.core.resources.IMarker;
 import org.eclipse.core.resources.IProject;
@@ -151,6 +152,32 @@ public final class LintJob extends Job {
             if (mSource == null) {
                 assert !Scope.checkSingleFile(scope) : scope + " with " + mResources;
             }
+            // Skip runs over the same contents as the last run over the same resources.
+            // Clients collecting nodes need the issues reported again to build their node map.
+            String fingerprint = null;
+            if (!mClient.isCollectingNodes()) {
+                Boolean fatal = null;
+                if (mSource != null) {
+                    fingerprint = LintResultCache.fingerprint(mClient, mRegistry, mSource,
+                            files, scope);
+                    if (fingerprint != null) {
+                        fatal = LintResultCache.getFatal(mSource, fingerprint);
+                    }
+                } else {
+                    fingerprint = LintResultCache.fingerprintRun(mClient, mRegistry,
+                            mResources, scope);
+                    if (fingerprint != null) {
+                        fatal = LintResultCache.getRunFatal(mResources, fingerprint);
+                    }
+                }
+                if (fatal != null) {
+                    mFatal = fatal.booleanValue();
+                    return Status.OK_STATUS;
+                }
+            }
+            // Gather the markers and apply the differences once lint is done, unless
+            // the client needs the markers as issues are reported
+            MarkerBatch batch = mClient.isCollectingNodes() ? null : new MarkerBatch();
             // Check single file?
             if (mSource != null) {
                 // Delete specific markers
@@ -162,12 +189,23 @@ public final class LintJob extends Job {
                         continue;
                     }
                     if (issue.getImplementation().isAdequate(scope)) {
-                        marker.delete();
+                        if (batch != null) {
+                            batch.replaceMarker(marker);
+                        } else {
+                            marker.delete();
+                        }
                     }
                 }
                 mClient.setSearchForSuperClasses(true);
+            } else if (batch != null) {
+                for (IResource resource : mResources) {
+                    batch.replaceMarkers(resource, AndmoreAndroidConstants.MARKER_LINT,
+                            false /*includeSubtypes*/, IResource.DEPTH_INFINITE);
+                }
+                LintResultCache.clear();
             } else {
                 EclipseLintClient.clearMarkers(mResources);
+                LintResultCache.clear();
             }
 /*
  * @param registry The registry containing issues to be checked
@@ -179,8 +217,23 @@ public final class LintJob extends Job {
  */
             LintRequest request = new LintRequest(mClient, files).setScope(scope);
             mLint = new LintDriver(mRegistry, mClient, request);
-            mLint.analyze();
+            mClient.setMarkerBatch(batch);
+            try {
+                mLint.analyze();
+            } finally {
+                mClient.setMarkerBatch(null);
+            }
+            if (batch != null && batch.apply() > 0) {
+                EclipseLintClient.updateErrorIndicator();
+            }
             mFatal = mClient.hasFatalErrors();
+            if (fingerprint != null && !monitor.isCanceled()) {
+                if (mSource != null) {
+                    LintResultCache.put(mSource, fingerprint, mFatal);
+                } else {
+                    LintResultCache.putRun(mResources, fingerprint, mFatal);
+                }
+            }
             return Status.OK_STATUS;
         } catch (Exception e) {
             return new Status(IStatus.ERROR, AndmoreAndroidConstants.PLUGIN_ID, IStatus.ERROR,
@@ -0,0 +1,351 @@
+/*
+ * Copyright (C) 2018 The Android Open Source Project
+ *
+ * Licensed under the Eclipse Public License, Version 1.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.eclipse.org/org/documents/epl-v10.php
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.eclipse.andmore.internal.lint;
+
+import static com.android.SdkConstants.DOT_CLASS;
+import static com.android.SdkConstants.DOT_XML;
+import static com.android.SdkConstants.FN_ANDROID_MANIFEST_XML;
+import static com.android.SdkConstants.FN_PROJECT_PROPERTIES;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.EnumSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.eclipse.andmore.AdtUtils;
+import org.eclipse.andmore.AndmoreAndroidPlugin;
+import org.eclipse.core.resources.IFile;
+import org.eclipse.core.resources.IProject;
+import org.eclipse.core.resources.IResource;
+import org.eclipse.core.resources.IResourceProxy;
+import org.eclipse.core.resources.IResourceProxyVisitor;
+import org.eclipse.core.runtime.CoreException;
+import org.eclipse.wst.sse.core.StructuredModelManager;
+import org.eclipse.wst.sse.core.internal.provisional.IStructuredModel;
+
+import com.android.annotations.NonNull;
+import com.android.annotations.Nullable;
+import com.android.tools.lint.client.api.IssueRegistry;
+import com.android.tools.lint.detector.api.Issue;
+import com.android.tools.lint.detector.api.Scope;
+import com.android.utils.SdkUtils;
+
+/**
+ * Results of the lint runs, by analyzed resources.
+ * <p/>
+ * Single file lint runs on every save of the active editor, and project wide runs on
+ * builds and on request. When the analyzed contents, the scope and the lint configuration
+ * are the same as for the previous run over the same resources, and the markers of that
+ * run are still in place, running the detectors again would report the same issues, so
+ * {@link LintJob} skips the run.
+ * <p/>
+ * Single file checks only look at the files they are given, but the project's manifest
+ * (minSdkVersion and the like), its project.properties and its lint.xml also decide what
+ * gets reported, so they are part of the fingerprint. Project wide runs fingerprint every
+ * file of the analyzed projects. Both include the workspace severities of the issues.
+ * <p/>
+ * Lint runs all its detectors over the whole request, so results are only reused for a
+ * whole run: a project wide run in which a single file changed analyzes everything again.
+ */
+final class LintResultCache {
+    /** Maximum number of source files whose result is kept */
+    private static final int MAX_ENTRIES = 100;
+    /** Maximum number of project wide runs whose result is kept */
+    private static final int MAX_RUN_ENTRIES = 10;
+    private static final String FN_LINT_XML = "lint.xml"; //$NON-NLS-1$
+
+    /** Fingerprint of a lint run, and what it reported */
+    private static final class Result {
+        final String mFingerprint;
+        final int mMarkerCount;
+        final boolean mFatal;
+
+        Result(String fingerprint, int markerCount, boolean fatal) {
+            mFingerprint = fingerprint;
+            mMarkerCount = markerCount;
+            mFatal = fatal;
+        }
+    }
+
+    private static final Map<IResource, Result> sResults = new Cache<IResource>(MAX_ENTRIES);
+
+    private static final Map<List<IResource>, Result> sRunResults =
+            new Cache<List<IResource>>(MAX_RUN_ENTRIES);
+
+    /** Least recently used map of results */
+    private static final class Cache<K> extends LinkedHashMap<K, Result> {
+        private static final long serialVersionUID = 1L;
+        private final int mMaxSize;
+
+        Cache(int maxSize) {
+            super(16, 0.75f, true /*accessOrder*/);
+            mMaxSize = maxSize;
+        }
+
+        @Override
+        protected boolean removeEldestEntry(Map.Entry<K, Result> eldest) {
+            return size() > mMaxSize;
+        }
+    }
+
+    private LintResultCache() {
+    }
+
+    /**
+     * Computes the fingerprint of a single file lint run
+     *
+     * @param client the lint client, which reads the files like lint will
+     * @param registry the registry of the checked issues
+     * @param source the source file being checked
+     * @param files the files to be analyzed, such as the source and its class files
+     * @param scope the scope of the run
+     * @return the fingerprint, or null if the files could not be read
+     */
+    @Nullable
+    static String fingerprint(
+            @NonNull EclipseLintClient client,
+            @NonNull IssueRegistry registry,
+            @NonNull IResource source,
+            @NonNull List<File> files,
+            @NonNull EnumSet<Scope> scope) {
+        try {
+            MessageDigest digest = MessageDigest.getInstance("SHA-1"); //$NON-NLS-1$
+            updateConfiguration(digest, client, registry, scope);
+            for (File file : files) {
+                update(digest, file.getPath());
+                if (file.getName().endsWith(DOT_CLASS)) {
+                    digest.update(Files.readAllBytes(file.toPath()));
+                } else {
+                    // The client reads XML files from the editor model, which may be unsaved
+                    update(digest, client.readFile(file).toString());
+                }
+            }
+
+            IProject project = source.getProject();
+            if (project != null) {
+                File dir = AdtUtils.getAbsolutePath(project).toFile();
+                update(digest, stamp(new File(dir, FN_ANDROID_MANIFEST_XML)));
+                update(digest, stamp(new File(dir, FN_PROJECT_PROPERTIES)));
+                update(digest, stamp(new File(dir, FN_LINT_XML)));
+            }
+
+            return toHex(digest);
+        } catch (NoSuchAlgorithmException e) {
+            AndmoreAndroidPlugin.log(e, null);
+        } catch (IOException e) {
+            // The file went away; let lint report on it
+        }
+
+        return null;
+    }
+
+    /**
+     * Computes the fingerprint of a project wide lint run, from the modification stamps
+     * of all the files of the analyzed resources
+     *
+     * @param client the lint client
+     * @param registry the registry of the checked issues
+     * @param resources the analyzed resources, such as projects and their libraries
+     * @param scope the scope of the run
+     * @return the fingerprint, or null if the run cannot be fingerprinted, such as when
+     *         an XML file is modified in an editor and not saved
+     */
+    @Nullable
+    static String fingerprintRun(
+            @NonNull EclipseLintClient client,
+            @NonNull IssueRegistry registry,
+            @NonNull List<? extends IResource> resources,
+            @NonNull EnumSet<Scope> scope) {
+        try {
+            final MessageDigest digest = MessageDigest.getInstance("SHA-1"); //$NON-NLS-1$
+            updateConfiguration(digest, client, registry, scope);
+            final boolean[] unsaved = new boolean[1];
+            for (IResource resource : resources) {
+                if (!resource.isAccessible()) {
+                    return null;
+                }
+                resource.accept(new IResourceProxyVisitor() {
+                    @Override
+                    public boolean visit(IResourceProxy proxy) {
+                        if (proxy.getType() != IResource.FILE) {
+                            return !unsaved[0];
+                        }
+                        update(digest, proxy.requestFullPath().toString());
+                        update(digest, Long.toString(proxy.getModificationStamp()));
+                        if (SdkUtils.endsWithIgnoreCase(proxy.getName(), DOT_XML)
+                                && isModified((IFile) proxy.requestResource())) {
+                            unsaved[0] = true;
+                        }
+                        return !unsaved[0];
+                    }
+                }, IResource.NONE);
+                if (unsaved[0]) {
+                    return null;
+                }
+            }
+
+            return toHex(digest);
+        } catch (NoSuchAlgorithmException e) {
+            AndmoreAndroidPlugin.log(e, null);
+        } catch (CoreException e) {
+            // The resources changed while visited; let lint run
+        }
+
+        return null;
+    }
+
+    /**
+     * Returns the outcome of the previous run of the given source, provided it had the
+     * same fingerprint and its markers have not been removed or added to since.
+     *
+     * @param source the source file being checked
+     * @param fingerprint the fingerprint of the new run
+     * @return the fatal flag of the previous run if it is still valid, or null
+     */
+    @Nullable
+    static Boolean getFatal(@NonNull IResource source, @NonNull String fingerprint) {
+        Result result;
+        synchronized (sResults) {
+            result = sResults.get(source);
+        }
+        if (result != null && result.mFingerprint.equals(fingerprint)
+                && result.mMarkerCount == EclipseLintClient.getMarkers(source).length) {
+            return result.mFatal;
+        }
+
+        return null;
+    }
+
+    /**
+     * Returns the outcome of the previous project wide run over the given resources,
+     * provided it had the same fingerprint and its markers have not changed since.
+     *
+     * @param resources the analyzed resources
+     * @param fingerprint the fingerprint of the new run
+     * @return the fatal flag of the previous run if it is still valid, or null
+     */
+    @Nullable
+    static Boolean getRunFatal(@NonNull List<? extends IResource> resources,
+            @NonNull String fingerprint) {
+        Result result;
+        synchronized (sRunResults) {
+            result = sRunResults.get(new ArrayList<IResource>(resources));
+        }
+        if (result != null && result.mFingerprint.equals(fingerprint)
+                && result.mMarkerCount == countMarkers(resources)) {
+            return result.mFatal;
+        }
+
+        return null;
+    }
+
+    /**
+     * Records the outcome of a single file run, once its markers have been created
+     *
+     * @param source the source file which was checked
+     * @param fingerprint the fingerprint of the run
+     * @param fatal whether fatal errors were reported
+     */
+    static void put(@NonNull IResource source, @NonNull String fingerprint, boolean fatal) {
+        Result result = new Result(fingerprint, EclipseLintClient.getMarkers(source).length,
+                fatal);
+        synchronized (sResults) {
+            sResults.put(source, result);
+        }
+    }
+
+    /**
+     * Records the outcome of a project wide run, once its markers have been created
+     *
+     * @param resources the analyzed resources
+     * @param fingerprint the fingerprint of the run
+     * @param fatal whether fatal errors were reported
+     */
+    static void putRun(@NonNull List<? extends IResource> resources,
+            @NonNull String fingerprint, boolean fatal) {
+        Result result = new Result(fingerprint, countMarkers(resources), fatal);
+        synchronized (sRunResults) {
+            sRunResults.put(new ArrayList<IResource>(resources), result);
+        }
+    }
+
+    /**
+     * Discards the results of the single file runs, such as when the markers are
+     * recreated by a project wide run
+     */
+    static void clear() {
+        synchronized (sResults) {
+            sResults.clear();
+        }
+    }
+
+    /** Adds the settings deciding what a run reports to the fingerprint */
+    private static void updateConfiguration(MessageDigest digest, EclipseLintClient client,
+            IssueRegistry registry, EnumSet<Scope> scope) {
+        update(digest, scope.toString());
+        update(digest, Boolean.toString(client.isFatalOnly()));
+        GlobalLintConfiguration configuration = GlobalLintConfiguration.get();
+        for (Issue issue : registry.getIssues()) {
+            update(digest, issue.getId());
+            update(digest, configuration.getSeverity(issue).name());
+        }
+    }
+
+    private static boolean isModified(IFile file) {
+        IStructuredModel model = StructuredModelManager.getModelManager()
+                .getExistingModelForRead(file);
+        if (model == null) {
+            return false;
+        }
+        try {
+            return model.isDirty();
+        } finally {
+            model.releaseFromRead();
+        }
+    }
+
+    private static int countMarkers(List<? extends IResource> resources) {
+        int count = 0;
+        for (IResource resource : resources) {
+            count += EclipseLintClient.getMarkers(resource).length;
+        }
+        return count;
+    }
+
+    private static void update(MessageDigest digest, String s) {
+        digest.update(s.getBytes(StandardCharsets.UTF_8));
+        digest.update((byte) 0);
+    }
+
+    private static String toHex(MessageDigest digest) {
+        StringBuilder sb = new StringBuilder();
+        for (byte b : digest.digest()) {
+            sb.append(String.format("%02x", b)); //$NON-NLS-1$
+        }
+        return sb.toString();
+    }
+
+    private static String stamp(File file) {
+        return file.lastModified() + ":" + file.length(); //$NON-NLS-1$
+    }
+}
@@ -0,0 +1,361 @@
+/*
+ * Copyright (C) 2018 The Android Open Source Project
+ *
+ * Licensed under the Eclipse Public License, Version 1.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.eclipse.org/org/documents/epl-v10.php
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.eclipse.andmore.internal.project;
+
+import com.android.annotations.NonNull;
+import com.android.annotations.Nullable;
+
+import org.eclipse.andmore.AndmoreAndroidPlugin;
+import org.eclipse.core.resources.IMarker;
+import org.eclipse.core.resources.IResource;
+import org.eclipse.core.resources.IWorkspace;
+import org.eclipse.core.resources.IWorkspaceRunnable;
+import org.eclipse.core.resources.ResourcesPlugin;
+import org.eclipse.core.runtime.CoreException;
+import org.eclipse.core.runtime.IProgressMonitor;
+import org.eclipse.core.runtime.NullProgressMonitor;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Marker changes gathered during a build step or a lint run, and applied at once.
+ * <p/>
+ * The batch is told which existing markers are being replaced, and collects the markers
+ * to add in their place. {@link #apply()} then compares both in a single workspace
+ * operation: added markers identical to an existing one keep that marker, and only the
+ * other markers are deleted or created. Reporting the same problems again therefore
+ * leaves the markers, and the views showing them, untouched. Markers outside the replaced
+ * scopes are kept, and an added marker identical to one of them reuses it too.
+ * <p/>
+ * A batch is meant to be filled and applied by one thread.
+ */
+public final class MarkerBatch {
+    /** A marker to add, created when the batch is applied */
+    public static final class PendingMarker {
+        private final IResource mResource;
+        private final String mType;
+        private final int mLineNumber;
+        private final Map<String, Object> mAttributes = new LinkedHashMap<String, Object>();
+        private IMarker mMarker;
+
+        private PendingMarker(IResource resource, String type, int lineNumber) {
+            mResource = resource;
+            mType = type;
+            mLineNumber = lineNumber;
+        }
+
+        /**
+         * Sets an attribute of the marker
+         *
+         * @param name the attribute name
+         * @param value the value, an Integer, Boolean or String
+         * @return this, for chaining
+         */
+        @NonNull
+        public PendingMarker setAttribute(@NonNull String name, @NonNull Object value) {
+            mAttributes.put(name, value);
+            return this;
+        }
+
+        /**
+         * Returns the marker, once the batch has been applied
+         *
+         * @return the created or kept marker, or null if the batch was not applied or the
+         *         marker could not be created
+         */
+        @Nullable
+        public IMarker getMarker() {
+            return mMarker;
+        }
+
+        /**
+         * Returns the attributes the marker should have. Like
+         * {@link BaseProjectHelper#markResource}, text markers without a line go on line 1.
+         */
+        private Map<String, Object> getAttributes(boolean isText) {
+            int lineNumber = mLineNumber;
+            if (lineNumber < 1 && isText) {
+                lineNumber = 1;
+            }
+            if (lineNumber < 1) {
+                return mAttributes;
+            }
+            Map<String, Object> attributes = new LinkedHashMap<String, Object>(mAttributes);
+            attributes.put(IMarker.LINE_NUMBER, lineNumber);
+            return attributes;
+        }
+    }
+
+    /** A set of existing markers being replaced by the batch */
+    private static final class Scope {
+        final IResource mResource;
+        final String mType;
+        final boolean mIncludeSubtypes;
+        final int mDepth;
+
+        Scope(IResource resource, String type, boolean includeSubtypes, int depth) {
+            mResource = resource;
+            mType = type;
+            mIncludeSubtypes = includeSubtypes;
+            mDepth = depth;
+        }
+    }
+
+    private final List<Scope> mScopes = new ArrayList<Scope>();
+    private final List<IMarker> mReplaced = new ArrayList<IMarker>();
+    private final List<PendingMarker> mAdded = new ArrayList<PendingMarker>();
+    /** The added markers, by resource, type, line, message, severity and range */
+    private final Map<List<Object>, PendingMarker> mAddedByKey =
+            new HashMap<List<Object>, PendingMarker>();
+
+    /**
+     * Marks the existing markers of a resource as replaced by this batch. They are deleted
+     * when the batch is applied, unless an identical marker was added.
+     *
+     * @param resource the resource whose markers are replaced
+     * @param markerType the type of the replaced markers, or null for all markers
+     * @param includeSubtypes whether markers of sub types are replaced too
+     * @param depth how far below the resource markers are replaced, one of the
+     *            {@link IResource} DEPTH constants
+     */
+    public void replaceMarkers(@NonNull IResource resource, @Nullable String markerType,
+            boolean includeSubtypes, int depth) {
+        mScopes.add(new Scope(resource, markerType, includeSubtypes, depth));
+    }
+
+    /**
+     * Marks an existing marker as replaced by this batch
+     *
+     * @param marker the replaced marker
+     */
+    public void replaceMarker(@NonNull IMarker marker) {
+        mReplaced.add(marker);
+    }
+
+    /**
+     * Adds a marker on a specific line, for a specific range of text. The arguments are
+     * the ones of {@link BaseProjectHelper#markResource}.
+     *
+     * @param resource the resource to be marked
+     * @param markerType the type of the marker
+     * @param message the message associated with the mark
+     * @param lineNumber the line number where to put the mark, or -1 for none
+     * @param startOffset the beginning offset of the marker, or -1 for no range
+     * @param endOffset the ending offset of the marker
+     * @param severity the severity of the marker
+     * @return the pending marker, to set additional attributes. If an identical marker
+     *         was already added to the batch, that marker is returned.
+     */
+    @NonNull
+    public PendingMarker addMarker(@NonNull IResource resource, @NonNull String markerType,
+            @NonNull String message, int lineNumber, int startOffset, int endOffset,
+            int severity) {
+        List<Object> key = Arrays.<Object>asList(resource, markerType, lineNumber, message,
+                severity, startOffset, startOffset != -1 ? endOffset : -1);
+        PendingMarker marker = mAddedByKey.get(key);
+        if (marker != null) {
+            return marker;
+        }
+
+        marker = new PendingMarker(resource, markerType, lineNumber);
+        marker.setAttribute(IMarker.MESSAGE, message);
+        marker.setAttribute(IMarker.SEVERITY, severity);
+        if (startOffset != -1) {
+            marker.setAttribute(IMarker.CHAR_START, startOffset);
+            marker.setAttribute(IMarker.CHAR_END, endOffset);
+        }
+        mAdded.add(marker);
+        mAddedByKey.put(key, marker);
+        return marker;
+    }
+
+    /**
+     * Applies the gathered changes in a single workspace operation, and empties the batch
+     *
+     * @return the number of markers which were actually created or deleted
+     */
+    public int apply() {
+        if (mScopes.isEmpty() && mReplaced.isEmpty() && mAdded.isEmpty()) {
+            return 0;
+        }
+
+        final int[] changes = new int[1];
+        IWorkspaceRunnable runnable = new IWorkspaceRunnable() {
+            @Override
+            public void run(IProgressMonitor monitor) throws CoreException {
+                changes[0] = applyChanges();
+            }
+        };
+        try {
+            ResourcesPlugin.getWorkspace().run(runnable, null /*rule*/,
+                    IWorkspace.AVOID_UPDATE, null /*monitor*/);
+        } catch (CoreException e) {
+            AndmoreAndroidPlugin.log(e, "Failed to update markers"); //$NON-NLS-1$
+        } finally {
+            mScopes.clear();
+            mReplaced.clear();
+            mAdded.clear();
+            mAddedByKey.clear();
+        }
+
+        return changes[0];
+    }
+
+    private int applyChanges() throws CoreException {
+        // Index the replaced markers by resource, type and attributes
+        Set<IMarker> replaced = new LinkedHashSet<IMarker>(mReplaced);
+        for (Scope scope : mScopes) {
+            if (scope.mResource.exists()) {
+                replaced.addAll(Arrays.asList(scope.mResource.findMarkers(scope.mType,
+                        scope.mIncludeSubtypes, scope.mDepth)));
+            }
+        }
+        Map<String, Boolean> textTypes = new HashMap<String, Boolean>();
+        Map<List<Object>, List<IMarker>> existing = new HashMap<List<Object>, List<IMarker>>();
+        for (IMarker marker : replaced) {
+            if (!marker.exists()) {
+                continue;
+            }
+            String type = marker.getType();
+            if (!textTypes.containsKey(type)) {
+                textTypes.put(type, marker.isSubtypeOf(IMarker.TEXT));
+            }
+            List<Object> key = getKey(marker.getResource(), type, marker.getAttributes());
+            List<IMarker> markers = existing.get(key);
+            if (markers == null) {
+                markers = new ArrayList<IMarker>(1);
+                existing.put(key, markers);
+            }
+            markers.add(marker);
+        }
+
+        int changes = 0;
+        Set<IResource> marked = new LinkedHashSet<IResource>();
+        Map<List<Object>, Map<List<Object>, List<IMarker>>> kept =
+                new HashMap<List<Object>, Map<List<Object>, List<IMarker>>>();
+        for (PendingMarker pending : mAdded) {
+            if (!pending.mResource.isAccessible()) {
+                continue;
+            }
+
+            // Reuse an identical marker. If there is no marker of that type to compare
+            // with, there is no need to know whether it is a text marker yet.
+            Boolean isText = textTypes.get(pending.mType);
+            if (isText != null) {
+                List<IMarker> markers = existing.get(getKey(pending.mResource, pending.mType,
+                        pending.getAttributes(isText)));
+                if (markers != null && !markers.isEmpty()) {
+                    pending.mMarker = markers.remove(markers.size() - 1);
+                    continue;
+                }
+            }
+
+            // Then an identical marker which is not replaced, so as not to duplicate it
+            Map<List<Object>, List<IMarker>> keptMarkers = getKeptMarkers(kept, replaced,
+                    textTypes, pending);
+            if (!keptMarkers.isEmpty()) {
+                isText = textTypes.get(pending.mType);
+                List<IMarker> markers = keptMarkers.get(getKey(pending.mResource,
+                        pending.mType, pending.getAttributes(isText)));
+                if (markers != null && !markers.isEmpty()) {
+                    pending.mMarker = markers.remove(markers.size() - 1);
+                    continue;
+                }
+            }
+
+            IMarker marker = pending.mResource.createMarker(pending.mType);
+            if (isText == null) {
+                isText = marker.isSubtypeOf(IMarker.TEXT);
+                textTypes.put(pending.mType, isText);
+            }
+            Map<String, Object> attributes = pending.getAttributes(isText);
+            marker.setAttributes(attributes.keySet().toArray(new String[attributes.size()]),
+                    attributes.values().toArray());
+            pending.mMarker = marker;
+            AndmoreAndroidPlugin.getDefault().notifyMarkerListeners(marker);
+            marked.add(pending.mResource);
+            changes++;
+        }
+
+        List<IMarker> deleted = new ArrayList<IMarker>();
+        for (List<IMarker> markers : existing.values()) {
+            deleted.addAll(markers);
+        }
+        if (!deleted.isEmpty()) {
+            ResourcesPlugin.getWorkspace().deleteMarkers(
+                    deleted.toArray(new IMarker[deleted.size()]));
+            changes += deleted.size();
+        }
+
+        // See BaseProjectHelper#markResource: on Windows, markers only show on refreshed
+        // resources
+        for (IResource resource : marked) {
+            resource.refreshLocal(IResource.DEPTH_ZERO, new NullProgressMonitor());
+        }
+
+        return changes;
+    }
+
+    /**
+     * Returns the markers of the resource and type of a pending marker which are not
+     * replaced by the batch, by key. Their text type is recorded in <var>textTypes</var>.
+     */
+    private static Map<List<Object>, List<IMarker>> getKeptMarkers(
+            Map<List<Object>, Map<List<Object>, List<IMarker>>> kept, Set<IMarker> replaced,
+            Map<String, Boolean> textTypes, PendingMarker pending) throws CoreException {
+        List<Object> scope = Arrays.<Object>asList(pending.mResource, pending.mType);
+        Map<List<Object>, List<IMarker>> markers = kept.get(scope);
+        if (markers != null) {
+            return markers;
+        }
+
+        markers = new HashMap<List<Object>, List<IMarker>>();
+        for (IMarker marker : pending.mResource.findMarkers(pending.mType,
+                false /*includeSubtypes*/, IResource.DEPTH_ZERO)) {
+            if (replaced.contains(marker)) {
+                continue;
+            }
+            if (!textTypes.containsKey(pending.mType)) {
+                textTypes.put(pending.mType, marker.isSubtypeOf(IMarker.TEXT));
+            }
+            List<Object> key = getKey(pending.mResource, pending.mType, marker.getAttributes());
+            List<IMarker> list = markers.get(key);
+            if (list == null) {
+                list = new ArrayList<IMarker>(1);
+                markers.put(key, list);
+            }
+            list.add(marker);
+        }
+        kept.put(scope, markers);
+        return markers;
+    }
+
+    private static List<Object> getKey(IResource resource, String type,
+            @Nullable Map<String, Object> attributes) {
+        if (attributes == null) {
+            attributes = Collections.emptyMap();
+        }
+        return Arrays.<Object>asList(resource, type, attributes);
+    }
+}
@@ -0,0 +1,480 @@
+/*
+ * Copyright (C) 2018 The Android Open Source Project
+ *
+ * Licensed under the Eclipse Public License, Version 1.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.eclipse.org/org/documents/epl-v10.php
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.eclipse.andmore.internal.resources.manager;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+import org.eclipse.andmore.AndmoreAndroidPlugin;
+import org.eclipse.andmore.internal.project.BaseProjectHelper;
+import org.eclipse.andmore.internal.resources.manager.GlobalProjectMonitor.IFileListener;
+import org.eclipse.core.resources.IFile;
+import org.eclipse.core.resources.IMarkerDelta;
+import org.eclipse.core.resources.IProject;
+import org.eclipse.core.resources.IResource;
+import org.eclipse.core.resources.IResourceDelta;
+import org.eclipse.core.resources.IResourceProxy;
+import org.eclipse.core.resources.IResourceProxyVisitor;
+import org.eclipse.core.resources.IWorkspaceRoot;
+import org.eclipse.core.resources.ResourcesPlugin;
+import org.eclipse.core.runtime.CoreException;
+import org.eclipse.core.runtime.IPath;
+
+import com.android.SdkConstants;
+import com.android.annotations.NonNull;
+import com.android.annotations.Nullable;
+
+/**
+ * Index of the Android symbols found in the Java sources of the projects, used to answer
+ * the lookups of the editors without running a Java search.
+ * <p/>
+ * The sources of a project are scanned the first time the project is queried. The index
+ * is then kept up to date from the resource deltas of the Java files, and files whose
+ * modification stamp changed are scanned again on the next query. A scan is a single
+ * textual pass over the file: it records the references to layouts, along with the type
+ * making them, and the methods which can be used as onClick handlers.
+ */
+public final class AndroidSymbolIndex implements IFileListener {
+
+    private final static AndroidSymbolIndex sThis = new AndroidSymbolIndex();
+
+    /** Package declaration */
+    private final static Pattern PACKAGE_PATTERN =
+            Pattern.compile("\\bpackage\\s+([\\w.]+)\\s*;"); //$NON-NLS-1$
+    /** Type declaration, up to the opening brace of its body */
+    private final static Pattern TYPE_PATTERN =
+            Pattern.compile("\\b(?:class|interface|enum)\\s+(\\w+)([^{;]*)\\{"); //$NON-NLS-1$
+    /** Innermost type parameters or arguments */
+    private final static Pattern TYPE_PARAMETERS_PATTERN =
+            Pattern.compile("<[^<>]*>"); //$NON-NLS-1$
+    /** Super class in a type declaration header */
+    private final static Pattern EXTENDS_PATTERN =
+            Pattern.compile("\\bextends\\s+([\\w.]+)"); //$NON-NLS-1$
+    /** Reference to a layout field of an R class */
+    private final static Pattern LAYOUT_PATTERN = Pattern.compile(
+            "\\b((?:\\w+\\s*\\.\\s*)*)R\\s*\\.\\s*layout\\s*\\.\\s*(\\w+)"); //$NON-NLS-1$
+    /** Call to setContentView, ending right before its argument */
+    private final static Pattern CONTENT_VIEW_PATTERN =
+            Pattern.compile("\\bsetContentView\\s*\\(\\s*$"); //$NON-NLS-1$
+    /** Declaration of a public method with a single View parameter */
+    private final static Pattern CLICK_HANDLER_PATTERN = Pattern.compile(
+            "\\bpublic\\s+(?:final\\s+)?void\\s+(\\w+)\\s*\\(\\s*(?:final\\s+)?" //$NON-NLS-1$
+            + "(?:android\\s*\\.\\s*view\\s*\\.\\s*)?View\\s+\\w+\\s*\\)"); //$NON-NLS-1$
+
+    /** A reference to a layout from a type */
+    private static final class LayoutReference {
+        final String mLayout;
+        final String mType;
+        /** Whether the type extends an activity class */
+        final boolean mActivity;
+        /** Whether the layout is passed to setContentView */
+        final boolean mContentView;
+
+        LayoutReference(String layout, String type, boolean activity, boolean contentView) {
+            mLayout = layout;
+            mType = type;
+            mActivity = activity;
+            mContentView = contentView;
+        }
+    }
+
+    /** Symbols of a Java file, valid as long as the file is not modified */
+    private static final class JavaSymbols {
+        final long mStamp;
+        final List<LayoutReference> mLayouts;
+        final Set<String> mClickHandlers;
+
+        JavaSymbols(long stamp, List<LayoutReference> layouts, Set<String> clickHandlers) {
+            mStamp = stamp;
+            mLayouts = layouts;
+            mClickHandlers = clickHandlers;
+        }
+    }
+
+    /** A type declaration and the range of its body */
+    private static final class TypeRange {
+        final String mName;
+        final boolean mActivity;
+        final int mStart;
+        final int mEnd;
+
+        TypeRange(String name, boolean activity, int start, int end) {
+            mName = name;
+            mActivity = activity;
+            mStart = start;
+            mEnd = end;
+        }
+    }
+
+    /** The index of a project */
+    private static final class ProjectIndex {
+        /** The source folders, as workspace paths */
+        final List<IPath> mSourceFolders;
+        /** The symbols of each Java file, or null when the file has yet to be scanned */
+        final Map<IFile, JavaSymbols> mFiles = new HashMap<IFile, JavaSymbols>();
+
+        ProjectIndex(List<IPath> sourceFolders) {
+            mSourceFolders = sourceFolders;
+        }
+
+        boolean isSource(IFile file) {
+            IPath path = file.getFullPath();
+            for (IPath folder : mSourceFolders) {
+                if (folder.isPrefixOf(path)) {
+                    return true;
+                }
+            }
+            return false;
+        }
+    }
+
+    private final Map<IProject, ProjectIndex> mIndexes = new HashMap<IProject, ProjectIndex>();
+
+    /**
+     * Sets up the monitoring of the Java files.
+     * @param monitor The main Resource Monitor.
+     */
+    public static void setupMonitor(GlobalProjectMonitor monitor) {
+        monitor.addFileListener(sThis, IResourceDelta.ADDED | IResourceDelta.REMOVED);
+    }
+
+    /**
+     * Returns the singleton instance.
+     */
+    public static AndroidSymbolIndex getInstance() {
+        return sThis;
+    }
+
+    /**
+     * private constructor to prevent construction.
+     */
+    private AndroidSymbolIndex() {
+    }
+
+    /**
+     * Returns the types referencing the given layout, as fully qualified class names.
+     * Activities passing the layout to setContentView come first, then other activities,
+     * then the remaining types.
+     *
+     * @param project the project whose sources are searched
+     * @param layoutName the name of the layout
+     * @return the types, possibly empty but never null
+     */
+    @NonNull
+    public synchronized List<String> findLayoutReferences(@NonNull IProject project,
+            @NonNull String layoutName) {
+        ProjectIndex index = getIndex(project);
+        if (index == null) {
+            return Collections.emptyList();
+        }
+
+        Set<String> contentViews = new LinkedHashSet<String>();
+        Set<String> activities = new LinkedHashSet<String>();
+        Set<String> others = new LinkedHashSet<String>();
+        for (JavaSymbols symbols : index.mFiles.values()) {
+            for (LayoutReference reference : symbols.mLayouts) {
+                if (!reference.mLayout.equals(layoutName)) {
+                    continue;
+                }
+                if (reference.mActivity && reference.mContentView) {
+                    contentViews.add(reference.mType);
+                } else if (reference.mActivity || reference.mContentView) {
+                    activities.add(reference.mType);
+                } else {
+                    others.add(reference.mType);
+                }
+            }
+        }
+
+        List<String> result = new ArrayList<String>(contentViews);
+        for (String type : activities) {
+            if (!contentViews.contains(type)) {
+                result.add(type);
+            }
+        }
+        for (String type : others) {
+            if (!contentViews.contains(type) && !activities.contains(type)) {
+                result.add(type);
+            }
+        }
+        return result;
+    }
+
+    /**
+     * Returns the Java files declaring a public method with the given name and a single
+     * View parameter, which can therefore handle the onClick attribute of a view.
+     *
+     * @param project the project whose sources are searched
+     * @param method the name of the method
+     * @return the files, possibly empty but never null
+     */
+    @NonNull
+    public synchronized List<IFile> findClickHandlers(@NonNull IProject project,
+            @NonNull String method) {
+        ProjectIndex index = getIndex(project);
+        if (index == null) {
+            return Collections.emptyList();
+        }
+
+        List<IFile> result = new ArrayList<IFile>();
+        for (Map.Entry<IFile, JavaSymbols> entry : index.mFiles.entrySet()) {
+            if (entry.getValue().mClickHandlers.contains(method)) {
+                result.add(entry.getKey());
+            }
+        }
+        return result;
+    }
+
+    /**
+     * Returns the up to date index of a project, creating it if needed.
+     */
+    @Nullable
+    private ProjectIndex getIndex(IProject project) {
+        if (!project.isOpen()) {
+            mIndexes.remove(project);
+            return null;
+        }
+
+        ProjectIndex index = mIndexes.get(project);
+        if (index == null) {
+            index = createIndex(project);
+            if (index == null) {
+                return null;
+            }
+            mIndexes.put(project, index);
+        }
+
+        Iterator<Map.Entry<IFile, JavaSymbols>> iterator = index.mFiles.entrySet().iterator();
+        while (iterator.hasNext()) {
+            Map.Entry<IFile, JavaSymbols> entry = iterator.next();
+            IFile file = entry.getKey();
+            long stamp = file.getModificationStamp();
+            if (stamp == IResource.NULL_STAMP) {
+                iterator.remove();
+            } else if (entry.getValue() == null || entry.getValue().mStamp != stamp) {
+                entry.setValue(scan(file, stamp));
+            }
+        }
+
+        return index;
+    }
+
+    @Nullable
+    private static ProjectIndex createIndex(IProject project) {
+        List<IPath> sourceFolders = BaseProjectHelper.getSourceClasspaths(project);
+        final ProjectIndex index = new ProjectIndex(sourceFolders);
+        IWorkspaceRoot root = ResourcesPlugin.getWorkspace().getRoot();
+        for (IPath path : sourceFolders) {
+            IResource folder = root.findMember(path);
+            if (folder == null) {
+                continue;
+            }
+            try {
+                folder.accept(new IResourceProxyVisitor() {
+                    @Override
+                    public boolean visit(IResourceProxy proxy) throws CoreException {
+                        if (proxy.getType() == IResource.FILE) {
+                            if (proxy.getName().endsWith(SdkConstants.DOT_JAVA)) {
+                                index.mFiles.put((IFile) proxy.requestResource(), null);
+                            }
+                            return false;
+                        }
+                        return true;
+                    }
+                }, IResource.NONE);
+            } catch (CoreException e) {
+                AndmoreAndroidPlugin.log(e, null);
+                return null;
+            }
+        }
+
+        return index;
+    }
+
+    @NonNull
+    private static JavaSymbols scan(@NonNull IFile file, long stamp) {
+        String contents = AndmoreAndroidPlugin.readFile(file);
+        if (contents == null) {
+            return new JavaSymbols(stamp, Collections.<LayoutReference>emptyList(),
+                    Collections.<String>emptySet());
+        }
+
+        String code = stripCommentsAndLiterals(contents);
+
+        String pkg = null;
+        Matcher matcher = PACKAGE_PATTERN.matcher(code);
+        if (matcher.find()) {
+            pkg = matcher.group(1);
+        }
+
+        // Find the types and their bodies; nested types are named like the compiler does
+        List<TypeRange> types = new ArrayList<TypeRange>();
+        matcher = TYPE_PATTERN.matcher(code);
+        while (matcher.find()) {
+            int start = matcher.end() - 1;
+            TypeRange outer = findType(types, start);
+            String name = outer != null ? outer.mName + '$' + matcher.group(1)
+                    : pkg != null ? pkg + '.' + matcher.group(1) : matcher.group(1);
+            Matcher superMatcher = EXTENDS_PATTERN.matcher(stripTypeParameters(matcher.group(2)));
+            boolean activity = superMatcher.find()
+                    && superMatcher.group(1).endsWith("Activity"); //$NON-NLS-1$
+            types.add(new TypeRange(name, activity, start, findClosingBrace(code, start)));
+        }
+
+        List<LayoutReference> layouts = new ArrayList<LayoutReference>();
+        matcher = LAYOUT_PATTERN.matcher(code);
+        while (matcher.find()) {
+            String qualifier = matcher.group(1).replaceAll("\\s", ""); //$NON-NLS-1$ //$NON-NLS-2$
+            if (qualifier.equals("android.")) { //$NON-NLS-1$
+                // A framework layout
+                continue;
+            }
+            TypeRange type = findType(types, matcher.start());
+            if (type == null) {
+                continue;
+            }
+            String before = code.substring(Math.max(0, matcher.start() - 64), matcher.start());
+            boolean contentView = CONTENT_VIEW_PATTERN.matcher(before).find();
+            layouts.add(new LayoutReference(matcher.group(2), type.mName, type.mActivity,
+                    contentView));
+        }
+
+        Set<String> clickHandlers = new HashSet<String>();
+        matcher = CLICK_HANDLER_PATTERN.matcher(code);
+        while (matcher.find()) {
+            clickHandlers.add(matcher.group(1));
+        }
+
+        return new JavaSymbols(stamp, layouts, clickHandlers);
+    }
+
+    /** Returns the innermost type whose body contains the given offset */
+    @Nullable
+    private static TypeRange findType(List<TypeRange> types, int offset) {
+        TypeRange result = null;
+        for (TypeRange type : types) {
+            if (type.mStart < offset && offset < type.mEnd) {
+                result = type;
+            }
+        }
+        return result;
+    }
+
+    /** Removes the type parameters of a type declaration header, which may extend types */
+    private static String stripTypeParameters(String header) {
+        String stripped = header;
+        do {
+            header = stripped;
+            stripped = TYPE_PARAMETERS_PATTERN.matcher(header).replaceAll(""); //$NON-NLS-1$
+        } while (!stripped.equals(header));
+        return stripped;
+    }
+
+    private static int findClosingBrace(String code, int open) {
+        int depth = 0;
+        for (int i = open, n = code.length(); i < n; i++) {
+            char c = code.charAt(i);
+            if (c == '{') {
+                depth++;
+            } else if (c == '}') {
+                depth--;
+                if (depth == 0) {
+                    return i;
+                }
+            }
+        }
+        return code.length();
+    }
+
+    /**
+     * Replaces the comments and the string and character literals of Java code with
+     * spaces, keeping the offsets of the remaining code.
+     */
+    @NonNull
+    private static String stripCommentsAndLiterals(@NonNull String code) {
+        char[] chars = code.toCharArray();
+        int n = chars.length;
+        int i = 0;
+        while (i < n) {
+            char c = chars[i];
+            if (c == '/' && i + 1 < n && chars[i + 1] == '/') {
+                while (i < n && chars[i] != '\n') {
+                    chars[i++] = ' ';
+                }
+            } else if (c == '/' && i + 1 < n && chars[i + 1] == '*') {
+                chars[i++] = ' ';
+                chars[i++] = ' ';
+                while (i < n && !(chars[i] == '*' && i + 1 < n && chars[i + 1] == '/')) {
+                    if (chars[i] != '\n') {
+                        chars[i] = ' ';
+                    }
+                    i++;
+                }
+                if (i < n) {
+                    chars[i++] = ' ';
+                    chars[i++] = ' ';
+                }
+            } else if (c == '"' || c == '\'') {
+                i++;
+                while (i < n && chars[i] != c && chars[i] != '\n') {
+                    if (chars[i] == '\\' && i + 1 < n) {
+                        chars[i++] = ' ';
+                    }
+                    chars[i++] = ' ';
+                }
+                i++;
+            } else {
+                i++;
+            }
+        }
+        return new String(chars);
+    }
+
+    /**
+     * Updates the indexes when a Java file is added or removed. Modified files are scanned
+     * again on the next query, when their modification stamp no longer matches.
+     *
+     * @see IFileListener#fileChanged
+     */
+    @Override
+    public synchronized void fileChanged(@NonNull IFile file,
+            @NonNull IMarkerDelta[] markerDeltas, int kind, @Nullable String extension,
+            int flags, boolean isAndroidProject) {
+        if (!SdkConstants.EXT_JAVA.equals(extension)) {
+            return;
+        }
+        ProjectIndex index = mIndexes.get(file.getProject());
+        if (index == null) {
+            return;
+        }
+
+        if (kind == IResourceDelta.REMOVED) {
+            index.mFiles.remove(file);
+        } else if (index.isSource(file)) {
+            index.mFiles.put(file, null);
+        }
+    }
+}
@@ -29,6 +29,7 @@ import com.android.utils.Pair;
 import org.eclipse.andmore.AndmoreAndroidPlugin;
 import org.eclipse.andmore.common.resources.platform.AttributeInfo;
 import org.eclipse.andmore.internal.build.AaptParser;
+import org.eclipse.andmore.internal.project.MarkerBatch;
 import org.eclipse.andmore.internal.sdk.AndroidTargetData;
 import org.eclipse.andmore.internal.sdk.Sdk;
 import org.eclipse.core.resources.IFolder;
@@ -149,16 +150,16 @@ public class IdeScanningContext extends ScanningContext {
             return;
         }
 
-        // First clear out old/previous markers
+        // Replace the old/previous markers with the new errors. Errors which are still
+        // there keep their markers.
+        MarkerBatch batch = new MarkerBatch();
+        // aapt errors without a location, such as an invalid configuration filter, are
+        // on the project
+        batch.replaceMarkers(mProject, MARKER_AAPT_COMPILE, true /*includeSubtypes*/,
+                DEPTH_ZERO);
         for (IResource resource : mScannedResources) {
-            try {
-                if (resource.exists()) {
-                    int depth = resource instanceof IFolder ? DEPTH_ONE : DEPTH_ZERO;
-                    resource.deleteMarkers(MARKER_AAPT_COMPILE, true, depth);
-                }
-            } catch (CoreException ce) {
-                // Pass
-            }
+            int depth = resource instanceof IFolder ? DEPTH_ONE : DEPTH_ZERO;
+            batch.replaceMarkers(resource, MARKER_AAPT_COMPILE, true /*includeSubtypes*/, depth);
         }
 
         // Add new errors
@@ -167,8 +168,9 @@ public class IdeScanningContext extends ScanningContext {
             for (Pair<IResource, String> pair : mErrors) {
                 errors.add(pair.getSecond());
             }
-            AaptParser.parseOutput(errors, mProject);
+            AaptParser.parseOutput(errors, mProject, batch);
         }
+        batch.apply();
     }
 
     @Override
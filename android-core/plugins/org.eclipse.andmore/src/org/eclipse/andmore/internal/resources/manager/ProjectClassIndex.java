@@ -0,0 +1,337 @@
+/*
+ * Copyright (C) 2018 The Android Open Source Project
+ *
+ * Licensed under the Eclipse Public License, Version 1.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.eclipse.org/org/documents/epl-v10.php
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.eclipse.andmore.internal.resources.manager;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+import org.eclipse.andmore.internal.resources.manager.GlobalProjectMonitor.IFileListener;
+import org.eclipse.andmore.internal.resources.manager.GlobalProjectMonitor.IProjectListener;
+import org.eclipse.core.resources.IFile;
+import org.eclipse.core.resources.IMarkerDelta;
+import org.eclipse.core.resources.IProject;
+import org.eclipse.core.resources.IResourceDelta;
+import org.eclipse.core.runtime.IPath;
+
+import com.android.SdkConstants;
+import com.android.annotations.NonNull;
+import com.android.annotations.Nullable;
+import com.google.common.hash.HashCode;
+import com.google.common.hash.Hashing;
+import com.google.common.io.Files;
+
+/**
+ * Index of the classes compiled in the output folders of the projects, used by the
+ * {@link ProjectClassLoader}s.
+ * <p/>
+ * The classes of an output folder are listed once, the first time a class is looked up
+ * in it, and the index is then kept up to date from the resource deltas of the class
+ * files. The index of a project is dropped when the project is closed or deleted. The
+ * content of the class files is cached as well, along with the classes which had to be
+ * rewritten to an older class file version, keyed on the hash of the original class file.
+ */
+public final class ProjectClassIndex implements IFileListener {
+
+    private final static ProjectClassIndex sThis = new ProjectClassIndex();
+
+    /** Ceiling of the size of the cached class files */
+    private final static long MAX_CACHED_BYTES = 16 * 1024 * 1024;
+
+    /** Maximum number of cached rewritten classes */
+    private final static int MAX_REWRITTEN_CLASSES = 256;
+
+    /** The classes of an output folder, by their binary name, such as a.b.C$D */
+    private static final class FolderIndex {
+        final IProject mProject;
+        final Map<String, File> mClasses = new HashMap<String, File>();
+
+        FolderIndex(IProject project) {
+            mProject = project;
+        }
+    }
+
+    private final Map<File, FolderIndex> mIndexes = new HashMap<File, FolderIndex>();
+
+    /** Content of a class file, valid as long as the file is not modified */
+    private static final class ClassData {
+        final long mLastModified;
+        final long mLength;
+        final byte[] mData;
+
+        ClassData(long lastModified, long length, byte[] data) {
+            mLastModified = lastModified;
+            mLength = length;
+            mData = data;
+        }
+    }
+
+    private final LinkedHashMap<File, ClassData> mClassData =
+            new LinkedHashMap<File, ClassData>(64, 0.75f, true /* accessOrder */);
+    private long mClassDataBytes;
+
+    private final Map<HashCode, byte[]> mRewritten =
+            new LinkedHashMap<HashCode, byte[]>(16, 0.75f, true /* accessOrder */) {
+        private static final long serialVersionUID = 1L;
+
+        @Override
+        protected boolean removeEldestEntry(Map.Entry<HashCode, byte[]> eldest) {
+            return size() > MAX_REWRITTEN_CLASSES;
+        }
+    };
+
+    /**
+     * Sets up the monitoring of the class files.
+     * @param monitor The main Resource Monitor.
+     */
+    public static void setupMonitor(GlobalProjectMonitor monitor) {
+        monitor.addFileListener(sThis, IResourceDelta.ADDED | IResourceDelta.REMOVED);
+        monitor.addProjectListener(sThis.mProjectListener);
+    }
+
+    /**
+     * Returns the singleton instance.
+     */
+    public static ProjectClassIndex getInstance() {
+        return sThis;
+    }
+
+    /**
+     * private constructor to prevent construction.
+     */
+    private ProjectClassIndex() {
+    }
+
+    /**
+     * Returns the class file of a class compiled in an output folder.
+     * @param project the project the output folder belongs to
+     * @param outFolder the output folder
+     * @param name the name of the class. Inner classes can be separated from their
+     * outer class with either '$' or '.'.
+     * @return the class file, or null if the class is not in the output folder.
+     */
+    @Nullable
+    public synchronized File findClassFile(@NonNull IProject project, @NonNull File outFolder,
+            @NonNull String name) {
+        FolderIndex index = mIndexes.get(outFolder);
+        if (index == null) {
+            index = new FolderIndex(project);
+            addClasses(outFolder, "", index.mClasses); //$NON-NLS-1$
+            mIndexes.put(outFolder, index);
+        }
+
+        // Look up the binary name first, then the names with the last '.' separators
+        // taken as inner class separators.
+        String key = name;
+        while (true) {
+            File classFile = index.mClasses.get(key);
+            if (classFile != null) {
+                return classFile;
+            }
+            int dot = key.lastIndexOf('.');
+            if (dot == -1) {
+                return null;
+            }
+            key = key.substring(0, dot) + '$' + key.substring(dot + 1);
+        }
+    }
+
+    private static void addClasses(File folder, String prefix, Map<String, File> index) {
+        File[] files = folder.listFiles();
+        if (files == null) {
+            return;
+        }
+
+        for (File file : files) {
+            String name = file.getName();
+            if (file.isDirectory()) {
+                addClasses(file, prefix + name + '.', index);
+            } else if (name.endsWith(SdkConstants.DOT_CLASS)) {
+                index.put(getKey(prefix, name), file);
+            }
+        }
+    }
+
+    private static String getKey(String prefix, String fileName) {
+        return prefix + fileName.substring(0, fileName.length() - SdkConstants.DOT_CLASS.length());
+    }
+
+    /**
+     * Returns the content of a class file.
+     * @param classFile the class file
+     * @return the content of the file. It must not be modified.
+     * @throws IOException if the file could not be read
+     */
+    @NonNull
+    public byte[] getClassData(@NonNull File classFile) throws IOException {
+        long lastModified = classFile.lastModified();
+        long length = classFile.length();
+        synchronized (this) {
+            ClassData data = mClassData.get(classFile);
+            if (data != null && data.mLastModified == lastModified && data.mLength == length) {
+                return data.mData;
+            }
+        }
+
+        byte[] bytes = Files.toByteArray(classFile);
+
+        synchronized (this) {
+            ClassData previous = mClassData.put(classFile,
+                    new ClassData(lastModified, length, bytes));
+            if (previous != null) {
+                mClassDataBytes -= previous.mData.length;
+            }
+            mClassDataBytes += bytes.length;
+
+            Iterator<ClassData> iterator = mClassData.values().iterator();
+            while (mClassDataBytes > MAX_CACHED_BYTES && iterator.hasNext()) {
+                mClassDataBytes -= iterator.next().mData.length;
+                iterator.remove();
+            }
+        }
+
+        return bytes;
+    }
+
+    /**
+     * Returns the rewritten version of a class, if it had to be rewritten before.
+     * @param classData the content of the class file
+     * @return the rewritten class, or null.
+     */
+    @Nullable
+    public synchronized byte[] getRewrittenClass(@NonNull byte[] classData) {
+        if (mRewritten.isEmpty()) {
+            return null;
+        }
+        return mRewritten.get(Hashing.sha1().hashBytes(classData));
+    }
+
+    /**
+     * Records the rewritten version of a class.
+     * @param classData the content of the class file
+     * @param rewritten the rewritten class
+     */
+    public synchronized void putRewrittenClass(@NonNull byte[] classData,
+            @NonNull byte[] rewritten) {
+        mRewritten.put(Hashing.sha1().hashBytes(classData), rewritten);
+    }
+
+    /**
+     * Updates the indexes when a class file is added or removed.
+     *
+     * @see IFileListener#fileChanged
+     */
+    @Override
+    public void fileChanged(@NonNull IFile file, @NonNull IMarkerDelta[] markerDeltas,
+            int kind, @Nullable String extension, int flags, boolean isAndroidProject) {
+        if (!SdkConstants.EXT_CLASS.equals(extension)) {
+            return;
+        }
+        IPath location = file.getLocation();
+        if (location == null) {
+            return;
+        }
+
+        File classFile = location.toFile();
+        synchronized (this) {
+            ClassData data = mClassData.remove(classFile);
+            if (data != null) {
+                mClassDataBytes -= data.mData.length;
+            }
+
+            String path = classFile.getPath();
+            for (Map.Entry<File, FolderIndex> entry : mIndexes.entrySet()) {
+                String folder = entry.getKey().getPath() + File.separatorChar;
+                if (!path.startsWith(folder)) {
+                    continue;
+                }
+                String relative = path.substring(folder.length());
+                int index = relative.lastIndexOf(File.separatorChar);
+                String prefix = index == -1 ? ""  //$NON-NLS-1$
+                        : relative.substring(0, index + 1).replace(File.separatorChar, '.');
+                String key = getKey(prefix, relative.substring(index + 1));
+                if (kind == IResourceDelta.REMOVED) {
+                    entry.getValue().mClasses.remove(key);
+                } else {
+                    entry.getValue().mClasses.put(key, classFile);
+                }
+            }
+        }
+    }
+
+    /**
+     * Drops the indexes of the output folders of a project, and the cached content of
+     * their class files.
+     */
+    private synchronized void removeProject(IProject project) {
+        Iterator<Map.Entry<File, FolderIndex>> indexes = mIndexes.entrySet().iterator();
+        while (indexes.hasNext()) {
+            Map.Entry<File, FolderIndex> entry = indexes.next();
+            if (!entry.getValue().mProject.equals(project)) {
+                continue;
+            }
+            indexes.remove();
+
+            String folder = entry.getKey().getPath() + File.separatorChar;
+            Iterator<Map.Entry<File, ClassData>> data = mClassData.entrySet().iterator();
+            while (data.hasNext()) {
+                Map.Entry<File, ClassData> classData = data.next();
+                if (classData.getKey().getPath().startsWith(folder)) {
+                    mClassDataBytes -= classData.getValue().mData.length;
+                    data.remove();
+                }
+            }
+        }
+    }
+
+    /**
+     * Implementation of the {@link IProjectListener} as an internal class so that the methods
+     * do not appear in the public API of {@link ProjectClassIndex}.
+     */
+    private final IProjectListener mProjectListener = new IProjectListener() {
+        @Override
+        public void projectClosed(IProject project) {
+            removeProject(project);
+        }
+
+        @Override
+        public void projectDeleted(IProject project) {
+            removeProject(project);
+        }
+
+        @Override
+        public void projectOpened(IProject project) {
+        }
+
+        @Override
+        public void projectOpenedWithWorkspace(IProject project) {
+        }
+
+        @Override
+        public void allProjectsOpenedWithWorkspace() {
+            // nothing to do.
+        }
+
+        @Override
+        public void projectRenamed(IProject project, IPath from) {
+            // renamed project get a delete/open event too, so this can be ignored.
+        }
+    };
+}
@@ -17,9 +17,6 @@
 package org.eclipse.andmore.internal.resources.manager;
 
 import java.io.File;
-import java.io.FileInputStream;
-import java.io.FileNotFoundException;
-import java.io.IOException;
 import java.net.MalformedURLException;
 import java.net.URL;
 import java.net.URLClassLoader;
@@ -127,41 +124,37 @@ public final class ProjectClassLoader extends ClassLoader {
 
             File outFolder = new File(outRes.getLocation().toOSString());
 
-            // get the class name segments
-            String[] segments = name.split("\\."); //$NON-NLS-1$
-
             // try to load the class from the bin folder of the project.
-            File classFile = getFile(outFolder, segments, 0);
+            ProjectClassIndex classIndex = ProjectClassIndex.getInstance();
+            File classFile = classIndex.findClassFile(project.getProject(), outFolder, name);
             if (classFile == null) {
                 return null;
             }
 
             // load the content of the file and create the class.
-            FileInputStream fis = new FileInputStream(classFile);
-            byte[] data = new byte[(int)classFile.length()];
-            int read = 0;
-            try {
-                read = fis.read(data);
-            } catch (IOException e) {
-                data = null;
+            byte[] data = classIndex.getClassData(classFile);
+
+            // this class was rewritten before: don't try the original version again.
+            byte[] rewritten = classIndex.getRewrittenClass(data);
+            if (rewritten != null) {
+                return defineClass(null, rewritten, 0, rewritten.length);
             }
-            fis.close();
 
-            if (data != null) {
+            try {
+                Class<?> clazz = defineClass(null, data, 0, data.length);
+                if (clazz != null) {
+                    return clazz;
+                }
+            } catch (UnsupportedClassVersionError e) {
+                // Attempt to reload on lower version
+                int maxVersion = 50; // JDK 1.6
                 try {
-                    Class<?> clazz = defineClass(null, data, 0, read);
-                    if (clazz != null) {
-                        return clazz;
-                    }
-                } catch (UnsupportedClassVersionError e) {
-                    // Attempt to reload on lower version
-                    int maxVersion = 50; // JDK 1.6
-                    try {
-                        byte[] rewritten = rewriteClass(data, maxVersion, 0);
-                        return defineClass(null, rewritten, 0, rewritten.length);
-                    } catch (UnsupportedClassVersionError e2) {
-                        throw e; // throw *original* exception, not attempt to rewrite
-                    }
+                    rewritten = rewriteClass(data, maxVersion, 0);
+                    Class<?> clazz = defineClass(null, rewritten, 0, rewritten.length);
+                    classIndex.putRewrittenClass(data, rewritten);
+                    return clazz;
+                } catch (UnsupportedClassVersionError e2) {
+                    throw e; // throw *original* exception, not attempt to rewrite
                 }
             }
         } catch (Exception e) {
@@ -195,71 +188,6 @@ public final class ProjectClassLoader extends ClassLoader {
         return classWriter.toByteArray();
     }
 
-    /**
-     * Returns the File matching the a certain path from a root {@link File}.
-     * <p/>The methods checks that the file ends in .class even though the last segment
-     * does not.
-     * @param parent the root of the file.
-     * @param segments the segments containing the path of the file
-     * @param index the offset at which to start looking into segments.
-     * @throws FileNotFoundException
-     */
-    private File getFile(File parent, String[] segments, int index)
-            throws FileNotFoundException {
-        // reached the end with no match?
-        if (index == segments.length) {
-            throw new FileNotFoundException();
-        }
-
-        String toMatch = segments[index];
-        File[] files = parent.listFiles();
-
-        // we're at the last segments. we look for a matching <file>.class
-        if (index == segments.length - 1) {
-            toMatch = toMatch + ".class";
-
-            if (files != null) {
-                for (File file : files) {
-                    if (file.isFile() && file.getName().equals(toMatch)) {
-                        return file;
-                    }
-                }
-            }
-
-            // no match? abort.
-            throw new FileNotFoundException();
-        }
-
-        String innerClassName = null;
-
-        if (files != null) {
-            for (File file : files) {
-                if (file.isDirectory()) {
-                    if (toMatch.equals(file.getName())) {
-                        return getFile(file, segments, index+1);
-                    }
-                } else if (file.getName().startsWith(toMatch)) {
-                    if (innerClassName == null) {
-                        StringBuilder sb = new StringBuilder(segments[index]);
-                        for (int i = index + 1 ; i < segments.length ; i++) {
-                            sb.append('$');
-                            sb.append(segments[i]);
-                        }
-                        sb.append(".class");
-
-                        innerClassName = sb.toString();
-                    }
-
-                    if (file.getName().equals(innerClassName)) {
-                        return file;
-                    }
-                }
-            }
-        }
-
-        return null;
-    }
-
     /**
      * Loads a class from the 3rd party jar present in the project
      *
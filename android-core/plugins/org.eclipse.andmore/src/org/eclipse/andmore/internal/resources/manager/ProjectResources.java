@@ -16,10 +16,13 @@
 
 package org.eclipse.andmore.internal.resources.manager;
 
+import java.util.ArrayList;
+import java.util.Collections;
 import java.util.EnumMap;
 import java.util.List;
 import java.util.Map;
 import java.util.Map.Entry;
+import java.util.concurrent.atomic.AtomicLong;
 
 import org.eclipse.andmore.io.IFolderWrapper;
 import org.eclipse.andworx.model.CodeSource;
@@ -32,6 +35,7 @@ import org.eclipse.core.resources.IProject;
 import com.android.annotations.NonNull;
 import com.android.ide.common.rendering.api.ResourceValue;
 import com.android.ide.common.resources.IntArrayWrapper;
+import com.android.ide.common.resources.ResourceFile;
 import com.android.ide.common.resources.ResourceFolder;
 import com.android.ide.common.resources.ResourceItem;
 import com.android.ide.common.resources.ResourceRepository;
@@ -57,6 +61,17 @@ public class ProjectResources extends ResourceRepository {
     // etc...). Using FF as the type allows for 255 resource types before we get a collision
     // which should be fine.
     private final static int DYNAMIC_ID_SEED_START = 0x7fff0000;
+    /** Maximum number of configurations whose resolved resources are kept per project */
+    private final static int MAX_CONFIGURED_RESOURCES = 8;
+    /** Maximum number of best matching file lookups kept per project */
+    private final static int MAX_MATCHING_FILES = 256;
+
+    /**
+     * Generation of the resources of all projects, incremented whenever a resource delta
+     * is applied to any repository. Since configured resources include the library
+     * resources, a change in a library must also invalidate the projects using it.
+     */
+    private final static AtomicLong sGeneration = new AtomicLong();
 
     /** Map of (name, id) for resources of type {@link ResourceType#ID} coming from R.java */
     private Map<ResourceType, Map<String, Integer>> mResourceValueMap;
@@ -68,6 +83,58 @@ public class ProjectResources extends ResourceRepository {
     private final DynamicIdMap mDynamicIdMap = new DynamicIdMap(DYNAMIC_ID_SEED_START);
     private final IntArrayWrapper mWrapper = new IntArrayWrapper(null);
     private final IProject mProject;
+    /** Resolved resources, by configuration */
+    private final ResolutionCache<FolderConfiguration, ConfiguredResources> mConfiguredResources =
+            new ResolutionCache<FolderConfiguration, ConfiguredResources>(MAX_CONFIGURED_RESOURCES);
+    /** Best matching files, by name, type and configuration */
+    private final ResolutionCache<MatchKey, ResourceFile> mMatchingFiles =
+            new ResolutionCache<MatchKey, ResourceFile>(MAX_MATCHING_FILES);
+
+    /**
+     * Resources resolved for one configuration, along with the library projects they were
+     * resolved from. The maps are shared and never modified.
+     */
+    private static final class ConfiguredResources {
+        final List<IProject> mLibraries;
+        final Map<ResourceType, ResourceValueMap> mResources;
+
+        ConfiguredResources(List<IProject> libraries,
+                Map<ResourceType, ResourceValueMap> resources) {
+            mLibraries = libraries;
+            mResources = resources;
+        }
+    }
+
+    /** Key of a best matching file lookup */
+    private static final class MatchKey {
+        private final String mName;
+        private final ResourceType mType;
+        private final FolderConfiguration mConfig;
+
+        MatchKey(String name, ResourceType type, FolderConfiguration config) {
+            mName = name;
+            mType = type;
+            mConfig = config;
+        }
+
+        @Override
+        public int hashCode() {
+            return (mName.hashCode() * 31 + mType.hashCode()) * 31 + mConfig.hashCode();
+        }
+
+        @Override
+        public boolean equals(Object obj) {
+            if (this == obj) {
+                return true;
+            }
+            if (!(obj instanceof MatchKey)) {
+                return false;
+            }
+            MatchKey other = (MatchKey) obj;
+            return mType == other.mType && mName.equals(other.mName)
+                    && mConfig.equals(other.mConfig);
+        }
+    }
 
     public static ProjectResources create(ProjectState projectState) {
     	IProject project = projectState.getProject();
@@ -92,6 +159,10 @@ public class ProjectResources extends ResourceRepository {
     /**
      * Returns the resources values matching a given {@link FolderConfiguration}, this will
      * include library dependency.
+     * <p/>
+     * The result is cached, least recently used first out, until the next resource change
+     * in this project or any other, so it is shared between callers and <b>must not be
+     * modified</b>.
      *
      * @param referenceConfig the configuration that each value must match.
      * @return a map with guaranteed to contain an entry for each {@link ResourceType}
@@ -100,51 +171,120 @@ public class ProjectResources extends ResourceRepository {
     @NonNull
     public Map<ResourceType, ResourceValueMap> getConfiguredResources(
             @NonNull FolderConfiguration referenceConfig) {
+        // Read the generation first: if a delta comes in while resolving, the result is
+        // cached under the old generation and is resolved again on the next call
+        long generation = sGeneration.get();
         ensureInitialized();
 
+        List<IProject> libraries = Collections.emptyList();
+        if (mProject != null) {
+            ProjectState state = AndworxFactory.instance().getProjectState(mProject);
+            if (state != null) {
+                libraries = new ArrayList<IProject>(state.getFullLibraryProjects());
+            }
+        }
+
+        ResolutionCache.Entry<ConfiguredResources> cached =
+                mConfiguredResources.get(referenceConfig, generation);
+        if (cached != null && cached.mValue.mLibraries.equals(libraries)) {
+            return cached.mValue.mResources;
+        }
+
+        Map<ResourceType, ResourceValueMap> resultMap =
+                Collections.unmodifiableMap(resolveConfiguredResources(referenceConfig, libraries));
+
+        mConfiguredResources.put(copyOf(referenceConfig), generation,
+                new ConfiguredResources(libraries, resultMap));
+
+        return resultMap;
+    }
+
+    /**
+     * Returns the best matching {@link ResourceFile} for a given name, type and configuration.
+     * <p/>
+     * The result is cached until the next resource change, as the layout editor asks for
+     * the same file against every device, state and locale it knows about.
+     *
+     * @param name the name of the resource file, including its extension
+     * @param type the type of the resource
+     * @param config the configuration to match
+     * @return the matching file, or null if no match was found
+     */
+    @Override
+    public ResourceFile getMatchingFile(@NonNull String name, @NonNull ResourceType type,
+            @NonNull FolderConfiguration config) {
+        long generation = sGeneration.get();
+        MatchKey key = new MatchKey(name, type, config);
+        ResolutionCache.Entry<ResourceFile> cached = mMatchingFiles.get(key, generation);
+        if (cached != null) {
+            return cached.mValue;
+        }
+
+        ResourceFile match = super.getMatchingFile(name, type, config);
+        mMatchingFiles.put(new MatchKey(name, type, copyOf(config)), generation, match);
+        return match;
+    }
+
+    /**
+     * Copies a configuration to be used as a cache key, since callers may keep modifying
+     * the configuration they passed in.
+     */
+    @NonNull
+    private static FolderConfiguration copyOf(@NonNull FolderConfiguration config) {
+        FolderConfiguration copy = new FolderConfiguration();
+        copy.set(config);
+        return copy;
+    }
+
+    /**
+     * Resolves the resources matching a given {@link FolderConfiguration}, merging the
+     * resources of the libraries with the project's own.
+     *
+     * @param referenceConfig the configuration that each value must match.
+     * @param libraries the library projects, in aapt priority order
+     * @return a new map containing an entry for each {@link ResourceType}
+     */
+    @NonNull
+    private Map<ResourceType, ResourceValueMap> resolveConfiguredResources(
+            @NonNull FolderConfiguration referenceConfig, @NonNull List<IProject> libraries) {
         Map<ResourceType, ResourceValueMap> resultMap =
             new EnumMap<ResourceType, ResourceValueMap>(ResourceType.class);
 
         // if the project contains libraries, we need to add the libraries resources here
         // so that they are accessible to the layout rendering.
-        if (mProject != null) {
-            ProjectState state = AndworxFactory.instance().getProjectState(mProject);
-            if (state != null) {
-                List<IProject> libraries = state.getFullLibraryProjects();
-
-                ResourceManager resMgr = ResourceManager.getInstance();
-
-                // because aapt put all the library in their order in this array, the first
-                // one will have priority over the 2nd one. So it's better to loop in the inverse
-                // order and fill the map with resources that will be overwritten by higher
-                // priority resources
-                for (int i = libraries.size() - 1 ; i >= 0 ; i--) {
-                    IProject library = libraries.get(i);
-
-                    ProjectResources libRes = resMgr.getProjectResources(library);
-                    if (libRes != null) {
-                        // get the library resources, and only the library, not the dependencies
-                        // so call doGetConfiguredResources() directly.
-                        Map<ResourceType, ResourceValueMap> libMap =
-                                libRes.doGetConfiguredResources(referenceConfig);
-
-                        // we don't want to simply replace the whole map, but instead merge the
-                        // content of any sub-map
-                        for (Entry<ResourceType, ResourceValueMap> libEntry :
-                                libMap.entrySet()) {
-
-                            // get the map currently in the result map for this resource type
-                            Map<String, ResourceValue> tempMap = resultMap.get(libEntry.getKey());
-                            if (tempMap == null) {
-                                // since there's no current map for this type, just add the map
-                                // directly coming from the library resources
-                                resultMap.put(libEntry.getKey(), libEntry.getValue());
-                            } else {
-                                // already a map for this type. add the resources from the
-                                // library, this will override existing value, which is why
-                                // we loop in a specific library order.
-                                tempMap.putAll(libEntry.getValue());
-                            }
+        if (!libraries.isEmpty()) {
+            ResourceManager resMgr = ResourceManager.getInstance();
+
+            // because aapt put all the library in their order in this array, the first
+            // one will have priority over the 2nd one. So it's better to loop in the inverse
+            // order and fill the map with resources that will be overwritten by higher
+            // priority resources
+            for (int i = libraries.size() - 1 ; i >= 0 ; i--) {
+                IProject library = libraries.get(i);
+
+                ProjectResources libRes = resMgr.getProjectResources(library);
+                if (libRes != null) {
+                    // get the library resources, and only the library, not the dependencies
+                    // so call doGetConfiguredResources() directly.
+                    Map<ResourceType, ResourceValueMap> libMap =
+                            libRes.doGetConfiguredResources(referenceConfig);
+
+                    // we don't want to simply replace the whole map, but instead merge the
+                    // content of any sub-map
+                    for (Entry<ResourceType, ResourceValueMap> libEntry :
+                            libMap.entrySet()) {
+
+                        // get the map currently in the result map for this resource type
+                        Map<String, ResourceValue> tempMap = resultMap.get(libEntry.getKey());
+                        if (tempMap == null) {
+                            // since there's no current map for this type, just add the map
+                            // directly coming from the library resources
+                            resultMap.put(libEntry.getKey(), libEntry.getValue());
+                        } else {
+                            // already a map for this type. add the resources from the
+                            // library, this will override existing value, which is why
+                            // we loop in a specific library order.
+                            tempMap.putAll(libEntry.getValue());
                         }
                     }
                 }
@@ -249,6 +389,21 @@ public class ProjectResources extends ResourceRepository {
         }
     }
 
+    @Override
+    public void clear() {
+        super.clear();
+        invalidateConfiguredResources();
+    }
+
+    /**
+     * Marks the configured resources of all projects as stale. This must be called after
+     * a resource delta was applied to any {@link ProjectResources}, so that the next call to
+     * {@link #getConfiguredResources(FolderConfiguration)} resolves them again.
+     */
+    static void invalidateConfiguredResources() {
+        sGeneration.incrementAndGet();
+    }
+
     @Override
     @NonNull
     protected ResourceItem createResourceItem(@NonNull String name) {
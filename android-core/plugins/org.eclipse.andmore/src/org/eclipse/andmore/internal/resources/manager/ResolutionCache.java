@@ -0,0 +1,93 @@
+/*
+ * Copyright (C) 2018 The Android Open Source Project
+ *
+ * Licensed under the Eclipse Public License, Version 1.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.eclipse.org/org/documents/epl-v10.php
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.eclipse.andmore.internal.resources.manager;
+
+import com.android.annotations.NonNull;
+import com.android.annotations.Nullable;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * Least recently used cache of resource resolutions, such as the best matching file or the
+ * configured resources of a {@link ProjectResources} for a given configuration.
+ * <p/>
+ * Each entry records the generation of the resources it was resolved from, and is ignored
+ * once the resources changed. Resolutions are cheap to repeat, so the cache is only locked
+ * for the duration of a lookup or an insertion, never while resolving.
+ *
+ * @param <K> the key type, which must not be modified once inserted
+ * @param <V> the resolved value type
+ */
+final class ResolutionCache<K, V> {
+    /** A resolved value, which may be null, and the generation it was resolved for */
+    static final class Entry<V> {
+        final long mGeneration;
+        final V mValue;
+
+        Entry(long generation, @Nullable V value) {
+            mGeneration = generation;
+            mValue = value;
+        }
+    }
+
+    private final Map<K, Entry<V>> mEntries;
+
+    /**
+     * Creates a new cache
+     *
+     * @param maxSize the maximum number of entries, after which the least recently used
+     *            entry is evicted
+     */
+    ResolutionCache(final int maxSize) {
+        mEntries = new LinkedHashMap<K, Entry<V>>(16, 0.75f, true /*accessOrder*/) {
+            private static final long serialVersionUID = 1L;
+
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<K, Entry<V>> eldest) {
+                return size() > maxSize;
+            }
+        };
+    }
+
+    /**
+     * Returns the entry resolved for the given key and generation
+     *
+     * @param key the key to look up
+     * @param generation the current generation of the resources
+     * @return the entry, or null if the key was never resolved or the resources changed since
+     */
+    @Nullable
+    synchronized Entry<V> get(@NonNull K key, long generation) {
+        Entry<V> entry = mEntries.get(key);
+        if (entry != null && entry.mGeneration != generation) {
+            mEntries.remove(key);
+            return null;
+        }
+        return entry;
+    }
+
+    /**
+     * Records the value resolved for the given key
+     *
+     * @param key the key, which is kept by the cache
+     * @param generation the generation of the resources read before resolving the value
+     * @param value the resolved value, possibly null
+     */
+    synchronized void put(@NonNull K key, long generation, @Nullable V value) {
+        mEntries.put(key, new Entry<V>(generation, value));
+    }
+}
@@ -18,8 +18,8 @@ package org.eclipse.andmore.internal.resources.manager;
 
 import java.util.ArrayList;
 import java.util.Collection;
-import java.util.HashMap;
 import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
 
 import org.eclipse.andmore.AndmoreAndroidConstants;
 import org.eclipse.andmore.AndmoreAndroidPlugin;
@@ -80,10 +80,12 @@ public final class ResourceManager {
 
     /**
      * Map associating project resource with project objects.
-     * <p/><b>All accesses must be inside a synchronized(mMap) block</b>, and do as a little as
-     * possible and <b>not call out to other classes</b>.
+     * <p/>Reads do not lock, so that editors never wait on a resource delta being processed
+     * by a build. Creation goes through {@link Map#computeIfAbsent}, which only locks the
+     * entry of the project.
      */
-    private final Map<IProject, ProjectResources> mMap =  new HashMap<IProject, ProjectResources>();
+    private final Map<IProject, ProjectResources> mMap =
+            new ConcurrentHashMap<IProject, ProjectResources>();
     private final AndworxContext objectFactory;
     
     /**
@@ -120,6 +122,8 @@ public final class ResourceManager {
         monitor.addRawDeltaListener(sThis.mRawDeltaListener);
 
         CompiledResourcesMonitor.setupMonitor(monitor);
+        ProjectClassIndex.setupMonitor(monitor);
+        AndroidSymbolIndex.setupMonitor(monitor);
     }
 
     /**
@@ -155,16 +159,11 @@ public final class ResourceManager {
      * @return a ProjectResources object
      */
     public ProjectResources getProjectResources(IProject project) {
-        synchronized (mMap) {
-            ProjectResources resources = mMap.get(project);
-
-            if (resources == null) {
-                resources = ProjectResources.create(project);
-                mMap.put(project, resources);
-            }
-
-            return resources;
+        ProjectResources resources = mMap.get(project);
+        if (resources == null) {
+            resources = mMap.computeIfAbsent(project, ProjectResources::create);
         }
+        return resources;
     }
 
     /**
@@ -183,6 +182,9 @@ public final class ResourceManager {
         if (repo != null) {
             repo.postUpdateCleanUp();
         }
+
+        // Publish the update to the readers of configured resources
+        ProjectResources.invalidateConfiguredResources();
     }
 
     /**
@@ -248,16 +250,8 @@ public final class ResourceManager {
                 // the path will be project/res/<something>
                 if (path.segmentCount() == 3) {
                     if (isInResFolder(project, path)) {
-                        // get the project and its resource object.
-                        synchronized (mMap) {
-                            resources = mMap.get(project);
-
-                            // if it doesn't exist, we create it.
-                            if (resources == null) {
-                                resources = ProjectResources.create(project);
-                                mMap.put(project, resources);
-                            }
-                        }
+                        // get the project and its resource object, created if it doesn't exist.
+                        resources = getProjectResources(project);
 
                         ResourceFolder newFolder = resources.processFolder(
                                 new IFolderWrapper(folder));
@@ -269,9 +263,7 @@ public final class ResourceManager {
                 break;
             case IResourceDelta.CHANGED:
                 // only call the listeners.
-                synchronized (mMap) {
-                    resources = mMap.get(folder.getProject());
-                }
+                resources = mMap.get(folder.getProject());
                 if (resources != null) {
                     ResourceFolder resFolder = resources.getResourceFolder(folder);
                     if (resFolder != null) {
@@ -280,9 +272,7 @@ public final class ResourceManager {
                 }
                 break;
             case IResourceDelta.REMOVED:
-                synchronized (mMap) {
-                    resources = mMap.get(folder.getProject());
-                }
+                resources = mMap.get(folder.getProject());
                 if (resources != null) {
                     // lets get the folder type
                     ResourceFolderType type = ResourceFolderType.getFolderType(
@@ -326,10 +316,7 @@ public final class ResourceManager {
         }
 
         // get the project resources
-        ProjectResources resources;
-        synchronized (mMap) {
-            resources = mMap.get(project);
-        }
+        ProjectResources resources = mMap.get(project);
 
         if (resources == null) {
             return;
@@ -367,16 +354,14 @@ public final class ResourceManager {
     private final IProjectListener mProjectListener = new IProjectListener() {
         @Override
         public void projectClosed(IProject project) {
-            synchronized (mMap) {
-                mMap.remove(project);
-            }
+            mMap.remove(project);
+            ProjectResources.invalidateConfiguredResources();
         }
 
         @Override
         public void projectDeleted(IProject project) {
-            synchronized (mMap) {
-                mMap.remove(project);
-            }
+            mMap.remove(project);
+            ProjectResources.invalidateConfiguredResources();
         }
 
         @Override
@@ -406,14 +391,8 @@ public final class ResourceManager {
 	     */
 		@Override
 		public void onProjectOpened(ProjectState projectState) {
-            synchronized (mMap) {
-            	IProject project = projectState.getProject();
-                ProjectResources projectResources = mMap.get(project);
-                if (projectResources == null) {
-                    projectResources = ProjectResources.create(projectState);
-                    mMap.put(project, projectResources);
-                }
-            }
+            mMap.computeIfAbsent(projectState.getProject(),
+                    project -> ProjectResources.create(projectState));
         }
 	};
     
@@ -91,20 +91,18 @@ public final class AndroidTargetParser {
                     16);
             // parse the rest of the data.
 
-            AndroidJarLoader classLoader =
-                new AndroidJarLoader(mAndroidTarget.getPath(IAndroidTarget.ANDROID_JAR));
-
-            preload(classLoader, progress.newChild(40, SubMonitor.SUPPRESS_NONE));
-
-            if (progress.isCanceled()) {
-                return Status.CANCEL_STATUS;
+            // Use the data parsed in a previous session if the platform didn't change
+            AndroidTargetSnapshot snapshot = AndroidTargetSnapshot.read(mAndroidTarget);
+            if (snapshot == null) {
+                snapshot = parse(progress);
+                if (snapshot == null) {
+                    return Status.CANCEL_STATUS;
+                }
+                snapshot.write(mAndroidTarget);
+            } else {
+                progress.worked(45);
             }
 
-            // get the permissions
-            progress.subTask("Permissions");
-            String[] permissionValues = collectPermissions(classLoader);
-            progress.worked(1);
-
             if (progress.isCanceled()) {
                 return Status.CANCEL_STATUS;
             }
@@ -123,65 +121,21 @@ public final class AndroidTargetParser {
                 return Status.CANCEL_STATUS;
             }
 
-            // gather the attribute definition
-            progress.subTask("Attributes definitions");
-            AttrsXmlParser attrsXmlParser = new AttrsXmlParser(
-                    mAndroidTarget.getPath(IAndroidTarget.ATTRIBUTES),
-                    AndmoreAndroidPlugin.getDefault(),
-                    1000);
-            attrsXmlParser.preload();
-
-            progress.worked(1);
-
-            progress.subTask("Manifest definitions");
-            AttrsXmlParser attrsManifestXmlParser = new AttrsXmlParser(
-                    mAndroidTarget.getPath(IAndroidTarget.MANIFEST_ATTRIBUTES),
-                    attrsXmlParser,
-                    AndmoreAndroidPlugin.getDefault(), 1100);
-            attrsManifestXmlParser.preload();
-            progress.worked(1);
-
-            Collection<ViewClassInfo> mainList = new ArrayList<ViewClassInfo>();
-            Collection<ViewClassInfo> groupList = new ArrayList<ViewClassInfo>();
-
-            // collect the layout/widgets classes
-            progress.subTask("Widgets and layouts");
-            collectLayoutClasses(classLoader, attrsXmlParser, mainList, groupList,
-                    progress.newChild(1));
-
-            if (progress.isCanceled()) {
-                return Status.CANCEL_STATUS;
-            }
-
-            ViewClassInfo[] layoutViewsInfo = mainList.toArray(
-                    new ViewClassInfo[mainList.size()]);
-            ViewClassInfo[] layoutGroupsInfo = groupList.toArray(
-                    new ViewClassInfo[groupList.size()]);
-            mainList.clear();
-            groupList.clear();
-
-            // collect the preferences classes.
-            collectPreferenceClasses(classLoader, attrsXmlParser, mainList, groupList,
-                    progress.newChild(1));
-
-            if (progress.isCanceled()) {
-                return Status.CANCEL_STATUS;
-            }
-
-            ViewClassInfo[] preferencesInfo = mainList.toArray(new ViewClassInfo[mainList.size()]);
-            ViewClassInfo[] preferenceGroupsInfo = groupList.toArray(
-                    new ViewClassInfo[groupList.size()]);
+            String[] permissionValues = snapshot.permissions;
+            ViewClassInfo[] layoutViewsInfo = snapshot.layoutViews;
+            ViewClassInfo[] layoutGroupsInfo = snapshot.layoutGroups;
+            ViewClassInfo[] preferencesInfo = snapshot.preferences;
+            ViewClassInfo[] preferenceGroupsInfo = snapshot.preferenceGroups;
+            Map<String, DeclareStyleableInfo> map = snapshot.styleables;
 
-            Map<String, DeclareStyleableInfo> xmlMenuMap = collectMenuDefinitions(attrsXmlParser);
-            Map<String, DeclareStyleableInfo> xmlSearchableMap = collectSearchableDefinitions(
-                    attrsXmlParser);
-            Map<String, DeclareStyleableInfo> manifestMap = collectManifestDefinitions(
-                                                                            attrsManifestXmlParser);
-            Map<String, Map<String, Integer>> enumValueMap = attrsXmlParser.getEnumFlagValues();
+            Map<String, DeclareStyleableInfo> xmlMenuMap = collectMenuDefinitions(map);
+            Map<String, DeclareStyleableInfo> xmlSearchableMap = collectSearchableDefinitions(map);
+            Map<String, DeclareStyleableInfo> manifestMap = snapshot.manifestStyleables;
+            Map<String, Map<String, Integer>> enumValueMap = snapshot.enumFlagValues;
 
             Map<String, DeclareStyleableInfo> xmlAppWidgetMap = null;
             if (mAndroidTarget.getVersion().getApiLevel() >= 3) {
-                xmlAppWidgetMap = collectAppWidgetDefinitions(attrsXmlParser);
+                xmlAppWidgetMap = collectAppWidgetDefinitions(map);
             }
 
             if (progress.isCanceled()) {
@@ -200,7 +154,7 @@ public final class AndroidTargetParser {
 
             LayoutDescriptors layoutDescriptors = new LayoutDescriptors();
             layoutDescriptors.updateDescriptors(layoutViewsInfo, layoutGroupsInfo,
-                    attrsXmlParser.getDeclareStyleableList(), mAndroidTarget);
+                    map, mAndroidTarget);
             progress.worked(1);
 
             if (progress.isCanceled()) {
@@ -228,7 +182,6 @@ public final class AndroidTargetParser {
             }
 
             DrawableDescriptors drawableDescriptors = new DrawableDescriptors();
-            Map<String, DeclareStyleableInfo> map = attrsXmlParser.getDeclareStyleableList();
             drawableDescriptors.updateDescriptors(map);
             progress.worked(1);
 
@@ -290,7 +243,7 @@ public final class AndroidTargetParser {
                     frameworkResources,
                     layoutBridge);
 
-            targetData.setAttributeMap(attrsXmlParser.getAttributeMap());
+            targetData.setAttributeMap(snapshot.attributeMap);
             return Status.OK_STATUS;
         } catch (Exception e) {
             AndmoreAndroidPlugin.logAndPrintError(e, TAG, "SDK parser failed"); //$NON-NLS-1$
@@ -299,6 +252,92 @@ public final class AndroidTargetParser {
         }
     }
 
+    /**
+     * Loads the classes of the framework SDK jar and parses the attribute definitions
+     *
+     * @param progress the progress monitor of {@link #run}
+     * @return the parsed data, or null if the parsing was canceled
+     */
+    private AndroidTargetSnapshot parse(SubMonitor progress) {
+        AndroidJarLoader classLoader =
+            new AndroidJarLoader(mAndroidTarget.getPath(IAndroidTarget.ANDROID_JAR));
+
+        preload(classLoader, progress.newChild(40, SubMonitor.SUPPRESS_NONE));
+
+        if (progress.isCanceled()) {
+            return null;
+        }
+
+        // get the permissions
+        progress.subTask("Permissions");
+        String[] permissionValues = collectPermissions(classLoader);
+        progress.worked(1);
+
+        if (progress.isCanceled()) {
+            return null;
+        }
+
+        // gather the attribute definition
+        progress.subTask("Attributes definitions");
+        AttrsXmlParser attrsXmlParser = new AttrsXmlParser(
+                mAndroidTarget.getPath(IAndroidTarget.ATTRIBUTES),
+                AndmoreAndroidPlugin.getDefault(),
+                1000);
+        attrsXmlParser.preload();
+
+        progress.worked(1);
+
+        progress.subTask("Manifest definitions");
+        AttrsXmlParser attrsManifestXmlParser = new AttrsXmlParser(
+                mAndroidTarget.getPath(IAndroidTarget.MANIFEST_ATTRIBUTES),
+                attrsXmlParser,
+                AndmoreAndroidPlugin.getDefault(), 1100);
+        attrsManifestXmlParser.preload();
+        progress.worked(1);
+
+        Collection<ViewClassInfo> mainList = new ArrayList<ViewClassInfo>();
+        Collection<ViewClassInfo> groupList = new ArrayList<ViewClassInfo>();
+
+        // collect the layout/widgets classes
+        progress.subTask("Widgets and layouts");
+        collectLayoutClasses(classLoader, attrsXmlParser, mainList, groupList,
+                progress.newChild(1));
+
+        if (progress.isCanceled()) {
+            return null;
+        }
+
+        ViewClassInfo[] layoutViewsInfo = mainList.toArray(
+                new ViewClassInfo[mainList.size()]);
+        ViewClassInfo[] layoutGroupsInfo = groupList.toArray(
+                new ViewClassInfo[groupList.size()]);
+        mainList.clear();
+        groupList.clear();
+
+        // collect the preferences classes.
+        collectPreferenceClasses(classLoader, attrsXmlParser, mainList, groupList,
+                progress.newChild(1));
+
+        if (progress.isCanceled()) {
+            return null;
+        }
+
+        ViewClassInfo[] preferencesInfo = mainList.toArray(new ViewClassInfo[mainList.size()]);
+        ViewClassInfo[] preferenceGroupsInfo = groupList.toArray(
+                new ViewClassInfo[groupList.size()]);
+
+        return new AndroidTargetSnapshot(
+                permissionValues,
+                attrsXmlParser.getDeclareStyleableList(),
+                collectManifestDefinitions(attrsManifestXmlParser),
+                attrsXmlParser.getEnumFlagValues(),
+                attrsXmlParser.getAttributeMap(),
+                layoutViewsInfo,
+                layoutGroupsInfo,
+                preferencesInfo,
+                preferenceGroupsInfo);
+    }
+
     /**
      * Preloads all "interesting" classes from the framework SDK jar.
      * <p/>
@@ -513,11 +552,10 @@ public final class AndroidTargetParser {
     /**
      * Collects all menu definition information from the attrs.xml and returns it.
      *
-     * @param attrsXmlParser The parser of the attrs.xml file
+     * @param map The declare-styleable definitions of the attrs.xml file
      */
     private Map<String, DeclareStyleableInfo> collectMenuDefinitions(
-            AttrsXmlParser attrsXmlParser) {
-        Map<String, DeclareStyleableInfo> map = attrsXmlParser.getDeclareStyleableList();
+            Map<String, DeclareStyleableInfo> map) {
         Map<String, DeclareStyleableInfo> map2 = new HashMap<String, DeclareStyleableInfo>();
         for (String key : new String[] { "Menu",        //$NON-NLS-1$
                                          "MenuItem",        //$NON-NLS-1$
@@ -527,10 +565,10 @@ public final class AndroidTargetParser {
             } else {
                 AndmoreAndroidPlugin.log(IStatus.WARNING,
                         "Menu declare-styleable %1$s not found in file %2$s", //$NON-NLS-1$
-                        key, attrsXmlParser.getOsAttrsXmlPath());
+                        key, mAndroidTarget.getPath(IAndroidTarget.ATTRIBUTES));
                 AndmoreAndroidPlugin.printErrorToConsole("Android Framework Parser",
                         String.format("Menu declare-styleable %1$s not found in file %2$s", //$NON-NLS-1$
-                        key, attrsXmlParser.getOsAttrsXmlPath()));
+                        key, mAndroidTarget.getPath(IAndroidTarget.ATTRIBUTES)));
             }
         }
 
@@ -540,11 +578,10 @@ public final class AndroidTargetParser {
     /**
      * Collects all searchable definition information from the attrs.xml and returns it.
      *
-     * @param attrsXmlParser The parser of the attrs.xml file
+     * @param map The declare-styleable definitions of the attrs.xml file
      */
     private Map<String, DeclareStyleableInfo> collectSearchableDefinitions(
-            AttrsXmlParser attrsXmlParser) {
-        Map<String, DeclareStyleableInfo> map = attrsXmlParser.getDeclareStyleableList();
+            Map<String, DeclareStyleableInfo> map) {
         Map<String, DeclareStyleableInfo> map2 = new HashMap<String, DeclareStyleableInfo>();
         for (String key : new String[] { "Searchable",              //$NON-NLS-1$
                                          "SearchableActionKey" }) { //$NON-NLS-1$
@@ -553,10 +590,10 @@ public final class AndroidTargetParser {
             } else {
                 AndmoreAndroidPlugin.log(IStatus.WARNING,
                         "Searchable declare-styleable %1$s not found in file %2$s", //$NON-NLS-1$
-                        key, attrsXmlParser.getOsAttrsXmlPath());
+                        key, mAndroidTarget.getPath(IAndroidTarget.ATTRIBUTES));
                 AndmoreAndroidPlugin.printErrorToConsole("Android Framework Parser",
                         String.format("Searchable declare-styleable %1$s not found in file %2$s", //$NON-NLS-1$
-                        key, attrsXmlParser.getOsAttrsXmlPath()));
+                        key, mAndroidTarget.getPath(IAndroidTarget.ATTRIBUTES)));
             }
         }
 
@@ -566,11 +603,10 @@ public final class AndroidTargetParser {
     /**
      * Collects all appWidgetProviderInfo definition information from the attrs.xml and returns it.
      *
-     * @param attrsXmlParser The parser of the attrs.xml file
+     * @param map The declare-styleable definitions of the attrs.xml file
      */
     private Map<String, DeclareStyleableInfo> collectAppWidgetDefinitions(
-            AttrsXmlParser attrsXmlParser) {
-        Map<String, DeclareStyleableInfo> map = attrsXmlParser.getDeclareStyleableList();
+            Map<String, DeclareStyleableInfo> map) {
         Map<String, DeclareStyleableInfo> map2 = new HashMap<String, DeclareStyleableInfo>();
         for (String key : new String[] { "AppWidgetProviderInfo" }) {  //$NON-NLS-1$
             if (map.containsKey(key)) {
@@ -578,10 +614,10 @@ public final class AndroidTargetParser {
             } else {
                 AndmoreAndroidPlugin.log(IStatus.WARNING,
                         "AppWidget declare-styleable %1$s not found in file %2$s", //$NON-NLS-1$
-                        key, attrsXmlParser.getOsAttrsXmlPath());
+                        key, mAndroidTarget.getPath(IAndroidTarget.ATTRIBUTES));
                 AndmoreAndroidPlugin.printErrorToConsole("Android Framework Parser",
                         String.format("AppWidget declare-styleable %1$s not found in file %2$s", //$NON-NLS-1$
-                        key, attrsXmlParser.getOsAttrsXmlPath()));
+                        key, mAndroidTarget.getPath(IAndroidTarget.ATTRIBUTES)));
             }
         }
 
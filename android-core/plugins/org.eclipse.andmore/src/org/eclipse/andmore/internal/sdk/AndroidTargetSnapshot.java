@@ -0,0 +1,678 @@
+/*
+ * Copyright (C) 2018 The Android Open Source Project
+ *
+ * Licensed under the Eclipse Public License, Version 1.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.eclipse.org/org/documents/epl-v10.php
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.eclipse.andmore.internal.sdk;
+
+import com.android.annotations.NonNull;
+import com.android.annotations.Nullable;
+import com.android.ide.common.api.IAttributeInfo.Format;
+import com.android.sdklib.IAndroidTarget;
+
+import org.eclipse.andmore.AndmoreAndroidPlugin;
+import org.eclipse.andmore.common.resources.platform.AttributeInfo;
+import org.eclipse.andmore.common.resources.platform.DeclareStyleableInfo;
+import org.eclipse.andmore.common.resources.platform.ViewClassInfo;
+import org.eclipse.andmore.common.resources.platform.ViewClassInfo.LayoutParamsInfo;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.EnumSet;
+import java.util.IdentityHashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.zip.CRC32;
+
+/**
+ * The data that {@link AndroidTargetParser} collects from the class files and the
+ * attribute definitions of a platform, stored in a file of the plugin state location so
+ * that the next sessions don't have to load all the classes of {@code android.jar} and
+ * parse the {@code attrs.xml} files again.
+ * <p/>
+ * A snapshot is keyed by the hash string of the target, the version of the plugin and a
+ * fingerprint of the length and modification date of the platform files it was built
+ * from: updating the platform, or the plugin, makes the parser run again and replace the
+ * snapshot. The file is memory mapped when it is read, and the javadoc of the attributes,
+ * which makes up most of the data, is only decoded from the mapped file when asked for.
+ */
+final class AndroidTargetSnapshot {
+    private static final int MAGIC = 0x41544744; // "ATGD"
+
+    /** Version of the file format; bump it when the format or the parsed data changes */
+    private static final int VERSION = 1;
+
+    /** The platform files the parsed data comes from */
+    private static final int[] SOURCES = {
+        IAndroidTarget.ANDROID_JAR,
+        IAndroidTarget.ATTRIBUTES,
+        IAndroidTarget.MANIFEST_ATTRIBUTES,
+        IAndroidTarget.WIDGETS,
+    };
+
+    final String[] permissions;
+    final Map<String, DeclareStyleableInfo> styleables;
+    final Map<String, DeclareStyleableInfo> manifestStyleables;
+    final Map<String, Map<String, Integer>> enumFlagValues;
+    final Map<String, AttributeInfo> attributeMap;
+    final ViewClassInfo[] layoutViews;
+    final ViewClassInfo[] layoutGroups;
+    final ViewClassInfo[] preferences;
+    final ViewClassInfo[] preferenceGroups;
+
+    AndroidTargetSnapshot(
+            @NonNull String[] permissions,
+            @NonNull Map<String, DeclareStyleableInfo> styleables,
+            @NonNull Map<String, DeclareStyleableInfo> manifestStyleables,
+            @NonNull Map<String, Map<String, Integer>> enumFlagValues,
+            @NonNull Map<String, AttributeInfo> attributeMap,
+            @NonNull ViewClassInfo[] layoutViews,
+            @NonNull ViewClassInfo[] layoutGroups,
+            @NonNull ViewClassInfo[] preferences,
+            @NonNull ViewClassInfo[] preferenceGroups) {
+        this.permissions = permissions;
+        this.styleables = styleables;
+        this.manifestStyleables = manifestStyleables;
+        this.enumFlagValues = enumFlagValues;
+        this.attributeMap = attributeMap;
+        this.layoutViews = layoutViews;
+        this.layoutGroups = layoutGroups;
+        this.preferences = preferences;
+        this.preferenceGroups = preferenceGroups;
+    }
+
+    // ---- Reading ----
+
+    /**
+     * Reads the snapshot of a target
+     *
+     * @param target the target
+     * @return the snapshot, or null if there is no snapshot of the current platform files
+     */
+    @Nullable
+    static AndroidTargetSnapshot read(@NonNull IAndroidTarget target) {
+        File file = getFile(target);
+        String key = getKey(target);
+        if (file == null || key == null || !file.isFile()) {
+            return null;
+        }
+
+        try {
+            // Check the header before mapping the file: a mapping can't be unmapped
+            // explicitly, and a mapped file can't be replaced on some platforms
+            int headerLength = readHeader(file, key);
+            if (headerLength < 0) {
+                return null;
+            }
+
+            ByteBuffer buffer;
+            RandomAccessFile raf = new RandomAccessFile(file, "r"); //$NON-NLS-1$
+            try {
+                FileChannel channel = raf.getChannel();
+                buffer = channel.map(FileChannel.MapMode.READ_ONLY, headerLength,
+                        channel.size() - headerLength);
+            } finally {
+                raf.close();
+            }
+
+            // The javadoc section is kept mapped and decoded on demand
+            int docsLength = buffer.getInt();
+            ByteBuffer docs = buffer.slice();
+            docs.limit(docsLength);
+            buffer.position(buffer.position() + docsLength);
+
+            return new Reader(buffer, docs).read();
+        } catch (IOException e) {
+            AndmoreAndroidPlugin.log(e, "Can't read SDK data snapshot %1$s", file);
+        } catch (BufferUnderflowException e) {
+            // Truncated file: parse the platform again
+        } catch (IndexOutOfBoundsException e) {
+            // Corrupted file: parse the platform again
+        } catch (IllegalArgumentException e) {
+            // Corrupted file: parse the platform again
+        }
+
+        return null;
+    }
+
+    /**
+     * Reads the header of a snapshot file
+     *
+     * @param file the snapshot file
+     * @param key the key of the current platform files
+     * @return the length of the header, or -1 if the file is not a snapshot of the
+     *         current platform files in the current format
+     */
+    private static int readHeader(File file, String key) throws IOException {
+        byte[] expected = key.getBytes(StandardCharsets.UTF_8);
+        DataInputStream in = new DataInputStream(
+                new BufferedInputStream(new FileInputStream(file)));
+        try {
+            if (in.readInt() != MAGIC || in.readInt() != VERSION
+                    || in.readInt() != expected.length) {
+                return -1;
+            }
+            byte[] bytes = new byte[expected.length];
+            in.readFully(bytes);
+            if (!Arrays.equals(bytes, expected)) {
+                return -1;
+            }
+        } catch (EOFException e) {
+            return -1;
+        } finally {
+            in.close();
+        }
+
+        return 3 * 4 + expected.length;
+    }
+
+    private static final class Reader {
+        private final ByteBuffer mBuffer;
+        private final ByteBuffer mDocs;
+        private AttributeInfo[] mAttributes;
+
+        Reader(ByteBuffer buffer, ByteBuffer docs) {
+            mBuffer = buffer;
+            mDocs = docs;
+        }
+
+        AndroidTargetSnapshot read() {
+            ByteBuffer in = mBuffer;
+            String[] permissions = readStrings(in);
+
+            mAttributes = new AttributeInfo[in.getInt()];
+            Format[] formats = Format.values();
+            for (int i = 0; i < mAttributes.length; i++) {
+                String name = readString(in);
+                EnumSet<Format> formatSet = EnumSet.noneOf(Format.class);
+                for (long mask = in.getLong(); mask != 0; mask &= mask - 1) {
+                    formatSet.add(formats[Long.numberOfTrailingZeros(mask)]);
+                }
+                LazyAttributeInfo info = new LazyAttributeInfo(name, formatSet, mDocs,
+                        in.getInt());
+                info.setEnumValues(readStrings(in));
+                info.setFlagValues(readStrings(in));
+                info.setDeprecatedDoc(readString(in));
+                info.setDefinedBy(readString(in));
+                mAttributes[i] = info;
+            }
+
+            int count = in.getInt();
+            Map<String, AttributeInfo> attributeMap =
+                    new LinkedHashMap<String, AttributeInfo>(count * 2);
+            for (int i = 0; i < count; i++) {
+                attributeMap.put(readString(in), mAttributes[in.getInt()]);
+            }
+
+            Map<String, DeclareStyleableInfo> styleables = readStyleables();
+            Map<String, DeclareStyleableInfo> manifestStyleables = readStyleables();
+
+            count = in.getInt();
+            Map<String, Map<String, Integer>> enumFlagValues =
+                    new LinkedHashMap<String, Map<String, Integer>>(count * 2);
+            for (int i = 0; i < count; i++) {
+                String attribute = readString(in);
+                int valueCount = in.getInt();
+                Map<String, Integer> values = new LinkedHashMap<String, Integer>(valueCount * 2);
+                for (int j = 0; j < valueCount; j++) {
+                    values.put(readString(in), in.getInt());
+                }
+                enumFlagValues.put(attribute, values);
+            }
+
+            ViewClassInfo[] classes = readClasses();
+
+            return new AndroidTargetSnapshot(permissions, styleables, manifestStyleables,
+                    enumFlagValues, attributeMap,
+                    readClassRefs(classes), readClassRefs(classes),
+                    readClassRefs(classes), readClassRefs(classes));
+        }
+
+        private Map<String, DeclareStyleableInfo> readStyleables() {
+            ByteBuffer in = mBuffer;
+            int count = in.getInt();
+            Map<String, DeclareStyleableInfo> styleables =
+                    new LinkedHashMap<String, DeclareStyleableInfo>(count * 2);
+            for (int i = 0; i < count; i++) {
+                String key = readString(in);
+                DeclareStyleableInfo style = new DeclareStyleableInfo(readString(in),
+                        readAttributeRefs());
+                style.setJavaDoc(readString(in));
+                style.setParents(readStrings(in));
+                styleables.put(key, style);
+            }
+            return styleables;
+        }
+
+        private ViewClassInfo[] readClasses() {
+            ByteBuffer in = mBuffer;
+            ViewClassInfo[] classes = new ViewClassInfo[in.getInt()];
+            int[] superClasses = new int[classes.length];
+            int[] paramsSuperClasses = new int[classes.length];
+            String[] paramsNames = new String[classes.length];
+            AttributeInfo[][] paramsAttributes = new AttributeInfo[classes.length][];
+            for (int i = 0; i < classes.length; i++) {
+                ViewClassInfo info = new ViewClassInfo(in.get() != 0, readString(in),
+                        readString(in));
+                info.setJavaDoc(readString(in));
+                info.setAttributes(readAttributeRefs());
+                superClasses[i] = in.getInt();
+                paramsSuperClasses[i] = -1;
+                if (in.get() != 0) {
+                    paramsNames[i] = readString(in);
+                    paramsAttributes[i] = readAttributeRefs();
+                    paramsSuperClasses[i] = in.getInt();
+                }
+                classes[i] = info;
+            }
+
+            for (int i = 0; i < classes.length; i++) {
+                if (superClasses[i] >= 0) {
+                    classes[i].setSuperClass(classes[superClasses[i]]);
+                }
+                createLayoutParams(i, classes, paramsNames, paramsAttributes,
+                        paramsSuperClasses);
+            }
+
+            return classes;
+        }
+
+        /** Creates the layout params of a class, after the ones they extend */
+        private static LayoutParamsInfo createLayoutParams(int index, ViewClassInfo[] classes,
+                String[] names, AttributeInfo[][] attributes, int[] superClasses) {
+            if (names[index] == null) {
+                return classes[index].getLayoutData();
+            }
+
+            LayoutParamsInfo superClass = null;
+            int superIndex = superClasses[index];
+            if (superIndex >= 0 && superIndex != index) {
+                superClass = createLayoutParams(superIndex, classes, names, attributes,
+                        superClasses);
+            }
+            LayoutParamsInfo params = new LayoutParamsInfo(classes[index], names[index],
+                    superClass);
+            params.setAttributes(attributes[index]);
+            classes[index].setLayoutParams(params);
+            names[index] = null;
+            return params;
+        }
+
+        private ViewClassInfo[] readClassRefs(ViewClassInfo[] classes) {
+            ViewClassInfo[] refs = new ViewClassInfo[mBuffer.getInt()];
+            for (int i = 0; i < refs.length; i++) {
+                refs[i] = classes[mBuffer.getInt()];
+            }
+            return refs;
+        }
+
+        private AttributeInfo[] readAttributeRefs() {
+            AttributeInfo[] refs = new AttributeInfo[mBuffer.getInt()];
+            for (int i = 0; i < refs.length; i++) {
+                refs[i] = mAttributes[mBuffer.getInt()];
+            }
+            return refs;
+        }
+    }
+
+    /** An attribute whose javadoc is decoded from the mapped snapshot when first asked for */
+    private static final class LazyAttributeInfo extends AttributeInfo {
+        private ByteBuffer mDocs;
+        private final int mJavaDocOffset;
+
+        LazyAttributeInfo(String name, EnumSet<Format> formats, ByteBuffer docs,
+                int javaDocOffset) {
+            super(name, formats);
+            mDocs = javaDocOffset >= 0 ? docs : null;
+            mJavaDocOffset = javaDocOffset;
+        }
+
+        @Override
+        public String getJavaDoc() {
+            ByteBuffer docs = mDocs;
+            if (docs != null) {
+                docs = docs.duplicate();
+                docs.position(mJavaDocOffset);
+                setJavaDoc(readString(docs));
+            }
+            return super.getJavaDoc();
+        }
+
+        @Override
+        public void setJavaDoc(String javaDoc) {
+            mDocs = null;
+            super.setJavaDoc(javaDoc);
+        }
+    }
+
+    @Nullable
+    private static String readString(ByteBuffer in) {
+        int length = in.getInt();
+        if (length < 0) {
+            return null;
+        }
+        byte[] bytes = new byte[length];
+        in.get(bytes);
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+
+    @Nullable
+    private static String[] readStrings(ByteBuffer in) {
+        int count = in.getInt();
+        if (count < 0) {
+            return null;
+        }
+        String[] strings = new String[count];
+        for (int i = 0; i < count; i++) {
+            strings[i] = readString(in);
+        }
+        return strings;
+    }
+
+    // ---- Writing ----
+
+    /**
+     * Writes the snapshot of a target, replacing the existing one if any
+     *
+     * @param target the target the data was parsed from
+     */
+    void write(@NonNull IAndroidTarget target) {
+        File file = getFile(target);
+        String key = getKey(target);
+        if (file == null || key == null) {
+            return;
+        }
+
+        File temp = new File(file.getPath() + ".tmp"); //$NON-NLS-1$
+        try {
+            Writer writer = new Writer();
+            writer.write(this);
+
+            DataOutputStream out = new DataOutputStream(
+                    new BufferedOutputStream(new FileOutputStream(temp)));
+            try {
+                out.writeInt(MAGIC);
+                out.writeInt(VERSION);
+                writeString(out, key);
+                out.writeInt(writer.mDocs.size());
+                writer.mDocs.writeTo(out);
+                writer.mData.writeTo(out);
+            } finally {
+                out.close();
+            }
+
+            // A snapshot whose header matched but whose data turned out to be corrupted
+            // is still mapped, and can't be deleted on some platforms; the platform will
+            // then be parsed again in the next session
+            file.delete();
+            if (temp.renameTo(file)) {
+                return;
+            }
+        } catch (IOException e) {
+            AndmoreAndroidPlugin.log(e, "Failed writing SDK data snapshot %1$s", file);
+        }
+
+        temp.delete();
+    }
+
+    private static final class Writer {
+        private final ByteArrayOutputStream mData = new ByteArrayOutputStream(1 << 20);
+        private final ByteArrayOutputStream mDocs = new ByteArrayOutputStream(1 << 20);
+        private final DataOutputStream mDataOut = new DataOutputStream(mData);
+        private final DataOutputStream mDocsOut = new DataOutputStream(mDocs);
+        private final Map<AttributeInfo, Integer> mAttributes =
+                new IdentityHashMap<AttributeInfo, Integer>();
+        private final Map<ViewClassInfo, Integer> mClasses =
+                new IdentityHashMap<ViewClassInfo, Integer>();
+
+        void write(AndroidTargetSnapshot snapshot) throws IOException {
+            DataOutputStream out = mDataOut;
+            writeStrings(out, snapshot.permissions);
+
+            // Number all the attributes first, so that they are shared by reference
+            List<AttributeInfo> attributes = new ArrayList<AttributeInfo>();
+            collectAttributes(snapshot.attributeMap.values(), attributes);
+            for (DeclareStyleableInfo style : snapshot.styleables.values()) {
+                collectAttributes(style.getAttributes(), attributes);
+            }
+            for (DeclareStyleableInfo style : snapshot.manifestStyleables.values()) {
+                collectAttributes(style.getAttributes(), attributes);
+            }
+            List<ViewClassInfo> classes = new ArrayList<ViewClassInfo>();
+            for (ViewClassInfo[] infos : new ViewClassInfo[][] { snapshot.layoutViews,
+                    snapshot.layoutGroups, snapshot.preferences, snapshot.preferenceGroups }) {
+                for (ViewClassInfo info : infos) {
+                    collectClass(info, classes);
+                }
+            }
+            for (ViewClassInfo info : classes) {
+                collectAttributes(info.getAttributes(), attributes);
+                if (info.getLayoutData() != null) {
+                    collectAttributes(info.getLayoutData().getAttributes(), attributes);
+                }
+            }
+
+            out.writeInt(attributes.size());
+            for (AttributeInfo info : attributes) {
+                writeString(out, info.getName());
+                long mask = 0;
+                for (Format format : info.getFormats()) {
+                    mask |= 1L << format.ordinal();
+                }
+                out.writeLong(mask);
+                String javaDoc = info.getJavaDoc();
+                if (javaDoc != null) {
+                    out.writeInt(mDocs.size());
+                    writeString(mDocsOut, javaDoc);
+                } else {
+                    out.writeInt(-1);
+                }
+                writeStrings(out, info.getEnumValues());
+                writeStrings(out, info.getFlagValues());
+                writeString(out, info.getDeprecatedDoc());
+                writeString(out, info.getDefinedBy());
+            }
+
+            out.writeInt(snapshot.attributeMap.size());
+            for (Map.Entry<String, AttributeInfo> entry : snapshot.attributeMap.entrySet()) {
+                writeString(out, entry.getKey());
+                out.writeInt(mAttributes.get(entry.getValue()));
+            }
+
+            writeStyleables(snapshot.styleables);
+            writeStyleables(snapshot.manifestStyleables);
+
+            out.writeInt(snapshot.enumFlagValues.size());
+            for (Map.Entry<String, Map<String, Integer>> entry
+                    : snapshot.enumFlagValues.entrySet()) {
+                writeString(out, entry.getKey());
+                out.writeInt(entry.getValue().size());
+                for (Map.Entry<String, Integer> value : entry.getValue().entrySet()) {
+                    writeString(out, value.getKey());
+                    out.writeInt(value.getValue());
+                }
+            }
+
+            out.writeInt(classes.size());
+            for (ViewClassInfo info : classes) {
+                out.writeBoolean(info.isLayout());
+                writeString(out, info.getFullClassName());
+                writeString(out, info.getShortClassName());
+                writeString(out, info.getJavaDoc());
+                writeAttributeRefs(info.getAttributes());
+                writeClassRef(info.getSuperClass());
+                LayoutParamsInfo params = info.getLayoutData();
+                out.writeBoolean(params != null);
+                if (params != null) {
+                    writeString(out, params.getShortClassName());
+                    writeAttributeRefs(params.getAttributes());
+                    LayoutParamsInfo superParams = params.getSuperClass();
+                    writeClassRef(superParams != null ? superParams.getViewLayoutClass() : null);
+                }
+            }
+
+            writeClassRefs(snapshot.layoutViews);
+            writeClassRefs(snapshot.layoutGroups);
+            writeClassRefs(snapshot.preferences);
+            writeClassRefs(snapshot.preferenceGroups);
+            out.flush();
+            mDocsOut.flush();
+        }
+
+        private void collectAttributes(Iterable<AttributeInfo> infos, List<AttributeInfo> list) {
+            for (AttributeInfo info : infos) {
+                if (!mAttributes.containsKey(info)) {
+                    mAttributes.put(info, list.size());
+                    list.add(info);
+                }
+            }
+        }
+
+        private void collectAttributes(AttributeInfo[] infos, List<AttributeInfo> list) {
+            for (AttributeInfo info : infos) {
+                if (!mAttributes.containsKey(info)) {
+                    mAttributes.put(info, list.size());
+                    list.add(info);
+                }
+            }
+        }
+
+        private void collectClass(ViewClassInfo info, List<ViewClassInfo> list) {
+            while (info != null && !mClasses.containsKey(info)) {
+                mClasses.put(info, list.size());
+                list.add(info);
+                LayoutParamsInfo params = info.getLayoutData();
+                if (params != null) {
+                    for (LayoutParamsInfo p = params.getSuperClass(); p != null;
+                            p = p.getSuperClass()) {
+                        collectClass(p.getViewLayoutClass(), list);
+                    }
+                }
+                info = info.getSuperClass();
+            }
+        }
+
+        private void writeStyleables(Map<String, DeclareStyleableInfo> styleables)
+                throws IOException {
+            DataOutputStream out = mDataOut;
+            out.writeInt(styleables.size());
+            for (Map.Entry<String, DeclareStyleableInfo> entry : styleables.entrySet()) {
+                DeclareStyleableInfo style = entry.getValue();
+                writeString(out, entry.getKey());
+                writeString(out, style.getStyleName());
+                writeAttributeRefs(style.getAttributes());
+                writeString(out, style.getJavaDoc());
+                writeStrings(out, style.getParents());
+            }
+        }
+
+        private void writeAttributeRefs(AttributeInfo[] infos) throws IOException {
+            mDataOut.writeInt(infos.length);
+            for (AttributeInfo info : infos) {
+                mDataOut.writeInt(mAttributes.get(info));
+            }
+        }
+
+        private void writeClassRef(ViewClassInfo info) throws IOException {
+            mDataOut.writeInt(info != null ? mClasses.get(info) : -1);
+        }
+
+        private void writeClassRefs(ViewClassInfo[] infos) throws IOException {
+            mDataOut.writeInt(infos.length);
+            for (ViewClassInfo info : infos) {
+                writeClassRef(info);
+            }
+        }
+    }
+
+    private static void writeString(DataOutputStream out, @Nullable String s)
+            throws IOException {
+        if (s == null) {
+            out.writeInt(-1);
+        } else {
+            byte[] bytes = s.getBytes(StandardCharsets.UTF_8);
+            out.writeInt(bytes.length);
+            out.write(bytes);
+        }
+    }
+
+    private static void writeStrings(DataOutputStream out, @Nullable String[] strings)
+            throws IOException {
+        if (strings == null) {
+            out.writeInt(-1);
+        } else {
+            out.writeInt(strings.length);
+            for (String s : strings) {
+                writeString(out, s);
+            }
+        }
+    }
+
+    // ---- Keys ----
+
+    @Nullable
+    private static File getFile(@NonNull IAndroidTarget target) {
+        AndmoreAndroidPlugin plugin = AndmoreAndroidPlugin.getDefault();
+        if (plugin == null) {
+            return null;
+        }
+        String hash = target.hashString();
+        String name = String.format("sdk-data-%1$s-%2$08x.snapshot", //$NON-NLS-1$
+                hash.replaceAll("[^A-Za-z0-9_.-]", "_"), //$NON-NLS-1$ //$NON-NLS-2$
+                hash.hashCode());
+        return plugin.getStateLocation().append(name).toFile();
+    }
+
+    /**
+     * Returns the key of the data parsed from the current platform files of a target by
+     * the current version of the plugin
+     */
+    @Nullable
+    private static String getKey(@NonNull IAndroidTarget target) {
+        AndmoreAndroidPlugin plugin = AndmoreAndroidPlugin.getDefault();
+        if (plugin == null) {
+            return null;
+        }
+
+        CRC32 fingerprint = new CRC32();
+        for (int source : SOURCES) {
+            String path = target.getPath(source);
+            if (path == null) {
+                continue;
+            }
+            File file = new File(path);
+            byte[] stamp = String.format("%1$s:%2$d:%3$d;", //$NON-NLS-1$
+                    path, file.length(), file.lastModified()).getBytes(StandardCharsets.UTF_8);
+            fingerprint.update(stamp, 0, stamp.length);
+        }
+
+        return String.format("%1$s/%2$s/%3$08x", //$NON-NLS-1$
+                target.hashString(), plugin.getBundle().getVersion(), fingerprint.getValue());
+    }
+}
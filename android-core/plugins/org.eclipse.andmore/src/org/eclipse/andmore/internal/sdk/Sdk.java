@@ -26,9 +26,12 @@ import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.Collection;
 import java.util.HashMap;
-import java.util.HashSet;
+import java.util.LinkedHashSet;
 import java.util.List;
 import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.ExecutionException;
 
 import org.eclipse.andmore.AndmoreAndroidConstants;
@@ -176,9 +179,32 @@ public final class Sdk  {
      * <p/>This contains a list of projects that attempted
      * to compile before the loading was finished. Those projects will be recompiled
      * at the end of the loading.
+     * <p/>The list is closed when the load job takes the projects: a caller which can no
+     * longer add its project then checks the load status again.
      */
     private final static class TargetLoadProjects {
-        final HashSet<IJavaProject> projectsToReload = new HashSet<IJavaProject>();
+        private final Set<IJavaProject> projectsToReload = new LinkedHashSet<IJavaProject>();
+        private boolean closed;
+
+        /**
+         * Adds a project to be recompiled at the end of the loading.
+         * @return false if the projects were already taken
+         */
+        synchronized boolean add(IJavaProject project) {
+            if (closed) {
+                return false;
+            }
+            projectsToReload.add(project);
+            return true;
+        }
+
+        /**
+         * Closes the list and returns the projects added to it.
+         */
+        synchronized IJavaProject[] drain() {
+            closed = true;
+            return projectsToReload.toArray(new IJavaProject[projectsToReload.size()]);
+        }
     }
 
     private final static Object LOCK = new Object();
@@ -195,7 +221,7 @@ public final class Sdk  {
     /** Map associating an {@link IAndroidTarget} to an {@link AndroidTargetData} */
     private final SdkTargetDataMap<AndroidTargetData> targetDataMap;
     /** Map associating an {@link IAndroidTarget} and its {@link TargetLoadProjects}. */
-    private final HashMap<String, TargetLoadProjects> targetDataStatusMap;
+    private final ConcurrentHashMap<String, TargetLoadProjects> targetDataStatusMap;
 
     private final String docBaseUrl;
 
@@ -278,7 +304,7 @@ public final class Sdk  {
         projectRegistry = objectFactory.getProjectRegistry(); 
         targetDataMap = (SdkTargetDataMap<AndroidTargetData>)objectFactory.get(SdkTargetDataMap.class);
 ;
-        targetDataStatusMap = new HashMap<>();
+        targetDataStatusMap = new ConcurrentHashMap<>();
         // listen to projects closing
         fileListener = new ProjectFileListener(this);
         projectListener = new AndroidProjectListener(this);
@@ -502,82 +528,98 @@ public final class Sdk  {
      */
     @NonNull
     public LoadStatus checkAndLoadTargetData(final IAndroidTarget target, IJavaProject project) {
-        boolean loadData = false;
-        LoadStatus loadStatus = LoadStatus.FAILED;
         String hashString = AndroidTargetHash.getTargetHashString(target);
-        synchronized (LOCK) {
-            loadStatus = targetDataMap.getLoadStatus(hashString);
-            if (loadStatus == LoadStatus.LOADING) {
-	        	TargetLoadProjects bundle = targetDataStatusMap.get(hashString);
-	        	if (bundle == null) {
-	        		// First time this target is hit
-	        		loadData = true;
-	        		bundle = new TargetLoadProjects();
-	           		// add project to bundle
-	        		if (project != null)
-	        			bundle.projectsToReload.add(project);
-	       	     	targetDataStatusMap.put(hashString, bundle);
-	             }
-            }
+        LoadStatus loadStatus = targetDataMap.getLoadStatus(hashString);
+        if (loadStatus != LoadStatus.LOADING) {
+            return loadStatus;
         }
-        if (loadData) {
-            Job job = new Job(String.format("Loading data for %1$s", target.getFullName())) {
-                @Override
-                protected IStatus run(IProgressMonitor monitor) {
-                    AndmoreAndroidPlugin plugin = AndmoreAndroidPlugin.getDefault();
-                    AndroidTargetData targetData = new AndroidTargetData(target);
-                    try {
-                        IStatus status = new AndroidTargetParser(target).run(targetData, monitor);
 
-                        IJavaProject[] javaProjectArray = null;
-
-                        synchronized (LOCK) {
-                            TargetLoadProjects bundle = targetDataStatusMap.get(AndroidTargetHash.getTargetHashString(target));
+        TargetLoadProjects bundle = new TargetLoadProjects();
+        TargetLoadProjects existing = targetDataStatusMap.putIfAbsent(hashString, bundle);
+        if (existing != null) {
+            // The target is already being loaded
+            if ((project == null) || existing.add(project)) {
+                return loadStatus;
+            }
+            // The load has just ended and no longer takes projects
+            return checkAndLoadTargetData(target, project);
+        }
+        // The previous load may have finished between the status check and the claim
+        LoadStatus currentStatus = targetDataMap.getLoadStatus(hashString);
+        if (currentStatus != LoadStatus.LOADING) {
+            targetDataStatusMap.remove(hashString, bundle);
+            // Callers which joined the claim in the meantime expect their project to be updated
+            IJavaProject[] javaProjectArray = bundle.drain();
+            if ((currentStatus == LoadStatus.LOADED) && (javaProjectArray.length > 0)) {
+                ProjectHelper.updateProjects(javaProjectArray);
+            }
+            return currentStatus;
+        }
+        // First time this target is hit
+        if (project != null) {
+            bundle.add(project);
+        }
 
-                            if (status.getCode() != IStatus.OK) {
-                            	targetDataMap.setFailedStatus(hashString);
-                                bundle.projectsToReload.clear();
-                            } else {
-                            	targetDataMap.setTargetData(target, targetData);
+        // The targets are loaded in parallel: the job has no scheduling rule, so that a
+        // project can open as soon as its own target is loaded
+        Job job = new Job(String.format("Loading data for %1$s", target.getFullName())) {
+            @Override
+            protected IStatus run(IProgressMonitor monitor) {
+                AndmoreAndroidPlugin plugin = AndmoreAndroidPlugin.getDefault();
+                AndroidTargetData targetData = new AndroidTargetData(target);
+                try {
+                    IStatus status = new AndroidTargetParser(target).run(targetData, monitor);
 
-                                // Prepare the array of project to recompile.
-                                // The call is done outside of the synchronized block.
-                                javaProjectArray = bundle.projectsToReload.toArray(
-                                        new IJavaProject[bundle.projectsToReload.size()]);
+                    if (status.getCode() != IStatus.OK) {
+                        targetDataMap.setFailedStatus(hashString);
+                    } else {
+                        targetDataMap.setTargetData(target, targetData);
+                        // Stop collecting projects before reading them
+                        targetDataStatusMap.remove(hashString, bundle);
 
-                                // and update the UI of the editors that depend on the target data.
-                                plugin.updateTargetListeners(target);
-                            }
-                        }
+                        // update the UI of the editors that depend on the target data.
+                        plugin.updateTargetListeners(target);
 
-                        if ((javaProjectArray != null)  && (javaProjectArray.length > 0)) {
+                        IJavaProject[] javaProjectArray = bundle.drain();
+                        if (javaProjectArray.length > 0) {
                             ProjectHelper.updateProjects(javaProjectArray);
                         }
-
-                        return status;
-                    } catch (Throwable t) {
-                        synchronized (LOCK) {
-                        	targetDataMap.setFailedStatus(hashString);
-                        }
-
-                        AndmoreAndroidPlugin.log(t, "Exception in checkAndLoadTargetData.");    //$NON-NLS-1$
-                        return new Status(IStatus.ERROR, AndmoreAndroidConstants.ANDMORE_ID,
-                                String.format(
-                                        "Parsing Data for %1$s failed", //$NON-NLS-1$
-                                        target.hashString()),
-                                t);
-                    } finally {
-                    	targetDataStatusMap.remove(hashString);
                     }
+
+                    return status;
+                } catch (Throwable t) {
+                    targetDataMap.setFailedStatus(hashString);
+
+                    AndmoreAndroidPlugin.log(t, "Exception in checkAndLoadTargetData.");    //$NON-NLS-1$
+                    return new Status(IStatus.ERROR, AndmoreAndroidConstants.ANDMORE_ID,
+                            String.format(
+                                    "Parsing Data for %1$s failed", //$NON-NLS-1$
+                                    target.hashString()),
+                            t);
+                } finally {
+                    targetDataStatusMap.remove(hashString, bundle);
+                    // Late callers find out the load failed
+                    bundle.drain();
                 }
-            };
-            job.setPriority(Job.BUILD); // build jobs are run after other interactive jobs
-            job.setRule(ResourcesPlugin.getWorkspace().getRoot());
-            job.schedule();
-        }
+            }
+        };
+        job.setPriority(Job.BUILD); // build jobs are run after other interactive jobs
+        job.schedule();
         return loadStatus;
     }
 
+    /**
+     * Returns the future of the {@link AndroidTargetData} for a given {@link IAndroidTarget}.
+     * <p/>The future completes when the data of the target is loaded, or with null if the
+     * load fails; call {@link #checkAndLoadTargetData(IAndroidTarget, IJavaProject)} to make
+     * sure the load is started.
+     */
+    @NonNull
+    public CompletableFuture<AndroidTargetData> getTargetDataFuture(
+            @NonNull IAndroidTarget target) {
+        return targetDataMap.getTargetDataFuture(AndroidTargetHash.getTargetHashString(target));
+    }
+
     /**
      * Return the {@link AndroidTargetData} for a given {@link IAndroidTarget}.
      */
@@ -596,11 +638,10 @@ public final class Sdk  {
     	if (!projectRegistry.hasProjectState(project))
     		// Information not available while project is being opened
     		return null;
-        synchronized (LOCK) {
-            IAndroidTarget target = AndworxFactory.instance().getTarget(project);
-            if (target != null) {
-                return getTargetData(target);
-            }
+        // The target data map is concurrent, so there is no need to hold the SDK lock
+        IAndroidTarget target = AndworxFactory.instance().getTarget(project);
+        if (target != null) {
+            return getTargetData(target);
         }
 
         return null;
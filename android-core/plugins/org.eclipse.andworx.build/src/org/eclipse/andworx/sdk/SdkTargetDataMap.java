@@ -15,8 +15,9 @@
  */
 package org.eclipse.andworx.sdk;
 
-import java.util.HashMap;
 import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
 
 import org.eclipse.andworx.build.AndworxContext;
 import org.eclipse.andworx.event.AndworxEvents;
@@ -34,7 +35,9 @@ import com.android.sdklib.AndroidTargetHash;
 import com.android.sdklib.IAndroidTarget;
 
 /**
- * Container for data collected by Target Parser which also tracks Target Data load status
+ * Container for data collected by Target Parser which also tracks Target Data load status.
+ * Targets are loaded in parallel, so the container is lock-free, and each target has a future
+ * which completes when its data is loaded, letting callers wait for their own target only.
  */
 public class SdkTargetDataMap<Data extends Disposeable> extends TargetLoadStatus {
 
@@ -42,6 +45,8 @@ public class SdkTargetDataMap<Data extends Disposeable> extends TargetLoadStatus
     final private IEventBroker eventBroker;
     /** Maps Target Data to target hash string */
 	final private Map<String, Data> targetDataMap;
+	/** Maps future of Target Data to target hash string */
+	final private Map<String, CompletableFuture<Data>> futureMap;
 	/** Job to handle event SDK loaded */
 	final Job newSdkJob = new Job("Updating target data map") {
 
@@ -59,7 +64,8 @@ public class SdkTargetDataMap<Data extends Disposeable> extends TargetLoadStatus
 	 */
 	public SdkTargetDataMap(AndworxContext objectFactory) {
 		super(objectFactory);
-		targetDataMap = new HashMap<>();
+		targetDataMap = new ConcurrentHashMap<>();
+		futureMap = new ConcurrentHashMap<>();
 		// Retrieve Event Broker from Eclipse Context
         IEclipseContext eclipseContext = objectFactory.getEclipseContext();
     	eventBroker = (IEventBroker) eclipseContext.get(IEventBroker.class.getName());
@@ -87,6 +93,7 @@ public class SdkTargetDataMap<Data extends Disposeable> extends TargetLoadStatus
 	 */
 	public void setFailedStatus(String hashString) {
         super.setFailedStatus(hashString);
+        complete(hashString, null);
 	}
 
 	/**
@@ -103,9 +110,18 @@ public class SdkTargetDataMap<Data extends Disposeable> extends TargetLoadStatus
 	 * @return target data or null if not available
 	 */
 	public Data getTargetData(String hashString) {
-        synchronized (targetDataMap) {
-        	return targetDataMap.get(hashString);
-        }
+       	return targetDataMap.get(hashString);
+	}
+
+	/**
+	 * Returns future of Target Data for target specified by hashstring. The future completes
+	 * when the target data is loaded, or with null if loading fails. It is already complete if
+	 * the load has finished.
+	 * @param hashString Identifies target
+	 * @return future of target data
+	 */
+	public CompletableFuture<Data> getTargetDataFuture(String hashString) {
+		return futureMap.computeIfAbsent(hashString, key -> new CompletableFuture<Data>());
 	}
 
 	/**
@@ -115,28 +131,60 @@ public class SdkTargetDataMap<Data extends Disposeable> extends TargetLoadStatus
 	 */
     public void setTargetData(IAndroidTarget target, Data data) {
     	String hashString = AndroidTargetHash.getTargetHashString(target);
-        synchronized (targetDataMap) {
-        	setLoadedStatus(hashString);
-            targetDataMap.put(hashString, data);
-        }
+        // Publish the data before the status so a thread seeing LOADED also sees the data
+        targetDataMap.put(hashString, data);
+        setLoadedStatus(hashString);
+        complete(hashString, data);
     }
 
     /**
      * Call dispose() on every Target Data object and clear containers
      */
     public void dispose() {
-        synchronized (targetDataMap) {
-	        for (Data data : targetDataMap.values()) {
-	        	try {
-	        		data.dispose();
-	        	} catch (Exception e) {
-	        		
-	        	}
-	        }
-	        targetDataMap.clear();
-	        super.clear();
+        for (Data data : targetDataMap.values()) {
+        	try {
+        		data.dispose();
+        	} catch (Exception e) {
+        		
+        	}
         }
+        targetDataMap.clear();
+        super.clear();
+        // Release threads waiting for a target which will not be loaded by this container
+        for (CompletableFuture<Data> future: futureMap.values())
+        	future.complete(null);
+        futureMap.clear();
     }
-    
+
+	/**
+	 * Update load statuses to align with the current Android SDK configuration.
+	 * Targets which are to be loaded again get a new future. The pending futures of targets
+	 * which failed, such as when removed from the SDK, complete with null.
+	 */
+	@Override
+	protected void refresh() {
+		super.refresh();
+		for (Map.Entry<String, CompletableFuture<Data>> entry: futureMap.entrySet()) {
+			LoadStatus loadStatus = getLoadStatus(entry.getKey());
+			if (entry.getValue().isDone() && (loadStatus == LoadStatus.LOADING))
+				futureMap.remove(entry.getKey(), entry.getValue());
+			else if (loadStatus == LoadStatus.FAILED)
+				entry.getValue().complete(null);
+		}
+	}
+
+	/**
+	 * Completes the future of the target specified by hashstring
+	 * @param hashString Identifies target
+	 * @param data Target data or null if loading failed
+	 */
+	private void complete(String hashString, Data data) {
+		CompletableFuture<Data> future = getTargetDataFuture(hashString);
+		if (!future.complete(data)) {
+			// Target loaded again
+			futureMap.put(hashString, CompletableFuture.completedFuture(data));
+		}
+	}
+
 
 }
@@ -15,10 +15,10 @@
  */
 package org.eclipse.andworx.sdk;
 
-import java.util.HashMap;
 import java.util.HashSet;
 import java.util.Map;
 import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
 
 import org.eclipse.andworx.build.AndworxContext;
 import org.eclipse.andworx.context.AndroidEnvironment;
@@ -31,6 +31,8 @@ import com.android.sdklib.IAndroidTarget;
  * Tracks status of data that must be loaded by parsing Android targets.
  * Notifies all waiting objects when any status change occurs.
  * Intended to be sub classed by Target Data container which provides higher level API.
+ * The statuses are held in a concurrent map, so targets loading in parallel do not
+ * contend on a lock to report their progress.
  */
 public class TargetLoadStatus implements TargetLoadStatusMonitor {
 	/** Maps Target Data Load Status to target hashstring */
@@ -44,7 +46,7 @@ public class TargetLoadStatus implements TargetLoadStatusMonitor {
 	 */
 	public TargetLoadStatus(AndworxContext objectFactory) {
 		this.objectFactory = objectFactory;
-		loadStatusMap = new HashMap<>();
+		loadStatusMap = new ConcurrentHashMap<>();
 	}
 
 	/**
@@ -54,12 +56,10 @@ public class TargetLoadStatus implements TargetLoadStatusMonitor {
 	 */
 	@Override
 	public LoadStatus getLoadStatus(String hashString) {
-	    synchronized (loadStatusMap) {
-    	    LoadStatus loadStatus = loadStatusMap.get(hashString);
-        	if (loadStatus == null)
-        		loadStatus = getInitialStatus(hashString);
-        	return loadStatus;
-        }
+		LoadStatus loadStatus = loadStatusMap.get(hashString);
+		if (loadStatus == null)
+			loadStatus = getInitialStatus(hashString);
+		return loadStatus;
 	}
 
 	/**
@@ -67,10 +67,8 @@ public class TargetLoadStatus implements TargetLoadStatusMonitor {
 	 * @param hashString Identifies target
 	 */
 	protected void setLoadingStatus(String hashString) {
-       synchronized (loadStatusMap) {
-    	   loadStatusMap.put(hashString, LoadStatus.LOADING);
-        }
-        signal();
+		loadStatusMap.put(hashString, LoadStatus.LOADING);
+		signal();
 	}
 		
 	/**
@@ -78,10 +76,8 @@ public class TargetLoadStatus implements TargetLoadStatusMonitor {
 	 * @param hashString Identifies target
 	 */
 	protected void setLoadedStatus(String hashString) {
-	    synchronized (loadStatusMap) {
-	        loadStatusMap.put(hashString, LoadStatus.LOADED);
-	    }
-	    signal();
+		loadStatusMap.put(hashString, LoadStatus.LOADED);
+		signal();
 	}
 			
 	/**
@@ -89,20 +85,16 @@ public class TargetLoadStatus implements TargetLoadStatusMonitor {
 	 * @param hashString Identifies target
 	 */
 	protected void setFailedStatus(String hashString) {
-       synchronized (loadStatusMap) {
-    	   loadStatusMap.put(hashString, LoadStatus.FAILED);
-        }
-        signal();
+		loadStatusMap.put(hashString, LoadStatus.FAILED);
+		signal();
 	}
 
 	/**
 	 * Empty load status container
 	 */
 	protected void clear() {
-       synchronized (loadStatusMap) {
-    	   loadStatusMap.clear();
-        }
-        signal();
+		loadStatusMap.clear();
+		signal();
 	}
 
 	/**
@@ -110,28 +102,26 @@ public class TargetLoadStatus implements TargetLoadStatusMonitor {
 	 */
 	protected void refresh() {
 		AndroidEnvironment androidEnv = objectFactory.getAndroidEnvironment();
-		synchronized(loadStatusMap) {
-	   		if (androidEnv.isValid()) {
-				// Collect set of targets that exist in the current SDK
-	   			Set<String> existingTargets = new HashSet<>();
-				for (IAndroidTarget target: androidEnv.getAndroidTargets()) {
-					if (target.isPlatform())
-						existingTargets.add(AndroidTargetHash.getTargetHashString(target));
-			    // Update all statuses. If the target does not exist, the status is automatically FAILED.		
-				for (Map.Entry<String, LoadStatus> entry: loadStatusMap.entrySet()) {
-					if (!existingTargets.contains(entry.getKey())) {
-						entry.setValue(LoadStatus.FAILED);
-					} else if (entry.getValue() == LoadStatus.FAILED)
-						entry.setValue(LoadStatus.LOADING);
-				    }
-			    }
-		   	} else {
-		   		// If the SDK is not available, all statuses are FAILED
-				for (Map.Entry<String, LoadStatus> entry: loadStatusMap.entrySet())
+		if (androidEnv.isValid()) {
+			// Collect set of targets that exist in the current SDK
+			Set<String> existingTargets = new HashSet<>();
+			for (IAndroidTarget target: androidEnv.getAndroidTargets()) {
+				if (target.isPlatform())
+					existingTargets.add(AndroidTargetHash.getTargetHashString(target));
+			}
+			// Update all statuses. If the target does not exist, the status is automatically FAILED.
+			for (Map.Entry<String, LoadStatus> entry: loadStatusMap.entrySet()) {
+				if (!existingTargets.contains(entry.getKey())) {
 					entry.setValue(LoadStatus.FAILED);
-		   	}
-	   		signal();
+				} else if (entry.getValue() == LoadStatus.FAILED)
+					entry.setValue(LoadStatus.LOADING);
+			}
+		} else {
+			// If the SDK is not available, all statuses are FAILED
+			for (Map.Entry<String, LoadStatus> entry: loadStatusMap.entrySet())
+				entry.setValue(LoadStatus.FAILED);
 		}
+		signal();
 	}
 
 	/**
@@ -159,7 +149,8 @@ public class TargetLoadStatus implements TargetLoadStatusMonitor {
 				}
 			}
 		}
-   		loadStatusMap.put(hashString, loadStatus);
- 	    return loadStatus; 
+		// Another thread may have set the status in the meantime
+		LoadStatus current = loadStatusMap.putIfAbsent(hashString, loadStatus);
+		return current != null ? current : loadStatus;
     }
 }